@@ -0,0 +1,46 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Entry point of benchmarks.jar. Runs the JMH command line with the GC
+// profiler added (unless another -prof gc was given) so that allocation
+// per operation is always reported.
+public final class BenchmarkMain {
+    
+    private BenchmarkMain() {}
+    
+    public static void main(String[] args) throws Exception {
+        final List<String> list = new ArrayList<>(Arrays.asList(args));
+        boolean hasGC = false;
+        for (int i = 0; i + 1 < list.size(); ++i) {
+            if ("-prof".equals(list.get(i)) && list.get(i + 1).startsWith("gc")) {
+                hasGC = true;
+            }
+        }
+        if (!hasGC) {
+            list.add(0, "gc");
+            list.add(0, "-prof");
+        }
+        org.openjdk.jmh.Main.main(list.toArray(new String[list.size()]));
+    }
+}
@@ -0,0 +1,81 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.benchmarks;
+
+import java.util.ServiceLoader;
+
+import com.google.gson.JsonElement;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceGeneratorFactory;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+
+// Shared setup for the benchmarks which run TraceInjector.
+final class BenchmarkSupport {
+    
+    static final String PACKAGE = "bench/";
+    
+    private BenchmarkSupport() {}
+    
+    // Creates the generator of a registered TraceGeneratorFactory, found the same way the agent finds it.
+    static TraceGenerator createTraceGenerator(String type, JsonElement config) {
+        for (TraceGeneratorFactory factory : ServiceLoader.load(TraceGeneratorFactory.class, BenchmarkSupport.class.getClassLoader())) {
+            if (factory.matches(type, "1.0")) {
+                return factory.createTraceGenerator(config);
+            }
+        }
+        throw new IllegalArgumentException("No TraceGeneratorFactory of type: " + type);
+    }
+    
+    // Hides the generator's probe templates so that its source snippets are compiled instead.
+    static TraceGenerator snippetsOnly(TraceGenerator tg) {
+        return new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                return tg.generateSourceSnippet(context);
+            }
+            @Override
+            public ProbeTemplate generateProbeTemplate(TraceInjectionContext context) {
+                return null;
+            }
+        };
+    }
+    
+    // Generates a class in the benchmark package with the given number of methods,
+    // each with a loop, a branch and two returns.
+    static byte[] generateClass(String simpleName, int methodCount) throws Exception {
+        final ClassPool pool = new ClassPool(true);
+        final CtClass ctClass = pool.makeClass(PACKAGE.replace('/', '.') + simpleName);
+        for (int i = 0; i < methodCount; ++i) {
+            ctClass.addMethod(CtNewMethod.make(
+                    "public int m" + i + "(int x, String s) {"
+                    + " int r = x;"
+                    + " for (int j = 0; j < x; j++) { r += j * " + i + "; }"
+                    + " if (s == null) { return -r; }"
+                    + " return r + s.length(); }", ctClass));
+        }
+        final byte[] b = ctClass.toBytecode();
+        ctClass.detach();
+        return b;
+    }
+}
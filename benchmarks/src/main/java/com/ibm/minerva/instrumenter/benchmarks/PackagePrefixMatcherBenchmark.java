@@ -0,0 +1,91 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.benchmarks;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ibm.minerva.instrumenter.filter.pkg.PackagePrefixMatcher;
+
+// Cost of deciding whether a loaded class is accepted by the package filter
+// as the number of configured packages grows. The class names are a mix of
+// JDK/framework classes (rejected) and application classes (accepted).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PackagePrefixMatcherBenchmark {
+    
+    @Param({"1", "10", "100", "1000"})
+    public int packageCount;
+    
+    private Set<String> packages;
+    private PackagePrefixMatcher matcher;
+    private String[] classNames;
+    
+    @Setup
+    public void setup() {
+        packages = new TreeSet<>();
+        for (int i = 0; i < packageCount; ++i) {
+            packages.add("com/acme/app" + i + "/service/");
+        }
+        matcher = PackagePrefixMatcher.compile(packages);
+        classNames = new String[] {
+            "java/lang/String",
+            "java/util/concurrent/ConcurrentHashMap$Node",
+            "jdk/internal/misc/Unsafe",
+            "sun/reflect/GeneratedMethodAccessor12",
+            "org/springframework/beans/factory/support/DefaultListableBeanFactory",
+            "com/sun/proxy/$Proxy42",
+            "com/acme/app0/service/OrderService",
+            "com/acme/app" + (packageCount - 1) + "/service/OrderService$1",
+        };
+    }
+    
+    @Benchmark
+    public void matcher(Blackhole bh) {
+        for (String className : classNames) {
+            bh.consume(matcher.matches(className));
+        }
+    }
+    
+    // The stream based check the package filter used before the matcher was introduced.
+    @Benchmark
+    public void streamAnyMatch(Blackhole bh) {
+        for (String className : classNames) {
+            bh.consume(packages.stream().anyMatch(x -> className.startsWith(x)));
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.benchmarks;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonObject;
+import com.ibm.minerva.instrumenter.TraceInjector;
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.MinimalTraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.ProbeGuard;
+import com.ibm.minerva.instrumenter.codegen.Sampling;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceSwitch;
+import com.ibm.minerva.instrumenter.filter.pkg.ApplicationProcessorImpl;
+import com.ibm.minerva.instrumenter.runtime.CallEdgeCounter;
+import com.ibm.minerva.instrumenter.runtime.ContextTreeRecorder;
+import com.ibm.minerva.instrumenter.runtime.PrintTracer;
+import com.ibm.minerva.instrumenter.runtime.ProbeSwitch;
+import com.ibm.minerva.instrumenter.runtime.RingRecorder;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+
+// Cost of one call to a small method instrumented by each generator, at 1,
+// 4 and 16 threads. "none" is the uninstrumented method. Other registered
+// generators can be measured with -p generator=<type>. Run with the GC
+// profiler (the default for benchmarks.jar) to see allocation per call.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProbeOverheadBenchmark {
+    
+    private static final String TARGET_CLASS = BenchmarkSupport.PACKAGE + "Target";
+    
+    private static final String RING_BUFFER = "ring-buffer";
+    private static final String CALL_EDGES = "call-edges";
+    private static final String CONTEXT_TREE = "context-tree";
+    // The generator's legacy probes, e.g. java-util-logging-legacy.
+    private static final String LEGACY_SUFFIX = "-legacy";
+    
+    @Param({"none", "println", "println" + LEGACY_SUFFIX, "java-util-logging", "java-util-logging" + LEGACY_SUFFIX, RING_BUFFER, CALL_EDGES, CONTEXT_TREE})
+    public String generator;
+    
+    // "none", "every:<n>" or "rate:<fraction>".
+    @Param({"none"})
+    public String sampling;
+    
+    // "default" or "minimal" for the method-id probes of generator.minimalProbes.
+    @Param({"default"})
+    public String probes;
+    
+    // "none", or "on" or "off" for the probes guarded by generator.switch.
+    @Param({"none"})
+    public String traceSwitch;
+    
+    private IntUnaryOperator target;
+    private PrintStream out;
+    private PrintStream err;
+    private File traceDir;
+    
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // The println generator's output is discarded.
+        out = System.out;
+        err = System.err;
+        final PrintStream discard = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {}
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        });
+        System.setOut(discard);
+        System.setErr(discard);
+        
+        byte[] b = generateTarget();
+        if (!"none".equals(generator)) {
+            final TraceGenerator tg = generator.endsWith(LEGACY_SUFFIX) 
+                    ? BenchmarkSupport.createTraceGenerator(generator.substring(0, generator.length() - LEGACY_SUFFIX.length()), createLegacyConfig())
+                    : BenchmarkSupport.createTraceGenerator(generator, createConfig());
+            final MethodIdRegistry methodIds = new MethodIdRegistry();
+            final TraceGenerator probeGenerator = "minimal".equals(probes) ? new MinimalTraceGenerator(tg, methodIds) : tg;
+            probeGenerator.initialize(null);
+            final TraceInjector injector = TraceInjector.builder(
+                    new ApplicationProcessorImpl(Collections.singleton(BenchmarkSupport.PACKAGE)), probeGenerator)
+                    .methodIds(methodIds)
+                    .probeGuard(ProbeGuard.and(createTraceSwitch(), createSampling()))
+                    .build();
+            b = injector.transform(ProbeOverheadBenchmark.class.getClassLoader(), TARGET_CLASS, null, null, b);
+        }
+        final byte[] targetClass = b;
+        final ClassLoader loader = new ClassLoader(ProbeOverheadBenchmark.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                if (name.equals(TARGET_CLASS.replace('/', '.'))) {
+                    return defineClass(name, targetClass, 0, targetClass.length);
+                }
+                throw new ClassNotFoundException(name);
+            }
+        };
+        target = (IntUnaryOperator) loader.loadClass(TARGET_CLASS.replace('/', '.')).getDeclaredConstructor().newInstance();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // The buffered println output is discarded too.
+        PrintTracer.flush();
+        System.setOut(out);
+        System.setErr(err);
+        ProbeSwitch.set(false);
+        if (traceDir != null) {
+            RingRecorder.stop();
+            CallEdgeCounter.stop();
+            ContextTreeRecorder.stop();
+            for (File f : traceDir.listFiles()) {
+                f.delete();
+            }
+            traceDir.delete();
+        }
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public int call1Thread(ThreadState state) {
+        return target.applyAsInt(state.next++);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public int call4Threads(ThreadState state) {
+        return target.applyAsInt(state.next++);
+    }
+    
+    @Benchmark
+    @Threads(16)
+    public int call16Threads(ThreadState state) {
+        return target.applyAsInt(state.next++);
+    }
+    
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int next;
+    }
+    
+    private TraceSwitch createTraceSwitch() {
+        if ("none".equals(traceSwitch)) {
+            return null;
+        }
+        final TraceSwitch ts = new TraceSwitch("on".equals(traceSwitch), null, TraceSwitch.DEFAULT_INTERVAL);
+        ts.start();
+        return ts;
+    }
+    
+    private Sampling createSampling() {
+        if (sampling.startsWith("every:")) {
+            return Sampling.every(Integer.parseInt(sampling.substring(6)));
+        }
+        if (sampling.startsWith("rate:")) {
+            return Sampling.rate(Double.parseDouble(sampling.substring(5)));
+        }
+        return null;
+    }
+    
+    private static JsonObject createLegacyConfig() {
+        final JsonObject config = new JsonObject();
+        config.addProperty("legacy", true);
+        return config;
+    }
+    
+    // The ring buffer trace is written to /dev/null where available (through a
+    // link, the method dictionary is written next to it) so that the benchmark
+    // measures the probes rather than the disk.
+    private JsonObject createConfig() throws Exception {
+        if (CALL_EDGES.equals(generator) || CONTEXT_TREE.equals(generator)) {
+            // These files are replaced on each write, so they are written to a temporary directory.
+            traceDir = Files.createTempDirectory("minerva-bench").toFile();
+            final JsonObject config = new JsonObject();
+            config.addProperty("file", new File(traceDir, "aggregate.bin").getPath());
+            return config;
+        }
+        if (!RING_BUFFER.equals(generator)) {
+            return null;
+        }
+        traceDir = Files.createTempDirectory("minerva-bench").toFile();
+        final File trace = new File(traceDir, "trace.bin");
+        final File devNull = new File("/dev/null");
+        if (devNull.exists()) {
+            try {
+                Files.createSymbolicLink(trace.toPath(), devNull.toPath());
+            }
+            catch (Exception e) {}
+        }
+        final JsonObject config = new JsonObject();
+        config.addProperty("file", trace.getPath());
+        config.addProperty("bufferSize", 65536);
+        config.addProperty("flushInterval", 10);
+        return config;
+    }
+    
+    private static byte[] generateTarget() throws Exception {
+        final ClassPool pool = new ClassPool(true);
+        final CtClass ctClass = pool.makeClass(TARGET_CLASS.replace('/', '.'));
+        ctClass.addInterface(pool.get(IntUnaryOperator.class.getName()));
+        ctClass.addMethod(CtNewMethod.make("public int applyAsInt(int x) { return x * 31 + 7; }", ctClass));
+        final byte[] b = ctClass.toBytecode();
+        ctClass.detach();
+        return b;
+    }
+}
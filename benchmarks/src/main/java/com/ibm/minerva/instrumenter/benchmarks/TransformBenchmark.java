@@ -0,0 +1,92 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.minerva.instrumenter.TraceInjector;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.filter.pkg.ApplicationProcessorImpl;
+
+// Throughput of TraceInjector.transform over a corpus of generated classes
+// of varying size, with each generator's probe templates or source snippets.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransformBenchmark {
+    
+    private static final int CORPUS_SIZE = 8;
+    
+    @Param({"5", "50", "250"})
+    public int methodCount;
+    
+    @Param({"println", "java-util-logging"})
+    public String generator;
+    
+    @Param({"template", "snippet"})
+    public String probes;
+    
+    private TraceInjector injector;
+    private String[] classNames;
+    private byte[][] classes;
+    private int next;
+    
+    @Setup
+    public void setup() throws Exception {
+        TraceGenerator tg = BenchmarkSupport.createTraceGenerator(generator, null);
+        if ("snippet".equals(probes)) {
+            tg = BenchmarkSupport.snippetsOnly(tg);
+        }
+        injector = new TraceInjector(new ApplicationProcessorImpl(Collections.singleton(BenchmarkSupport.PACKAGE)), tg);
+        classNames = new String[CORPUS_SIZE];
+        classes = new byte[CORPUS_SIZE][];
+        for (int i = 0; i < CORPUS_SIZE; ++i) {
+            classNames[i] = BenchmarkSupport.PACKAGE + "Generated" + i;
+            // Vary the size of the classes around the configured method count.
+            classes[i] = BenchmarkSupport.generateClass("Generated" + i, Math.max(1, methodCount * (i + 4) / 8));
+        }
+    }
+    
+    @Benchmark
+    public byte[] transform() throws Exception {
+        final int i = next;
+        next = (i + 1) % CORPUS_SIZE;
+        final byte[] b = injector.transform(TransformBenchmark.class.getClassLoader(), classNames[i], null, null, classes[i]);
+        if (b == null) {
+            throw new IllegalStateException(classNames[i]);
+        }
+        return b;
+    }
+}
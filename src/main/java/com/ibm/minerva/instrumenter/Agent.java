@@ -34,16 +34,28 @@ import java.util.logging.Logger;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.ibm.minerva.instrumenter.cache.TransformCache;
+import com.ibm.minerva.instrumenter.codegen.ExitStrategy;
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.MinimalTraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.ProbeGuard;
+import com.ibm.minerva.instrumenter.codegen.RuntimeSupport;
+import com.ibm.minerva.instrumenter.codegen.Sampling;
+import com.ibm.minerva.instrumenter.codegen.Throttling;
+import com.ibm.minerva.instrumenter.codegen.TraceSwitch;
 import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
 import com.ibm.minerva.instrumenter.codegen.TraceGeneratorFactory;
 import com.ibm.minerva.instrumenter.filter.ApplicationProcessor;
 import com.ibm.minerva.instrumenter.filter.ApplicationProcessorFactory;
+import com.ibm.minerva.instrumenter.metrics.TransformMetrics;
 
 public final class Agent {
     
     private static final Logger logger = LoggingUtil.getLogger(Agent.class);
     
     private static final String DEFAULT_CONFIG_FILE_NAME = "instrumenter-config.json";
+    private static final String DETACH_COMMAND = "detach";
     
     private static final String FILTER_NAME = "filter";
     private static final String GENERATOR_NAME = "generator";
@@ -51,16 +63,63 @@ public final class Agent {
     private static final String TYPE_NAME = "type";
     private static final String VERSION_NAME = "version";
     private static final String CONFIG_NAME = "config";
+    private static final String METHODS_NAME = "methods";
+    private static final String SAMPLING_NAME = "sampling";
+    private static final String EVERY_NAME = "every";
+    private static final String RATE_NAME = "rate";
+    private static final String THROTTLE_NAME = "throttle";
+    private static final String MAX_RATE_NAME = "maxRate";
+    private static final String INTERVAL_NAME = "interval";
+    private static final String EXIT_STRATEGY_NAME = "exitStrategy";
+    private static final String MINIMAL_PROBES_NAME = "minimalProbes";
+    private static final String SWITCH_NAME = "switch";
+    private static final String ON_NAME = "on";
+    private static final String TRIGGER_FILE_NAME = "triggerFile";
+    private static final String ASYNC_NAME = "async";
+    private static final String RETRANSFORM_NAME = "retransform";
+    private static final String BATCH_SIZE_NAME = "batchSize";
+    private static final String BATCH_DELAY_NAME = "batchDelay";
+    private static final String THREADS_NAME = "threads";
+    private static final String CACHE_NAME = "cache";
+    private static final String METRICS_NAME = "metrics";
+    private static final String JMX_NAME = "jmx";
+    private static final String SUMMARY_NAME = "summary";
+    private static final String INLINING_REPORT_NAME = "inliningReport";
     
     private static volatile File agentConfig;
+    private static volatile AgentControl agentControl;
     
     private Agent() {}
 
     public static void premain(String agentArgs, Instrumentation inst) {
-        agentmain(agentArgs, inst);
+        start(agentArgs, inst, false);
     }
     
+    // Called when the agent is attached to a running JVM. Classes which are
+    // already loaded and accepted by the filter are retransformed. Attaching 
+    // with the argument "detach" restores the classes instrumented so far and
+    // removes the agent's transformer.
     public static void agentmain(String agentArgs, Instrumentation inst) {
+        if (agentArgs != null && DETACH_COMMAND.equals(agentArgs.trim())) {
+            final AgentControl control = agentControl;
+            if (control != null) {
+                agentControl = null;
+                control.detachInBackground();
+            }
+            else {
+                logger.warning(() -> formatMessage("AgentDetachNotSupported"));
+            }
+            return;
+        }
+        start(agentArgs, inst, true);
+    }
+    
+    // Returns the control of the agent's transformer, or null if it cannot be detached.
+    public static AgentControl getAgentControl() {
+        return agentControl;
+    }
+    
+    private static void start(String agentArgs, Instrumentation inst, boolean attach) {
         logger.info(() -> formatMessage("StartingAgent"));
         JsonObject config = null;
         if (agentArgs != null) {
@@ -80,10 +139,68 @@ public final class Agent {
             }
         }
         processLoggingConfiguration(config);
-        final ApplicationProcessor ap = createApplicationProcessor(config);
+        AsyncApplicationProcessor async = null;
+        if (isAsyncFilter(config)) {
+            if (inst.isRetransformClassesSupported()) {
+                async = createAsyncApplicationProcessor(config, inst, attach);
+            }
+            else {
+                logger.warning(() -> formatMessage("AsyncFilterNotSupported"));
+            }
+        }
+        final ApplicationProcessor ap = async != null ? async : createApplicationProcessor(config);
         final TraceGenerator tg = createTraceGenerator(config);
         if (ap != null && tg != null) {
-            inst.addTransformer(new TraceInjector(ap, tg));
+            final MethodIdRegistry methodIds = createMethodIdRegistry(config, tg);
+            // The minimal probes call the generator through its probe handlers.
+            final TraceGenerator probes = isMinimalProbes(config) ? new MinimalTraceGenerator(tg, methodIds) : tg;
+            probes.initialize(inst);
+            // Registering the injector as retransformation capable also allows it to be detached later.
+            final boolean canRetransform = async != null || inst.isRetransformClassesSupported();
+            final TransformCache cache = TransformCache.create(config.get(CACHE_NAME), config, methodIds.getFile());
+            final Throttling throttling = createThrottling(config);
+            final TraceSwitch traceSwitch = createTraceSwitch(config);
+            // Calls of throttled methods are not sampled (nor counted by the sampling).
+            // While the switch is off neither runs.
+            final ProbeGuard guard = ProbeGuard.and(traceSwitch, ProbeGuard.and(throttling, createSampling(config)));
+            if (guard != null) {
+                // The guard calls the runtime whichever generator is used.
+                RuntimeSupport.appendToBootstrapClassLoaderSearch(inst);
+            }
+            final TraceInjector ti = TraceInjector.builder(ap, probes)
+                    .canRetransform(canRetransform)
+                    .transformCache(cache)
+                    .methodIds(methodIds)
+                    .probeGuard(guard)
+                    .exitStrategy(createExitStrategy(config))
+                    .build();
+            if (throttling != null) {
+                throttling.start(ti.getMethodIds(), tg);
+            }
+            if (traceSwitch != null) {
+                traceSwitch.start();
+            }
+            if (canRetransform) {
+                final BatchRetransformer retransformer = createBatchRetransformer(config, inst);
+                final AgentControl control = new AgentControl(inst, ti, retransformer);
+                processMetricsConfiguration(config, ti.getMetrics(), control, throttling, traceSwitch);
+                inst.addTransformer(ti, true);
+                agentControl = control;
+                if (async != null) {
+                    // Classes loaded before the filter was ready are instrumented later.
+                    async.start();
+                }
+                else if (attach) {
+                    startAttachRetransformer(ap, retransformer);
+                }
+            }
+            else {
+                if (attach) {
+                    logger.warning(() -> formatMessage("AttachRetransformNotSupported"));
+                }
+                processMetricsConfiguration(config, ti.getMetrics(), null, throttling, traceSwitch);
+                inst.addTransformer(ti);
+            }
         }
         else {
             if (ap == null) {
@@ -175,6 +292,109 @@ public final class Agent {
         return null;
     }
     
+    private static void processMetricsConfiguration(JsonObject o, TransformMetrics metrics, 
+            AgentControl control, Throttling throttling, TraceSwitch traceSwitch) {
+        JsonElement e = o.get(METRICS_NAME);
+        if (e != null && e.isJsonObject()) {
+            o = e.getAsJsonObject();
+            e = o.get(JMX_NAME);
+            if (e != null && e.isJsonPrimitive() && e.getAsBoolean()) {
+                metrics.registerMBean();
+                if (control != null) {
+                    control.registerMBean();
+                }
+                if (throttling != null) {
+                    throttling.registerMBean();
+                }
+                if (traceSwitch != null) {
+                    traceSwitch.registerMBean();
+                }
+            }
+            // Either true (standard error) or the path of a file.
+            e = o.get(SUMMARY_NAME);
+            if (e != null && e.isJsonPrimitive()) {
+                final JsonPrimitive p = e.getAsJsonPrimitive();
+                if (p.isBoolean()) {
+                    if (p.getAsBoolean()) {
+                        metrics.writeSummaryOnShutdown(null);
+                    }
+                }
+                else {
+                    metrics.writeSummaryOnShutdown(resolvePath(p.getAsString()));
+                }
+            }
+            // Either true (standard error) or the path of a file.
+            e = o.get(INLINING_REPORT_NAME);
+            if (e != null && e.isJsonPrimitive()) {
+                final JsonPrimitive p = e.getAsJsonPrimitive();
+                if (p.isBoolean()) {
+                    if (p.getAsBoolean()) {
+                        metrics.writeInliningReportOnShutdown(null);
+                    }
+                }
+                else {
+                    metrics.writeInliningReportOnShutdown(resolvePath(p.getAsString()));
+                }
+            }
+        }
+    }
+    
+    private static boolean isAsyncFilter(JsonObject o) {
+        if (o != null) {
+            JsonElement e = o.get(FILTER_NAME);
+            if (e != null && e.isJsonObject()) {
+                e = e.getAsJsonObject().get(ASYNC_NAME);
+                return e != null && e.isJsonPrimitive() && e.getAsBoolean();
+            }
+        }
+        return false;
+    }
+    
+    // Resolves the filter factory now so that configuration errors are reported
+    // on startup but defers creating the filter to a background thread.
+    private static AsyncApplicationProcessor createAsyncApplicationProcessor(JsonObject o, Instrumentation inst, boolean attach) {
+        final JsonObject filter = o.get(FILTER_NAME).getAsJsonObject();
+        final ApplicationProcessorFactory apf = createTypedFactory(filter, ApplicationProcessorFactory.class);
+        if (apf != null) {
+            final JsonElement filterConfig = filter.get(CONFIG_NAME);
+            return new AsyncApplicationProcessor(() -> apf.createApplicationProcessor(filterConfig), 
+                    createBatchRetransformer(o, inst), attach);
+        }
+        return null;
+    }
+    
+    // Retransforms the already loaded classes on a background thread so that the
+    // attach returns immediately.
+    private static Thread startAttachRetransformer(ApplicationProcessor ap, BatchRetransformer retransformer) {
+        final Thread t = new Thread(() -> retransformer.retransformLoadedClasses(ap::acceptClass), "Minerva Agent Attach Retransformer");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+    
+    private static BatchRetransformer createBatchRetransformer(JsonObject o, Instrumentation inst) {
+        int batchSize = BatchRetransformer.DEFAULT_BATCH_SIZE;
+        long batchDelay = BatchRetransformer.DEFAULT_BATCH_DELAY;
+        int threads = BatchRetransformer.DEFAULT_THREADS;
+        JsonElement e = o.get(RETRANSFORM_NAME);
+        if (e != null && e.isJsonObject()) {
+            o = e.getAsJsonObject();
+            e = o.get(BATCH_SIZE_NAME);
+            if (e != null && e.isJsonPrimitive()) {
+                batchSize = e.getAsInt();
+            }
+            e = o.get(BATCH_DELAY_NAME);
+            if (e != null && e.isJsonPrimitive()) {
+                batchDelay = e.getAsLong();
+            }
+            e = o.get(THREADS_NAME);
+            if (e != null && e.isJsonPrimitive()) {
+                threads = e.getAsInt();
+            }
+        }
+        return new BatchRetransformer(inst, batchSize, batchDelay, threads);
+    }
+    
     private static TraceGenerator createTraceGenerator(JsonObject o) {
         if (o != null) {
             JsonElement e = o.get(GENERATOR_NAME);
@@ -189,6 +409,130 @@ public final class Agent {
         return null;
     }
     
+    // The method id dictionary is written to the configured file, or else to the generator's default file.
+    private static MethodIdRegistry createMethodIdRegistry(JsonObject o, TraceGenerator tg) {
+        File file = tg.getMethodDictionaryFile();
+        JsonElement e = o.get(GENERATOR_NAME);
+        if (e != null && e.isJsonObject()) {
+            e = e.getAsJsonObject().get(METHODS_NAME);
+            if (e != null && e.isJsonPrimitive()) {
+                file = resolvePath(e.getAsString());
+            }
+        }
+        return new MethodIdRegistry(file);
+    }
+    
+    // Sampling is configured as {"every": n} or {"rate": fraction}. Returns null if every call is traced.
+    private static Sampling createSampling(JsonObject o) {
+        Sampling sampling = null;
+        JsonElement e = o.get(GENERATOR_NAME);
+        if (e != null && e.isJsonObject()) {
+            e = e.getAsJsonObject().get(SAMPLING_NAME);
+            if (e != null && e.isJsonObject()) {
+                final JsonObject s = e.getAsJsonObject();
+                e = s.get(EVERY_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    sampling = Sampling.every(e.getAsInt());
+                }
+                else {
+                    e = s.get(RATE_NAME);
+                    if (e != null && e.isJsonPrimitive()) {
+                        sampling = Sampling.rate(e.getAsDouble());
+                    }
+                }
+            }
+        }
+        if (sampling != null) {
+            final Sampling config = sampling;
+            logger.config(() -> formatMessage("TraceSampling", config.toString()));
+        }
+        return sampling;
+    }
+    
+    // Throttling is configured as {"maxRate": calls per second, "interval": milliseconds}. 
+    // Returns null if no method is throttled.
+    private static Throttling createThrottling(JsonObject o) {
+        JsonElement e = o.get(GENERATOR_NAME);
+        if (e != null && e.isJsonObject()) {
+            e = e.getAsJsonObject().get(THROTTLE_NAME);
+            if (e != null && e.isJsonObject()) {
+                final JsonObject t = e.getAsJsonObject();
+                e = t.get(MAX_RATE_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    final long maxRate = e.getAsLong();
+                    long interval = Throttling.DEFAULT_INTERVAL;
+                    e = t.get(INTERVAL_NAME);
+                    if (e != null && e.isJsonPrimitive()) {
+                        interval = e.getAsLong();
+                    }
+                    final Throttling throttling = new Throttling(maxRate, interval);
+                    logger.config(() -> formatMessage("TraceThrottling", throttling.toString()));
+                    return throttling;
+                }
+            }
+        }
+        return null;
+    }
+    
+    // The switch is configured as {"on": boolean, "triggerFile": path, "interval": milliseconds}.
+    // Returns null if the probes cannot be switched off.
+    private static TraceSwitch createTraceSwitch(JsonObject o) {
+        JsonElement e = o.get(GENERATOR_NAME);
+        if (e != null && e.isJsonObject()) {
+            e = e.getAsJsonObject().get(SWITCH_NAME);
+            if (e != null && e.isJsonObject()) {
+                final JsonObject s = e.getAsJsonObject();
+                boolean on = false;
+                e = s.get(ON_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    on = e.getAsBoolean();
+                }
+                File triggerFile = null;
+                e = s.get(TRIGGER_FILE_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    triggerFile = resolvePath(e.getAsString());
+                }
+                long interval = TraceSwitch.DEFAULT_INTERVAL;
+                e = s.get(INTERVAL_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    interval = e.getAsLong();
+                }
+                final TraceSwitch traceSwitch = new TraceSwitch(on, triggerFile, interval);
+                logger.config(() -> formatMessage("TraceSwitch", traceSwitch.toString()));
+                return traceSwitch;
+            }
+        }
+        return null;
+    }
+    
+    private static boolean isMinimalProbes(JsonObject o) {
+        JsonElement e = o.get(GENERATOR_NAME);
+        if (e != null && e.isJsonObject()) {
+            e = e.getAsJsonObject().get(MINIMAL_PROBES_NAME);
+            return e != null && e.isJsonPrimitive() && e.getAsBoolean();
+        }
+        return false;
+    }
+    
+    // The exit strategy is configured as "finally" (the default) or "single".
+    private static ExitStrategy createExitStrategy(JsonObject o) {
+        JsonElement e = o.get(GENERATOR_NAME);
+        if (e != null && e.isJsonObject()) {
+            e = e.getAsJsonObject().get(EXIT_STRATEGY_NAME);
+            if (e != null && e.isJsonPrimitive()) {
+                final String name = e.getAsString();
+                final ExitStrategy strategy = ExitStrategy.fromName(name);
+                if (strategy == null) {
+                    logger.warning(() -> formatMessage("TraceExitStrategyUnknown", name));
+                    return ExitStrategy.FINALLY;
+                }
+                logger.config(() -> formatMessage("TraceExitStrategy", strategy.getName()));
+                return strategy;
+            }
+        }
+        return ExitStrategy.FINALLY;
+    }
+    
     private static <T extends TypedFactory> T createTypedFactory(JsonObject o, Class<T> factoryType) {
         JsonElement e = o.get(TYPE_NAME);
         if (e != null && e.isJsonPrimitive()) {
@@ -0,0 +1,98 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.lang.instrument.Instrumentation;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Controls a TraceInjector registered as retransformation capable. Detaching
+// retransforms the instrumented classes while the injector declines to 
+// transform them, so the JVM reverts them to their original class file
+// bytes (which it keeps for retransformation), and then removes the injector.
+public final class AgentControl implements AgentControlMXBean {
+    
+    private static final Logger logger = LoggingUtil.getLogger(AgentControl.class);
+    
+    public static final String OBJECT_NAME = "com.ibm.minerva.instrumenter:type=AgentControl";
+    
+    private final Instrumentation inst;
+    private final TraceInjector injector;
+    private final BatchRetransformer retransformer;
+    
+    public AgentControl(Instrumentation inst, TraceInjector injector, BatchRetransformer retransformer) {
+        this.inst = inst;
+        this.injector = injector;
+        this.retransformer = retransformer;
+    }
+    
+    @Override
+    public boolean isDetached() {
+        return injector.isDetached();
+    }
+    
+    @Override
+    public int getInstrumentedClassCount() {
+        return injector.getInstrumentedClasses().size();
+    }
+    
+    @Override
+    public synchronized int detach() {
+        if (injector.isDetached()) {
+            return 0;
+        }
+        final long start = System.nanoTime();
+        logger.info(() -> formatMessage("AgentDetaching", injector.getInstrumentedClasses().size()));
+        // From here on no class is instrumented, including those being retransformed.
+        injector.detach();
+        int count = restore();
+        inst.removeTransformer(injector);
+        // Classes which were being instrumented while detaching are restored without the injector.
+        count += restore();
+        final int restored = count;
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info(() -> formatMessage("AgentDetached", restored, millis));
+        return restored;
+    }
+    
+    // Detaches on a background thread so that the caller (e.g. an attach request) returns immediately.
+    public Thread detachInBackground() {
+        final Thread t = new Thread(this::detach, "Minerva Agent Detach");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+    
+    public boolean registerMBean() {
+        return MBeanUtil.registerMBean(this, OBJECT_NAME, "AgentControlMBeanRegistered", "AgentControlMBeanNotRegistered");
+    }
+    
+    private int restore() {
+        if (injector.getInstrumentedClasses().isEmpty()) {
+            return 0;
+        }
+        final List<Class<?>> classes = retransformer.getModifiableClasses(injector.getInstrumentedClasses()::contains);
+        // The same class name may have been loaded by several class loaders.
+        classes.forEach(x -> injector.getInstrumentedClasses().remove(x.getName().replace('.', '/')));
+        return classes.isEmpty() ? 0 : retransformer.retransform(classes);
+    }
+}
@@ -0,0 +1,149 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import com.ibm.minerva.instrumenter.filter.ApplicationProcessor;
+import com.ibm.minerva.instrumenter.filter.ClassProcessor;
+
+import javassist.CtClass;
+
+// An ApplicationProcessor whose underlying filter is created on a background
+// thread so that reading and indexing the filter's data (e.g. large symbol
+// tables) is off the application's startup path. Until the filter is ready
+// every class is rejected and its name is recorded. Once the filter is ready 
+// the recorded classes that it accepts are retransformed in batches. If the
+// agent was attached to a running JVM all loaded classes the filter accepts
+// are retransformed, since those loaded before the attach were never recorded.
+public final class AsyncApplicationProcessor implements ApplicationProcessor {
+    
+    private static final Logger logger = LoggingUtil.getLogger(AsyncApplicationProcessor.class);
+    
+    // How long to wait before looking again for classes that were being defined when the filter became ready.
+    private static final long RETRY_DELAY = 1000L;
+    
+    private final Supplier<ApplicationProcessor> loader;
+    private final BatchRetransformer retransformer;
+    private final boolean attached;
+    private final Set<String> pendingClasses = ConcurrentHashMap.newKeySet();
+    private volatile ApplicationProcessor delegate;
+    
+    public AsyncApplicationProcessor(Supplier<ApplicationProcessor> loader, BatchRetransformer retransformer) {
+        this(loader, retransformer, false);
+    }
+    
+    public AsyncApplicationProcessor(Supplier<ApplicationProcessor> loader, BatchRetransformer retransformer, boolean attached) {
+        this.loader = loader;
+        this.retransformer = retransformer;
+        this.attached = attached;
+    }
+    
+    // Starts loading the filter. Must be called after the transformer using this filter has been registered.
+    public Thread start() {
+        logger.info(() -> formatMessage("AsyncFilterLoading"));
+        final Thread t = new Thread(this::load, "Minerva Agent Filter Loader");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+    
+    public boolean isReady() {
+        return delegate != null;
+    }
+
+    @Override
+    public boolean acceptClass(String className) {
+        final ApplicationProcessor ap = delegate;
+        if (ap != null) {
+            return ap.acceptClass(className);
+        }
+        if (className != null) {
+            pendingClasses.add(className);
+        }
+        return false;
+    }
+
+    @Override
+    public ClassProcessor acceptClass(CtClass ctClass) {
+        final ApplicationProcessor ap = delegate;
+        return ap != null ? ap.acceptClass(ctClass) : null;
+    }
+    
+    @Override
+    public String getInstrumentationVersion() {
+        final ApplicationProcessor ap = delegate;
+        return ap != null ? ap.getInstrumentationVersion() : ApplicationProcessor.super.getInstrumentationVersion();
+    }
+    
+    private void load() {
+        final ApplicationProcessor ap;
+        try {
+            ap = loader.get();
+        }
+        catch (Throwable t) {
+            logger.severe(() -> formatMessage("AsyncFilterFailed", t.getMessage()));
+            return;
+        }
+        if (ap == null) {
+            logger.severe(() -> formatMessage("AgentNoFilter"));
+            return;
+        }
+        delegate = ap;
+        if (attached) {
+            final List<Class<?>> classes = retransformer.retransformLoadedClasses(ap::acceptClass);
+            classes.forEach(x -> pendingClasses.remove(x.getName().replace('.', '/')));
+        }
+        // Classes still being defined when the filter became ready may not be
+        // visible yet, so take a second look after a short delay.
+        retransformPending(ap);
+        if (!pendingClasses.isEmpty()) {
+            try {
+                Thread.sleep(RETRY_DELAY);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            retransformPending(ap);
+        }
+        pendingClasses.clear();
+    }
+    
+    private void retransformPending(ApplicationProcessor ap) {
+        // Drop recorded classes the filter wouldn't have accepted anyway.
+        pendingClasses.removeIf(x -> !ap.acceptClass(x));
+        if (pendingClasses.isEmpty()) {
+            return;
+        }
+        final List<Class<?>> classes = retransformer.getModifiableClasses(pendingClasses::contains);
+        // The same class name may have been loaded by several class loaders.
+        classes.forEach(x -> pendingClasses.remove(x.getName().replace('.', '/')));
+        if (!classes.isEmpty()) {
+            final int count = retransformer.retransform(classes);
+            logger.info(() -> formatMessage("AsyncFilterRetransformed", count, classes.size()));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// Retransforms classes in bounded batches, pausing between batches so that
+// a running application isn't stalled by one large retransformation. With
+// several threads the batches are shared among them: the JVM installs the
+// new class versions one batch at a time, but the instrumentation of each 
+// batch runs on the thread which requested it and so proceeds in parallel.
+public final class BatchRetransformer {
+    
+    private static final Logger logger = LoggingUtil.getLogger(BatchRetransformer.class);
+    
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_BATCH_DELAY = 10L;
+    public static final int DEFAULT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    
+    private final Instrumentation inst;
+    private final int batchSize;
+    private final long batchDelay;
+    private final int threads;
+    
+    public BatchRetransformer(Instrumentation inst, int batchSize, long batchDelay) {
+        this(inst, batchSize, batchDelay, 1);
+    }
+    
+    public BatchRetransformer(Instrumentation inst, int batchSize, long batchDelay, int threads) {
+        this.inst = inst;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchDelay = Math.max(0L, batchDelay);
+        this.threads = Math.max(1, threads);
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    public long getBatchDelay() {
+        return batchDelay;
+    }
+    
+    public int getThreads() {
+        return threads;
+    }
+    
+    // Returns the number of classes that were retransformed successfully.
+    public int retransform(List<Class<?>> classes) {
+        final int batches = (classes.size() + batchSize - 1) / batchSize;
+        final AtomicInteger nextBatch = new AtomicInteger();
+        final AtomicInteger retransformed = new AtomicInteger();
+        final Runnable worker = () -> retransformBatches(classes, batches, nextBatch, retransformed);
+        // The calling thread is one of the workers.
+        final List<Thread> helpers = new ArrayList<>();
+        for (int i = 1; i < Math.min(threads, batches); ++i) {
+            final Thread t = new Thread(worker, "Minerva Agent Retransformer " + i);
+            t.setDaemon(true);
+            t.start();
+            helpers.add(t);
+        }
+        worker.run();
+        for (Thread t : helpers) {
+            try {
+                t.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return retransformed.get();
+    }
+    
+    private void retransformBatches(List<Class<?>> classes, int batches, AtomicInteger nextBatch, AtomicInteger retransformed) {
+        int index;
+        while ((index = nextBatch.getAndIncrement()) < batches) {
+            final int start = index * batchSize;
+            final List<Class<?>> batch = classes.subList(start, Math.min(start + batchSize, classes.size()));
+            try {
+                inst.retransformClasses(batch.toArray(new Class<?>[batch.size()]));
+                retransformed.addAndGet(batch.size());
+            }
+            catch (Throwable t) {
+                // Retry the batch one class at a time so that one bad class doesn't fail the others.
+                for (Class<?> c : batch) {
+                    try {
+                        inst.retransformClasses(c);
+                        retransformed.incrementAndGet();
+                    }
+                    catch (Throwable t2) {
+                        logger.warning(() -> formatMessage("ErrorRetransformingClass", c.getName(), t2.getMessage()));
+                    }
+                }
+            }
+            if (batchDelay > 0 && index + 1 < batches) {
+                try {
+                    Thread.sleep(batchDelay);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    // Stop the other workers too.
+                    nextBatch.set(batches);
+                    return;
+                }
+            }
+        }
+    }
+    
+    // Retransforms the classes which were loaded before the agent was attached 
+    // and are selected by the given filter. Returns the classes it retransformed.
+    public List<Class<?>> retransformLoadedClasses(ClassNameFilter filter) {
+        final List<Class<?>> classes = getModifiableClasses(filter);
+        if (!classes.isEmpty()) {
+            logger.info(() -> formatMessage("AttachRetransforming", classes.size(), threads));
+            final long start = System.nanoTime();
+            final int count = retransform(classes);
+            final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            logger.info(() -> formatMessage("AttachRetransformed", count, classes.size(), millis));
+        }
+        return classes;
+    }
+    
+    // Returns the loaded classes that can be retransformed and are selected by the given filter.
+    public List<Class<?>> getModifiableClasses(ClassNameFilter filter) {
+        final List<Class<?>> classes = new ArrayList<>();
+        for (Class<?> c : inst.getAllLoadedClasses()) {
+            if (!c.isArray() && !c.isPrimitive() && filter.accept(c.getName().replace('.', '/')) && inst.isModifiableClass(c)) {
+                classes.add(c);
+            }
+        }
+        return classes;
+    }
+    
+    public interface ClassNameFilter {
+        // The class name is in the JVM internal form (e.g. x/y/z/MyClass).
+        public boolean accept(String className);
+    }
+}
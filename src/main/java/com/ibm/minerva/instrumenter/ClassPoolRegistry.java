@@ -0,0 +1,103 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javassist.ClassPool;
+
+// Holds the LoaderClassPools of each defining class loader. The loaders are
+// weakly referenced so that the pools of undeployed applications are 
+// released along with their class loaders.
+//
+// Classes are transformed concurrently, so no state is shared by all threads:
+// loaders are spread over independently locked segments, and each loader has
+// several pools (stripes) which are picked by thread so that threads loading
+// classes from the same loader rarely contend for the same pool.
+final class ClassPoolRegistry {
+    
+    static final int DEFAULT_MAX_CACHED_CLASSES = 1024;
+    static final int DEFAULT_STRIPES = Math.min(8, ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors()));
+    
+    private static final int SEGMENTS = 16;
+    
+    private final int stripes;
+    private final int maxCachedClasses;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    // Pools for classes defined by the bootstrap class loader.
+    private final LoaderClassPool[] bootstrapPools;
+    
+    ClassPoolRegistry(int stripes, int maxCachedClasses) {
+        this.stripes = ceilingPowerOfTwo(stripes);
+        this.maxCachedClasses = maxCachedClasses;
+        for (int i = 0; i < SEGMENTS; ++i) {
+            segments[i] = new Segment();
+        }
+        this.bootstrapPools = createPools(null);
+    }
+    
+    ClassPool getClassPool(ClassLoader loader) {
+        final LoaderClassPool[] pools;
+        if (loader == null) {
+            pools = bootstrapPools;
+        }
+        else {
+            final Segment segment = segments[spread(System.identityHashCode(loader)) & (SEGMENTS - 1)];
+            synchronized (segment) {
+                pools = segment.pools.computeIfAbsent(loader, this::createPools);
+            }
+        }
+        return pools[(int) Thread.currentThread().getId() & (stripes - 1)];
+    }
+    
+    int getStripes() {
+        return stripes;
+    }
+    
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.pools.size();
+            }
+        }
+        return size;
+    }
+    
+    private LoaderClassPool[] createPools(ClassLoader loader) {
+        final LoaderClassPool[] pools = new LoaderClassPool[stripes];
+        for (int i = 0; i < stripes; ++i) {
+            pools[i] = new LoaderClassPool(loader, maxCachedClasses);
+        }
+        return pools;
+    }
+    
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+    
+    private static int ceilingPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+    
+    private static final class Segment {
+        private final Map<ClassLoader,LoaderClassPool[]> pools = new WeakHashMap<>();
+    }
+}
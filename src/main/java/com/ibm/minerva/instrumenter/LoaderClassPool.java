@@ -0,0 +1,102 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+
+// A ClassPool for one class loader which is reused for every class that 
+// loader defines. Classes are looked up through the loader first, like a
+// ScopedClassPool. Resolved CtClass instances are kept in a bounded least
+// recently used cache instead of the unbounded table in ClassPool; once
+// the cache is full the least recently used class is detached from the pool.
+// The pool has no parent, so that lookups never synchronize on a pool shared
+// with other loaders; JDK classes are read through the loader as well.
+final class LoaderClassPool extends ClassPool {
+    
+    // Primitive types are resolved without touching the (synchronized) cache.
+    private static final Map<String,CtClass> PRIMITIVE_TYPES = new HashMap<>();
+    static {
+        for (CtClass type : new CtClass[] {CtClass.booleanType, CtClass.charType, CtClass.byteType, CtClass.shortType,
+                CtClass.intType, CtClass.longType, CtClass.floatType, CtClass.doubleType, CtClass.voidType}) {
+            PRIMITIVE_TYPES.put(type.getName(), type);
+        }
+    }
+    
+    private final int maxCachedClasses;
+    private final LinkedHashMap<String,CtClass> cachedClasses;
+    
+    LoaderClassPool(ClassLoader loader, int maxCachedClasses) {
+        super(null);
+        this.childFirstLookup = true;
+        this.maxCachedClasses = maxCachedClasses;
+        this.cachedClasses = new LinkedHashMap<String,CtClass>(64, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,CtClass> eldest) {
+                return size() > LoaderClassPool.this.maxCachedClasses;
+            }
+        };
+        // LoaderClassPath only holds a weak reference to the loader.
+        if (loader != null) {
+            appendClassPath(new LoaderClassPath(loader));
+        }
+        else {
+            // Classes of the bootstrap class loader.
+            appendClassPath(new ClassClassPath(Object.class));
+        }
+    }
+    
+    int getCachedClassCount() {
+        synchronized (cachedClasses) {
+            return cachedClasses.size();
+        }
+    }
+    
+    @Override
+    protected CtClass getCached(String className) {
+        final CtClass primitiveType = PRIMITIVE_TYPES.get(className);
+        if (primitiveType != null) {
+            return primitiveType;
+        }
+        synchronized (cachedClasses) {
+            return cachedClasses.get(className);
+        }
+    }
+    
+    @Override
+    protected void cacheCtClass(String className, CtClass ctClass, boolean dynamic) {
+        synchronized (cachedClasses) {
+            cachedClasses.put(className, ctClass);
+        }
+    }
+    
+    @Override
+    protected CtClass removeCached(String className) {
+        synchronized (cachedClasses) {
+            return cachedClasses.remove(className);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public final class MBeanUtil {
+    
+    private static final Logger logger = LoggingUtil.getLogger(MBeanUtil.class);
+    
+    private MBeanUtil() {}
+    
+    // Registers the bean with the platform MBean server, replacing any bean 
+    // registered under the same name (e.g. by an earlier start of the agent).
+    // The messages are logged with the object name (and the error). Returns
+    // false if the bean could not be registered.
+    public static boolean registerMBean(Object bean, String objectName, String registeredMessage, String notRegisteredMessage) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+            logger.config(() -> formatMessage(registeredMessage, objectName));
+            return true;
+        }
+        catch (Exception e) {
+            logger.warning(() -> formatMessage(notRegisteredMessage, objectName, e.getMessage()));
+            return false;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
+import com.ibm.minerva.instrumenter.codegen.ProbeGuard;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtConstructor;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import javassist.compiler.CompileError;
+import javassist.compiler.Javac;
+
+// Copies probe templates into a method's bytecode. This is the bytecode
+// equivalent of CtBehavior.insertBefore and CtBehavior.insertAfter(src, true).
+final class ProbeInjector {
+    
+    private ProbeInjector() {}
+    
+    // Inserts the probe at the start of the method. Branches back to the
+    // first instruction of the method do not run the probe again. For 
+    // constructors the probe runs before the super() or this() call.
+    static void insertEntryProbe(CtBehavior ctBehavior, ProbeTemplate probe) throws BadBytecode {
+        insertEntryCode(ctBehavior, toBytes(ctBehavior.getMethodInfo(), probe), probe.getMaxStack());
+    }
+    
+    // Inserts the probe before each return instruction and in a catch-all
+    // handler which runs the probe and rethrows. For constructors the handler
+    // only covers the code after the super() or this() call.
+    static void insertExitProbe(CtBehavior ctBehavior, ProbeTemplate probe) throws BadBytecode {
+        insertExitCode(ctBehavior, toBytes(ctBehavior.getMethodInfo(), probe), probe.getMaxStack());
+    }
+    
+    // Inserts the entry and exit probes so that they only run for the calls
+    // which the guard accepts. The guard's decision is stored in a new local 
+    // variable at entry and checked by the exit probes, so that an exit is only
+    // traced if its entry was.
+    static void insertGuardedProbes(CtBehavior ctBehavior, ProbeGuard guard, int methodId, 
+            Bytecode entry, Bytecode exit) throws BadBytecode {
+        final MethodInfo methodInfo = ctBehavior.getMethodInfo();
+        final CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+        final int local = Math.max(codeAttribute.getMaxLocals(), Math.max(entry.getMaxLocals(), exit.getMaxLocals()));
+        codeAttribute.setMaxLocals(local + 1);
+        // The exit probes are inserted first. Inserting the entry code afterwards 
+        // moves the start of the catch-all handler past the guard, so that the 
+        // handler never reads the local variable before it is set.
+        final Bytecode exitCode = new Bytecode(methodInfo.getConstPool());
+        exitCode.addIload(local);
+        addIfTraced(exitCode, exit);
+        insertExitCode(ctBehavior, exitCode.get(), Math.max(1, exit.getMaxStack()));
+        final Bytecode entryCode = new Bytecode(methodInfo.getConstPool());
+        guard.emitGuard(entryCode, methodId, ctBehavior.getDeclaringClass().getClassFile2());
+        entryCode.addOpcode(Opcode.DUP);
+        entryCode.addIstore(local);
+        addIfTraced(entryCode, entry);
+        insertEntryCode(ctBehavior, entryCode.get(), Math.max(entryCode.getMaxStack(), entry.getMaxStack()));
+    }
+    
+    // Replaces each return instruction with a store of the return value (in a
+    // new local variable) and a jump to a single exit block, which runs the 
+    // exit probe and returns the value. A catch-all handler runs the exception
+    // probe and rethrows. The entry probe is inserted at the start of the method.
+    // If the guard is not null the probes only run for the calls it accepts, as
+    // with insertGuardedProbes. The exit block is not covered by the handler, 
+    // so an exception thrown by the exit probe is not traced as an exception.
+    static void insertSingleExitProbes(CtBehavior ctBehavior, ProbeGuard guard, int methodId, 
+            Bytecode entry, Bytecode exit, Bytecode exception) throws BadBytecode {
+        final MethodInfo methodInfo = ctBehavior.getMethodInfo();
+        final CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+        final ConstPool constPool = methodInfo.getConstPool();
+        final char returnType = getReturnType(methodInfo.getDescriptor());
+        int local = Math.max(codeAttribute.getMaxLocals(), 
+                Math.max(entry.getMaxLocals(), Math.max(exit.getMaxLocals(), exception.getMaxLocals())));
+        final int flag = guard != null ? local++ : -1;
+        final int result = local;
+        codeAttribute.setMaxLocals(result + getSize(returnType));
+        
+        final Bytecode exitCode = new Bytecode(constPool);
+        if (guard != null) {
+            exitCode.addIload(flag);
+            addIfTraced(exitCode, exit);
+        }
+        else {
+            addBytes(exitCode, exit.get());
+        }
+        addLoad(exitCode, returnType, result);
+        exitCode.addOpcode(getReturnOpcode(returnType));
+        
+        final CodeIterator iterator = codeAttribute.iterator();
+        int returns = 0;
+        while (iterator.hasNext()) {
+            final int op = iterator.byteAt(iterator.next());
+            if (op >= Opcode.IRETURN && op <= Opcode.RETURN) {
+                ++returns;
+            }
+        }
+        int exitPos = iterator.append(exitCode.get());
+        // Each return grows by at most 11 bytes (a wide store, a wide jump and 
+        // the padding of a switch instruction which follows it).
+        final boolean wide = exitPos + returns * 11 > Short.MAX_VALUE;
+        iterator.begin();
+        while (iterator.hasNext()) {
+            final int pos = iterator.next();
+            if (pos >= exitPos) {
+                break;
+            }
+            final int op = iterator.byteAt(pos);
+            if (op >= Opcode.IRETURN && op <= Opcode.RETURN) {
+                // [store the value]; goto exit, in place of the return instruction.
+                final Bytecode store = new Bytecode(constPool);
+                addStore(store, returnType, result);
+                final byte[] storeCode = store.get();
+                final int length = storeCode.length + (wide ? 5 : 3);
+                final CodeIterator.Gap gap = iterator.insertGapAt(pos, length - 1, false);
+                exitPos += gap.length;
+                // Branches to the return now run the gap's NOPs and then this code.
+                int codePos = gap.position + gap.length + 1 - length;
+                for (byte b : storeCode) {
+                    iterator.writeByte(b, codePos++);
+                }
+                if (wide) {
+                    iterator.writeByte(Opcode.GOTO_W, codePos);
+                    iterator.write32bit(exitPos - codePos, codePos + 1);
+                }
+                else {
+                    iterator.writeByte(Opcode.GOTO, codePos);
+                    iterator.write16bit(exitPos - codePos, codePos + 1);
+                }
+            }
+        }
+        
+        final Bytecode handler = new Bytecode(constPool);
+        if (guard != null) {
+            handler.addIload(flag);
+            addIfTraced(handler, exception);
+        }
+        else {
+            addBytes(handler, exception.get());
+        }
+        handler.addOpcode(Opcode.ATHROW);
+        final int handlerPos = iterator.append(handler.get());
+        codeAttribute.getExceptionTable().add(getHandlerStart(ctBehavior, codeAttribute), exitPos, handlerPos, 0);
+        // The exit probe runs on an empty stack, the exception probe above the exception.
+        final int guardStack = guard != null ? 1 : 0;
+        codeAttribute.setMaxStack(Math.max(codeAttribute.getMaxStack(), Math.max(getSize(returnType), 
+                Math.max(Math.max(guardStack, exit.getMaxStack()), 1 + Math.max(guardStack, exception.getMaxStack())))));
+        
+        // Inserting the entry code last moves the start of the handler past it.
+        final Bytecode entryCode = new Bytecode(constPool);
+        if (guard != null) {
+            guard.emitGuard(entryCode, methodId, ctBehavior.getDeclaringClass().getClassFile2());
+            entryCode.addOpcode(Opcode.DUP);
+            entryCode.addIstore(flag);
+            addIfTraced(entryCode, entry);
+            insertEntryCode(ctBehavior, entryCode.get(), Math.max(entryCode.getMaxStack(), entry.getMaxStack()));
+        }
+        else {
+            insertEntryCode(ctBehavior, entry.get(), entry.getMaxStack());
+        }
+    }
+    
+    static Bytecode toBytecode(CtBehavior ctBehavior, ProbeTemplate probe) {
+        final Bytecode bytecode = new Bytecode(ctBehavior.getMethodInfo().getConstPool());
+        probe.emit(bytecode);
+        return bytecode;
+    }
+    
+    // Compiles a source snippet, as CtBehavior.insertBefore does, without inserting it.
+    static Bytecode compile(CtBehavior ctBehavior, String src) throws CannotCompileException {
+        try {
+            final Javac jv = new Javac(ctBehavior.getDeclaringClass());
+            jv.recordParams(ctBehavior.getParameterTypes(), Modifier.isStatic(ctBehavior.getModifiers()));
+            jv.compileStmnt(src);
+            return jv.getBytecode();
+        }
+        catch (NotFoundException | CompileError e) {
+            throw new CannotCompileException(e);
+        }
+    }
+    
+    // Must be called after inserting probes to recompute the StackMapTable.
+    static void rebuildStackMap(CtBehavior ctBehavior) throws BadBytecode {
+        ctBehavior.getMethodInfo().rebuildStackMapIf6(ctBehavior.getDeclaringClass().getClassPool(), 
+                ctBehavior.getDeclaringClass().getClassFile2());
+    }
+    
+    private static void insertEntryCode(CtBehavior ctBehavior, byte[] code, int maxStack) throws BadBytecode {
+        final CodeAttribute codeAttribute = ctBehavior.getMethodInfo().getCodeAttribute();
+        final CodeIterator iterator = codeAttribute.iterator();
+        iterator.insertExAt(0, code);
+        codeAttribute.setMaxStack(Math.max(codeAttribute.getMaxStack(), maxStack));
+    }
+    
+    private static void insertExitCode(CtBehavior ctBehavior, byte[] code, int maxStack) throws BadBytecode {
+        final MethodInfo methodInfo = ctBehavior.getMethodInfo();
+        final CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+        final CodeIterator iterator = codeAttribute.iterator();
+        while (iterator.hasNext()) {
+            final int pos = iterator.next();
+            final int op = iterator.byteAt(pos);
+            if (op >= Opcode.IRETURN && op <= Opcode.RETURN) {
+                iterator.insertAt(pos, code);
+            }
+        }
+        final int start = getHandlerStart(ctBehavior, codeAttribute);
+        final Bytecode handler = new Bytecode(methodInfo.getConstPool());
+        addBytes(handler, code);
+        handler.addOpcode(Opcode.ATHROW);
+        final int handlerPos = iterator.append(handler.get());
+        codeAttribute.getExceptionTable().add(start, handlerPos, handlerPos, 0);
+        // The return value or exception stays on the stack below the probe's operands.
+        codeAttribute.setMaxStack(codeAttribute.getMaxStack() + maxStack);
+    }
+    
+    // For constructors the catch-all handler only covers the code after the 
+    // super() or this() call.
+    private static int getHandlerStart(CtBehavior ctBehavior, CodeAttribute codeAttribute) throws BadBytecode {
+        if (ctBehavior instanceof CtConstructor) {
+            final CodeIterator iterator = codeAttribute.iterator();
+            if (iterator.skipConstructor() >= 0 && iterator.hasNext()) {
+                return iterator.next();
+            }
+        }
+        return 0;
+    }
+    
+    private static char getReturnType(String descriptor) {
+        return descriptor.charAt(descriptor.indexOf(')') + 1);
+    }
+    
+    private static int getSize(char type) {
+        switch (type) {
+            case 'V':
+                return 0;
+            case 'J':
+            case 'D':
+                return 2;
+            default:
+                return 1;
+        }
+    }
+    
+    private static int getReturnOpcode(char type) {
+        switch (type) {
+            case 'V':
+                return Opcode.RETURN;
+            case 'J':
+                return Opcode.LRETURN;
+            case 'F':
+                return Opcode.FRETURN;
+            case 'D':
+                return Opcode.DRETURN;
+            case 'L':
+            case '[':
+                return Opcode.ARETURN;
+            default:
+                return Opcode.IRETURN;
+        }
+    }
+    
+    private static void addLoad(Bytecode bytecode, char type, int local) {
+        switch (type) {
+            case 'V':
+                break;
+            case 'J':
+                bytecode.addLload(local);
+                break;
+            case 'F':
+                bytecode.addFload(local);
+                break;
+            case 'D':
+                bytecode.addDload(local);
+                break;
+            case 'L':
+            case '[':
+                bytecode.addAload(local);
+                break;
+            default:
+                bytecode.addIload(local);
+                break;
+        }
+    }
+    
+    private static void addStore(Bytecode bytecode, char type, int local) {
+        switch (type) {
+            case 'V':
+                break;
+            case 'J':
+                bytecode.addLstore(local);
+                break;
+            case 'F':
+                bytecode.addFstore(local);
+                break;
+            case 'D':
+                bytecode.addDstore(local);
+                break;
+            case 'L':
+            case '[':
+                bytecode.addAstore(local);
+                break;
+            default:
+                bytecode.addIstore(local);
+                break;
+        }
+    }
+    
+    // Pops the guard's decision and skips the probe if the call is not traced.
+    private static void addIfTraced(Bytecode bytecode, Bytecode probe) {
+        final byte[] code = probe.get();
+        bytecode.addOpcode(Opcode.IFEQ);
+        bytecode.addIndex(3 + code.length);
+        addBytes(bytecode, code);
+    }
+    
+    private static void addBytes(Bytecode bytecode, byte[] code) {
+        for (byte b : code) {
+            bytecode.add(b);
+        }
+    }
+    
+    private static byte[] toBytes(MethodInfo methodInfo, ProbeTemplate probe) {
+        final Bytecode bytecode = new Bytecode(methodInfo.getConstPool());
+        probe.emit(bytecode);
+        return bytecode.get();
+    }
+}
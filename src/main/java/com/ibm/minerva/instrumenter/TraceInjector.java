@@ -25,22 +25,31 @@ import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
 import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
+import com.ibm.minerva.instrumenter.cache.CacheKey;
+import com.ibm.minerva.instrumenter.cache.TransformCache;
+import com.ibm.minerva.instrumenter.codegen.ExitStrategy;
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.ProbeGuard;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
 import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
 import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
 import com.ibm.minerva.instrumenter.codegen.TraceInjectionLocation;
 import com.ibm.minerva.instrumenter.filter.ApplicationProcessor;
 import com.ibm.minerva.instrumenter.filter.ClassProcessor;
 import com.ibm.minerva.instrumenter.filter.MethodProcessor;
+import com.ibm.minerva.instrumenter.metrics.TransformMetrics;
+import com.ibm.minerva.instrumenter.metrics.TransformMetrics.Phase;
 
 import javassist.ClassPool;
 import javassist.CtBehavior;
 import javassist.CtClass;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.CodeAttribute;
 import javassist.runtime.Desc;
-import javassist.scopedpool.ScopedClassPoolFactory;
-import javassist.scopedpool.ScopedClassPoolFactoryImpl;
-import javassist.scopedpool.ScopedClassPoolRepositoryImpl;
 
 public final class TraceInjector implements ClassFileTransformer {
     
@@ -48,30 +57,103 @@ public final class TraceInjector implements ClassFileTransformer {
     
     private final ApplicationProcessor appProcessor;
     private final TraceGenerator traceGenerator;
-    private final ClassPool defaultClassPool;
-    private final ScopedClassPoolFactory scopedClassPoolFactory;
+    private final boolean canRetransform;
+    private final TransformCache transformCache;
+    private final MethodIdRegistry methodIds;
+    private final ProbeGuard guard;
+    private final ExitStrategy exitStrategy;
+    private final ClassPoolRegistry classPools;
+    private final TransformMetrics metrics = new TransformMetrics();
+    // Internal names of the classes which have been instrumented, so that they can be restored on detach.
+    private final Set<String> instrumentedClasses = ConcurrentHashMap.newKeySet();
+    private volatile boolean detached;
     
     static {
         Desc.useContextClassLoader = true;
     }
     
     public TraceInjector(ApplicationProcessor appProcessor, TraceGenerator traceGenerator) {
-        this.appProcessor = appProcessor;
-        this.traceGenerator = traceGenerator;
-        this.defaultClassPool = ClassPool.getDefault();
-        this.scopedClassPoolFactory = new ScopedClassPoolFactoryImpl();
+        this(builder(appProcessor, traceGenerator));
+    }
+    
+    private TraceInjector(Builder builder) {
+        this.appProcessor = builder.appProcessor;
+        this.traceGenerator = builder.traceGenerator;
+        this.canRetransform = builder.canRetransform;
+        this.transformCache = builder.transformCache;
+        this.methodIds = builder.methodIds != null ? builder.methodIds : new MethodIdRegistry();
+        this.guard = builder.guard;
+        this.exitStrategy = builder.exitStrategy;
+        this.classPools = new ClassPoolRegistry(ClassPoolRegistry.DEFAULT_STRIPES, ClassPoolRegistry.DEFAULT_MAX_CACHED_CLASSES);
+    }
+    
+    // The optional settings (retransformation, transform cache, method ids, guard and exit strategy).
+    public static Builder builder(ApplicationProcessor appProcessor, TraceGenerator traceGenerator) {
+        return new Builder(appProcessor, traceGenerator);
+    }
+    
+    public TransformMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public MethodIdRegistry getMethodIds() {
+        return methodIds;
+    }
+    
+    public ProbeGuard getProbeGuard() {
+        return guard;
+    }
+    
+    public ExitStrategy getExitStrategy() {
+        return exitStrategy;
+    }
+    
+    // Stops instrumenting classes. Classes retransformed after this revert to their original bytes.
+    public void detach() {
+        detached = true;
+    }
+    
+    public boolean isDetached() {
+        return detached;
+    }
+    
+    Set<String> getInstrumentedClasses() {
+        return instrumentedClasses;
     }
 
     @Override
     public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
             ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
-        // Transform class on initial load if it is accepted by the filter.
-        if (classBeingRedefined == null && appProcessor.acceptClass(className)) {
+        if ((classBeingRedefined != null && !canRetransform) || detached) {
+            return null;
+        }
+        metrics.classSeen();
+        // Transform class on initial load (or retransformation) if it is accepted by the filter.
+        final long acceptStart = System.nanoTime();
+        final boolean accepted = appProcessor.acceptClass(className);
+        metrics.recordTime(Phase.ACCEPT_CLASS, acceptStart);
+        if (accepted) {
+            metrics.classAccepted();
+            final CacheKey cacheKey = transformCache != null ? transformCache.getKey(className, classfileBuffer) : null;
+            if (cacheKey != null) {
+                final byte[] cachedClass = transformCache.get(cacheKey);
+                if (cachedClass != null) {
+                    instrumentedClasses.add(className);
+                    metrics.classFromCache();
+                    logger.fine(() -> formatMessage("UsingCachedTraceClass", className.replace('/', '.')));
+                    return cachedClass;
+                }
+            }
             logger.fine(() -> formatMessage("InjectingEntryExitTraceClass", className.replace('/', '.')));
+            CtClass ctClass = null;
+            final long transformStart = System.nanoTime();
             try {
-                final ClassPool classPool = scopedClassPoolFactory.create(loader, defaultClassPool,
-                        ScopedClassPoolRepositoryImpl.getInstance());
-                final CtClass ctClass = classPool.makeClass(new ByteArrayInputStream(classfileBuffer));
+                // The pool is shared by all classes of this loader, so types resolved
+                // while transforming one class are reused for the next.
+                final ClassPool classPool = classPools.getClassPool(loader);
+                final long makeClassStart = System.nanoTime();
+                ctClass = classPool.makeClass(new ByteArrayInputStream(classfileBuffer));
+                metrics.recordTime(Phase.MAKE_CLASS, makeClassStart);
                 // Inject trace into this class if it is accepted by the filter.
                 final ClassProcessor classProcessor = appProcessor.acceptClass(ctClass);
                 if (classProcessor != null) {
@@ -81,13 +163,29 @@ public final class TraceInjector implements ClassFileTransformer {
                     // Inject entry/exit trace into each method.
                     injectEntryExitTrace(classProcessor, ctClass.getDeclaredMethods());
                 }
+                final long toBytecodeStart = System.nanoTime();
                 final byte[] transformedClass = ctClass.toBytecode();
-                ctClass.detach();
+                metrics.recordTime(Phase.TO_BYTECODE, toBytecodeStart);
+                if (cacheKey != null) {
+                    transformCache.put(cacheKey, transformedClass);
+                }
+                if (classProcessor != null) {
+                    instrumentedClasses.add(className);
+                    metrics.classTransformed(classfileBuffer.length, transformedClass.length);
+                }
+                metrics.recordTime(Phase.TRANSFORM, transformStart);
                 return transformedClass;
             }
             catch (Throwable t) {
+                metrics.classFailed();
                 logger.severe(() -> formatMessage("ErrorInjectingTraceClass", className, t.getMessage()));
             }
+            finally {
+                // Remove the (possibly partially) modified class from the shared pool.
+                if (ctClass != null) {
+                    ctClass.detach();
+                }
+            }
         }
         return null;
     }
@@ -106,17 +204,103 @@ public final class TraceInjector implements ClassFileTransformer {
             if (methodProcessor != null) {
                 logger.finer(() -> formatMessage("InjectingEntryExitTraceMethod", 
                         classProcessor.getCtClass().getName(), methodProcessor.getMethodSignature()));
-                ctBehavior.insertBefore(getEntryTrace(classProcessor, methodProcessor));
-                ctBehavior.insertAfter(getExitTrace(classProcessor, methodProcessor), true);
+                final int codeLength = getCodeLength(ctBehavior);
+                if (exitStrategy == ExitStrategy.SINGLE) {
+                    injectSingleExitTrace(classProcessor, methodProcessor, ctBehavior);
+                }
+                else if (guard != null) {
+                    injectGuardedTrace(classProcessor, methodProcessor, ctBehavior);
+                }
+                else {
+                    injectTrace(classProcessor, methodProcessor, ctBehavior);
+                }
+                metrics.methodResized(ctBehavior.getLongName(), codeLength, getCodeLength(ctBehavior));
             }
         }
         catch (Throwable t) {
+            metrics.methodFailed();
             logger.severe(() -> formatMessage("ErrorInjectingTraceMethod", 
                     classProcessor.getCtClass().getName(), 
                     ctBehavior.getName(), t.getMessage()));
         }
     }
     
+    private void injectTrace(ClassProcessor classProcessor, MethodProcessor methodProcessor, 
+            CtBehavior ctBehavior) throws Exception {
+        // Probes described as bytecode templates are copied in directly, 
+        // otherwise the generator's source snippet is compiled.
+        final long entryStart = System.nanoTime();
+        final ProbeTemplate entryProbe = getEntryProbe(classProcessor, methodProcessor);
+        if (entryProbe != null) {
+            ProbeInjector.insertEntryProbe(ctBehavior, entryProbe);
+        }
+        else {
+            ctBehavior.insertBefore(getEntryTrace(classProcessor, methodProcessor));
+        }
+        metrics.recordTime(Phase.INSERT_BEFORE, entryStart);
+        // Includes rebuilding the StackMapTable for probe templates.
+        final long exitStart = System.nanoTime();
+        final ProbeTemplate exitProbe = getExitProbe(classProcessor, methodProcessor);
+        if (exitProbe != null) {
+            ProbeInjector.insertExitProbe(ctBehavior, exitProbe);
+        }
+        else {
+            ctBehavior.insertAfter(getExitTrace(classProcessor, methodProcessor), true);
+        }
+        if (entryProbe != null || exitProbe != null) {
+            ProbeInjector.rebuildStackMap(ctBehavior);
+        }
+        metrics.recordTime(Phase.INSERT_AFTER, exitStart);
+        metrics.methodInjected();
+    }
+    
+    // Both probes depend on the guard's decision, so source snippets are 
+    // compiled and inserted the same way as probe templates.
+    private void injectGuardedTrace(ClassProcessor classProcessor, MethodProcessor methodProcessor, 
+            CtBehavior ctBehavior) throws Exception {
+        final long entryStart = System.nanoTime();
+        final Bytecode entry = getProbeCode(classProcessor, methodProcessor, ctBehavior, TraceInjectionLocation.ENTRY);
+        metrics.recordTime(Phase.INSERT_BEFORE, entryStart);
+        final long exitStart = System.nanoTime();
+        final Bytecode exit = getProbeCode(classProcessor, methodProcessor, ctBehavior, TraceInjectionLocation.EXIT);
+        final int methodId = guard.usesMethodId() ? methodIds.register(appProcessor.getInstrumentationVersion(), 
+                classProcessor.getSourcePath(), classProcessor.getClassName(), methodProcessor.getMethodSignature()) : 0;
+        ProbeInjector.insertGuardedProbes(ctBehavior, guard, methodId, entry, exit);
+        ProbeInjector.rebuildStackMap(ctBehavior);
+        metrics.recordTime(Phase.INSERT_AFTER, exitStart);
+        metrics.methodInjected();
+    }
+    
+    // The exit and exception probes are each inserted once, so source snippets
+    // are compiled and inserted the same way as probe templates.
+    private void injectSingleExitTrace(ClassProcessor classProcessor, MethodProcessor methodProcessor, 
+            CtBehavior ctBehavior) throws Exception {
+        final long entryStart = System.nanoTime();
+        final Bytecode entry = getProbeCode(classProcessor, methodProcessor, ctBehavior, TraceInjectionLocation.ENTRY);
+        metrics.recordTime(Phase.INSERT_BEFORE, entryStart);
+        final long exitStart = System.nanoTime();
+        final Bytecode exit = getProbeCode(classProcessor, methodProcessor, ctBehavior, TraceInjectionLocation.EXIT);
+        final Bytecode exception = getProbeCode(classProcessor, methodProcessor, ctBehavior, TraceInjectionLocation.EXCEPTION);
+        final int methodId = guard != null && guard.usesMethodId() ? methodIds.register(appProcessor.getInstrumentationVersion(), 
+                classProcessor.getSourcePath(), classProcessor.getClassName(), methodProcessor.getMethodSignature()) : 0;
+        ProbeInjector.insertSingleExitProbes(ctBehavior, guard, methodId, entry, exit, exception);
+        ProbeInjector.rebuildStackMap(ctBehavior);
+        metrics.recordTime(Phase.INSERT_AFTER, exitStart);
+        metrics.methodInjected();
+    }
+    
+    private Bytecode getProbeCode(ClassProcessor classProcessor, MethodProcessor methodProcessor, 
+            CtBehavior ctBehavior, TraceInjectionLocation til) throws Exception {
+        final ProbeTemplate probe = getProbe(classProcessor, methodProcessor, til);
+        return probe != null ? ProbeInjector.toBytecode(ctBehavior, probe) 
+                : ProbeInjector.compile(ctBehavior, getTrace(classProcessor, methodProcessor, til));
+    }
+    
+    private static int getCodeLength(CtBehavior ctBehavior) {
+        final CodeAttribute codeAttribute = ctBehavior.getMethodInfo().getCodeAttribute();
+        return codeAttribute != null ? codeAttribute.getCodeLength() : 0;
+    }
+    
     private String getEntryTrace(ClassProcessor classProcessor, MethodProcessor methodProcessor) {
         return getTrace(classProcessor, methodProcessor, TraceInjectionLocation.ENTRY);
     }
@@ -125,8 +309,32 @@ public final class TraceInjector implements ClassFileTransformer {
         return getTrace(classProcessor, methodProcessor, TraceInjectionLocation.EXIT);
     }
     
+    private ProbeTemplate getEntryProbe(ClassProcessor classProcessor, MethodProcessor methodProcessor) {
+        return getProbe(classProcessor, methodProcessor, TraceInjectionLocation.ENTRY);
+    }
+    
+    private ProbeTemplate getExitProbe(ClassProcessor classProcessor, MethodProcessor methodProcessor) {
+        return getProbe(classProcessor, methodProcessor, TraceInjectionLocation.EXIT);
+    }
+    
+    private ProbeTemplate getProbe(ClassProcessor classProcessor, MethodProcessor methodProcessor, TraceInjectionLocation til) {
+        final ProbeTemplate probe = traceGenerator.generateProbeTemplate(createContext(classProcessor, methodProcessor, til));
+        if (probe != null) {
+            logger.finest(() -> formatMessage("InjectingTraceProbe", 
+                    classProcessor.getCtClass().getName(), methodProcessor.getMethodSignature(), til.toString(), probe.toString()));
+        }
+        return probe;
+    }
+    
     private String getTrace(ClassProcessor classProcessor, MethodProcessor methodProcessor, TraceInjectionLocation til) {
-        final String snippet = traceGenerator.generateSourceSnippet(new TraceInjectionContext() {
+        final String snippet = traceGenerator.generateSourceSnippet(createContext(classProcessor, methodProcessor, til));
+        logger.finest(() -> formatMessage("InjectingTraceCode", 
+                        classProcessor.getCtClass().getName(), methodProcessor.getMethodSignature(), til.toString(), snippet));
+        return snippet;
+    }
+    
+    private TraceInjectionContext createContext(ClassProcessor classProcessor, MethodProcessor methodProcessor, TraceInjectionLocation til) {
+        return new TraceInjectionContext() {
             @Override
             public ApplicationProcessor getApplicationProcessor() {
                 return appProcessor;
@@ -143,9 +351,65 @@ public final class TraceInjector implements ClassFileTransformer {
             public TraceInjectionLocation getTraceInjectionLocation() {
                 return til;
             }
-        });
-        logger.finest(() -> formatMessage("InjectingTraceCode", 
-                        classProcessor.getCtClass().getName(), methodProcessor.getMethodSignature(), til.toString(), snippet));
-        return snippet;
+            // Only methods of generators which use ids are registered.
+            @Override
+            public int getMethodId() {
+                return methodIds.register(appProcessor.getInstrumentationVersion(), classProcessor.getSourcePath(), 
+                        classProcessor.getClassName(), methodProcessor.getMethodSignature());
+            }
+        };
+    }
+    
+    public static final class Builder {
+        
+        private final ApplicationProcessor appProcessor;
+        private final TraceGenerator traceGenerator;
+        private boolean canRetransform;
+        private TransformCache transformCache;
+        private MethodIdRegistry methodIds;
+        private ProbeGuard guard;
+        private ExitStrategy exitStrategy = ExitStrategy.FINALLY;
+        
+        private Builder(ApplicationProcessor appProcessor, TraceGenerator traceGenerator) {
+            this.appProcessor = appProcessor;
+            this.traceGenerator = traceGenerator;
+        }
+        
+        // If canRetransform is true the injector must be registered as retransformation 
+        // capable. It then also transforms retransformed and redefined classes, for which
+        // the JVM passes the class bytes without any instrumentation previously added.
+        public Builder canRetransform(boolean canRetransform) {
+            this.canRetransform = canRetransform;
+            return this;
+        }
+        
+        // The transform cache is optional (may be null).
+        public Builder transformCache(TransformCache transformCache) {
+            this.transformCache = transformCache;
+            return this;
+        }
+        
+        // The method ids passed to the generator are assigned by the given registry,
+        // or by one which only keeps them in memory if it is null.
+        public Builder methodIds(MethodIdRegistry methodIds) {
+            this.methodIds = methodIds;
+            return this;
+        }
+        
+        // If the guard (e.g. Sampling) is not null only the calls it accepts are traced.
+        public Builder probeGuard(ProbeGuard guard) {
+            this.guard = guard;
+            return this;
+        }
+        
+        // With ExitStrategy.SINGLE exits by exception are traced by the generator's EXCEPTION probes.
+        public Builder exitStrategy(ExitStrategy exitStrategy) {
+            this.exitStrategy = exitStrategy;
+            return this;
+        }
+        
+        public TraceInjector build() {
+            return new TraceInjector(this);
+        }
     }
 }
@@ -0,0 +1,67 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.cache;
+
+import java.util.Arrays;
+
+// Identifies the instrumented form of a class: a SHA-256 hash over the
+// configuration hash, the class name and the original class file bytes.
+public final class CacheKey {
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final byte[] digest;
+    private final int hashCode;
+    
+    CacheKey(byte[] digest) {
+        this.digest = digest;
+        this.hashCode = Arrays.hashCode(digest);
+    }
+    
+    // Lower case hex form of the hash, used as the entry's file name.
+    public String toHexString() {
+        final char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; ++i) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(chars);
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+        return Arrays.equals(digest, ((CacheKey) o).digest);
+    }
+    
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+    
+    @Override
+    public String toString() {
+        return toHexString();
+    }
+}
@@ -0,0 +1,236 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.cache;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.ibm.minerva.instrumenter.LoggingUtil;
+
+// Persistent layer of the transform cache. Each entry is a file named by its
+// key holding a small header (magic, format version, length, CRC-32) followed
+// by the class bytes. Entries are written to a temporary file and atomically
+// moved into place, so a reader sees either a complete entry or none. Entries 
+// which fail validation are deleted and treated as a miss. Once the total size
+// exceeds the limit the least recently used entries are deleted.
+final class DiskCache {
+    
+    private static final Logger logger = LoggingUtil.getLogger(DiskCache.class);
+    
+    static final int MAGIC = 0x4D4E4343; // "MNCC"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 20;
+    static final String ENTRY_SUFFIX = ".class";
+    
+    // Eviction deletes entries until the cache is at this fraction of its limit.
+    private static final double EVICTION_TARGET = 0.9;
+    
+    private final File directory;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+    private final Object evictionLock = new Object();
+    
+    DiskCache(File directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        Files.createDirectories(directory.toPath());
+        size.set(listEntries().stream().mapToLong(File::length).sum());
+    }
+    
+    File getDirectory() {
+        return directory;
+    }
+    
+    long size() {
+        return size.get();
+    }
+    
+    byte[] get(CacheKey key) {
+        final File f = entryFile(key);
+        if (!f.isFile()) {
+            return null;
+        }
+        byte[] bytes = null;
+        try {
+            bytes = decode(Files.readAllBytes(f.toPath()));
+        }
+        catch (IOException e) {
+            // The entry may have been evicted by another process.
+            return null;
+        }
+        if (bytes == null) {
+            logger.warning(() -> formatMessage("TransformCacheEntryCorrupt", f.getAbsolutePath()));
+            delete(f);
+            return null;
+        }
+        // Approximates least recently used eviction.
+        f.setLastModified(System.currentTimeMillis());
+        return bytes;
+    }
+    
+    void put(CacheKey key, byte[] bytes) {
+        final File f = entryFile(key);
+        if (f.isFile()) {
+            return;
+        }
+        Path temp = null;
+        try {
+            final File parent = f.getParentFile();
+            Files.createDirectories(parent.toPath());
+            temp = Files.createTempFile(parent.toPath(), key.toHexString(), ".tmp");
+            Files.write(temp, encode(bytes));
+            try {
+                Files.move(temp, f.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+            if (size.addAndGet(f.length()) > maxSize) {
+                evict();
+            }
+        }
+        catch (IOException e) {
+            logger.warning(() -> formatMessage("TransformCacheEntryUnwritable", f.getAbsolutePath(), e.getMessage()));
+        }
+        finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                }
+                catch (IOException e) {}
+            }
+        }
+    }
+    
+    // Deletes the least recently used entries until the cache is below its limit.
+    void evict() {
+        synchronized (evictionLock) {
+            if (size.get() <= maxSize) {
+                return;
+            }
+            final List<File> entries = listEntries();
+            final long[] lastModified = new long[entries.size()];
+            long total = 0;
+            for (int i = 0; i < entries.size(); ++i) {
+                final File f = entries.get(i);
+                lastModified[i] = f.lastModified();
+                total += f.length();
+            }
+            final List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < entries.size(); ++i) {
+                order.add(i);
+            }
+            order.sort(Comparator.comparingLong(i -> lastModified[i]));
+            final long target = (long) (maxSize * EVICTION_TARGET);
+            for (int i = 0; i < order.size() && total > target; ++i) {
+                final File f = entries.get(order.get(i));
+                final long length = f.length();
+                if (delete(f)) {
+                    total -= length;
+                }
+            }
+            size.set(total);
+        }
+    }
+    
+    private File entryFile(CacheKey key) {
+        // Spread entries over subdirectories named by the first byte of the key.
+        final String name = key.toHexString();
+        return new File(new File(directory, name.substring(0, 2)), name + ENTRY_SUFFIX);
+    }
+    
+    private List<File> listEntries() {
+        final List<File> entries = new ArrayList<>();
+        final File[] dirs = directory.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                final File[] files = dir.listFiles((d, name) -> name.endsWith(ENTRY_SUFFIX));
+                if (files != null) {
+                    for (File f : files) {
+                        entries.add(f);
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+    
+    private boolean delete(File f) {
+        try {
+            return Files.deleteIfExists(f.toPath());
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+    
+    static byte[] encode(byte[] bytes) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(HEADER_SIZE + bytes.length);
+        final DataOutputStream out = new DataOutputStream(baos);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(bytes.length);
+        out.writeLong(crc.getValue());
+        out.write(bytes);
+        out.flush();
+        return baos.toByteArray();
+    }
+    
+    // Returns null if the entry is truncated, corrupt or was written by an incompatible version.
+    static byte[] decode(byte[] entry) {
+        if (entry.length < HEADER_SIZE) {
+            return null;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(entry);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        final int length = buffer.getInt();
+        final long checksum = buffer.getLong();
+        if (length != entry.length - HEADER_SIZE) {
+            return null;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(entry, HEADER_SIZE, length);
+        if (crc.getValue() != checksum) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
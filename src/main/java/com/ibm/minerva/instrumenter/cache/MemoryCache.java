@@ -0,0 +1,64 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// In-process layer of the transform cache. Entries are evicted in least 
+// recently used order once their total size exceeds the limit.
+final class MemoryCache {
+    
+    private final long maxSize;
+    private final LinkedHashMap<CacheKey,byte[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long size;
+    
+    MemoryCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+    
+    synchronized byte[] get(CacheKey key) {
+        return entries.get(key);
+    }
+    
+    synchronized void put(CacheKey key, byte[] bytes) {
+        if (bytes.length > maxSize) {
+            return;
+        }
+        final byte[] previous = entries.put(key, bytes);
+        if (previous != null) {
+            size -= previous.length;
+        }
+        size += bytes.length;
+        final Iterator<Map.Entry<CacheKey,byte[]>> i = entries.entrySet().iterator();
+        while (size > maxSize && i.hasNext()) {
+            size -= i.next().getValue().length;
+            i.remove();
+        }
+    }
+    
+    synchronized int count() {
+        return entries.size();
+    }
+    
+    synchronized long size() {
+        return size;
+    }
+}
@@ -0,0 +1,237 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.cache;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.ibm.minerva.instrumenter.Agent;
+import com.ibm.minerva.instrumenter.LoggingUtil;
+
+// Caches instrumented class bytes so that classes loaded again (by another 
+// class loader or on a later start of the JVM) skip the Javassist parse, 
+// compile and toBytecode cycle. Entries are keyed by a hash of the original
+// class bytes and of the configuration which produced them.
+public final class TransformCache {
+    
+    private static final Logger logger = LoggingUtil.getLogger(TransformCache.class);
+    
+    private static final String CACHE_NAME = "cache";
+    private static final String FILTER_NAME = "filter";
+    private static final String MEMORY_SIZE_NAME = "memorySize";
+    private static final String DIRECTORY_NAME = "directory";
+    private static final String DISK_SIZE_NAME = "diskSize";
+    
+    public static final long DEFAULT_MEMORY_SIZE = 32L * 1024 * 1024;
+    public static final long DEFAULT_DISK_SIZE = 256L * 1024 * 1024;
+    
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    
+    // The memory cache is split into independently locked segments so that 
+    // concurrent transforms do not contend for one lock.
+    private static final int MEMORY_SEGMENTS = 16;
+    
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(TransformCache::newDigest);
+    
+    private final byte[] configHash;
+    private final MemoryCache[] memory;
+    private final DiskCache disk;
+    
+    TransformCache(byte[] configHash, MemoryCache[] memory, DiskCache disk) {
+        this.configHash = configHash;
+        this.memory = memory;
+        this.disk = disk;
+    }
+    
+    // Creates the cache described by the "cache" element of the agent configuration 
+    // or returns null if there is none. The configuration hash covers the rest of 
+    // the agent configuration, so changing the filter or generator invalidates the
+    // cached classes. Classes cached on disk carry the method ids assigned on an 
+    // earlier start, so the directory is only used if the method id dictionary is 
+    // written to a file (methodDictionary may be null), from which they are reloaded.
+    public static TransformCache create(JsonElement cacheConfig, JsonObject agentConfig, File methodDictionary) {
+        if (cacheConfig == null || !cacheConfig.isJsonObject()) {
+            return null;
+        }
+        final JsonObject o = cacheConfig.getAsJsonObject();
+        final long memorySize = getLong(o, MEMORY_SIZE_NAME, DEFAULT_MEMORY_SIZE);
+        MemoryCache[] memory = null;
+        if (memorySize > 0) {
+            memory = new MemoryCache[MEMORY_SEGMENTS];
+            for (int i = 0; i < MEMORY_SEGMENTS; ++i) {
+                memory[i] = new MemoryCache(Math.max(1, memorySize / MEMORY_SEGMENTS));
+            }
+        }
+        DiskCache disk = null;
+        final JsonElement e = o.get(DIRECTORY_NAME);
+        if (e != null && e.isJsonPrimitive()) {
+            final File directory = Agent.resolvePath(e.getAsString());
+            if (methodDictionary == null) {
+                logger.warning(() -> formatMessage("TransformCacheDirectoryIgnored", directory.getAbsolutePath()));
+            }
+            else {
+                try {
+                    disk = new DiskCache(directory, getLong(o, DISK_SIZE_NAME, DEFAULT_DISK_SIZE));
+                    logger.info(() -> formatMessage("TransformCacheDirectory", directory.getAbsolutePath()));
+                }
+                catch (Exception ex) {
+                    logger.warning(() -> formatMessage("TransformCacheDirectoryUnusable", directory.getAbsolutePath(), ex.getMessage()));
+                }
+            }
+        }
+        if (memory == null && disk == null) {
+            return null;
+        }
+        return new TransformCache(computeConfigHash(agentConfig), memory, disk);
+    }
+    
+    public CacheKey getKey(String className, byte[] classfileBuffer) {
+        final MessageDigest md = digests.get();
+        md.reset();
+        md.update(configHash);
+        md.update(className.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        md.update(classfileBuffer);
+        return new CacheKey(md.digest());
+    }
+    
+    public byte[] get(CacheKey key) {
+        final MemoryCache segment = getMemorySegment(key);
+        byte[] bytes = segment != null ? segment.get(key) : null;
+        if (bytes == null && disk != null) {
+            bytes = disk.get(key);
+            if (bytes != null && segment != null) {
+                segment.put(key, bytes);
+            }
+        }
+        return bytes;
+    }
+    
+    public void put(CacheKey key, byte[] bytes) {
+        final MemoryCache segment = getMemorySegment(key);
+        if (segment != null) {
+            segment.put(key, bytes);
+        }
+        if (disk != null) {
+            disk.put(key, bytes);
+        }
+    }
+    
+    private MemoryCache getMemorySegment(CacheKey key) {
+        if (memory == null) {
+            return null;
+        }
+        final int h = key.hashCode();
+        return memory[(h ^ (h >>> 16)) & (MEMORY_SEGMENTS - 1)];
+    }
+    
+    // Hashes everything other than the cache's own settings that can change the
+    // instrumented bytes: the agent's code, the configuration and the size and
+    // modification time of files named by the filter configuration (e.g. table directories).
+    static byte[] computeConfigHash(JsonObject agentConfig) {
+        final MessageDigest md = newDigest();
+        final CodeSource cs = TransformCache.class.getProtectionDomain().getCodeSource();
+        if (cs != null && cs.getLocation() != null) {
+            try {
+                updateFileStamp(md, new File(cs.getLocation().toURI()));
+            }
+            catch (Exception e) {
+                md.update(cs.getLocation().toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (agentConfig != null) {
+            for (Map.Entry<String,JsonElement> entry : agentConfig.entrySet()) {
+                if (!CACHE_NAME.equals(entry.getKey())) {
+                    md.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                    // Only the filter reads the files it names. Files named elsewhere (e.g. the 
+                    // trace file, the method dictionary) are written by the agent and would change
+                    // the hash on every start.
+                    updateConfig(md, entry.getValue(), FILTER_NAME.equals(entry.getKey()));
+                }
+            }
+        }
+        return md.digest();
+    }
+    
+    private static void updateConfig(MessageDigest md, JsonElement e, boolean stampFiles) {
+        if (e.isJsonObject()) {
+            e.getAsJsonObject().entrySet().forEach(x -> {
+                md.update(x.getKey().getBytes(StandardCharsets.UTF_8));
+                updateConfig(md, x.getValue(), stampFiles);
+            });
+        }
+        else if (e.isJsonArray()) {
+            e.getAsJsonArray().forEach(x -> updateConfig(md, x, stampFiles));
+        }
+        else {
+            md.update(e.toString().getBytes(StandardCharsets.UTF_8));
+            if (stampFiles && e.isJsonPrimitive() && e.getAsJsonPrimitive().isString()) {
+                final File f = Agent.resolvePath(e.getAsString());
+                if (f.exists()) {
+                    updateFileStamp(md, f);
+                    final File[] children = f.listFiles(File::isFile);
+                    if (children != null) {
+                        Arrays.sort(children, Comparator.comparing(File::getName));
+                        for (File child : children) {
+                            updateFileStamp(md, child);
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    private static void updateFileStamp(MessageDigest md, File f) {
+        md.update(f.getName().getBytes(StandardCharsets.UTF_8));
+        md.update(Long.toString(f.length()).getBytes(StandardCharsets.UTF_8));
+        md.update(Long.toString(f.lastModified()).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static long getLong(JsonObject o, String name, long defaultValue) {
+        final JsonElement e = o.get(name);
+        if (e != null && e.isJsonPrimitive()) {
+            try {
+                return e.getAsLong();
+            }
+            catch (NumberFormatException ex) {}
+        }
+        return defaultValue;
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
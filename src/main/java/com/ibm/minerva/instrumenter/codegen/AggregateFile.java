@@ -0,0 +1,138 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.ibm.minerva.instrumenter.Agent;
+import com.ibm.minerva.instrumenter.LoggingUtil;
+
+// The file of a generator whose runtime aggregates the calls in memory and 
+// replaces the file with the totals every interval (call-edges, context-tree).
+// Such a generator is configured with the file name or with an object with 
+// "file", the interval and its own settings. Its probes pass the method id to
+// the runtime's enter(int) and exit(int); exits by exception are exits.
+public final class AggregateFile {
+    
+    private static final Logger logger = LoggingUtil.getLogger(AggregateFile.class);
+    
+    private static final String FILE_NAME = "file";
+    
+    private final File file;
+    private final long interval;
+    private final JsonObject settings;
+    
+    private AggregateFile(File file, long interval, JsonObject settings) {
+        this.file = file;
+        this.interval = interval;
+        this.settings = settings;
+    }
+    
+    // The file name is resolved against the agent's directory.
+    public static AggregateFile parse(JsonElement config, String defaultFileName, String intervalName, long defaultInterval) {
+        String fileName = defaultFileName;
+        long interval = defaultInterval;
+        JsonObject settings = null;
+        if (config != null) {
+            if (config.isJsonPrimitive()) {
+                fileName = config.getAsString();
+            }
+            else if (config.isJsonObject()) {
+                settings = config.getAsJsonObject();
+                JsonElement e = settings.get(FILE_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    fileName = e.getAsString();
+                }
+                e = settings.get(intervalName);
+                if (e != null && e.isJsonPrimitive()) {
+                    interval = e.getAsLong();
+                }
+            }
+        }
+        return new AggregateFile(Agent.resolvePath(fileName), interval, settings);
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public long getInterval() {
+        return interval;
+    }
+    
+    // Returns one of the generator's own settings.
+    public int getInt(String name, int defaultValue) {
+        final JsonElement e = settings != null ? settings.get(name) : null;
+        return e != null && e.isJsonPrimitive() ? e.getAsInt() : defaultValue;
+    }
+    
+    // Appends the runtime to the bootstrap class path (if inst is not null) and
+    // then starts it. Errors writing the file, now or later, are logged with 
+    // the given message.
+    public static void start(Instrumentation inst, File file, String fileMessage, 
+            String unwritableMessage, RuntimeStarter starter) {
+        if (inst != null) {
+            RuntimeSupport.appendToBootstrapClassLoaderSearch(inst);
+        }
+        logger.info(() -> formatMessage(fileMessage, file.getAbsolutePath()));
+        final Consumer<IOException> errorHandler = 
+                e -> logger.severe(() -> formatMessage(unwritableMessage, file.getAbsolutePath(), e.getMessage()));
+        try {
+            starter.start(errorHandler);
+        }
+        catch (IOException e) {
+            errorHandler.accept(e);
+        }
+    }
+    
+    // runtimeClass.enter([method id]) / runtimeClass.exit([method id])
+    public static String generateSourceSnippet(String runtimeClass, TraceInjectionContext context) {
+        return runtimeClass + "." + getRuntimeMethod(context) + "(" + context.getMethodId() + ");";
+    }
+    
+    public static ProbeTemplate generateProbeTemplate(String runtimeClass, TraceInjectionContext context) {
+        return ProbeTemplate.builder()
+                .pushInt(context.getMethodId())
+                .invokeStatic(runtimeClass, getRuntimeMethod(context), "(I)V")
+                .build();
+    }
+    
+    // The method ids used in the file are listed in [file].methods.
+    public static File getMethodDictionaryFile(File file) {
+        return new File(file.getPath() + ".methods");
+    }
+    
+    private static String getRuntimeMethod(TraceInjectionContext context) {
+        return context.getTraceInjectionLocation() == TraceInjectionLocation.ENTRY ? "enter" : "exit";
+    }
+    
+    // Starts the runtime, which must not be loaded before it has been appended.
+    @FunctionalInterface
+    public interface RuntimeStarter {
+        void start(Consumer<IOException> errorHandler) throws IOException;
+    }
+}
@@ -0,0 +1,50 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.codegen;
+
+// How the exit probe is injected into a method.
+public enum ExitStrategy {
+    // The exit probe is copied before each return instruction and into a 
+    // catch-all handler which rethrows, like a finally block. Exits by 
+    // exception are traced as EXIT.
+    FINALLY("finally"),
+    // Each return instruction stores the return value and jumps to a single
+    // block which runs the exit probe and returns. A catch-all handler runs 
+    // the EXCEPTION probe and rethrows.
+    SINGLE("single");
+    
+    private final String name;
+    
+    ExitStrategy(String name) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    // Returns the strategy with the given name, or null.
+    public static ExitStrategy fromName(String name) {
+        for (ExitStrategy strategy : values()) {
+            if (strategy.name.equals(name)) {
+                return strategy;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,212 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.ibm.minerva.instrumenter.LoggingUtil;
+
+// Assigns a dense int id to each instrumented method so that trace events can
+// carry the id instead of the method's name. If a dictionary file is given each
+// id is appended to it as an "id|instrumentation version|sourcePath::className::methodSignature"
+// line. The ids of an existing dictionary are kept so that classes restored from
+// the transform cache on a later start still refer to the right methods.
+public final class MethodIdRegistry {
+    
+    private static final Logger logger = LoggingUtil.getLogger(MethodIdRegistry.class);
+    
+    private static final char SEPARATOR = '|';
+    
+    private final File file;
+    private final Map<String,Integer> ids = new ConcurrentHashMap<>();
+    private final Map<Integer,Method> methods = new ConcurrentHashMap<>();
+    private int nextId;
+    private Writer writer;
+    private boolean writable;
+    
+    // Ids are only kept in memory.
+    public MethodIdRegistry() {
+        this(null);
+    }
+    
+    // The dictionary file is optional (may be null).
+    public MethodIdRegistry(File file) {
+        this.file = file;
+        if (file != null) {
+            logger.config(() -> formatMessage("MethodDictionaryFile", file.getAbsolutePath()));
+            writable = true;
+            load();
+        }
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public int size() {
+        return ids.size();
+    }
+    
+    // Returns the method with the given id, or null if there is none.
+    public Method getMethod(int id) {
+        return methods.get(id);
+    }
+    
+    // Returns the id of the method, assigning the next one if it is new.
+    public int register(String version, String sourcePath, String className, String methodSignature) {
+        final String key = version + SEPARATOR + sourcePath + "::" + className + "::" + methodSignature;
+        final Integer id = ids.get(key);
+        return id != null ? id : add(key);
+    }
+    
+    private synchronized int add(String key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = nextId++;
+            write(String.valueOf(id) + SEPARATOR + key);
+            ids.put(key, id);
+            methods.put(id, Method.parse(id, key));
+        }
+        return id;
+    }
+    
+    private void write(String line) {
+        if (writable) {
+            try {
+                if (writer == null) {
+                    writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+                }
+                writer.write(line);
+                writer.write('\n');
+                writer.flush();
+            }
+            catch (IOException e) {
+                // Keep assigning ids so that tracing continues without the dictionary.
+                writable = false;
+                logger.severe(() -> formatMessage("MethodDictionaryUnwritable", 
+                        file.getAbsolutePath(), e.getMessage()));
+            }
+        }
+    }
+    
+    private void load() {
+        if (file.isFile()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int i = line.indexOf(SEPARATOR);
+                    if (i > 0) {
+                        try {
+                            final int id = Integer.parseInt(line.substring(0, i));
+                            if (id >= 0) {
+                                final String key = line.substring(i + 1);
+                                ids.put(key, id);
+                                methods.put(id, Method.parse(id, key));
+                                nextId = Math.max(nextId, id + 1);
+                            }
+                        }
+                        catch (NumberFormatException e) {}
+                    }
+                }
+            }
+            catch (IOException e) {
+                logger.warning(() -> formatMessage("MethodDictionaryUnreadable", 
+                        file.getAbsolutePath(), e.getMessage()));
+            }
+        }
+    }
+    
+    // A method of the dictionary.
+    public static final class Method {
+        
+        private final int id;
+        private final String version;
+        private final String sourcePath;
+        private final String className;
+        private final String methodSignature;
+        private final String methodName;
+        
+        private Method(int id, String version, String sourcePath, String className, String methodSignature) {
+            this.id = id;
+            this.version = version;
+            this.sourcePath = sourcePath;
+            this.className = className;
+            this.methodSignature = methodSignature;
+            final int i = methodSignature.indexOf('(');
+            this.methodName = i >= 0 ? methodSignature.substring(0, i) : methodSignature;
+        }
+        
+        // Parses "version|sourcePath::className::methodSignature".
+        private static Method parse(int id, String key) {
+            final int v = Math.max(0, key.indexOf(SEPARATOR));
+            final int s = key.indexOf("::", v);
+            final int c = s >= 0 ? key.indexOf("::", s + 2) : -1;
+            if (c < 0) {
+                return new Method(id, key.substring(0, v), "", "", key.substring(v + 1));
+            }
+            return new Method(id, key.substring(0, v), key.substring(v + 1, s), 
+                    key.substring(s + 2, c), key.substring(c + 2));
+        }
+        
+        public int getId() {
+            return id;
+        }
+        
+        public String getVersion() {
+            return version;
+        }
+        
+        public String getSourcePath() {
+            return sourcePath;
+        }
+        
+        public String getClassName() {
+            return className;
+        }
+        
+        public String getMethodSignature() {
+            return methodSignature;
+        }
+        
+        // The signature up to its parameter list.
+        public String getMethodName() {
+            return methodName;
+        }
+        
+        // Same as the method's line of the dictionary.
+        @Override
+        public String toString() {
+            return String.valueOf(id) + SEPARATOR + version + SEPARATOR + sourcePath + "::" + className + "::" + methodSignature;
+        }
+    }
+}
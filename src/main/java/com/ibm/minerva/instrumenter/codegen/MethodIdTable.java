@@ -0,0 +1,75 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.codegen;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+// Values computed from the methods of a MethodIdRegistry and kept by method id,
+// for probe handlers which are called with the id on every traced call. A lookup
+// is a volatile read and an array access, without boxing or locking. The value 
+// of a method is computed on its first lookup. Values are read without locking
+// so they must be immutable (e.g. only have final fields).
+public final class MethodIdTable<T> {
+    
+    private static final int INITIAL_SIZE = 256;
+    
+    private final MethodIdRegistry methodIds;
+    private final Function<MethodIdRegistry.Method,T> factory;
+    private volatile Object[] values = new Object[INITIAL_SIZE];
+    
+    public MethodIdTable(MethodIdRegistry methodIds, Function<MethodIdRegistry.Method,T> factory) {
+        this.methodIds = methodIds;
+        this.factory = factory;
+    }
+    
+    // Returns the value of the method with the given id, or null if there is no such method.
+    @SuppressWarnings("unchecked")
+    public T get(int id) {
+        final Object[] v = values;
+        if (id >= 0 && id < v.length) {
+            final Object value = v[id];
+            if (value != null) {
+                return (T) value;
+            }
+        }
+        return add(id);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private synchronized T add(int id) {
+        Object[] v = values;
+        if (id < 0) {
+            return null;
+        }
+        if (id < v.length && v[id] != null) {
+            return (T) v[id];
+        }
+        final MethodIdRegistry.Method method = methodIds.getMethod(id);
+        if (method == null) {
+            return null;
+        }
+        if (id >= v.length) {
+            v = Arrays.copyOf(v, Math.max(v.length << 1, id + 1));
+        }
+        final T value = factory.apply(method);
+        v[id] = value;
+        values = v;
+        return value;
+    }
+}
@@ -0,0 +1,127 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.codegen;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.lang.instrument.Instrumentation;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+import com.ibm.minerva.instrumenter.LoggingUtil;
+import com.ibm.minerva.instrumenter.runtime.Probes;
+
+// Replaces the probes of another generator with minimal probes, a single 
+// invokestatic of com.ibm.minerva.instrumenter.runtime.Probes with the method id:
+//   push [method id]; invokestatic Probes.enter(I)V
+// Probes passes the calls on to the generator's probe handlers. Instrumented 
+// methods then only grow by a few bytes per probe, which keeps small methods 
+// within the JIT's inlining limits. If the generator has no probe handlers its
+// own probes are used.
+public final class MinimalTraceGenerator implements TraceGenerator {
+    
+    private static final Logger logger = LoggingUtil.getLogger(MinimalTraceGenerator.class);
+    
+    private static final String PROBES_CLASS = "com.ibm.minerva.instrumenter.runtime.Probes";
+    
+    private final TraceGenerator traceGenerator;
+    private final MethodIdRegistry methodIds;
+    private volatile boolean minimal;
+    
+    public MinimalTraceGenerator(TraceGenerator traceGenerator, MethodIdRegistry methodIds) {
+        this.traceGenerator = traceGenerator;
+        this.methodIds = methodIds;
+    }
+    
+    public TraceGenerator getTraceGenerator() {
+        return traceGenerator;
+    }
+    
+    // True once initialized if the minimal probes are used.
+    public boolean isMinimal() {
+        return minimal;
+    }
+    
+    // The handlers are created after the runtime has been appended to the bootstrap
+    // class path, since they may load runtime classes.
+    @Override
+    public void initialize(Instrumentation inst) {
+        if (inst != null) {
+            RuntimeSupport.appendToBootstrapClassLoaderSearch(inst);
+        }
+        traceGenerator.initialize(inst);
+        final IntConsumer entry = traceGenerator.createProbeHandler(methodIds, TraceInjectionLocation.ENTRY);
+        if (entry != null) {
+            Probes.setHandlers(entry, 
+                    traceGenerator.createProbeHandler(methodIds, TraceInjectionLocation.EXIT), 
+                    traceGenerator.createProbeHandler(methodIds, TraceInjectionLocation.EXCEPTION));
+            minimal = true;
+            logger.config(() -> formatMessage("MinimalProbes", traceGenerator.getClass().getName()));
+        }
+        else {
+            logger.warning(() -> formatMessage("MinimalProbesNotSupported", traceGenerator.getClass().getName()));
+        }
+    }
+    
+    @Override
+    public File getMethodDictionaryFile() {
+        return traceGenerator.getMethodDictionaryFile();
+    }
+    
+    @Override
+    public void traceMethodThrottled(MethodIdRegistry.Method method) {
+        traceGenerator.traceMethodThrottled(method);
+    }
+    
+    @Override
+    public IntConsumer createProbeHandler(MethodIdRegistry methodIds, TraceInjectionLocation location) {
+        return traceGenerator.createProbeHandler(methodIds, location);
+    }
+    
+    @Override
+    public String generateSourceSnippet(TraceInjectionContext context) {
+        if (!minimal) {
+            return traceGenerator.generateSourceSnippet(context);
+        }
+        // com.ibm.minerva.instrumenter.runtime.Probes.enter([method id])
+        return PROBES_CLASS + "." + getProbesMethod(context) + "(" + context.getMethodId() + ");";
+    }
+    
+    @Override
+    public ProbeTemplate generateProbeTemplate(TraceInjectionContext context) {
+        if (!minimal) {
+            return traceGenerator.generateProbeTemplate(context);
+        }
+        return ProbeTemplate.builder()
+                .pushInt(context.getMethodId())
+                .invokeStatic(PROBES_CLASS, getProbesMethod(context), "(I)V")
+                .build();
+    }
+    
+    private static String getProbesMethod(TraceInjectionContext context) {
+        switch (context.getTraceInjectionLocation()) {
+            case ENTRY:
+                return "enter";
+            case EXCEPTION:
+                return "exception";
+            default:
+                return "exit";
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.Opcode;
+
+// Decides at the entry of an instrumented method whether the call is traced.
+// The TraceInjector calls the guard before the entry probe, keeps its decision
+// in a local variable and only runs the entry and exit probes of the calls 
+// for which it returned true.
+public interface ProbeGuard {
+    
+    // Whether the guard is passed the method's id.
+    public boolean usesMethodId();
+    
+    // Emits code which leaves true on the operand stack if this call is traced.
+    public void emitGuard(Bytecode bytecode, int methodId);
+    
+    // Emits the guard into a method of the given class file, for guards which
+    // need to add to the class (e.g. a bootstrap method). The class file may be null.
+    public default void emitGuard(Bytecode bytecode, int methodId, ClassFile classFile) {
+        emitGuard(bytecode, methodId);
+    }
+    
+    // Returns a guard which traces a call if both guards do. The second guard
+    // only runs if the first returned true. Either may be null.
+    public static ProbeGuard and(ProbeGuard first, ProbeGuard second) {
+        if (first == null || second == null) {
+            return first != null ? first : second;
+        }
+        return new ProbeGuard() {
+            @Override
+            public boolean usesMethodId() {
+                return first.usesMethodId() || second.usesMethodId();
+            }
+            @Override
+            public void emitGuard(Bytecode bytecode, int methodId) {
+                emitGuard(bytecode, methodId, null);
+            }
+            @Override
+            public void emitGuard(Bytecode bytecode, int methodId, ClassFile classFile) {
+                // first; ifeq L; second; goto E; L: iconst_0; E:
+                final Bytecode code = new Bytecode(bytecode.getConstPool());
+                second.emitGuard(code, methodId, classFile);
+                final byte[] b = code.get();
+                final int depth = bytecode.getStackDepth();
+                first.emitGuard(bytecode, methodId, classFile);
+                bytecode.addOpcode(Opcode.IFEQ);
+                bytecode.addIndex(3 + b.length + 3);
+                for (byte x : b) {
+                    bytecode.add(x);
+                }
+                bytecode.addOpcode(Opcode.GOTO);
+                bytecode.addIndex(3 + 1);
+                bytecode.addIconst(0);
+                // Both branches leave one value on the stack.
+                bytecode.setMaxStack(Math.max(bytecode.getMaxStack(), depth + code.getMaxStack()));
+                bytecode.setStackDepth(depth + 1);
+            }
+            @Override
+            public String toString() {
+                return first + " and " + second;
+            }
+        };
+    }
+}
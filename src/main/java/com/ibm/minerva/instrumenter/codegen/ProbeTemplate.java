@@ -0,0 +1,240 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.Opcode;
+
+// A probe described as a short sequence of bytecode instructions which the
+// TraceInjector copies directly into a method instead of compiling a source 
+// snippet. A template may push constants (class literals need a Java 5 or 
+// later class file), read static fields and invoke static
+// and virtual methods. Any values left on the operand stack by the last 
+// instruction are popped so that the template leaves the stack unchanged.
+// Class names may be given in either the Java (x.y.Z) or internal (x/y/Z) form.
+public final class ProbeTemplate {
+    
+    private final List<Instruction> instructions;
+    private final int maxStack;
+    
+    private ProbeTemplate(List<Instruction> instructions, int maxStack) {
+        this.instructions = instructions;
+        this.maxStack = maxStack;
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    // The maximum number of operand stack slots used by the probe.
+    public int getMaxStack() {
+        return maxStack;
+    }
+    
+    public int size() {
+        return instructions.size();
+    }
+    
+    public void emit(Bytecode bytecode) {
+        for (Instruction i : instructions) {
+            i.emit(bytecode);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (Instruction i : instructions) {
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(i);
+        }
+        return sb.toString();
+    }
+    
+    public static final class Builder {
+        
+        private final List<Instruction> instructions = new ArrayList<>();
+        // Sizes (in slots) of the values on the operand stack.
+        private final List<Integer> stack = new ArrayList<>();
+        private int depth;
+        private int maxStack;
+        
+        private Builder() {}
+        
+        public Builder pushInt(int value) {
+            instructions.add(new Instruction(Kind.PUSH_INT, value, null, null, null));
+            return push(1);
+        }
+        
+        public Builder pushLong(long value) {
+            instructions.add(new Instruction(Kind.PUSH_LONG, value, null, null, null));
+            return push(2);
+        }
+        
+        public Builder pushString(String value) {
+            if (value == null) {
+                throw new IllegalArgumentException();
+            }
+            instructions.add(new Instruction(Kind.PUSH_STRING, value, null, null, null));
+            return push(1);
+        }
+        
+        public Builder pushClass(String className) {
+            if (className == null) {
+                throw new IllegalArgumentException();
+            }
+            instructions.add(new Instruction(Kind.PUSH_CLASS, null, className, null, null));
+            return push(1);
+        }
+        
+        public Builder getStatic(String owner, String name, String descriptor) {
+            instructions.add(new Instruction(Kind.GET_STATIC, null, owner, name, descriptor));
+            return push(Descriptor.dataSize(descriptor));
+        }
+        
+        public Builder invokeStatic(String owner, String name, String descriptor) {
+            instructions.add(new Instruction(Kind.INVOKE_STATIC, null, owner, name, descriptor));
+            return invoke(descriptor, 0);
+        }
+        
+        public Builder invokeVirtual(String owner, String name, String descriptor) {
+            instructions.add(new Instruction(Kind.INVOKE_VIRTUAL, null, owner, name, descriptor));
+            return invoke(descriptor, 1);
+        }
+        
+        public ProbeTemplate build() {
+            // Discard whatever the last instructions left on the stack.
+            for (int i = stack.size() - 1; i >= 0; --i) {
+                instructions.add(stack.get(i) == 2 ? Instruction.POP2 : Instruction.POP);
+            }
+            stack.clear();
+            depth = 0;
+            return new ProbeTemplate(Collections.unmodifiableList(new ArrayList<>(instructions)), maxStack);
+        }
+        
+        private Builder invoke(String descriptor, int receiver) {
+            // Pop the arguments (and the receiver), then push the return value.
+            int slots = Descriptor.paramSize(descriptor) + receiver;
+            while (slots > 0) {
+                if (stack.isEmpty()) {
+                    throw new IllegalStateException(descriptor);
+                }
+                final int size = stack.remove(stack.size() - 1);
+                slots -= size;
+                depth -= size;
+            }
+            if (slots < 0) {
+                throw new IllegalStateException(descriptor);
+            }
+            final int returnSize = Descriptor.dataSize(descriptor) + Descriptor.paramSize(descriptor);
+            return returnSize > 0 ? push(returnSize) : this;
+        }
+        
+        private Builder push(int size) {
+            stack.add(size);
+            depth += size;
+            maxStack = Math.max(maxStack, depth);
+            return this;
+        }
+    }
+    
+    private enum Kind {
+        PUSH_INT, PUSH_LONG, PUSH_STRING, PUSH_CLASS, GET_STATIC, INVOKE_STATIC, INVOKE_VIRTUAL, POP, POP2
+    }
+    
+    private static final class Instruction {
+        
+        private static final Instruction POP = new Instruction(Kind.POP, null, null, null, null);
+        private static final Instruction POP2 = new Instruction(Kind.POP2, null, null, null, null);
+        
+        private final Kind kind;
+        private final Object value;
+        private final String owner;
+        private final String name;
+        private final String descriptor;
+        
+        private Instruction(Kind kind, Object value, String owner, String name, String descriptor) {
+            this.kind = kind;
+            this.value = value;
+            this.owner = owner != null ? owner.replace('.', '/') : null;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+        
+        private void emit(Bytecode b) {
+            switch (kind) {
+            case PUSH_INT:
+                b.addIconst((Integer) value);
+                break;
+            case PUSH_LONG:
+                b.addLconst((Long) value);
+                break;
+            case PUSH_STRING:
+                b.addLdc((String) value);
+                break;
+            case PUSH_CLASS:
+                b.addLdc(b.getConstPool().addClassInfo(owner));
+                break;
+            case GET_STATIC:
+                b.addGetstatic(owner, name, descriptor);
+                break;
+            case INVOKE_STATIC:
+                b.addInvokestatic(owner, name, descriptor);
+                break;
+            case INVOKE_VIRTUAL:
+                b.addInvokevirtual(owner, name, descriptor);
+                break;
+            case POP:
+                b.addOpcode(Opcode.POP);
+                break;
+            case POP2:
+                b.addOpcode(Opcode.POP2);
+                break;
+            }
+        }
+        
+        @Override
+        public String toString() {
+            switch (kind) {
+            case PUSH_INT:
+            case PUSH_LONG:
+                return "push " + value;
+            case PUSH_STRING:
+                return "push \"" + value + "\"";
+            case PUSH_CLASS:
+                return "push " + owner + ".class";
+            case GET_STATIC:
+                return "getstatic " + owner + "." + name + ":" + descriptor;
+            case INVOKE_STATIC:
+                return "invokestatic " + owner + "." + name + descriptor;
+            case INVOKE_VIRTUAL:
+                return "invokevirtual " + owner + "." + name + descriptor;
+            default:
+                return kind.name().toLowerCase();
+            }
+        }
+    }
+}
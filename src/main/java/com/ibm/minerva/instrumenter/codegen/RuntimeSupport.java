@@ -0,0 +1,145 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.instrument.Instrumentation;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.logging.Logger;
+
+import com.ibm.minerva.instrumenter.LoggingUtil;
+
+// Makes the trace runtime (com.ibm.minerva.instrumenter.runtime) visible to
+// every class loader by copying its classes from the agent jar into a jar of 
+// their own which is appended to the bootstrap class path. The rest of the
+// agent (and its dependencies) stays on the system class path. Generators
+// whose probes call the runtime do this from TraceGenerator.initialize.
+//
+// The agent must not load a runtime class before then, otherwise it keeps the
+// system class loader's copy, which the instrumented classes do not see. So
+// the trace factories, which run before, keep their own copies of the 
+// runtime's defaults; their tests check that they are the same.
+public final class RuntimeSupport {
+    
+    private static final Logger logger = LoggingUtil.getLogger(RuntimeSupport.class);
+    
+    static final String RUNTIME_PATH = "com/ibm/minerva/instrumenter/runtime/";
+    
+    private static boolean appended;
+    
+    private RuntimeSupport() {}
+    
+    // The runtime classes must not have been loaded before this is called,
+    // otherwise the agent keeps using the copy of the system class loader.
+    // If the runtime cannot be appended, only classes which can see the agent 
+    // are able to call it.
+    public static synchronized void appendToBootstrapClassLoaderSearch(Instrumentation inst) {
+        if (!appended) {
+            try {
+                final File runtimeJar = File.createTempFile("minerva-runtime", ".jar");
+                runtimeJar.deleteOnExit();
+                createRuntimeJar(getAgentLocation(), runtimeJar);
+                inst.appendToBootstrapClassLoaderSearch(new JarFile(runtimeJar));
+                appended = true;
+            }
+            catch (IOException | RuntimeException e) {
+                logger.warning(() -> formatMessage("TraceRuntimeNotAppended", e.getMessage()));
+            }
+        }
+    }
+    
+    // Copies the runtime classes from the agent jar or class directory to the target jar
+    // and returns their number.
+    static int createRuntimeJar(File agentLocation, File target) throws IOException {
+        int count = 0;
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(target))) {
+            if (agentLocation.isDirectory()) {
+                final File[] files = new File(agentLocation, RUNTIME_PATH).listFiles();
+                if (files != null) {
+                    for (File f : files) {
+                        if (f.isFile()) {
+                            try (InputStream in = new FileInputStream(f)) {
+                                copy(RUNTIME_PATH + f.getName(), in, out);
+                                ++count;
+                            }
+                        }
+                    }
+                }
+            }
+            else {
+                try (JarFile jar = new JarFile(agentLocation)) {
+                    final Enumeration<JarEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        final JarEntry entry = entries.nextElement();
+                        final String name = entry.getName();
+                        if (!entry.isDirectory() && name.startsWith(RUNTIME_PATH) && name.indexOf('/', RUNTIME_PATH.length()) < 0) {
+                            try (InputStream in = jar.getInputStream(entry)) {
+                                copy(name, in, out);
+                                ++count;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (count == 0) {
+            throw new IOException(agentLocation.getAbsolutePath());
+        }
+        return count;
+    }
+    
+    static File getAgentLocation() throws IOException {
+        final CodeSource cs = RuntimeSupport.class.getProtectionDomain().getCodeSource();
+        if (cs == null || cs.getLocation() == null) {
+            throw new IOException(RuntimeSupport.class.getName());
+        }
+        try {
+            return new File(cs.getLocation().toURI());
+        }
+        catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+    
+    private static void copy(String name, InputStream in, JarOutputStream out) throws IOException {
+        out.putNextEntry(new JarEntry(name));
+        copy(in, out);
+        out.closeEntry();
+    }
+    
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        final byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import javassist.bytecode.Bytecode;
+
+// Traces only some of the calls of each instrumented method: every Nth call
+// of each method (starting with the first) or a random fraction of all calls.
+// The TraceInjector calls the guard at the entry of the method and only runs
+// the entry and exit probes of the calls which are sampled.
+public final class Sampling implements ProbeGuard {
+    
+    private static final String SAMPLER_CLASS = "com.ibm.minerva.instrumenter.runtime.Sampler";
+    
+    private final int every;
+    private final double rate;
+    
+    private Sampling(int every, double rate) {
+        this.every = every;
+        this.rate = rate;
+    }
+    
+    // Returns null if every call is traced (n <= 1).
+    public static Sampling every(int n) {
+        return n > 1 ? new Sampling(n, 0) : null;
+    }
+    
+    // Returns null if every call is traced (rate >= 1).
+    public static Sampling rate(double rate) {
+        return rate < 1 ? new Sampling(0, Math.max(0, rate)) : null;
+    }
+    
+    // Every Nth call is counted per method id.
+    @Override
+    public boolean usesMethodId() {
+        return every > 0;
+    }
+    
+    @Override
+    public void emitGuard(Bytecode bytecode, int methodId) {
+        if (every > 0) {
+            bytecode.addIconst(methodId);
+            bytecode.addIconst(every);
+            bytecode.addInvokestatic(SAMPLER_CLASS.replace('.', '/'), "every", "(II)Z");
+        }
+        else {
+            bytecode.addIconst(getThreshold());
+            bytecode.addInvokestatic(SAMPLER_CLASS.replace('.', '/'), "rate", "(I)Z");
+        }
+    }
+    
+    // The probability of sampling a call is threshold / 2^31.
+    int getThreshold() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.round(rate * (1L << 31)));
+    }
+    
+    @Override
+    public String toString() {
+        return every > 0 ? "every " + every : "rate " + rate;
+    }
+}
@@ -0,0 +1,141 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import com.ibm.minerva.instrumenter.LoggingUtil;
+import com.ibm.minerva.instrumenter.MBeanUtil;
+import com.ibm.minerva.instrumenter.runtime.Throttler;
+
+import javassist.bytecode.Bytecode;
+
+// Stops tracing methods which are called more often than a maximum rate, e.g. 
+// getters called millions of times per second. The probe guard counts the 
+// calls of each method in the runtime's Throttler, which throttles the methods
+// that exceeded the rate at the end of each interval. Throttled methods are 
+// logged, reported to the generator (to be recorded in the trace) and listed
+// by the MBean, so that they can be excluded by the filter later.
+public final class Throttling implements ProbeGuard, ThrottlingMXBean {
+    
+    private static final Logger logger = LoggingUtil.getLogger(Throttling.class);
+    
+    public static final String OBJECT_NAME = "com.ibm.minerva.instrumenter:type=Throttling";
+    public static final long DEFAULT_INTERVAL = 1000;
+    
+    private static final String THROTTLER_CLASS = "com.ibm.minerva.instrumenter.runtime.Throttler";
+    
+    private final long maxRate;
+    private final long interval;
+    private final List<MethodIdRegistry.Method> throttledMethods = new CopyOnWriteArrayList<>();
+    private MethodIdRegistry methodIds;
+    private TraceGenerator traceGenerator;
+    
+    // The maximum rate is in calls per second and the interval in milliseconds.
+    public Throttling(long maxRate, long interval) {
+        this.maxRate = Math.max(1, maxRate);
+        this.interval = Math.max(1, interval);
+    }
+    
+    // Starts the runtime's Throttler. The runtime must have been appended to 
+    // the bootstrap class path first. The registry must be the one which 
+    // assigned the ids passed to the guard.
+    public synchronized void start(MethodIdRegistry methodIds, TraceGenerator traceGenerator) {
+        this.methodIds = methodIds;
+        this.traceGenerator = traceGenerator;
+        Throttler.start(getMaxCalls(), interval, this::throttled);
+    }
+    
+    public synchronized void stop() {
+        Throttler.stop();
+    }
+    
+    @Override
+    public boolean usesMethodId() {
+        return true;
+    }
+    
+    @Override
+    public void emitGuard(Bytecode bytecode, int methodId) {
+        bytecode.addIconst(methodId);
+        bytecode.addInvokestatic(THROTTLER_CLASS.replace('.', '/'), "enter", "(I)Z");
+    }
+    
+    // Calls per interval.
+    int getMaxCalls() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxRate * interval / 1000));
+    }
+    
+    @Override
+    public long getMaxRate() {
+        return maxRate;
+    }
+    
+    @Override
+    public long getInterval() {
+        return interval;
+    }
+    
+    @Override
+    public int getThrottledMethodCount() {
+        return throttledMethods.size();
+    }
+    
+    @Override
+    public String[] getThrottledMethods() {
+        return throttledMethods.stream().map(MethodIdRegistry.Method::toString).toArray(String[]::new);
+    }
+    
+    @Override
+    public void reset() {
+        throttledMethods.clear();
+        Throttler.reset();
+    }
+    
+    public boolean registerMBean() {
+        return MBeanUtil.registerMBean(this, OBJECT_NAME, "ThrottlingMBeanRegistered", "ThrottlingMBeanNotRegistered");
+    }
+    
+    @Override
+    public String toString() {
+        return "maxRate " + maxRate + ", interval " + interval;
+    }
+    
+    // Called by the Throttler's thread.
+    private void throttled(int methodId) {
+        final MethodIdRegistry registry;
+        final TraceGenerator tg;
+        synchronized (this) {
+            registry = methodIds;
+            tg = traceGenerator;
+        }
+        final MethodIdRegistry.Method method = registry != null ? registry.getMethod(methodId) : null;
+        if (method != null) {
+            throttledMethods.add(method);
+            logger.info(() -> formatMessage("MethodThrottled", method.toString()));
+            if (tg != null) {
+                tg.traceMethodThrottled(method);
+            }
+        }
+    }
+}
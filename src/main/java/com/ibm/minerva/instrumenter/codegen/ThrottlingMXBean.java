@@ -0,0 +1,34 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+// Management interface of Throttling.
+public interface ThrottlingMXBean {
+    
+    public long getMaxRate();
+    public long getInterval();
+    public int getThrottledMethodCount();
+    
+    // The dictionary lines ("id|instrumentation version|sourcePath::className::methodSignature")
+    // of the throttled methods, in the order they were throttled.
+    public String[] getThrottledMethods();
+    
+    // Traces the throttled methods again.
+    public void reset();
+}
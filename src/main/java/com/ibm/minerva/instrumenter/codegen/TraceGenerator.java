@@ -18,8 +18,41 @@
 
 package com.ibm.minerva.instrumenter.codegen;
 
+import java.io.File;
+import java.lang.instrument.Instrumentation;
+import java.util.function.IntConsumer;
+
 public interface TraceGenerator {
     
     public String generateSourceSnippet(TraceInjectionContext context);
+    
+    // Generators which can describe their probe as a bytecode template return it
+    // here. The template is copied directly into the method which is much cheaper
+    // than compiling a source snippet. If null is returned, the source snippet is used.
+    public default ProbeTemplate generateProbeTemplate(TraceInjectionContext context) {
+        return null;
+    }
+    
+    // Called by the agent before the generator is used to instrument classes, e.g.
+    // to make a runtime which the probes call visible to all class loaders. The
+    // instrumentation is null if the generator is not used by an agent.
+    public default void initialize(Instrumentation inst) {}
+    
+    // The file to which the method id dictionary is written if none is configured, 
+    // or null if the generator does not use method ids.
+    public default File getMethodDictionaryFile() {
+        return null;
+    }
+    
+    // Called when the calls of a method are no longer traced because it exceeded
+    // the maximum call rate of the throttling, so that it can be recorded in the trace.
+    public default void traceMethodThrottled(MethodIdRegistry.Method method) {}
+    
+    // Generators which can trace a call from the method id alone return the handler
+    // of the minimal probes at the given location here (see MinimalTraceGenerator).
+    // Called after initialize. If null is returned, the generator's own probes are used.
+    public default IntConsumer createProbeHandler(MethodIdRegistry methodIds, TraceInjectionLocation location) {
+        return null;
+    }
 
 }
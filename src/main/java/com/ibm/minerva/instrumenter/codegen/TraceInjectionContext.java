@@ -28,5 +28,7 @@ public interface TraceInjectionContext {
     public ClassProcessor getClassProcessor();
     public MethodProcessor getMethodProcessor();
     public TraceInjectionLocation getTraceInjectionLocation();
+    // The id of the method in the agent's MethodIdRegistry, the same for its entry and exit.
+    public int getMethodId();
 
 }
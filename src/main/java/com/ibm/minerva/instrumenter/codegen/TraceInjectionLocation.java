@@ -20,7 +20,9 @@ package com.ibm.minerva.instrumenter.codegen;
 
 public enum TraceInjectionLocation {
     ENTRY("entering","Entering"), 
-    EXIT("exiting","Exiting");
+    EXIT("exiting","Exiting"),
+    // Only used with ExitStrategy.SINGLE, which traces exits by exception separately.
+    EXCEPTION("throwing","Throwing");
     
     String loggingName;
     String printName;
@@ -0,0 +1,197 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import com.ibm.minerva.instrumenter.LoggingUtil;
+import com.ibm.minerva.instrumenter.MBeanUtil;
+import com.ibm.minerva.instrumenter.runtime.ProbeSwitch;
+
+import javassist.bytecode.BootstrapMethodsAttribute;
+import javassist.bytecode.BootstrapMethodsAttribute.BootstrapMethod;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.ConstPool;
+
+// Keeps the probes in place but only runs them while the switch is on, e.g. 
+// for capture windows. The probe guard is an invokedynamic call site bound by
+// the runtime's ProbeSwitch, which the JIT compiles to a constant, so that the
+// probes cost next to nothing while the switch is off. Class files older than
+// Java 7 cannot contain invokedynamic and call ProbeSwitch.isOn() instead.
+// The switch is turned by the MBean, or by creating and deleting a trigger 
+// file: a daemon thread checks every interval whether the file exists and
+// turns the switch on when it appears and off when it disappears.
+public final class TraceSwitch implements ProbeGuard, TraceSwitchMXBean {
+    
+    private static final Logger logger = LoggingUtil.getLogger(TraceSwitch.class);
+    
+    public static final String OBJECT_NAME = "com.ibm.minerva.instrumenter:type=TraceSwitch";
+    public static final long DEFAULT_INTERVAL = 1000;
+    
+    private static final String SWITCH_CLASS = "com/ibm/minerva/instrumenter/runtime/ProbeSwitch";
+    private static final String BOOTSTRAP_NAME = "bootstrap";
+    private static final String BOOTSTRAP_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;"
+            + "Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;";
+    private static final String GUARD_NAME = "isOn";
+    private static final String GUARD_DESCRIPTOR = "()Z";
+    
+    private final boolean initiallyOn;
+    private final File triggerFile;
+    private final long interval;
+    private Thread monitor;
+    // Whether the trigger file existed at the last poll.
+    private boolean triggered;
+    
+    // The trigger file is optional (may be null). The interval is in milliseconds.
+    public TraceSwitch(boolean on, File triggerFile, long interval) {
+        this.initiallyOn = on;
+        this.triggerFile = triggerFile;
+        this.interval = Math.max(1, interval);
+    }
+    
+    // Sets the initial state of the switch and starts polling the trigger file.
+    // The runtime must have been appended to the bootstrap class path first.
+    // The switch is also on if the trigger file exists.
+    public synchronized void start() {
+        stop();
+        triggered = triggerFile != null && triggerFile.exists();
+        ProbeSwitch.set(initiallyOn || triggered);
+        if (triggerFile != null) {
+            final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+            final Thread t = new Thread(() -> run(intervalNanos), "Minerva Agent Trace Switch Monitor");
+            t.setDaemon(true);
+            monitor = t;
+            t.start();
+        }
+    }
+    
+    public synchronized void stop() {
+        if (monitor != null) {
+            monitor.interrupt();
+            monitor = null;
+        }
+    }
+    
+    @Override
+    public boolean usesMethodId() {
+        return false;
+    }
+    
+    @Override
+    public void emitGuard(Bytecode bytecode, int methodId) {
+        bytecode.addInvokestatic(SWITCH_CLASS, GUARD_NAME, GUARD_DESCRIPTOR);
+    }
+    
+    @Override
+    public void emitGuard(Bytecode bytecode, int methodId, ClassFile classFile) {
+        if (classFile != null && classFile.getMajorVersion() >= ClassFile.JAVA_7) {
+            bytecode.addInvokedynamic(getBootstrapMethod(classFile), GUARD_NAME, GUARD_DESCRIPTOR);
+        }
+        else {
+            emitGuard(bytecode, methodId);
+        }
+    }
+    
+    @Override
+    public boolean isOn() {
+        return ProbeSwitch.isOn();
+    }
+    
+    @Override
+    public void setOn(boolean on) {
+        turn(on, "MBean");
+    }
+    
+    @Override
+    public long getTurns() {
+        return ProbeSwitch.getTurns();
+    }
+    
+    @Override
+    public String getTriggerFile() {
+        return triggerFile != null ? triggerFile.getAbsolutePath() : null;
+    }
+    
+    @Override
+    public long getInterval() {
+        return interval;
+    }
+    
+    public boolean registerMBean() {
+        return MBeanUtil.registerMBean(this, OBJECT_NAME, "TraceSwitchMBeanRegistered", "TraceSwitchMBeanNotRegistered");
+    }
+    
+    @Override
+    public String toString() {
+        return (initiallyOn ? "on" : "off") + (triggerFile != null 
+                ? ", triggerFile " + triggerFile.getAbsolutePath() + ", interval " + interval : "");
+    }
+    
+    // Returns the index of the ProbeSwitch bootstrap method in the class's 
+    // BootstrapMethods attribute, adding it if the class does not have it yet.
+    static int getBootstrapMethod(ClassFile classFile) {
+        final ConstPool constPool = classFile.getConstPool();
+        final int methodRef = constPool.addMethodrefInfo(constPool.addClassInfo(SWITCH_CLASS), BOOTSTRAP_NAME, BOOTSTRAP_DESCRIPTOR);
+        final int handle = constPool.addMethodHandleInfo(ConstPool.REF_invokeStatic, methodRef);
+        final BootstrapMethodsAttribute attribute = (BootstrapMethodsAttribute) classFile.getAttribute(BootstrapMethodsAttribute.tag);
+        final BootstrapMethod[] methods = attribute != null ? attribute.getMethods() : new BootstrapMethod[0];
+        for (int i = 0; i < methods.length; ++i) {
+            if (methods[i].methodRef == handle && methods[i].arguments.length == 0) {
+                return i;
+            }
+        }
+        final BootstrapMethod[] newMethods = new BootstrapMethod[methods.length + 1];
+        System.arraycopy(methods, 0, newMethods, 0, methods.length);
+        newMethods[methods.length] = new BootstrapMethod(handle, new int[0]);
+        // Replaces the existing attribute.
+        classFile.addAttribute(new BootstrapMethodsAttribute(constPool, newMethods));
+        return methods.length;
+    }
+    
+    private void turn(boolean on, String source) {
+        if (ProbeSwitch.set(on) != on) {
+            logger.info(() -> formatMessage("TraceSwitched", on ? "on" : "off", source));
+        }
+    }
+    
+    // Turns the switch when the trigger file appeared or disappeared since 
+    // the last poll, so that the MBean can turn it in between.
+    synchronized void poll() {
+        final boolean exists = triggerFile.exists();
+        if (exists != triggered) {
+            triggered = exists;
+            turn(exists, triggerFile.getAbsolutePath());
+        }
+    }
+    
+    private void run(long intervalNanos) {
+        while (!Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(TraceSwitch.class, intervalNanos);
+            if (!Thread.currentThread().isInterrupted()) {
+                poll();
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+// Management interface of TraceSwitch.
+public interface TraceSwitchMXBean {
+    
+    // Whether the probes are on. Setting it turns them on or off.
+    public boolean isOn();
+    public void setOn(boolean on);
+    
+    // The number of times the probes have been turned on or off.
+    public long getTurns();
+    
+    // The path of the trigger file, or null if none is polled.
+    public String getTriggerFile();
+    public long getInterval();
+}
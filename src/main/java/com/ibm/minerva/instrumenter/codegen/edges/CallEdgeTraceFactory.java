@@ -0,0 +1,53 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.codegen.edges;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.util.logging.Logger;
+
+import com.google.gson.JsonElement;
+import com.ibm.minerva.instrumenter.LoggingUtil;
+import com.ibm.minerva.instrumenter.codegen.AggregateFile;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceGeneratorFactory;
+
+public final class CallEdgeTraceFactory implements TraceGeneratorFactory {
+    
+    private static final Logger logger = LoggingUtil.getLogger(CallEdgeTraceFactory.class);
+    
+    static final String DEFAULT_FILE_NAME = "minerva-edges.bin";
+    // Copies of the runtime's defaults (see RuntimeSupport).
+    static final long DEFAULT_DUMP_INTERVAL = 10000;
+    
+    private static final String DUMP_INTERVAL_NAME = "dumpInterval";
+    
+    public CallEdgeTraceFactory() {}
+
+    @Override
+    public String getType() {
+        return "call-edges";
+    }
+
+    @Override
+    public TraceGenerator createTraceGenerator(JsonElement config) {
+        logger.config(() -> formatMessage("EntryExitTraceType", getType()));
+        final AggregateFile f = AggregateFile.parse(config, DEFAULT_FILE_NAME, DUMP_INTERVAL_NAME, DEFAULT_DUMP_INTERVAL);
+        return new TraceGeneratorImpl(f.getFile(), f.getInterval());
+    }
+}
@@ -0,0 +1,78 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen.edges;
+
+import java.io.File;
+import java.lang.instrument.Instrumentation;
+import java.util.function.IntConsumer;
+
+import com.ibm.minerva.instrumenter.codegen.AggregateFile;
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionLocation;
+import com.ibm.minerva.instrumenter.runtime.CallEdgeCounter;
+
+public final class TraceGeneratorImpl implements TraceGenerator {
+    
+    private static final String COUNTER_CLASS = "com.ibm.minerva.instrumenter.runtime.CallEdgeCounter";
+    
+    private final File file;
+    private final long dumpInterval;
+    
+    public TraceGeneratorImpl(File file, long dumpInterval) {
+        this.file = file;
+        this.dumpInterval = dumpInterval;
+    }
+    
+    @Override
+    public void initialize(Instrumentation inst) {
+        AggregateFile.start(inst, file, "CallEdgeFile", "CallEdgeFileUnwritable", 
+                errorHandler -> CallEdgeCounter.start(file, dumpInterval, errorHandler));
+    }
+
+    @Override
+    public IntConsumer createProbeHandler(MethodIdRegistry methodIds, TraceInjectionLocation location) {
+        return location == TraceInjectionLocation.ENTRY ? CallEdgeCounter::enter : CallEdgeCounter::exit;
+    }
+
+    @Override
+    public String generateSourceSnippet(TraceInjectionContext context) {
+        return AggregateFile.generateSourceSnippet(COUNTER_CLASS, context);
+    }
+    
+    @Override
+    public ProbeTemplate generateProbeTemplate(TraceInjectionContext context) {
+        return AggregateFile.generateProbeTemplate(COUNTER_CLASS, context);
+    }
+    
+    @Override
+    public File getMethodDictionaryFile() {
+        return AggregateFile.getMethodDictionaryFile(file);
+    }
+    
+    File getFile() {
+        return file;
+    }
+    
+    long getDumpInterval() {
+        return dumpInterval;
+    }
+}
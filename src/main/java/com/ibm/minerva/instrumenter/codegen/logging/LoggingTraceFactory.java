@@ -31,6 +31,8 @@ public final class LoggingTraceFactory implements TraceGeneratorFactory {
     
     private static final Logger logger = LoggingUtil.getLogger(LoggingTraceFactory.class);
     
+    private static final String LEGACY_NAME = "legacy";
+    
     public LoggingTraceFactory() {}
 
     @Override
@@ -41,6 +43,11 @@ public final class LoggingTraceFactory implements TraceGeneratorFactory {
     @Override
     public TraceGenerator createTraceGenerator(JsonElement config) {
         logger.config(() -> formatMessage("EntryExitTraceType", getType()));
-        return new TraceGeneratorImpl();
+        boolean legacy = false;
+        if (config != null && config.isJsonObject()) {
+            final JsonElement e = config.getAsJsonObject().get(LEGACY_NAME);
+            legacy = e != null && e.isJsonPrimitive() && e.getAsBoolean();
+        }
+        return new TraceGeneratorImpl(legacy);
     }
 }
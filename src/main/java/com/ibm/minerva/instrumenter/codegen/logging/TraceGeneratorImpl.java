@@ -18,22 +18,162 @@
 
 package com.ibm.minerva.instrumenter.codegen.logging;
 
+import java.lang.instrument.Instrumentation;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.MethodIdTable;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
+import com.ibm.minerva.instrumenter.codegen.RuntimeSupport;
 import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
 import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
 import com.ibm.minerva.instrumenter.codegen.TraceInjectionLocation;
 import com.ibm.minerva.instrumenter.filter.ClassProcessor;
 import com.ibm.minerva.instrumenter.filter.MethodProcessor;
+import com.ibm.minerva.instrumenter.runtime.LoggingTracer;
+
+import javassist.bytecode.ClassFile;
 
 public final class TraceGeneratorImpl implements TraceGenerator {
     
-    public TraceGeneratorImpl() {}
+    private static final String TRACER_CLASS = "com.ibm.minerva.instrumenter.runtime.LoggingTracer";
+    
+    private final boolean legacy;
+    
+    public TraceGeneratorImpl() {
+        this(false);
+    }
+    
+    // The legacy probes look up the Logger and build the thread id on every call.
+    public TraceGeneratorImpl(boolean legacy) {
+        this.legacy = legacy;
+    }
+    
+    public boolean isLegacy() {
+        return legacy;
+    }
+    
+    @Override
+    public void initialize(Instrumentation inst) {
+        if (!legacy && inst != null) {
+            RuntimeSupport.appendToBootstrapClassLoaderSearch(inst);
+        }
+    }
+
+    @Override
+    public void traceMethodThrottled(MethodIdRegistry.Method method) {
+        final Logger logger = Logger.getLogger(method.getClassName());
+        if (logger.isLoggable(Level.FINER)) {
+            logger.logp(Level.FINER, method.getClassName(), method.getMethodName(), "THROTTLED");
+        }
+    }
+
+    // The table only saves the registry's map lookup, a method already has its class and method name.
+    @Override
+    public IntConsumer createProbeHandler(MethodIdRegistry methodIds, TraceInjectionLocation location) {
+        if (legacy) {
+            return null;
+        }
+        final MethodIdTable<MethodIdRegistry.Method> methods = new MethodIdTable<>(methodIds, m -> m);
+        switch (location) {
+            case ENTRY:
+                return id -> {
+                    final MethodIdRegistry.Method m = methods.get(id);
+                    if (m != null) {
+                        LoggingTracer.entering(m.getClassName(), m.getMethodName());
+                    }
+                };
+            case EXCEPTION:
+                return id -> {
+                    final MethodIdRegistry.Method m = methods.get(id);
+                    if (m != null) {
+                        LoggingTracer.throwing(m.getClassName(), m.getMethodName());
+                    }
+                };
+            default:
+                return id -> {
+                    final MethodIdRegistry.Method m = methods.get(id);
+                    if (m != null) {
+                        LoggingTracer.exiting(m.getClassName(), m.getMethodName());
+                    }
+                };
+        }
+    }
 
     @Override
     public String generateSourceSnippet(TraceInjectionContext context) {
         final ClassProcessor classProcessor = context.getClassProcessor();
         final MethodProcessor methodProcessor = context.getMethodProcessor();
         final TraceInjectionLocation til = context.getTraceInjectionLocation();
+        if (!legacy) {
+            if (hasClassLiterals(classProcessor)) {
+                // LoggingTracer.entering(type.class,className,methodName) / LoggingTracer.exiting(type.class,className,methodName)
+                return TRACER_CLASS + "." + til.getLoggingName() + "(" + classProcessor.getCtClass().getName() + ".class,\"" 
+                        + classProcessor.getClassName() + "\",\"" + methodProcessor.getMethodName() + "\");";
+            }
+            // LoggingTracer.entering(className,methodName) / LoggingTracer.exiting(className,methodName)
+            return TRACER_CLASS + "." + til.getLoggingName() + "(\"" + classProcessor.getClassName() + "\",\"" + methodProcessor.getMethodName() + "\");";
+        }
+        if (til == TraceInjectionLocation.EXCEPTION) {
+            // Logger.getLogger().logp(FINER,className,methodName,"THROW {0}",threadId)
+            return "java.util.logging.Logger.getLogger(\"" + classProcessor.getClassName() + "\").logp(java.util.logging.Level.FINER,\"" + classProcessor.getClassName() + "\",\"" + methodProcessor.getMethodName() + "\",\"THROW {0}\",java.lang.String.valueOf(java.lang.Thread.currentThread().getId()));";
+        }
         // Logger.getLogger().entering(className,methodName,threadId) / Logger.getLogger().exiting(className,methodName,threadId)
         return "java.util.logging.Logger.getLogger(\"" + classProcessor.getClassName() + "\")." + til.getLoggingName() + "(\"" + classProcessor.getClassName() + "\",\"" + methodProcessor.getMethodName() + "\",java.lang.String.valueOf(java.lang.Thread.currentThread().getId()));";
     }
+    
+    @Override
+    public ProbeTemplate generateProbeTemplate(TraceInjectionContext context) {
+        final ClassProcessor classProcessor = context.getClassProcessor();
+        final MethodProcessor methodProcessor = context.getMethodProcessor();
+        final TraceInjectionLocation til = context.getTraceInjectionLocation();
+        if (!legacy) {
+            if (hasClassLiterals(classProcessor)) {
+                return ProbeTemplate.builder()
+                        .pushClass(classProcessor.getCtClass().getName())
+                        .pushString(classProcessor.getClassName())
+                        .pushString(methodProcessor.getMethodName())
+                        .invokeStatic(TRACER_CLASS, til.getLoggingName(), "(Ljava/lang/Class;Ljava/lang/String;Ljava/lang/String;)V")
+                        .build();
+            }
+            return ProbeTemplate.builder()
+                    .pushString(classProcessor.getClassName())
+                    .pushString(methodProcessor.getMethodName())
+                    .invokeStatic(TRACER_CLASS, til.getLoggingName(), "(Ljava/lang/String;Ljava/lang/String;)V")
+                    .build();
+        }
+        if (til == TraceInjectionLocation.EXCEPTION) {
+            return ProbeTemplate.builder()
+                    .pushString(classProcessor.getClassName())
+                    .invokeStatic("java/util/logging/Logger", "getLogger", "(Ljava/lang/String;)Ljava/util/logging/Logger;")
+                    .getStatic("java/util/logging/Level", "FINER", "Ljava/util/logging/Level;")
+                    .pushString(classProcessor.getClassName())
+                    .pushString(methodProcessor.getMethodName())
+                    .pushString("THROW {0}")
+                    .invokeStatic("java/lang/Thread", "currentThread", "()Ljava/lang/Thread;")
+                    .invokeVirtual("java/lang/Thread", "getId", "()J")
+                    .invokeStatic("java/lang/String", "valueOf", "(J)Ljava/lang/String;")
+                    .invokeVirtual("java/util/logging/Logger", "logp", 
+                            "(Ljava/util/logging/Level;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/Object;)V")
+                    .build();
+        }
+        return ProbeTemplate.builder()
+                .pushString(classProcessor.getClassName())
+                .invokeStatic("java/util/logging/Logger", "getLogger", "(Ljava/lang/String;)Ljava/util/logging/Logger;")
+                .pushString(classProcessor.getClassName())
+                .pushString(methodProcessor.getMethodName())
+                .invokeStatic("java/lang/Thread", "currentThread", "()Ljava/lang/Thread;")
+                .invokeVirtual("java/lang/Thread", "getId", "()J")
+                .invokeStatic("java/lang/String", "valueOf", "(J)Ljava/lang/String;")
+                .invokeVirtual("java/util/logging/Logger", til.getLoggingName(), "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/Object;)V")
+                .build();
+    }
+    
+    // The probes pass the traced class so that its Logger is kept in a ClassValue.
+    // Class file versions before Java 5 cannot load a class literal with ldc.
+    private static boolean hasClassLiterals(ClassProcessor classProcessor) {
+        return classProcessor.getCtClass().getClassFile2().getMajorVersion() >= ClassFile.JAVA_5;
+    }
 }
@@ -23,6 +23,7 @@ import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
 import java.util.logging.Logger;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.ibm.minerva.instrumenter.LoggingUtil;
 import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
 import com.ibm.minerva.instrumenter.codegen.TraceGeneratorFactory;
@@ -31,6 +32,15 @@ public final class PrintTraceFactory implements TraceGeneratorFactory {
     
     private static final Logger logger = LoggingUtil.getLogger(PrintTraceFactory.class);
     
+    // Copies of the runtime's defaults (see RuntimeSupport).
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+    static final long DEFAULT_FLUSH_INTERVAL = 100;
+    
+    private static final String STREAM_NAME = "stream";
+    private static final String LEGACY_NAME = "legacy";
+    private static final String BUFFER_SIZE_NAME = "bufferSize";
+    private static final String FLUSH_INTERVAL_NAME = "flushInterval";
+    
     public PrintTraceFactory() {}
 
     @Override
@@ -42,13 +52,33 @@ public final class PrintTraceFactory implements TraceGeneratorFactory {
     public TraceGenerator createTraceGenerator(JsonElement config) {
         logger.config(() -> formatMessage("EntryExitTraceType", getType()));
         // Select System.out or System.err for output based on the configuration.
-        SystemPrintStream stream = SystemPrintStream.OUT;
-        if (config != null && config.isJsonPrimitive()) {
-            final String streamType = config.getAsString();
-            if (SystemPrintStream.ERR.getName().equals(streamType)) {
-                stream = SystemPrintStream.ERR;
+        String streamType = null;
+        boolean legacy = false;
+        int bufferSize = DEFAULT_BUFFER_SIZE;
+        long flushInterval = DEFAULT_FLUSH_INTERVAL;
+        if (config != null) {
+            if (config.isJsonPrimitive()) {
+                streamType = config.getAsString();
+            }
+            else if (config.isJsonObject()) {
+                final JsonObject o = config.getAsJsonObject();
+                JsonElement e = o.get(STREAM_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    streamType = e.getAsString();
+                }
+                e = o.get(LEGACY_NAME);
+                legacy = e != null && e.isJsonPrimitive() && e.getAsBoolean();
+                e = o.get(BUFFER_SIZE_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    bufferSize = e.getAsInt();
+                }
+                e = o.get(FLUSH_INTERVAL_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    flushInterval = e.getAsLong();
+                }
             }
         }
-        return new TraceGeneratorImpl(stream);
+        final SystemPrintStream stream = SystemPrintStream.ERR.getName().equals(streamType) ? SystemPrintStream.ERR : SystemPrintStream.OUT;
+        return new TraceGeneratorImpl(stream, legacy, bufferSize, flushInterval);
     }
 }
@@ -18,23 +18,105 @@
 
 package com.ibm.minerva.instrumenter.codegen.println;
 
+import java.lang.instrument.Instrumentation;
+import java.util.function.IntConsumer;
+
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.MethodIdTable;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
+import com.ibm.minerva.instrumenter.codegen.RuntimeSupport;
 import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
 import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
 import com.ibm.minerva.instrumenter.codegen.TraceInjectionLocation;
 import com.ibm.minerva.instrumenter.filter.ApplicationProcessor;
 import com.ibm.minerva.instrumenter.filter.ClassProcessor;
 import com.ibm.minerva.instrumenter.filter.MethodProcessor;
+import com.ibm.minerva.instrumenter.runtime.PrintTracer;
 
 public final class TraceGeneratorImpl implements TraceGenerator {
     
+    private static final String TRACER_CLASS = "com.ibm.minerva.instrumenter.runtime.PrintTracer";
+    
     private final SystemPrintStream stream;
+    private final boolean legacy;
+    private final int bufferSize;
+    private final long flushInterval;
     
     public TraceGeneratorImpl(SystemPrintStream stream) {
+        this(stream, false, PrintTraceFactory.DEFAULT_BUFFER_SIZE, PrintTraceFactory.DEFAULT_FLUSH_INTERVAL);
+    }
+    
+    // The legacy probes build each line with string concatenation and call println.
+    public TraceGeneratorImpl(SystemPrintStream stream, boolean legacy, int bufferSize, long flushInterval) {
         this.stream = stream;
+        this.legacy = legacy;
+        this.bufferSize = bufferSize;
+        this.flushInterval = flushInterval;
+    }
+    
+    public boolean isLegacy() {
+        return legacy;
+    }
+    
+    @Override
+    public void initialize(Instrumentation inst) {
+        if (!legacy) {
+            if (inst != null) {
+                RuntimeSupport.appendToBootstrapClassLoaderSearch(inst);
+            }
+            PrintTracer.configure(bufferSize, flushInterval);
+        }
+    }
+
+    // Printed as a line like those of the probes, with "Throttled" instead of "Entering"/"Exiting".
+    @Override
+    public void traceMethodThrottled(MethodIdRegistry.Method method) {
+        final String prefix = "|" + method.getVersion() + "|";
+        final String suffix = "],Throttled " + method.getSourcePath() + "::" + method.getClassName() + "::" + method.getMethodSignature() + "|";
+        if (!legacy) {
+            if (stream == SystemPrintStream.ERR) {
+                PrintTracer.err(prefix + suffix, prefix.length());
+            }
+            else {
+                PrintTracer.out(prefix + suffix, prefix.length());
+            }
+        }
+        else {
+            final String line = prefix + System.currentTimeMillis() + ",[" + Thread.currentThread().getId() + suffix;
+            (stream == SystemPrintStream.ERR ? System.err : System.out).println(line);
+        }
+    }
+
+    // The constant text of a method's lines is built on its first call.
+    @Override
+    public IntConsumer createProbeHandler(MethodIdRegistry methodIds, TraceInjectionLocation location) {
+        if (legacy) {
+            return null;
+        }
+        final MethodIdTable<Line> lines = new MethodIdTable<>(methodIds, m -> new Line(m, location));
+        if (stream == SystemPrintStream.ERR) {
+            return id -> {
+                final Line line = lines.get(id);
+                if (line != null) {
+                    PrintTracer.err(line.text, line.split);
+                }
+            };
+        }
+        return id -> {
+            final Line line = lines.get(id);
+            if (line != null) {
+                PrintTracer.out(line.text, line.split);
+            }
+        };
     }
 
     @Override
     public String generateSourceSnippet(TraceInjectionContext context) {
+        if (!legacy) {
+            // PrintTracer.out([constant text],[index of the time]) / PrintTracer.err([constant text],[index of the time])
+            final String prefix = getPrefix(context);
+            return TRACER_CLASS + "." + stream.getName() + "(\"" + prefix + getSuffix(context) + "\"," + prefix.length() + ");";
+        }
         final ApplicationProcessor appProcessor = context.getApplicationProcessor();
         final ClassProcessor classProcessor = context.getClassProcessor();
         final MethodProcessor methodProcessor = context.getMethodProcessor();
@@ -42,4 +124,64 @@ public final class TraceGeneratorImpl implements TraceGenerator {
         // System.out.println([entry/exit instrumentation])
         return "java.lang.System." + stream.getName() + ".println(\"|" + appProcessor.getInstrumentationVersion() + "|\"+java.lang.String.valueOf(java.lang.System.currentTimeMillis())+\",[\"+java.lang.String.valueOf(java.lang.Thread.currentThread().getId())+\"],\"+\"" + til.getPrintName() + " " + classProcessor.getSourcePath() + "::" + classProcessor.getClassName() + "::" + methodProcessor.getMethodSignature() + "|\");";
     }
+    
+    @Override
+    public ProbeTemplate generateProbeTemplate(TraceInjectionContext context) {
+        if (!legacy) {
+            final String prefix = getPrefix(context);
+            return ProbeTemplate.builder()
+                    .pushString(prefix + getSuffix(context))
+                    .pushInt(prefix.length())
+                    .invokeStatic(TRACER_CLASS, stream.getName(), "(Ljava/lang/String;I)V")
+                    .build();
+        }
+        final ApplicationProcessor appProcessor = context.getApplicationProcessor();
+        final ClassProcessor classProcessor = context.getClassProcessor();
+        final MethodProcessor methodProcessor = context.getMethodProcessor();
+        final TraceInjectionLocation til = context.getTraceInjectionLocation();
+        // Same output as the source snippet, built with String.concat.
+        return ProbeTemplate.builder()
+                .getStatic("java/lang/System", stream.getName(), "Ljava/io/PrintStream;")
+                .pushString("|" + appProcessor.getInstrumentationVersion() + "|")
+                .invokeStatic("java/lang/System", "currentTimeMillis", "()J")
+                .invokeStatic("java/lang/String", "valueOf", "(J)Ljava/lang/String;")
+                .invokeVirtual("java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;")
+                .pushString(",[")
+                .invokeVirtual("java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;")
+                .invokeStatic("java/lang/Thread", "currentThread", "()Ljava/lang/Thread;")
+                .invokeVirtual("java/lang/Thread", "getId", "()J")
+                .invokeStatic("java/lang/String", "valueOf", "(J)Ljava/lang/String;")
+                .invokeVirtual("java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;")
+                .pushString("]," + til.getPrintName() + " " + classProcessor.getSourcePath() + "::" + classProcessor.getClassName() + "::" + methodProcessor.getMethodSignature() + "|")
+                .invokeVirtual("java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;")
+                .invokeVirtual("java/io/PrintStream", "println", "(Ljava/lang/String;)V")
+                .build();
+    }
+    
+    // The constant text before the time.
+    private static String getPrefix(TraceInjectionContext context) {
+        return "|" + context.getApplicationProcessor().getInstrumentationVersion() + "|";
+    }
+    
+    // The constant text after the thread id.
+    private static String getSuffix(TraceInjectionContext context) {
+        final ClassProcessor classProcessor = context.getClassProcessor();
+        final MethodProcessor methodProcessor = context.getMethodProcessor();
+        final TraceInjectionLocation til = context.getTraceInjectionLocation();
+        return "]," + til.getPrintName() + " " + classProcessor.getSourcePath() + "::" + classProcessor.getClassName() + "::" + methodProcessor.getMethodSignature() + "|";
+    }
+    
+    // The constant text of a method's line, as passed by its probe, and the index of the time.
+    private static final class Line {
+        
+        private final String text;
+        private final int split;
+        
+        private Line(MethodIdRegistry.Method method, TraceInjectionLocation til) {
+            final String prefix = "|" + method.getVersion() + "|";
+            this.text = prefix + "]," + til.getPrintName() + " " + method.getSourcePath() + "::" 
+                    + method.getClassName() + "::" + method.getMethodSignature() + "|";
+            this.split = prefix.length();
+        }
+    }
 }
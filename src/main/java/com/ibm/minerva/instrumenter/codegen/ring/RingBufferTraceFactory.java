@@ -0,0 +1,82 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen.ring;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.ibm.minerva.instrumenter.Agent;
+import com.ibm.minerva.instrumenter.LoggingUtil;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceGeneratorFactory;
+
+public final class RingBufferTraceFactory implements TraceGeneratorFactory {
+    
+    private static final Logger logger = LoggingUtil.getLogger(RingBufferTraceFactory.class);
+    
+    static final String DEFAULT_FILE_NAME = "minerva-trace.bin";
+    // Copies of the runtime's defaults (see RuntimeSupport).
+    static final int DEFAULT_BUFFER_SIZE = 4096;
+    static final long DEFAULT_FLUSH_INTERVAL = 100;
+    
+    private static final String FILE_NAME = "file";
+    private static final String BUFFER_SIZE_NAME = "bufferSize";
+    private static final String FLUSH_INTERVAL_NAME = "flushInterval";
+    
+    public RingBufferTraceFactory() {}
+
+    @Override
+    public String getType() {
+        return "ring-buffer";
+    }
+
+    @Override
+    public TraceGenerator createTraceGenerator(JsonElement config) {
+        logger.config(() -> formatMessage("EntryExitTraceType", getType()));
+        String fileName = DEFAULT_FILE_NAME;
+        int bufferSize = DEFAULT_BUFFER_SIZE;
+        long flushInterval = DEFAULT_FLUSH_INTERVAL;
+        if (config != null) {
+            if (config.isJsonPrimitive()) {
+                fileName = config.getAsString();
+            }
+            else if (config.isJsonObject()) {
+                final JsonObject o = config.getAsJsonObject();
+                JsonElement e = o.get(FILE_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    fileName = e.getAsString();
+                }
+                e = o.get(BUFFER_SIZE_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    bufferSize = e.getAsInt();
+                }
+                e = o.get(FLUSH_INTERVAL_NAME);
+                if (e != null && e.isJsonPrimitive()) {
+                    flushInterval = e.getAsLong();
+                }
+            }
+        }
+        final File file = Agent.resolvePath(fileName);
+        return new TraceGeneratorImpl(file, bufferSize, flushInterval);
+    }
+}
@@ -0,0 +1,120 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen.ring;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+import com.ibm.minerva.instrumenter.LoggingUtil;
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
+import com.ibm.minerva.instrumenter.codegen.RuntimeSupport;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionLocation;
+import com.ibm.minerva.instrumenter.runtime.RingRecorder;
+
+public final class TraceGeneratorImpl implements TraceGenerator {
+    
+    private static final Logger logger = LoggingUtil.getLogger(TraceGeneratorImpl.class);
+    
+    private static final String RECORDER_CLASS = "com.ibm.minerva.instrumenter.runtime.RingRecorder";
+    
+    private final File file;
+    private final int bufferSize;
+    private final long flushInterval;
+    
+    public TraceGeneratorImpl(File file, int bufferSize, long flushInterval) {
+        this.file = file;
+        this.bufferSize = bufferSize;
+        this.flushInterval = flushInterval;
+    }
+    
+    @Override
+    public void initialize(Instrumentation inst) {
+        if (inst != null) {
+            RuntimeSupport.appendToBootstrapClassLoaderSearch(inst);
+        }
+        logger.info(() -> formatMessage("RingBufferTraceFile", file.getAbsolutePath()));
+        try {
+            RingRecorder.start(file, bufferSize, flushInterval, 
+                    e -> logger.severe(() -> formatMessage("RingBufferTraceFileUnwritable", file.getAbsolutePath(), e.getMessage())));
+        }
+        catch (IOException e) {
+            logger.severe(() -> formatMessage("RingBufferTraceFileUnwritable", file.getAbsolutePath(), e.getMessage()));
+        }
+    }
+
+    @Override
+    public void traceMethodThrottled(MethodIdRegistry.Method method) {
+        RingRecorder.throttled(method.getId());
+    }
+
+    @Override
+    public IntConsumer createProbeHandler(MethodIdRegistry methodIds, TraceInjectionLocation location) {
+        switch (location) {
+            case ENTRY:
+                return RingRecorder::enter;
+            case EXCEPTION:
+                return RingRecorder::exception;
+            default:
+                return RingRecorder::exit;
+        }
+    }
+
+    @Override
+    public String generateSourceSnippet(TraceInjectionContext context) {
+        // com.ibm.minerva.instrumenter.runtime.RingRecorder.enter([method id])
+        return RECORDER_CLASS + "." + getRecorderMethod(context) + "(" + context.getMethodId() + ");";
+    }
+    
+    @Override
+    public ProbeTemplate generateProbeTemplate(TraceInjectionContext context) {
+        return ProbeTemplate.builder()
+                .pushInt(context.getMethodId())
+                .invokeStatic(RECORDER_CLASS, getRecorderMethod(context), "(I)V")
+                .build();
+    }
+    
+    // The method ids used in the trace file are listed in [trace file].methods.
+    @Override
+    public File getMethodDictionaryFile() {
+        return new File(file.getPath() + ".methods");
+    }
+    
+    File getFile() {
+        return file;
+    }
+    
+    private static String getRecorderMethod(TraceInjectionContext context) {
+        switch (context.getTraceInjectionLocation()) {
+            case ENTRY:
+                return "enter";
+            case EXCEPTION:
+                return "exception";
+            default:
+                return "exit";
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.codegen.tree;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.util.logging.Logger;
+
+import com.google.gson.JsonElement;
+import com.ibm.minerva.instrumenter.LoggingUtil;
+import com.ibm.minerva.instrumenter.codegen.AggregateFile;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceGeneratorFactory;
+
+public final class ContextTreeTraceFactory implements TraceGeneratorFactory {
+    
+    private static final Logger logger = LoggingUtil.getLogger(ContextTreeTraceFactory.class);
+    
+    static final String DEFAULT_FILE_NAME = "minerva-tree.bin";
+    // Copies of the runtime's defaults (see RuntimeSupport).
+    static final int DEFAULT_MAX_NODES = 16384;
+    static final long DEFAULT_FLUSH_INTERVAL = 10000;
+    
+    private static final String MAX_NODES_NAME = "maxNodes";
+    private static final String FLUSH_INTERVAL_NAME = "flushInterval";
+    
+    public ContextTreeTraceFactory() {}
+
+    @Override
+    public String getType() {
+        return "context-tree";
+    }
+
+    @Override
+    public TraceGenerator createTraceGenerator(JsonElement config) {
+        logger.config(() -> formatMessage("EntryExitTraceType", getType()));
+        final AggregateFile f = AggregateFile.parse(config, DEFAULT_FILE_NAME, FLUSH_INTERVAL_NAME, DEFAULT_FLUSH_INTERVAL);
+        return new TraceGeneratorImpl(f.getFile(), f.getInt(MAX_NODES_NAME, DEFAULT_MAX_NODES), f.getInterval());
+    }
+}
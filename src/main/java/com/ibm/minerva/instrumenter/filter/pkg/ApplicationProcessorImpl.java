@@ -27,15 +27,19 @@ import javassist.CtClass;
 
 public final class ApplicationProcessorImpl implements ApplicationProcessor {
     
-    private final Set<String> packages;
+    private final PackagePrefixMatcher packages;
     
     public ApplicationProcessorImpl(Set<String> packages) {
+        this(PackagePrefixMatcher.compile(packages));
+    }
+    
+    public ApplicationProcessorImpl(PackagePrefixMatcher packages) {
         this.packages = packages;
     }
 
     @Override
     public boolean acceptClass(String className) {
-        return packages.stream().anyMatch(x -> className.startsWith(x));
+        return packages.matches(className);
     }
 
     @Override
@@ -27,6 +27,7 @@ import java.util.logging.Logger;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.ibm.minerva.instrumenter.LoggingUtil;
 import com.ibm.minerva.instrumenter.filter.ApplicationProcessor;
 import com.ibm.minerva.instrumenter.filter.ApplicationProcessorFactory;
@@ -35,6 +36,9 @@ public final class PackageFilterFactory implements ApplicationProcessorFactory {
     
     private static final Logger logger = LoggingUtil.getLogger(PackageFilterFactory.class);
     
+    private static final String INCLUDE_NAME = "include";
+    private static final String EXCLUDE_NAME = "exclude";
+    
     public PackageFilterFactory() {}
     
     @Override
@@ -45,6 +49,37 @@ public final class PackageFilterFactory implements ApplicationProcessorFactory {
     @Override
     public ApplicationProcessor createApplicationProcessor(JsonElement config) {
         Set<String> packages = Collections.emptySet();
+        Set<String> excludedPackages = Collections.emptySet();
+        if (config != null) {
+            // Object with include/exclude lists
+            if (config.isJsonObject()) {
+                final JsonObject o = config.getAsJsonObject();
+                packages = toJVMPackageNames(o.get(INCLUDE_NAME));
+                excludedPackages = toJVMPackageNames(o.get(EXCLUDE_NAME));
+            }
+            // Array or Primitive
+            else {
+                packages = toJVMPackageNames(config);
+            }
+        }
+        final Set<String> _packages = packages;
+        logger.config(() -> formatMessage("AgentPackageFilter", _packages));
+        if (!excludedPackages.isEmpty()) {
+            final Set<String> _excludedPackages = excludedPackages;
+            logger.config(() -> formatMessage("AgentPackageFilterExclude", _excludedPackages));
+        }
+        if (!packages.isEmpty()) {
+            return createApplicationProcessor(packages, excludedPackages);
+        }
+        return null;
+    }
+    
+    private ApplicationProcessor createApplicationProcessor(Set<String> packages, Set<String> excludedPackages) {
+        // Compile the prefixes once so that each class load is a single trie walk.
+        return new ApplicationProcessorImpl(PackagePrefixMatcher.compile(packages, excludedPackages));
+    }
+    
+    private Set<String> toJVMPackageNames(JsonElement config) {
         if (config != null) {
             // Array
             if (config.isJsonArray()) {
@@ -59,27 +94,18 @@ public final class PackageFilterFactory implements ApplicationProcessorFactory {
                         }
                     }
                 });
-                packages = pkgs;
+                return pkgs;
             }
             // Primitive
             else if (config.isJsonPrimitive()) {
                 // Convert package name from x.y.z to x/y/z/ for use with ClassFileTransformer
                 final String pkg = toJVMPackageName(config);
                 if (pkg != null) {
-                    packages = Collections.singleton(pkg);
+                    return Collections.singleton(pkg);
                 }
             }
         }
-        final Set<String> _packages = packages;
-        logger.config(() -> formatMessage("AgentPackageFilter", _packages));
-        if (!packages.isEmpty()) {
-            return createApplicationProcessor(packages);
-        }
-        return null;
-    }
-    
-    private ApplicationProcessor createApplicationProcessor(Set<String> packages) {
-        return new ApplicationProcessorImpl(packages);
+        return Collections.emptySet();
     }
     
     private String toJVMPackageName(JsonElement e) {
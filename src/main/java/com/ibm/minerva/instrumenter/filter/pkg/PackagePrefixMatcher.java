@@ -0,0 +1,170 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.pkg;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+// A prefix trie over JVM internal class names (e.g. x/y/z/MyClass) compiled
+// into flat arrays. Each prefix is either an include or an exclude and the
+// longest prefix matching a class name decides whether it is accepted.
+// Lookups walk the class name once and do not allocate.
+public final class PackagePrefixMatcher {
+
+    private static final byte NONE = 0;
+    private static final byte INCLUDE = 1;
+    private static final byte EXCLUDE = 2;
+
+    // Per node: index of its first edge and the number of edges.
+    private final int[] edgeStart;
+    private final int[] edgeCount;
+    // Per node: the verdict if a prefix ends at this node.
+    private final byte[] verdict;
+    // Per edge (grouped by node, sorted by character): label and target node.
+    private final char[] edgeChar;
+    private final int[] edgeTarget;
+
+    private final int prefixCount;
+
+    private PackagePrefixMatcher(int[] edgeStart, int[] edgeCount, byte[] verdict,
+            char[] edgeChar, int[] edgeTarget, int prefixCount) {
+        this.edgeStart = edgeStart;
+        this.edgeCount = edgeCount;
+        this.verdict = verdict;
+        this.edgeChar = edgeChar;
+        this.edgeTarget = edgeTarget;
+        this.prefixCount = prefixCount;
+    }
+
+    public static PackagePrefixMatcher compile(Collection<String> includes) {
+        return compile(includes, Collections.emptySet());
+    }
+
+    public static PackagePrefixMatcher compile(Collection<String> includes, Collection<String> excludes) {
+        final Node root = new Node();
+        int count = 0;
+        for (String prefix : includes) {
+            count += root.add(prefix, INCLUDE);
+        }
+        // Excludes are added last so that they win if the same prefix is listed twice.
+        for (String prefix : excludes) {
+            count += root.add(prefix, EXCLUDE);
+        }
+        // Flatten the trie breadth first so that each node's edges are contiguous.
+        final List<Node> nodes = new ArrayList<>();
+        nodes.add(root);
+        int edges = 0;
+        for (int i = 0; i < nodes.size(); ++i) {
+            final Node node = nodes.get(i);
+            node.index = i;
+            nodes.addAll(node.children.values());
+            edges += node.children.size();
+        }
+        final int[] edgeStart = new int[nodes.size()];
+        final int[] edgeCount = new int[nodes.size()];
+        final byte[] verdict = new byte[nodes.size()];
+        final char[] edgeChar = new char[edges];
+        final int[] edgeTarget = new int[edges];
+        int edge = 0;
+        for (Node node : nodes) {
+            edgeStart[node.index] = edge;
+            edgeCount[node.index] = node.children.size();
+            verdict[node.index] = node.verdict;
+            for (Node child : node.children.values()) {
+                edgeChar[edge] = child.label;
+                edgeTarget[edge] = child.index;
+                ++edge;
+            }
+        }
+        return new PackagePrefixMatcher(edgeStart, edgeCount, verdict, edgeChar, edgeTarget, count);
+    }
+
+    public boolean matches(String className) {
+        byte result = verdict[0];
+        int node = 0;
+        final int length = className.length();
+        for (int i = 0; i < length; ++i) {
+            node = child(node, className.charAt(i));
+            if (node < 0) {
+                break;
+            }
+            final byte v = verdict[node];
+            if (v != NONE) {
+                result = v;
+            }
+        }
+        return result == INCLUDE;
+    }
+
+    public boolean isEmpty() {
+        return prefixCount == 0;
+    }
+
+    public int size() {
+        return prefixCount;
+    }
+
+    // Binary search for the edge labeled c among the edges of the given node.
+    private int child(int node, char c) {
+        int low = edgeStart[node];
+        int high = low + edgeCount[node] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final char midChar = edgeChar[mid];
+            if (midChar < c) {
+                low = mid + 1;
+            }
+            else if (midChar > c) {
+                high = mid - 1;
+            }
+            else {
+                return edgeTarget[mid];
+            }
+        }
+        return -1;
+    }
+
+    // Mutable trie node only used while compiling.
+    private static final class Node {
+        private final TreeMap<Character,Node> children = new TreeMap<>();
+        private char label;
+        private byte verdict = NONE;
+        private int index;
+
+        private int add(String prefix, byte v) {
+            Node node = this;
+            for (int i = 0; i < prefix.length(); ++i) {
+                final char c = prefix.charAt(i);
+                Node next = node.children.get(c);
+                if (next == null) {
+                    next = new Node();
+                    next.label = c;
+                    node.children.put(c, next);
+                }
+                node = next;
+            }
+            final boolean added = node.verdict == NONE;
+            node.verdict = v;
+            return added ? 1 : 0;
+        }
+    }
+}
@@ -23,13 +23,10 @@ import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
 import java.io.File;
 import java.util.logging.Logger;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.ibm.minerva.instrumenter.Agent;
 import com.ibm.minerva.instrumenter.LoggingUtil;
 import com.ibm.minerva.instrumenter.filter.ApplicationProcessor;
 import com.ibm.minerva.instrumenter.filter.ClassProcessor;
+import com.ibm.minerva.instrumenter.filter.pkg.PackagePrefixMatcher;
 
 import javassist.CtClass;
 
@@ -40,91 +37,80 @@ public class ApplicationProcessorImpl implements ApplicationProcessor {
     private static final String SYM_TABLE_FILE_NAME = "symTable.json";
     private static final String REF_TABLE_FILE_NAME = "refTable.json";
     
-    private static final String REF_TABLE_FQCN_NAME = "FQCN";
-    private static final String REF_TABLE_VERSION_NAME = "Version";
-    
-    private final JsonObject symTable;
-    private final JsonObject refTable;
+    private final TableIndex tableIndex;
+    // Packages which contain at least one class in the tables. Classes in
+    // other packages (e.g. java/, jdk/ and sun/) are rejected by this alone.
+    private final PackagePrefixMatcher packages;
     
     public ApplicationProcessorImpl(File tableDir) {
+        this(loadTableIndex(tableDir));
+    }
+    
+    public ApplicationProcessorImpl(TableIndex tableIndex) {
+        this.tableIndex = tableIndex;
+        this.packages = tableIndex != null ? PackagePrefixMatcher.compile(tableIndex.getPackagePrefixes()) : null;
+    }
+    
+    // Whether the directory contains both tables.
+    static boolean hasTables(File tableDir) {
+        return new File(tableDir, SYM_TABLE_FILE_NAME).isFile() && new File(tableDir, REF_TABLE_FILE_NAME).isFile();
+    }
+    
+    static TableIndex loadTableIndex(File tableDir) {
         final File symTableFile = new File(tableDir, SYM_TABLE_FILE_NAME);
-        JsonObject _symTable = null;
-        if (symTableFile.exists()) {
-            _symTable = Agent.parseJsonDocument(symTableFile);
-        }
-        else {
+        boolean exists = true;
+        if (!symTableFile.exists()) {
             logger.severe(() -> formatMessage("FileDoesNotExist",
                     symTableFile.getAbsolutePath()));
+            exists = false;
         }
         final File refTableFile = new File(tableDir, REF_TABLE_FILE_NAME);
-        JsonObject _refTable = null;
-        if (refTableFile.exists()) {
-            _refTable = Agent.parseJsonDocument(refTableFile);
-        }
-        else {
+        if (!refTableFile.exists()) {
             logger.severe(() -> formatMessage("FileDoesNotExist",
                     refTableFile.getAbsolutePath()));
+            exists = false;
+        }
+        if (exists) {
+            // Only the symTable classes referenced by the refTable are read into the index.
+            return TableIndexReader.read(symTableFile, refTableFile);
         }
-        symTable = _symTable;
-        refTable = _refTable;
+        return null;
     }
 
     @Override
     public boolean acceptClass(String className) {
-        if (symTable == null || refTable == null) {
+        if (tableIndex == null || className == null) {
             return false;
         }
-        // If the FQCN for this class exists in the refTable then accept it.
-        final JsonElement e = refTable.get(REF_TABLE_FQCN_NAME);
-        if (e != null && e.isJsonObject()) {
-            final JsonObject fqcns = e.getAsJsonObject();
-            return fqcns.has(toFQCN(className));
-        }
-        return false;
+        // Look up the JVM internal name directly so that rejecting a class doesn't allocate.
+        // A class is accepted if its FQCN (e.g. x.y.z.Outer.$Inner) exists in the refTable.
+        return packages.matches(className) && tableIndex.containsInternalName(className);
     }
 
     @Override
     public ClassProcessor acceptClass(CtClass ctClass) {
-        if (symTable == null || refTable == null) {
+        if (tableIndex == null) {
             return null;
         }
         // Map the FQCN (for this class) from the refTable to a class object in the symTable.
-        JsonElement e = refTable.get(REF_TABLE_FQCN_NAME);
-        if (e != null && e.isJsonObject()) {
-            final JsonObject fqcns = e.getAsJsonObject();
-            e = fqcns.get(toFQCN(ctClass));
-            if (e != null && e.isJsonArray()) {
-                final JsonArray symbolTableKeys = e.getAsJsonArray();
-                if (symbolTableKeys.size() > 0) {
-                    e = symbolTableKeys.get(0);
-                    if (e != null && e.isJsonPrimitive()) {
-                        String symbolTableKey = e.getAsString();
-                        e = symTable.get(symbolTableKey);
-                        if (e != null && e.isJsonObject()) {
-                            return new ClassProcessorImpl(this, ctClass, symbolTableKey, e.getAsJsonObject());
-                        }
-                    }
-                }
-            }
+        final TableClass tableClass = tableIndex.getClass(toFQCN(ctClass));
+        if (tableClass != null) {
+            return new ClassProcessorImpl(this, ctClass, tableClass);
         }
         return null;
     }
     
     @Override
     public String getInstrumentationVersion() {
-        if (refTable != null) {
-            JsonElement e = refTable.get(REF_TABLE_VERSION_NAME);
-            if (e != null && e.isJsonPrimitive()) {
-                return e.getAsString();
+        if (tableIndex != null) {
+            final String version = tableIndex.getVersion();
+            if (version != null) {
+                return version;
             }
         }
         return ApplicationProcessor.super.getInstrumentationVersion();
     }
     
-    private static String toFQCN(String className) {
-        return className.replace('/', '.').replace("$", ".$");
-    }
-    
     private static String toFQCN(CtClass ctClass) {
         return ctClass.getName().replace("$", ".$");
     }
@@ -18,11 +18,6 @@
 
 package com.ibm.minerva.instrumenter.filter.tables;
 
-import java.util.Map;
-import java.util.Set;
-
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import com.ibm.minerva.instrumenter.filter.ApplicationProcessor;
 import com.ibm.minerva.instrumenter.filter.ClassProcessor;
 import com.ibm.minerva.instrumenter.filter.MethodProcessor;
@@ -35,23 +30,14 @@ import javassist.bytecode.SignatureAttribute;
 
 public class ClassProcessorImpl implements ClassProcessor {
     
-    private static final String SYM_TABLE_FILE_NAME = "file";
-    private static final String SYM_TABLE_FUNCSIG_NAME = "funcSig";
-    private static final String SYM_TABLE_FUNCTION_LIST = "funcL";
-    private static final String SYM_TABLE_FUNCTION_ARGS = "Args";
-    private static final String SYM_TABLE_FUNCTION_ARG_TYPE = "Type";
-    private static final String SYM_TABLE_FUNCTION_OBJ_SIGNATURE = "signature";
-    
     private final ApplicationProcessor appProcessor;
     private final CtClass ctClass;
-    private final String symTableKey;
-    private final JsonObject symTableClassObject;
+    private final TableClass tableClass;
     
-    public ClassProcessorImpl(ApplicationProcessor appProcessor, CtClass ctClass, String symTableKey, JsonObject symTableClassObject) {
+    public ClassProcessorImpl(ApplicationProcessor appProcessor, CtClass ctClass, TableClass tableClass) {
         this.appProcessor = appProcessor;
         this.ctClass = ctClass;
-        this.symTableKey = symTableKey;
-        this.symTableClassObject = symTableClassObject;
+        this.tableClass = tableClass;
     }
     
     @Override
@@ -68,13 +54,9 @@ public class ClassProcessorImpl implements ClassProcessor {
     public MethodProcessor acceptMethod(CtBehavior ctBehavior) {
         // Accept this method if its method signature exists in the 
         // set of function signatures within the symbol table class object.
-        final JsonElement e = symTableClassObject.get(SYM_TABLE_FUNCSIG_NAME);
         final MethodProcessor methodProcessor = new MethodProcessorImpl(this, ctBehavior);
-        if (e != null && e.isJsonObject()) {
-            final JsonObject funcSigs = e.getAsJsonObject();
-            if (funcSigs.has(methodProcessor.getMethodSignature())) {
-                return methodProcessor;
-            }
+        if (tableClass.containsFunctionSignature(methodProcessor.getMethodSignature())) {
+            return methodProcessor;
         }
         // The function signature table either doesn't exist or the direct
         // lookup found nothing. Try to find a match by walking over the
@@ -95,20 +77,17 @@ public class ClassProcessorImpl implements ClassProcessor {
         // table exists, otherwise return the symbol table key as the class
         // name. The function signature table is only available in a symbol
         // table that has been augmented by the JavaParser.
-        final JsonElement e = symTableClassObject.get(SYM_TABLE_FUNCSIG_NAME);
-        if (e != null) {
+        if (tableClass.hasFunctionSignatures()) {
             return ClassProcessor.super.getClassName();
         }
-        return symTableKey;
+        return tableClass.getSymTableKey();
     }
     
     @Override
     public String getSourcePath() {
-        JsonElement e = symTableClassObject.get(SYM_TABLE_FILE_NAME);
-        if (e != null && e.isJsonPrimitive()) {
-            final String fileName = e.getAsString();
-            e = symTableClassObject.get(SYM_TABLE_FUNCSIG_NAME);
-            if (e != null) {
+        final String fileName = tableClass.getFile();
+        if (fileName != null) {
+            if (tableClass.hasFunctionSignatures()) {
                 return fileName;
             }
             // Add ':class' to the source path value if the symbol
@@ -119,65 +98,34 @@ public class ClassProcessorImpl implements ClassProcessor {
     }
     
     private String getMethodSignature(MethodProcessor methodProcessor) {
-        // Walk through the function list to obtain a
-        // method signature that matches the given method.
-        final JsonElement e = symTableClassObject.get(SYM_TABLE_FUNCTION_LIST);
-        if (e != null && e.isJsonObject()) {
-            final JsonObject funcL = e.getAsJsonObject();
-            final String methodName = methodProcessor.getMethodName();
-            final JsonElement methodElement = funcL.get(methodName);
-            if (methodElement != null && methodElement.isJsonObject()) {
-                final String signature = getMethodSignature(methodProcessor, methodName, methodElement.getAsJsonObject());
-                if (signature != null) {
-                    return signature;
-                }
-            }
-            // If there are multiple overloaded methods the key will have this pattern.
-            final String overloadedMethodPrefix = methodName + " [overloaded_";
-            for (Map.Entry<String,JsonElement> entry : funcL.entrySet()) {
-                final String key = entry.getKey();
-                if (key != null && key.startsWith(overloadedMethodPrefix)) {
-                    final JsonElement value = entry.getValue();
-                    if (value != null && value.isJsonObject()) {
-                        final String signature = getMethodSignature(methodProcessor, key, value.getAsJsonObject());
-                        if (signature != null) {
-                            return signature;
-                        }
-                    }
-                }
+        // Walk through the function list entries for this method name (the
+        // entry keyed by the method name first, followed by its overloads)
+        // to obtain a method signature that matches the given method.
+        for (TableMethod method : tableClass.getMethods(methodProcessor.getMethodName())) {
+            final String signature = getMethodSignature(methodProcessor, method);
+            if (signature != null) {
+                return signature;
             }
         }
         return null;
     }
     
-    private String getMethodSignature(MethodProcessor methodProcessor, String methodKey, JsonObject methodObj) {
-        final JsonElement e = methodObj.get(SYM_TABLE_FUNCTION_ARGS);
-        if (e != null && e.isJsonObject()) {
+    private String getMethodSignature(MethodProcessor methodProcessor, TableMethod method) {
+        final String[] argTypes = method.getArgTypes();
+        if (argTypes != null) {
             try {
-                final JsonObject argsObj = e.getAsJsonObject();
-                final Set<Map.Entry<String,JsonElement>> argSet = argsObj.entrySet();
                 final CtClass[] params = methodProcessor.getParameterTypes();
                 final int paramsLength = params != null ? params.length : 0;
                 // Check that the candidate method has the correct number of arguments.
-                if (argSet.size() != paramsLength) {
+                if (argTypes.length != paramsLength) {
                     return null;
                 }
                 // Check that each parameter has the correct type.
-                int i = 0;
                 boolean gotParamTypes = false;
                 SignatureAttribute.Type[] paramTypes = null;
-                for (Map.Entry<String,JsonElement> entry : argSet) {
-                    final JsonElement argElement = entry.getValue();
-                    if (argElement == null || !argElement.isJsonObject()) {
-                        return null;
-                    }
-                    final JsonObject argObj = argElement.getAsJsonObject();
-                    final JsonElement argType = argObj.get(SYM_TABLE_FUNCTION_ARG_TYPE);
-                    if (argType == null || !argType.isJsonPrimitive()) {
-                        return null;
-                    }
-                    final String type = toRawType(argType.getAsString());
-                    final CtClass param = params[i++];
+                for (int i = 0; i < argTypes.length; ++i) {
+                    final String type = argTypes[i];
+                    final CtClass param = params[i];
                     // Check that either the simple name, the fully qualified
                     // type name or the suffix of the type name matches.
                     if (!type.equals(toClassName(param.getSimpleName())) && 
@@ -190,23 +138,17 @@ public class ClassProcessorImpl implements ClassProcessor {
                         }
                         // If this method has generic parameters types (e.g. getMap(K k, V v)), 
                         // check whether the type name matches the parameter type name.
-                        if (paramTypes == null || !type.equals(paramTypes[i-1].toString())) {
+                        if (paramTypes == null || !type.equals(paramTypes[i].toString())) {
                             return null;
                         }
                     }
                 }
                 // Return the function signature if the function signature table exists
                 // otherwise return the key into the function list as the method signature.
-                final JsonElement funcSig = symTableClassObject.get(SYM_TABLE_FUNCSIG_NAME);
-                if (funcSig != null) {
-                    final JsonElement sigElem = methodObj.get(SYM_TABLE_FUNCTION_OBJ_SIGNATURE);
-                    if (sigElem != null && sigElem.isJsonPrimitive()) {
-                        return sigElem.getAsString();
-                    }
+                if (tableClass.hasFunctionSignatures()) {
+                    return method.getSignature();
                 }
-                else {
-                    return methodKey;
-                } 
+                return method.getKey();
             }
             catch (NotFoundException nfe) {}
         }
@@ -216,20 +158,4 @@ public class ClassProcessorImpl implements ClassProcessor {
     private static String toClassName(String type) {
         return type.replace('$', '.');
     }
-    
-    private static String toRawType(String type) {
-        type = type.replaceAll("\\s", ""); // Remove extra spaces (e.g. int [] -> int[])
-        final int length = type.length();
-        if (length > 0) {
-            // Remove generic type parameters (e.g. Map<K,V> -> Map)
-            final int start = type.indexOf('<');
-            if (start != -1) {
-                final int end = type.lastIndexOf('>');
-                if (end != -1 && end > start) {
-                    return type.substring(0, start) + type.substring(end + 1, length);
-                }
-            }
-        }
-        return type;
-    }
 }
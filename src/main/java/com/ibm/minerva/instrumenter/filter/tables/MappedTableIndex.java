@@ -0,0 +1,372 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.tables;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.ibm.minerva.instrumenter.LoggingUtil;
+
+// A TableIndex that answers lookups directly from a memory mapped
+// snapshot written by TableSnapshot. Nothing is parsed up front; class,
+// signature and method name lookups are binary searches over the sorted
+// sections of the snapshot and strings are only decoded when returned.
+// Class names are compared with the stored strings byte by byte, so 
+// looking up a class does not allocate. open() checks that each section
+// (and each string) lies within the file, so that a truncated or stale 
+// snapshot is rejected instead of failing lookups at class load time.
+public final class MappedTableIndex implements TableIndex {
+    
+    private static final Logger logger = LoggingUtil.getLogger(MappedTableIndex.class);
+    
+    private final ByteBuffer buffer;
+    private final String version;
+    private final int stringOffsetsPos;
+    private final int classCount;
+    private final int classIndexPos;
+    private final int internalNameCount;
+    private final int internalIndexPos;
+    private final Set<String> packagePrefixes;
+    
+    private MappedTableIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.stringOffsetsPos = buffer.getInt(4 * Integer.BYTES);
+        this.classCount = buffer.getInt(5 * Integer.BYTES);
+        this.classIndexPos = buffer.getInt(6 * Integer.BYTES);
+        this.internalNameCount = buffer.getInt(7 * Integer.BYTES);
+        this.internalIndexPos = buffer.getInt(8 * Integer.BYTES);
+        this.version = getString(buffer.getInt(2 * Integer.BYTES));
+        // The package list is small and needed up front to build the filter's prefix matcher.
+        final int packageCount = buffer.getInt(9 * Integer.BYTES);
+        final int packageListPos = buffer.getInt(10 * Integer.BYTES);
+        final Set<String> packages = new HashSet<>();
+        for (int i = 0; i < packageCount; ++i) {
+            packages.add(getString(buffer.getInt(packageListPos + i * Integer.BYTES)));
+        }
+        this.packagePrefixes = Collections.unmodifiableSet(packages);
+    }
+    
+    public static TableIndex open(File snapshotFile) {
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < TableSnapshot.HEADER_SIZE || 
+                    buffer.getInt(0) != TableSnapshot.MAGIC || 
+                    buffer.getInt(Integer.BYTES) != TableSnapshot.FORMAT_VERSION ||
+                    !isValid(buffer)) {
+                logger.severe(() -> formatMessage("TableSnapshotInvalid", snapshotFile.getAbsolutePath()));
+                return null;
+            }
+            return new MappedTableIndex(buffer);
+        }
+        catch (IOException | RuntimeException e) {
+            logger.severe(() -> formatMessage("TableSnapshotUnreadable", snapshotFile.getAbsolutePath(), e.getMessage()));
+        }
+        return null;
+    }
+
+    // Checks the positions and lengths of the sections against the size of the snapshot.
+    static boolean isValid(ByteBuffer buffer) {
+        final int limit = buffer.limit();
+        final int stringCount = buffer.getInt(3 * Integer.BYTES);
+        final int stringOffsetsPos = buffer.getInt(4 * Integer.BYTES);
+        if (!isSection(stringOffsetsPos, stringCount, Integer.BYTES, limit)) {
+            return false;
+        }
+        // The strings follow their offsets, one after the other, up to the end of the snapshot.
+        long next = stringOffsetsPos + (long) stringCount * Integer.BYTES;
+        for (int i = 0; i < stringCount; ++i) {
+            final int offset = buffer.getInt(stringOffsetsPos + i * Integer.BYTES);
+            if (offset != next || offset > limit - Integer.BYTES) {
+                return false;
+            }
+            final int length = buffer.getInt(offset);
+            if (length < 0) {
+                return false;
+            }
+            next = (long) offset + Integer.BYTES + length;
+        }
+        if (next != limit || !isString(buffer.getInt(2 * Integer.BYTES), stringCount, true)) {
+            return false;
+        }
+        // Class records lie between the header and the class index.
+        final int classCount = buffer.getInt(5 * Integer.BYTES);
+        final int classIndexPos = buffer.getInt(6 * Integer.BYTES);
+        final int internalNameCount = buffer.getInt(7 * Integer.BYTES);
+        final int internalIndexPos = buffer.getInt(8 * Integer.BYTES);
+        final int packageCount = buffer.getInt(9 * Integer.BYTES);
+        final int packageListPos = buffer.getInt(10 * Integer.BYTES);
+        if (!isSection(classIndexPos, classCount, 2 * Integer.BYTES, stringOffsetsPos) ||
+                internalNameCount > classCount ||
+                !isSection(internalIndexPos, internalNameCount, 2 * Integer.BYTES, stringOffsetsPos) ||
+                !isSection(packageListPos, packageCount, Integer.BYTES, stringOffsetsPos)) {
+            return false;
+        }
+        for (int i = 0; i < classCount; ++i) {
+            if (!isIndexEntry(buffer, classIndexPos + i * 2 * Integer.BYTES, stringCount, classIndexPos)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < internalNameCount; ++i) {
+            if (!isIndexEntry(buffer, internalIndexPos + i * 2 * Integer.BYTES, stringCount, classIndexPos)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < packageCount; ++i) {
+            if (!isString(buffer.getInt(packageListPos + i * Integer.BYTES), stringCount, false)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Whether count entries of the given size starting at pos lie between the header and end.
+    private static boolean isSection(int pos, int count, int entrySize, int end) {
+        return count >= 0 && pos >= TableSnapshot.HEADER_SIZE && pos <= end && 
+                pos + (long) count * entrySize <= end;
+    }
+    
+    private static boolean isString(int stringId, int stringCount, boolean nullable) {
+        return stringId < stringCount && (stringId >= 0 || (nullable && stringId == -1));
+    }
+    
+    // An index entry is a string id and the position of a class record.
+    private static boolean isIndexEntry(ByteBuffer buffer, int entry, int stringCount, int classIndexPos) {
+        final int recordPos = buffer.getInt(entry + Integer.BYTES);
+        return isString(buffer.getInt(entry), stringCount, false) && 
+                recordPos >= TableSnapshot.HEADER_SIZE && recordPos < classIndexPos;
+    }
+
+    @Override
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean containsClass(String fqcn) {
+        return findClass(fqcn) >= 0;
+    }
+
+    @Override
+    public boolean containsInternalName(String internalName) {
+        return search(internalName, internalIndexPos, internalNameCount, 2 * Integer.BYTES) >= 0;
+    }
+    
+    @Override
+    public Set<String> getPackagePrefixes() {
+        return packagePrefixes;
+    }
+
+    @Override
+    public TableClass getClass(String fqcn) {
+        final int pos = findClass(fqcn);
+        return pos >= 0 ? new MappedClass(pos) : null;
+    }
+    
+    // Returns the position of the class record or -1 if the class isn't in the snapshot.
+    private int findClass(String fqcn) {
+        final int entry = search(fqcn, classIndexPos, classCount, 2 * Integer.BYTES);
+        return entry >= 0 ? buffer.getInt(entry + Integer.BYTES) : -1;
+    }
+    
+    // Binary search over a sorted table of entries that start with a string id.
+    // Returns the position of the matching entry or -1.
+    private int search(String key, int tablePos, int count, int entrySize) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int entry = tablePos + mid * entrySize;
+            final int cmp = compare(buffer.getInt(entry), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            }
+            else if (cmp > 0) {
+                high = mid - 1;
+            }
+            else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+    
+    // Compares the stored string with the given string in String.compareTo() order
+    // by decoding the UTF-8 bytes on the fly instead of materializing the string.
+    private int compare(int stringId, String s) {
+        final int offset = buffer.getInt(stringOffsetsPos + stringId * Integer.BYTES);
+        int pos = offset + Integer.BYTES;
+        final int end = pos + buffer.getInt(offset);
+        final int length = s.length();
+        int i = 0;
+        char pending = 0;
+        while ((pos < end || pending != 0) && i < length) {
+            final char c;
+            if (pending != 0) {
+                c = pending;
+                pending = 0;
+            }
+            else {
+                final int b = buffer.get(pos) & 0xFF;
+                if (b < 0x80) {
+                    c = (char) b;
+                    pos += 1;
+                }
+                else if ((b & 0xE0) == 0xC0) {
+                    c = (char) (((b & 0x1F) << 6) | (buffer.get(pos + 1) & 0x3F));
+                    pos += 2;
+                }
+                else if ((b & 0xF0) == 0xE0) {
+                    c = (char) (((b & 0x0F) << 12) | ((buffer.get(pos + 1) & 0x3F) << 6) | (buffer.get(pos + 2) & 0x3F));
+                    pos += 3;
+                }
+                else {
+                    final int cp = ((b & 0x07) << 18) | ((buffer.get(pos + 1) & 0x3F) << 12) | 
+                            ((buffer.get(pos + 2) & 0x3F) << 6) | (buffer.get(pos + 3) & 0x3F);
+                    c = Character.highSurrogate(cp);
+                    pending = Character.lowSurrogate(cp);
+                    pos += 4;
+                }
+            }
+            final char other = s.charAt(i++);
+            if (c != other) {
+                return c - other;
+            }
+        }
+        if (pos < end || pending != 0) {
+            return 1;
+        }
+        return i < length ? -1 : 0;
+    }
+    
+    private String getString(int stringId) {
+        if (stringId < 0) {
+            return null;
+        }
+        final int offset = buffer.getInt(stringOffsetsPos + stringId * Integer.BYTES);
+        final byte[] b = new byte[buffer.getInt(offset)];
+        for (int i = 0; i < b.length; ++i) {
+            b[i] = buffer.get(offset + Integer.BYTES + i);
+        }
+        return new String(b, StandardCharsets.UTF_8);
+    }
+    
+    private final class MappedClass implements TableClass {
+        
+        private final int pos;
+        
+        private MappedClass(int pos) {
+            this.pos = pos;
+        }
+
+        @Override
+        public String getSymTableKey() {
+            return getString(buffer.getInt(pos));
+        }
+
+        @Override
+        public String getFile() {
+            return getString(buffer.getInt(pos + Integer.BYTES));
+        }
+
+        @Override
+        public boolean hasFunctionSignatures() {
+            return (buffer.getInt(pos + 2 * Integer.BYTES) & TableSnapshot.FLAG_FUNCTION_SIGNATURES) != 0;
+        }
+
+        @Override
+        public boolean containsFunctionSignature(String signature) {
+            return search(signature, signaturesPos(), buffer.getInt(pos + 3 * Integer.BYTES), Integer.BYTES) >= 0;
+        }
+
+        @Override
+        public List<TableMethod> getMethods(String methodName) {
+            final int signatureCount = buffer.getInt(pos + 3 * Integer.BYTES);
+            final int namesPos = signaturesPos() + signatureCount * Integer.BYTES;
+            final int entry = search(methodName, namesPos + Integer.BYTES, buffer.getInt(namesPos), 3 * Integer.BYTES);
+            if (entry < 0) {
+                return Collections.emptyList();
+            }
+            final int methodCount = buffer.getInt(entry + Integer.BYTES);
+            final int methodsPos = buffer.getInt(entry + 2 * Integer.BYTES);
+            return new AbstractList<TableMethod>() {
+                @Override
+                public TableMethod get(int index) {
+                    // Method entries have a variable length so walk to the requested one.
+                    int p = methodsPos;
+                    for (int i = 0; i < index; ++i) {
+                        p += (3 + Math.max(0, buffer.getInt(p + 2 * Integer.BYTES))) * Integer.BYTES;
+                    }
+                    return new MappedMethod(p);
+                }
+                @Override
+                public int size() {
+                    return methodCount;
+                }
+            };
+        }
+        
+        private int signaturesPos() {
+            return pos + 4 * Integer.BYTES;
+        }
+    }
+    
+    private final class MappedMethod implements TableMethod {
+        
+        private final int pos;
+        
+        private MappedMethod(int pos) {
+            this.pos = pos;
+        }
+
+        @Override
+        public String getKey() {
+            return getString(buffer.getInt(pos));
+        }
+
+        @Override
+        public String getSignature() {
+            return getString(buffer.getInt(pos + Integer.BYTES));
+        }
+
+        @Override
+        public String[] getArgTypes() {
+            final int argCount = buffer.getInt(pos + 2 * Integer.BYTES);
+            if (argCount < 0) {
+                return null;
+            }
+            final String[] argTypes = new String[argCount];
+            for (int i = 0; i < argCount; ++i) {
+                argTypes[i] = getString(buffer.getInt(pos + (3 + i) * Integer.BYTES));
+            }
+            return argTypes;
+        }
+    }
+}
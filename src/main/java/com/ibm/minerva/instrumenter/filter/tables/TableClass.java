@@ -0,0 +1,41 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.tables;
+
+import java.util.List;
+
+// A class object from the symbol table.
+public interface TableClass {
+    
+    public String getSymTableKey();
+    
+    // The 'file' value of the class object or null if it doesn't have one.
+    public String getFile();
+    
+    // Returns true if the symbol table has been augmented by the
+    // JavaParser (i.e. the class object has a function signature table).
+    public boolean hasFunctionSignatures();
+    
+    public boolean containsFunctionSignature(String signature);
+    
+    // Returns the entries of the function list for the given method name.
+    // An entry keyed by the method name itself comes first followed by its
+    // overloads (i.e. 'methodName [overloaded_#nnn]') in table order.
+    public List<TableMethod> getMethods(String methodName);
+}
@@ -44,6 +44,21 @@ public final class TableFilterFactory implements ApplicationProcessorFactory {
     public ApplicationProcessor createApplicationProcessor(JsonElement config) {
         if (config != null && config.isJsonPrimitive()) {
             final File tableDir = Agent.resolvePath(config.getAsString());
+            // A file is a binary snapshot of the tables (see TableSnapshot) which is memory mapped.
+            if (tableDir.isFile()) {
+                logger.config(() -> formatMessage("AgentTableSnapshot", tableDir.getAbsolutePath()));
+                final TableIndex tableIndex = MappedTableIndex.open(tableDir);
+                if (tableIndex != null) {
+                    return new ApplicationProcessorImpl(tableIndex);
+                }
+                // An invalid snapshot kept with its tables falls back to the JSON files.
+                final File parentDir = tableDir.getAbsoluteFile().getParentFile();
+                if (parentDir != null && ApplicationProcessorImpl.hasTables(parentDir)) {
+                    logger.warning(() -> formatMessage("TableSnapshotFallback", tableDir.getAbsolutePath(), parentDir.getAbsolutePath()));
+                    return createApplicationProcessor(parentDir);
+                }
+                return null;
+            }
             logger.config(() -> formatMessage("AgentTableDirectory", tableDir.getAbsolutePath()));
             if (tableDir.exists() && tableDir.isDirectory()) {
                 return createApplicationProcessor(tableDir);
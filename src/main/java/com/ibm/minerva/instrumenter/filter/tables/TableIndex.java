@@ -0,0 +1,45 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.tables;
+
+import java.util.Set;
+
+// Read-only view of the Minerva Analyzer symTable/refTable data, reduced
+// to what the filter needs to accept classes and methods.
+public interface TableIndex {
+    
+    public String getVersion();
+    
+    // Returns true if the class with the given fully qualified
+    // class name (e.g. x.y.z.Outer.$Inner) can be instrumented.
+    public boolean containsClass(String fqcn);
+    
+    // Returns true if the class with the given JVM internal name (e.g. 
+    // x/y/z/Outer$Inner) can be instrumented. This is called for every
+    // class the JVM loads, so it must not allocate.
+    public boolean containsInternalName(String internalName);
+    
+    // Returns the packages of the classes in the index as internal
+    // name prefixes (e.g. x/y/z/, or an empty string for the default package).
+    public Set<String> getPackagePrefixes();
+    
+    // Returns the symbol table class for the given fully qualified
+    // class name or null if there is no such class.
+    public TableClass getClass(String fqcn);
+}
@@ -0,0 +1,291 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.tables;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Immutable in-memory index over the symTable/refTable. It is built
+// once when the tables are loaded (see TableIndexReader) so that classes
+// and methods can be matched with hash lookups.
+public final class TableIndexImpl implements TableIndex {
+    
+    static final String REF_TABLE_FQCN_NAME = "FQCN";
+    static final String REF_TABLE_VERSION_NAME = "Version";
+    
+    static final String SYM_TABLE_FILE_NAME = "file";
+    static final String SYM_TABLE_FUNCSIG_NAME = "funcSig";
+    static final String SYM_TABLE_FUNCTION_LIST = "funcL";
+    static final String SYM_TABLE_FUNCTION_ARGS = "Args";
+    static final String SYM_TABLE_FUNCTION_ARG_TYPE = "Type";
+    static final String SYM_TABLE_FUNCTION_OBJ_SIGNATURE = "signature";
+    
+    // Function list keys of overloaded methods have this pattern: 'methodName [overloaded_#nnn]'.
+    static final String OVERLOADED_METHOD_SUFFIX = " [overloaded_";
+    
+    private final String version;
+    private final Map<String,TableClass> classes;
+    private final Set<String> internalNames;
+    private final Set<String> packagePrefixes;
+    
+    TableIndexImpl(String version, Map<String,TableClass> classes) {
+        this.version = version;
+        this.classes = classes;
+        this.internalNames = new HashSet<>();
+        final Set<String> packages = new HashSet<>();
+        for (String fqcn : classes.keySet()) {
+            final String internalName = toInternalName(fqcn);
+            internalNames.add(internalName);
+            packages.add(toPackagePrefix(internalName));
+        }
+        this.packagePrefixes = Collections.unmodifiableSet(packages);
+    }
+    
+    // Inverse of the mapping the filter applies to class names (e.g. x.y.z.Outer.$Inner -> x/y/z/Outer$Inner).
+    static String toInternalName(String fqcn) {
+        return fqcn.replace(".$", "$").replace('.', '/');
+    }
+    
+    static String toPackagePrefix(String internalName) {
+        return internalName.substring(0, internalName.lastIndexOf('/') + 1);
+    }
+    
+    static String toRawType(String type) {
+        type = type.replaceAll("\\s", ""); // Remove extra spaces (e.g. int [] -> int[])
+        final int length = type.length();
+        if (length > 0) {
+            // Remove generic type parameters (e.g. Map<K,V> -> Map)
+            final int start = type.indexOf('<');
+            if (start != -1) {
+                final int end = type.lastIndexOf('>');
+                if (end != -1 && end > start) {
+                    return type.substring(0, start) + type.substring(end + 1, length);
+                }
+            }
+        }
+        return type;
+    }
+    
+    // Returns the method name of a function list key.
+    static String toMethodName(String methodKey) {
+        final int index = methodKey.indexOf(OVERLOADED_METHOD_SUFFIX);
+        return index >= 0 ? methodKey.substring(0, index) : methodKey;
+    }
+
+    @Override
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean containsClass(String fqcn) {
+        return classes.containsKey(fqcn);
+    }
+
+    @Override
+    public boolean containsInternalName(String internalName) {
+        return internalNames.contains(internalName);
+    }
+    
+    @Override
+    public Set<String> getPackagePrefixes() {
+        return packagePrefixes;
+    }
+
+    @Override
+    public TableClass getClass(String fqcn) {
+        return classes.get(fqcn);
+    }
+    
+    int size() {
+        return classes.size();
+    }
+    
+    Map<String,TableClass> getClasses() {
+        return classes;
+    }
+    
+    // Accumulates classes and methods while the tables are being read. Strings
+    // that repeat across the tables (e.g. argument types) are shared.
+    static final class Builder {
+        
+        private final Map<String,String> strings = new HashMap<>();
+        private final Map<String,TableClass> classes = new HashMap<>();
+        private String version;
+        
+        void setVersion(String version) {
+            this.version = version;
+        }
+        
+        ClassBuilder newClass(String symTableKey, String file, boolean hasFunctionSignatures) {
+            return new ClassBuilder(this, intern(symTableKey), intern(file), hasFunctionSignatures);
+        }
+        
+        void addClass(String fqcn, TableClass tableClass) {
+            classes.put(fqcn, tableClass);
+        }
+        
+        TableIndex build() {
+            return new TableIndexImpl(version, classes);
+        }
+        
+        String intern(String s) {
+            if (s == null) {
+                return null;
+            }
+            final String existing = strings.putIfAbsent(s, s);
+            return existing != null ? existing : s;
+        }
+        
+        String[] toRawTypes(String[] argTypes) {
+            for (int i = 0; i < argTypes.length; ++i) {
+                argTypes[i] = intern(toRawType(argTypes[i]));
+            }
+            return argTypes;
+        }
+    }
+    
+    static final class ClassBuilder {
+        
+        private final Builder builder;
+        private final String symTableKey;
+        private final String file;
+        private final boolean hasFunctionSignatures;
+        private final Set<String> functionSignatures = new HashSet<>();
+        private final Map<String,List<TableMethod>> methods = new LinkedHashMap<>();
+        
+        private ClassBuilder(Builder builder, String symTableKey, String file, boolean hasFunctionSignatures) {
+            this.builder = builder;
+            this.symTableKey = symTableKey;
+            this.file = file;
+            this.hasFunctionSignatures = hasFunctionSignatures;
+        }
+        
+        void addFunctionSignature(String signature) {
+            functionSignatures.add(signature);
+        }
+        
+        void addMethod(String methodKey, String signature, String[] argTypes) {
+            final String methodName = builder.intern(toMethodName(methodKey));
+            final TableMethod method = new MethodRecord(methodKey, signature, argTypes);
+            final List<TableMethod> bucket = methods.computeIfAbsent(methodName, x -> new ArrayList<>(1));
+            // The entry keyed by the method name itself is tried before any overloads.
+            if (methodName.equals(methodKey)) {
+                bucket.add(0, method);
+            }
+            else {
+                bucket.add(method);
+            }
+        }
+        
+        TableClass build() {
+            final Map<String,List<TableMethod>> m = new HashMap<>();
+            methods.forEach((k,v) -> m.put(k, v.size() == 1 ? 
+                    Collections.singletonList(v.get(0)) : Collections.unmodifiableList(v)));
+            return new ClassRecord(symTableKey, file, hasFunctionSignatures, 
+                    functionSignatures.isEmpty() ? Collections.emptySet() : functionSignatures, m);
+        }
+    }
+    
+    static final class ClassRecord implements TableClass {
+        
+        private final String symTableKey;
+        private final String file;
+        private final boolean hasFunctionSignatures;
+        private final Set<String> functionSignatures;
+        private final Map<String,List<TableMethod>> methods;
+        
+        private ClassRecord(String symTableKey, String file, boolean hasFunctionSignatures,
+                Set<String> functionSignatures, Map<String,List<TableMethod>> methods) {
+            this.symTableKey = symTableKey;
+            this.file = file;
+            this.hasFunctionSignatures = hasFunctionSignatures;
+            this.functionSignatures = functionSignatures;
+            this.methods = methods;
+        }
+
+        @Override
+        public String getSymTableKey() {
+            return symTableKey;
+        }
+
+        @Override
+        public String getFile() {
+            return file;
+        }
+
+        @Override
+        public boolean hasFunctionSignatures() {
+            return hasFunctionSignatures;
+        }
+
+        @Override
+        public boolean containsFunctionSignature(String signature) {
+            return functionSignatures.contains(signature);
+        }
+
+        @Override
+        public List<TableMethod> getMethods(String methodName) {
+            final List<TableMethod> bucket = methods.get(methodName);
+            return bucket != null ? bucket : Collections.emptyList();
+        }
+        
+        Set<String> getFunctionSignatures() {
+            return functionSignatures;
+        }
+        
+        Map<String,List<TableMethod>> getMethods() {
+            return methods;
+        }
+    }
+    
+    private static final class MethodRecord implements TableMethod {
+        
+        private final String key;
+        private final String signature;
+        private final String[] argTypes;
+        
+        private MethodRecord(String key, String signature, String[] argTypes) {
+            this.key = key;
+            this.signature = signature;
+            this.argTypes = argTypes;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String getSignature() {
+            return signature;
+        }
+
+        @Override
+        public String[] getArgTypes() {
+            return argTypes;
+        }
+    }
+}
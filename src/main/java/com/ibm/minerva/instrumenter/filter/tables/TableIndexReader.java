@@ -0,0 +1,272 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.tables;
+
+import static com.ibm.minerva.instrumenter.MessageFormatter.formatMessage;
+import static com.ibm.minerva.instrumenter.filter.tables.TableIndexImpl.REF_TABLE_FQCN_NAME;
+import static com.ibm.minerva.instrumenter.filter.tables.TableIndexImpl.REF_TABLE_VERSION_NAME;
+import static com.ibm.minerva.instrumenter.filter.tables.TableIndexImpl.SYM_TABLE_FILE_NAME;
+import static com.ibm.minerva.instrumenter.filter.tables.TableIndexImpl.SYM_TABLE_FUNCSIG_NAME;
+import static com.ibm.minerva.instrumenter.filter.tables.TableIndexImpl.SYM_TABLE_FUNCTION_ARGS;
+import static com.ibm.minerva.instrumenter.filter.tables.TableIndexImpl.SYM_TABLE_FUNCTION_ARG_TYPE;
+import static com.ibm.minerva.instrumenter.filter.tables.TableIndexImpl.SYM_TABLE_FUNCTION_LIST;
+import static com.ibm.minerva.instrumenter.filter.tables.TableIndexImpl.SYM_TABLE_FUNCTION_OBJ_SIGNATURE;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.ibm.minerva.instrumenter.LoggingUtil;
+
+// Builds a TableIndex by streaming over the tables. The refTable is read
+// first to find out which symTable class objects can ever be accepted; the
+// symTable is then read with a JsonReader and only those class objects (and
+// only the members the filter needs) are materialized. Everything else is
+// skipped without building a tree, so peak memory is proportional to the
+// referenced classes rather than the size of the files.
+final class TableIndexReader {
+    
+    private static final Logger logger = LoggingUtil.getLogger(TableIndexReader.class);
+    
+    private final TableIndexImpl.Builder builder = new TableIndexImpl.Builder();
+    // symTable key -> FQCNs from the refTable which map to it.
+    private final Map<String,List<String>> referencedClasses = new HashMap<>();
+    
+    private TableIndexReader() {}
+    
+    static TableIndex read(File symTableFile, File refTableFile) {
+        final TableIndexReader reader = new TableIndexReader();
+        if (reader.parse(refTableFile, reader::readRefTable) && 
+                reader.parse(symTableFile, reader::readSymTable)) {
+            return reader.builder.build();
+        }
+        return null;
+    }
+    
+    private interface TableParser {
+        public void parse(JsonReader reader) throws IOException;
+    }
+    
+    private boolean parse(File jsonDocument, TableParser parser) {
+        try (Reader r = new InputStreamReader(new FileInputStream(jsonDocument), "UTF-8");
+                JsonReader reader = new JsonReader(r)) {
+            reader.setLenient(true);
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                parser.parse(reader);
+                return true;
+            }
+            logger.severe(() -> formatMessage("JSONFileUnreadable",
+                    jsonDocument.getAbsolutePath(), reader.toString()));
+        }
+        catch (Exception e) {
+            logger.severe(() -> formatMessage("JSONFileUnreadable",
+                    jsonDocument.getAbsolutePath(), e.getMessage()));
+        }
+        return false;
+    }
+    
+    private void readRefTable(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (REF_TABLE_VERSION_NAME.equals(name)) {
+                final String version = readPrimitive(reader);
+                if (version != null) {
+                    builder.setVersion(version);
+                }
+            }
+            else if (REF_TABLE_FQCN_NAME.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    final String fqcn = reader.nextName();
+                    // The first entry of the array is the symTable key.
+                    final String symTableKey = readFirstArrayPrimitive(reader);
+                    if (symTableKey != null) {
+                        referencedClasses.computeIfAbsent(symTableKey, x -> new ArrayList<>(1)).add(fqcn);
+                    }
+                }
+                reader.endObject();
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+    
+    private void readSymTable(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String symTableKey = reader.nextName();
+            final List<String> fqcns = referencedClasses.get(symTableKey);
+            if (fqcns != null && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                final TableClass tableClass = readClass(reader, symTableKey);
+                fqcns.forEach(x -> builder.addClass(x, tableClass));
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+    
+    private TableClass readClass(JsonReader reader, String symTableKey) throws IOException {
+        String file = null;
+        boolean hasFunctionSignatures = false;
+        final List<String> functionSignatures = new ArrayList<>();
+        final List<Object[]> methods = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (SYM_TABLE_FILE_NAME.equals(name)) {
+                file = readPrimitive(reader);
+            }
+            else if (SYM_TABLE_FUNCSIG_NAME.equals(name)) {
+                // The presence of the function signature table (whatever its value)
+                // means the symbol table has been augmented by the JavaParser.
+                hasFunctionSignatures = true;
+                if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        functionSignatures.add(reader.nextName());
+                        reader.skipValue();
+                    }
+                    reader.endObject();
+                }
+                else {
+                    reader.skipValue();
+                }
+            }
+            else if (SYM_TABLE_FUNCTION_LIST.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    final String methodKey = reader.nextName();
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        methods.add(readMethod(reader, methodKey));
+                    }
+                    else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        final TableIndexImpl.ClassBuilder cb = builder.newClass(symTableKey, file, hasFunctionSignatures);
+        functionSignatures.forEach(cb::addFunctionSignature);
+        methods.forEach(x -> cb.addMethod((String) x[0], (String) x[1], (String[]) x[2]));
+        return cb.build();
+    }
+    
+    // Returns {method key, signature, raw argument types}.
+    private Object[] readMethod(JsonReader reader, String methodKey) throws IOException {
+        String signature = null;
+        String[] argTypes = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (SYM_TABLE_FUNCTION_OBJ_SIGNATURE.equals(name)) {
+                signature = readPrimitive(reader);
+            }
+            else if (SYM_TABLE_FUNCTION_ARGS.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                argTypes = readArgTypes(reader);
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Object[] {methodKey, signature, argTypes != null ? builder.toRawTypes(argTypes) : null};
+    }
+    
+    // Returns the argument types or null if any argument is malformed.
+    private String[] readArgTypes(JsonReader reader) throws IOException {
+        final List<String> argTypes = new ArrayList<>();
+        boolean valid = true;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            reader.nextName();
+            String type = null;
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (SYM_TABLE_FUNCTION_ARG_TYPE.equals(reader.nextName())) {
+                        type = readPrimitive(reader);
+                    }
+                    else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            else {
+                reader.skipValue();
+            }
+            if (type == null) {
+                valid = false;
+            }
+            argTypes.add(type);
+        }
+        reader.endObject();
+        return valid ? argTypes.toArray(new String[argTypes.size()]) : null;
+    }
+    
+    private String readFirstArrayPrimitive(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        String value = null;
+        reader.beginArray();
+        if (reader.hasNext()) {
+            value = readPrimitive(reader);
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        return value;
+    }
+    
+    // Reads a string, number or boolean as a string. Skips anything else and returns null.
+    private String readPrimitive(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.tables;
+
+// An entry of a symbol table class object's function list.
+public interface TableMethod {
+    
+    // The key of this entry within the function list.
+    public String getKey();
+    
+    // The 'signature' value of this entry or null if it doesn't have one.
+    public String getSignature();
+    
+    // The raw argument types (without whitespace and generic type parameters) 
+    // in declaration order or null if the argument list is missing or malformed.
+    public String[] getArgTypes();
+}
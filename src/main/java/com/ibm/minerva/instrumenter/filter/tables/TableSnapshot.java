@@ -0,0 +1,226 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.tables;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.ibm.minerva.instrumenter.filter.tables.TableIndexImpl.ClassRecord;
+
+// Compiles the symTable/refTable of a table directory into a binary snapshot
+// that MappedTableIndex can memory map and query without parsing. 
+//
+// Layout (big endian, all offsets are absolute file positions):
+//
+//   header:       int magic, int format version, int version string id,
+//                 int string count, int string offsets position,
+//                 int class count, int class index position, int internal name count,
+//                 int internal name index position, int package count, int package list position
+//   class record: int symTable key id, int file id, int flags,
+//                 int signature count, int[] signature ids (sorted),
+//                 int method name count, { int name id, int method count, int methods position }[] (sorted by name)
+//   methods:      { int key id, int signature id, int arg count (-1 if unknown), int[] arg type ids }[]
+//   class index:  { int FQCN id, int class record position }[] (sorted by FQCN)
+//   internal name index: { int internal name id, int class record position }[] (sorted by internal name,
+//                 which may have fewer entries than the class index since e.g. C.$D and C$D are both C$D)
+//   package list: int[] package prefix ids (sorted)
+//   strings:      int[] string offsets, { int length, byte[] UTF-8 }[]
+//
+// A string id of -1 denotes a null value. Each distinct string is stored once.
+// Usage: java -cp minerva-agent-1.0-jar-with-dependencies.jar 
+//            com.ibm.minerva.instrumenter.filter.tables.TableSnapshot <table directory> [<snapshot file>]
+public final class TableSnapshot {
+    
+    static final int MAGIC = 0x4D4E5254; // 'MNRT'
+    static final int FORMAT_VERSION = 3;
+    static final int HEADER_SIZE = 11 * Integer.BYTES;
+    static final int FLAG_FUNCTION_SIGNATURES = 1;
+    
+    static final String DEFAULT_SNAPSHOT_FILE_NAME = "tables.snapshot";
+    
+    private final Map<String,Integer> stringIds = new LinkedHashMap<>();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final List<int[]> patches = new ArrayList<>();
+    
+    private TableSnapshot() {}
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: TableSnapshot <table directory> [<snapshot file>]");
+            System.exit(1);
+        }
+        final File tableDir = new File(args[0]);
+        final File snapshotFile = args.length > 1 ? new File(args[1]) : new File(tableDir, DEFAULT_SNAPSHOT_FILE_NAME);
+        final TableIndex index = ApplicationProcessorImpl.loadTableIndex(tableDir);
+        if (index == null) {
+            System.exit(1);
+        }
+        write(index, snapshotFile);
+    }
+    
+    public static void write(TableIndex index, File snapshotFile) throws IOException {
+        if (!(index instanceof TableIndexImpl)) {
+            throw new IllegalArgumentException(index.getClass().getName());
+        }
+        final byte[] snapshot = new TableSnapshot().compile((TableIndexImpl) index);
+        // Write to a temporary file first so that a JVM mapping the snapshot never sees a partial file.
+        final File dir = snapshotFile.getAbsoluteFile().getParentFile();
+        final File tmp = File.createTempFile(snapshotFile.getName(), ".tmp", dir);
+        try {
+            Files.write(tmp.toPath(), snapshot);
+            try {
+                Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (IOException e) {
+                Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            tmp.delete();
+        }
+    }
+    
+    private byte[] compile(TableIndexImpl index) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(id(index.getVersion()));
+        final int stringCountPos = placeholder();
+        final int stringOffsetsPos = placeholder();
+        out.writeInt(index.size());
+        final int classIndexPos = placeholder();
+        final int internalNameCountPos = placeholder();
+        final int internalIndexPos = placeholder();
+        out.writeInt(index.getPackagePrefixes().size());
+        final int packageListPos = placeholder();
+        // Class records, sorted by FQCN.
+        final TreeMap<String,TableClass> classes = new TreeMap<>(index.getClasses());
+        final Map<String,Integer> classPositions = new LinkedHashMap<>();
+        for (Map.Entry<String,TableClass> entry : classes.entrySet()) {
+            classPositions.put(entry.getKey(), out.size());
+            writeClass((ClassRecord) entry.getValue());
+        }
+        // Class index
+        patch(classIndexPos, out.size());
+        for (Map.Entry<String,Integer> entry : classPositions.entrySet()) {
+            out.writeInt(id(entry.getKey()));
+            out.writeInt(entry.getValue());
+        }
+        // Internal name index
+        patch(internalIndexPos, out.size());
+        final TreeMap<String,Integer> internalNames = new TreeMap<>();
+        classPositions.forEach((k, v) -> internalNames.put(TableIndexImpl.toInternalName(k), v));
+        patch(internalNameCountPos, internalNames.size());
+        for (Map.Entry<String,Integer> entry : internalNames.entrySet()) {
+            out.writeInt(id(entry.getKey()));
+            out.writeInt(entry.getValue());
+        }
+        // Package list
+        patch(packageListPos, out.size());
+        for (String packagePrefix : new TreeSet<>(index.getPackagePrefixes())) {
+            out.writeInt(id(packagePrefix));
+        }
+        // String table
+        patch(stringCountPos, stringIds.size());
+        patch(stringOffsetsPos, out.size());
+        final List<byte[]> encoded = new ArrayList<>(stringIds.size());
+        int offset = out.size() + stringIds.size() * Integer.BYTES;
+        for (String s : stringIds.keySet()) {
+            final byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(b);
+            out.writeInt(offset);
+            offset += Integer.BYTES + b.length;
+        }
+        for (byte[] b : encoded) {
+            out.writeInt(b.length);
+            out.write(b);
+        }
+        out.flush();
+        final byte[] result = bytes.toByteArray();
+        final ByteBuffer buffer = ByteBuffer.wrap(result);
+        patches.forEach(x -> buffer.putInt(x[0], x[1]));
+        return result;
+    }
+    
+    private void writeClass(ClassRecord tableClass) throws IOException {
+        out.writeInt(id(tableClass.getSymTableKey()));
+        out.writeInt(id(tableClass.getFile()));
+        out.writeInt(tableClass.hasFunctionSignatures() ? FLAG_FUNCTION_SIGNATURES : 0);
+        final TreeSet<String> signatures = new TreeSet<>(tableClass.getFunctionSignatures());
+        out.writeInt(signatures.size());
+        for (String signature : signatures) {
+            out.writeInt(id(signature));
+        }
+        final TreeMap<String,List<TableMethod>> methods = new TreeMap<>(tableClass.getMethods());
+        out.writeInt(methods.size());
+        final List<Integer> methodsPositions = new ArrayList<>(methods.size());
+        for (Map.Entry<String,List<TableMethod>> entry : methods.entrySet()) {
+            out.writeInt(id(entry.getKey()));
+            out.writeInt(entry.getValue().size());
+            methodsPositions.add(placeholder());
+        }
+        int i = 0;
+        for (List<TableMethod> bucket : methods.values()) {
+            patch(methodsPositions.get(i++), out.size());
+            for (TableMethod method : bucket) {
+                out.writeInt(id(method.getKey()));
+                out.writeInt(id(method.getSignature()));
+                final String[] argTypes = method.getArgTypes();
+                if (argTypes != null) {
+                    out.writeInt(argTypes.length);
+                    for (String argType : argTypes) {
+                        out.writeInt(id(argType));
+                    }
+                }
+                else {
+                    out.writeInt(-1);
+                }
+            }
+        }
+    }
+    
+    private int id(String s) {
+        if (s == null) {
+            return -1;
+        }
+        return stringIds.computeIfAbsent(s, x -> stringIds.size());
+    }
+    
+    private int placeholder() throws IOException {
+        final int pos = out.size();
+        out.writeInt(0);
+        return pos;
+    }
+    
+    private void patch(int pos, int value) {
+        patches.add(new int[] {pos, value});
+    }
+}
@@ -0,0 +1,90 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// A concurrent histogram of non-negative values with power of two buckets.
+// Bucket i holds values in [2^(i-1), 2^i), so percentiles are reported as
+// the upper bound of their bucket and are accurate to within a factor of two.
+public final class Histogram {
+    
+    private static final int BUCKETS = 64;
+    
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+    
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            buckets[i] = new LongAdder();
+        }
+    }
+    
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value))].increment();
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+    
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+    
+    public HistogramSnapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = buckets[i].sum();
+            n += counts[i];
+        }
+        final long maxValue = max.get();
+        return new HistogramSnapshot(n, total.sum(), maxValue, 
+                percentile(counts, n, 0.5, maxValue), 
+                percentile(counts, n, 0.9, maxValue), 
+                percentile(counts, n, 0.99, maxValue));
+    }
+    
+    private static long percentile(long[] counts, long n, double p, long maxValue) {
+        if (n == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(n * p);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+                final long upperBound = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upperBound, maxValue);
+            }
+        }
+        return maxValue;
+    }
+}
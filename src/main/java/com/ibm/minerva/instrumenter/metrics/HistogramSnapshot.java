@@ -0,0 +1,73 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.metrics;
+
+// Point in time view of a Histogram. Exposed as CompositeData over JMX.
+public final class HistogramSnapshot {
+    
+    private final long count;
+    private final long total;
+    private final long max;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    
+    public HistogramSnapshot(long count, long total, long max, long p50, long p90, long p99) {
+        this.count = count;
+        this.total = total;
+        this.max = max;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public long getTotal() {
+        return total;
+    }
+    
+    public long getMean() {
+        return count > 0 ? total / count : 0;
+    }
+    
+    public long getMax() {
+        return max;
+    }
+    
+    public long getP50() {
+        return p50;
+    }
+    
+    public long getP90() {
+        return p90;
+    }
+    
+    public long getP99() {
+        return p99;
+    }
+    
+    @Override
+    public String toString() {
+        return "count=" + count + ", total=" + total + ", mean=" + getMean() + ", p50=" + p50 
+                + ", p90=" + p90 + ", p99=" + p99 + ", max=" + max;
+    }
+}
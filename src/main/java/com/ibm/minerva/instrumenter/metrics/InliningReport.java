@@ -0,0 +1,146 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import com.sun.management.VMOption;
+
+// Lists the methods whose bytecode grew past one of HotSpot's inlining limits
+// because of the probes injected into them. A method longer than MaxInlineSize
+// is only inlined where it is called often, and one longer than FreqInlineSize
+// is not inlined at all, so instrumentation which pushes a method past either
+// changes how the application is compiled. The limits are read from the JVM,
+// or are HotSpot's defaults on JVMs which do not have them.
+public final class InliningReport {
+    
+    public static final int DEFAULT_MAX_INLINE_SIZE = 35;
+    public static final int DEFAULT_FREQ_INLINE_SIZE = 325;
+    
+    private final int maxInlineSize;
+    private final int freqInlineSize;
+    private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+    private final LongAdder pastMaxInlineSize = new LongAdder();
+    private final LongAdder pastFreqInlineSize = new LongAdder();
+    
+    public InliningReport() {
+        this(getVMOption("MaxInlineSize", DEFAULT_MAX_INLINE_SIZE), getVMOption("FreqInlineSize", DEFAULT_FREQ_INLINE_SIZE));
+    }
+    
+    public InliningReport(int maxInlineSize, int freqInlineSize) {
+        this.maxInlineSize = maxInlineSize;
+        this.freqInlineSize = freqInlineSize;
+    }
+    
+    public int getMaxInlineSize() {
+        return maxInlineSize;
+    }
+    
+    public int getFreqInlineSize() {
+        return freqInlineSize;
+    }
+    
+    // Records the bytecode length of an instrumented method (e.g. "x.y.MyClass.run(int)") 
+    // before and after the probes were injected.
+    public void record(String method, int codeLengthIn, int codeLengthOut) {
+        final boolean pastMax = codeLengthIn <= maxInlineSize && codeLengthOut > maxInlineSize;
+        final boolean pastFreq = codeLengthIn <= freqInlineSize && codeLengthOut > freqInlineSize;
+        if (pastMax || pastFreq) {
+            if (pastMax) {
+                pastMaxInlineSize.increment();
+            }
+            if (pastFreq) {
+                pastFreqInlineSize.increment();
+            }
+            entries.add(new Entry(method, codeLengthIn, codeLengthOut, 
+                    pastFreq ? "FreqInlineSize" : "MaxInlineSize"));
+        }
+    }
+    
+    public long getMethodsPastMaxInlineSize() {
+        return pastMaxInlineSize.sum();
+    }
+    
+    public long getMethodsPastFreqInlineSize() {
+        return pastFreqInlineSize.sum();
+    }
+    
+    // One "method in -> out bytes (limit)" line per method, in the order they were instrumented.
+    public List<String> getMethods() {
+        final List<String> methods = new ArrayList<>();
+        for (Entry e : entries) {
+            methods.add(e.toString());
+        }
+        return methods;
+    }
+    
+    public String getReport() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Minerva Agent Inlining Report (MaxInlineSize ").append(maxInlineSize)
+            .append(", FreqInlineSize ").append(freqInlineSize).append(')').append(System.lineSeparator());
+        for (Entry e : entries) {
+            sb.append("  ").append(e).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+    
+    public void reset() {
+        entries.clear();
+        pastMaxInlineSize.reset();
+        pastFreqInlineSize.reset();
+    }
+    
+    // Other JVMs (e.g. OpenJ9) do not have HotSpot's options.
+    private static int getVMOption(String name, int defaultValue) {
+        try {
+            final HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            if (bean != null) {
+                final VMOption option = bean.getVMOption(name);
+                return Integer.parseInt(option.getValue());
+            }
+        }
+        catch (RuntimeException | LinkageError e) {}
+        return defaultValue;
+    }
+    
+    private static final class Entry {
+        
+        private final String method;
+        private final int codeLengthIn;
+        private final int codeLengthOut;
+        private final String limit;
+        
+        private Entry(String method, int codeLengthIn, int codeLengthOut, String limit) {
+            this.method = method;
+            this.codeLengthIn = codeLengthIn;
+            this.codeLengthOut = codeLengthOut;
+            this.limit = limit;
+        }
+        
+        @Override
+        public String toString() {
+            return method + " " + codeLengthIn + " -> " + codeLengthOut + " bytes (" + limit + ")";
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ibm.minerva.instrumenter.MBeanUtil;
+
+// Counters and time histograms for the work the agent does while classes 
+// are loaded. Updates are lock free so that they can be made from every 
+// class loading thread.
+public final class TransformMetrics implements TransformMetricsMXBean {
+    
+    public static final String OBJECT_NAME = "com.ibm.minerva.instrumenter:type=TransformMetrics";
+    
+    public enum Phase {
+        ACCEPT_CLASS("acceptClass"),
+        MAKE_CLASS("makeClass"),
+        INSERT_BEFORE("insertBefore"),
+        INSERT_AFTER("insertAfter"),
+        TO_BYTECODE("toBytecode"),
+        TRANSFORM("transform");
+        
+        String displayName;
+        
+        Phase(String displayName) {
+            this.displayName = displayName;
+        }
+        
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+    
+    private final LongAdder classesSeen = new LongAdder();
+    private final LongAdder classesAccepted = new LongAdder();
+    private final LongAdder classesTransformed = new LongAdder();
+    private final LongAdder classesFromCache = new LongAdder();
+    private final LongAdder classFailures = new LongAdder();
+    private final LongAdder methodsInjected = new LongAdder();
+    private final LongAdder methodFailures = new LongAdder();
+    private final Map<Phase,Histogram> times = new EnumMap<>(Phase.class);
+    private final Histogram classSizeIn = new Histogram();
+    private final Histogram classSizeOut = new Histogram();
+    private final InliningReport inliningReport = new InliningReport();
+    
+    public TransformMetrics() {
+        for (Phase phase : Phase.values()) {
+            times.put(phase, new Histogram());
+        }
+    }
+    
+    public void classSeen() {
+        classesSeen.increment();
+    }
+    
+    public void classAccepted() {
+        classesAccepted.increment();
+    }
+    
+    public void classTransformed(int bytesIn, int bytesOut) {
+        classesTransformed.increment();
+        classSizeIn.record(bytesIn);
+        classSizeOut.record(bytesOut);
+    }
+    
+    public void classFromCache() {
+        classesFromCache.increment();
+    }
+    
+    public void classFailed() {
+        classFailures.increment();
+    }
+    
+    public void methodInjected() {
+        methodsInjected.increment();
+    }
+    
+    public void methodFailed() {
+        methodFailures.increment();
+    }
+    
+    // Records the bytecode length of an instrumented method before and after the probes were injected.
+    public void methodResized(String method, int codeLengthIn, int codeLengthOut) {
+        inliningReport.record(method, codeLengthIn, codeLengthOut);
+    }
+    
+    // Records the time elapsed since start, a value previously returned by System.nanoTime().
+    public void recordTime(Phase phase, long start) {
+        times.get(phase).record(System.nanoTime() - start);
+    }
+
+    @Override
+    public long getClassesSeen() {
+        return classesSeen.sum();
+    }
+
+    @Override
+    public long getClassesAccepted() {
+        return classesAccepted.sum();
+    }
+
+    @Override
+    public long getClassesTransformed() {
+        return classesTransformed.sum();
+    }
+    
+    @Override
+    public long getClassesFromCache() {
+        return classesFromCache.sum();
+    }
+
+    @Override
+    public long getClassFailures() {
+        return classFailures.sum();
+    }
+
+    @Override
+    public long getMethodsInjected() {
+        return methodsInjected.sum();
+    }
+
+    @Override
+    public long getMethodFailures() {
+        return methodFailures.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return classSizeIn.snapshot().getTotal();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return classSizeOut.snapshot().getTotal();
+    }
+    
+    public HistogramSnapshot getTime(Phase phase) {
+        return times.get(phase).snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getAcceptClassTime() {
+        return getTime(Phase.ACCEPT_CLASS);
+    }
+
+    @Override
+    public HistogramSnapshot getMakeClassTime() {
+        return getTime(Phase.MAKE_CLASS);
+    }
+
+    @Override
+    public HistogramSnapshot getInsertBeforeTime() {
+        return getTime(Phase.INSERT_BEFORE);
+    }
+
+    @Override
+    public HistogramSnapshot getInsertAfterTime() {
+        return getTime(Phase.INSERT_AFTER);
+    }
+
+    @Override
+    public HistogramSnapshot getToBytecodeTime() {
+        return getTime(Phase.TO_BYTECODE);
+    }
+
+    @Override
+    public HistogramSnapshot getTransformTime() {
+        return getTime(Phase.TRANSFORM);
+    }
+
+    @Override
+    public HistogramSnapshot getClassSizeIn() {
+        return classSizeIn.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getClassSizeOut() {
+        return classSizeOut.snapshot();
+    }
+
+    @Override
+    public long getMethodsPastMaxInlineSize() {
+        return inliningReport.getMethodsPastMaxInlineSize();
+    }
+
+    @Override
+    public long getMethodsPastFreqInlineSize() {
+        return inliningReport.getMethodsPastFreqInlineSize();
+    }
+
+    @Override
+    public String getInliningReport() {
+        return inliningReport.getReport();
+    }
+    
+    @Override
+    public String getSummary() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Minerva Agent Transform Metrics").append(System.lineSeparator());
+        appendLine(sb, "classesSeen", getClassesSeen());
+        appendLine(sb, "classesAccepted", getClassesAccepted());
+        appendLine(sb, "classesTransformed", getClassesTransformed());
+        appendLine(sb, "classesFromCache", getClassesFromCache());
+        appendLine(sb, "classFailures", getClassFailures());
+        appendLine(sb, "methodsInjected", getMethodsInjected());
+        appendLine(sb, "methodFailures", getMethodFailures());
+        appendLine(sb, "methodsPastMaxInlineSize (" + inliningReport.getMaxInlineSize() + " bytes)", getMethodsPastMaxInlineSize());
+        appendLine(sb, "methodsPastFreqInlineSize (" + inliningReport.getFreqInlineSize() + " bytes)", getMethodsPastFreqInlineSize());
+        for (Phase phase : Phase.values()) {
+            appendLine(sb, phase.getDisplayName() + " (ns)", getTime(phase));
+        }
+        appendLine(sb, "classSizeIn (bytes)", getClassSizeIn());
+        appendLine(sb, "classSizeOut (bytes)", getClassSizeOut());
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+        classesSeen.reset();
+        classesAccepted.reset();
+        classesTransformed.reset();
+        classesFromCache.reset();
+        classFailures.reset();
+        methodsInjected.reset();
+        methodFailures.reset();
+        times.values().forEach(Histogram::reset);
+        classSizeIn.reset();
+        classSizeOut.reset();
+        inliningReport.reset();
+    }
+    
+    public boolean registerMBean() {
+        return MBeanUtil.registerMBean(this, OBJECT_NAME, "MetricsMBeanRegistered", "MetricsMBeanNotRegistered");
+    }
+    
+    // Writes the summary when the JVM exits, to standard error or the given file. 
+    // The summary doesn't go through java.util.logging which may already be shut down.
+    public void writeSummaryOnShutdown(File file) {
+        final Thread t = new Thread(() -> writeSummary(file), "Minerva Agent Metrics Summary");
+        Runtime.getRuntime().addShutdownHook(t);
+    }
+    
+    void writeSummary(File file) {
+        write(getSummary(), file);
+    }
+    
+    // Writes the inlining report when the JVM exits, to standard error or the given file.
+    public void writeInliningReportOnShutdown(File file) {
+        final Thread t = new Thread(() -> writeInliningReport(file), "Minerva Agent Inlining Report");
+        Runtime.getRuntime().addShutdownHook(t);
+    }
+    
+    void writeInliningReport(File file) {
+        write(getInliningReport(), file);
+    }
+    
+    private static void write(String text, File file) {
+        if (file == null) {
+            System.err.print(text);
+            System.err.flush();
+            return;
+        }
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.print(text);
+        }
+        catch (Exception e) {
+            System.err.print(text);
+            System.err.flush();
+        }
+    }
+    
+    private static void appendLine(StringBuilder sb, String name, Object value) {
+        sb.append("  ").append(name).append(": ").append(value).append(System.lineSeparator());
+    }
+}
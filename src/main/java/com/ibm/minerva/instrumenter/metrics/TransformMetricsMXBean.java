@@ -0,0 +1,49 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.metrics;
+
+// Management interface of TransformMetrics. Times are in nanoseconds and sizes in bytes.
+public interface TransformMetricsMXBean {
+    
+    public long getClassesSeen();
+    public long getClassesAccepted();
+    public long getClassesTransformed();
+    public long getClassesFromCache();
+    public long getClassFailures();
+    public long getMethodsInjected();
+    public long getMethodFailures();
+    public long getBytesIn();
+    public long getBytesOut();
+    public long getMethodsPastMaxInlineSize();
+    public long getMethodsPastFreqInlineSize();
+    
+    public HistogramSnapshot getAcceptClassTime();
+    public HistogramSnapshot getMakeClassTime();
+    public HistogramSnapshot getInsertBeforeTime();
+    public HistogramSnapshot getInsertAfterTime();
+    public HistogramSnapshot getToBytecodeTime();
+    public HistogramSnapshot getTransformTime();
+    public HistogramSnapshot getClassSizeIn();
+    public HistogramSnapshot getClassSizeOut();
+    
+    public String getSummary();
+    public String getInliningReport();
+    public void reset();
+
+}
@@ -0,0 +1,177 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Writes the totals of a recorder which aggregates the calls in memory (the
+// call edges and the context tree) to its file: once when started, every 
+// interval from a daemon thread, when flushed and once more when stopped or
+// when the JVM shuts down. The file is replaced as a whole, by writing a 
+// temporary file which is then moved over it, so that a reader never sees a
+// partially written one. After an error the file is no longer written.
+//
+// The contents start with a common header (big endian):
+//   int magic, int version, int record size, 
+//   long start time (epoch milliseconds), long write time (epoch milliseconds),
+//   int number of records
+final class AggregateFileWriter {
+    
+    static final int HEADER_SIZE = 32;
+    
+    private final File file;
+    private final File tempFile;
+    private final long intervalNanos;
+    private final Consumer<IOException> errorHandler;
+    private final Supplier<ByteBuffer> contents;
+    private final long startTime = System.currentTimeMillis();
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private volatile boolean running = true;
+    
+    // The contents are built by the supplier, see allocate. Errors are passed to 
+    // the error handler (if not null).
+    AggregateFileWriter(File file, long interval, String threadName, 
+            Consumer<IOException> errorHandler, Supplier<ByteBuffer> contents) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, interval));
+        this.errorHandler = errorHandler;
+        this.contents = contents;
+        writer = new Thread(this::run, threadName);
+        writer.setDaemon(true);
+        shutdownHook = new Thread(this::close, threadName + " Shutdown");
+    }
+    
+    File getFile() {
+        return file;
+    }
+    
+    long getStartTime() {
+        return startTime;
+    }
+    
+    boolean isRunning() {
+        return running;
+    }
+    
+    // Writes the file, failing if it cannot be, and starts writing it periodically.
+    void start() throws IOException {
+        write();
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+    
+    // Writes the file one last time.
+    void stop() {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+        catch (IllegalStateException e) {
+            // Already shutting down, the hook writes the file.
+        }
+        close();
+    }
+    
+    void flush() {
+        if (running) {
+            try {
+                write();
+            }
+            catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+    
+    // Returns a buffer for the given number of records with the header written.
+    ByteBuffer allocate(int magic, int version, int recordSize, int records) {
+        final ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + records * recordSize).order(ByteOrder.BIG_ENDIAN);
+        out.putInt(magic);
+        out.putInt(version);
+        out.putInt(recordSize);
+        out.putLong(startTime);
+        out.putLong(System.currentTimeMillis());
+        out.putInt(records);
+        return out;
+    }
+    
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, intervalNanos);
+            flush();
+        }
+    }
+    
+    private void fail(IOException e) {
+        running = false;
+        if (errorHandler != null) {
+            errorHandler.accept(e);
+        }
+    }
+    
+    // The file is written by one thread at a time.
+    private synchronized void write() throws IOException {
+        final ByteBuffer out = contents.get();
+        out.flip();
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, 
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    private void close() {
+        if (running) {
+            running = false;
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+                write();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (IOException e) {
+                if (errorHandler != null) {
+                    errorHandler.accept(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+// Counts how often each method calls each other method rather than recording
+// every call. The instrumented code calls enter(int) and exit(int) which keep
+// a shadow stack of method ids per thread; each entry counts the edge from the
+// method on top of the stack (or ROOT) to the method entered. The totals are
+// written to the edge file every dump interval by an AggregateFileWriter.
+//
+// Edge file format (big endian):
+//   header: int magic ("MNCE"), int version, int record size, 
+//           long start time (epoch milliseconds), long dump time (epoch milliseconds),
+//           int number of records
+//   record: int caller method id, int callee method id, long calls
+// The caller is ROOT (-1) for calls from methods which are not traced. The 
+// number of calls of a method is the sum of the calls of its incoming edges.
+public final class CallEdgeCounter {
+    
+    public static final int MAGIC = 0x4D4E4345;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = AggregateFileWriter.HEADER_SIZE;
+    public static final int RECORD_SIZE = 16;
+    public static final int ROOT = CallEdgeTable.ROOT;
+    
+    public static final long DEFAULT_DUMP_INTERVAL = 10000;
+    
+    private static final int INITIAL_STACK_SIZE = 64;
+    
+    private static volatile CallEdgeCounter counter;
+    
+    private final CallEdgeTable table;
+    private final ThreadLocal<CallStack> callStack = ThreadLocal.withInitial(this::register);
+    private final AggregateFileWriter writer;
+    
+    private CallEdgeCounter(File file, long dumpInterval, Consumer<IOException> errorHandler) {
+        this.table = new CallEdgeTable(4 * Runtime.getRuntime().availableProcessors());
+        this.writer = new AggregateFileWriter(file, dumpInterval, "Minerva Agent Call Edge Writer", errorHandler, this::contents);
+    }
+    
+    // Starts counting, replacing the contents of the given file with an empty 
+    // dump. Counting which was already started is stopped first. Errors writing
+    // the file later are passed to the error handler (if not null), after which
+    // the counts are no longer written.
+    public static synchronized void start(File file, long dumpInterval, 
+            Consumer<IOException> errorHandler) throws IOException {
+        stop();
+        final CallEdgeCounter c = new CallEdgeCounter(file, dumpInterval, errorHandler);
+        c.writer.start();
+        counter = c;
+    }
+    
+    // Stops counting, writing the counts one last time.
+    public static synchronized void stop() {
+        final CallEdgeCounter c = counter;
+        if (c != null) {
+            counter = null;
+            c.writer.stop();
+        }
+    }
+    
+    // Writes the counts so far to the edge file.
+    public static void dump() {
+        final CallEdgeCounter c = counter;
+        if (c != null) {
+            c.writer.flush();
+        }
+    }
+    
+    public static boolean isCounting() {
+        return counter != null;
+    }
+    
+    // Returns the edge file, or null if not counting.
+    public static File getFile() {
+        final CallEdgeCounter c = counter;
+        return c != null ? c.writer.getFile() : null;
+    }
+    
+    public static void enter(int methodId) {
+        final CallEdgeCounter c = counter;
+        if (c != null) {
+            final CallStack s = c.callStack.get();
+            c.table.increment(s.stripe, s.top(), methodId);
+            s.push(methodId);
+        }
+    }
+    
+    public static void exit(int methodId) {
+        final CallEdgeCounter c = counter;
+        if (c != null) {
+            c.callStack.get().pop(methodId);
+        }
+    }
+    
+    // Returns the counts so far, for tests.
+    static CallEdgeTable.Snapshot snapshot() {
+        final CallEdgeCounter c = counter;
+        return c != null ? c.table.snapshot() : null;
+    }
+    
+    private CallStack register() {
+        return new CallStack(table.assignStripe());
+    }
+    
+    private ByteBuffer contents() {
+        final CallEdgeTable.Snapshot snapshot = table.snapshot();
+        final ByteBuffer out = writer.allocate(MAGIC, VERSION, RECORD_SIZE, snapshot.size());
+        for (int i = 0; i < snapshot.size(); ++i) {
+            out.putInt(snapshot.getCaller(i));
+            out.putInt(snapshot.getCallee(i));
+            out.putLong(snapshot.getCount(i));
+        }
+        return out;
+    }
+    
+    // The ids of the methods a thread is in, innermost last.
+    private static final class CallStack {
+        
+        private final int stripe;
+        private int[] ids = new int[INITIAL_STACK_SIZE];
+        private int depth;
+        
+        private CallStack(int stripe) {
+            this.stripe = stripe;
+        }
+        
+        private int top() {
+            return depth > 0 ? ids[depth - 1] : ROOT;
+        }
+        
+        private void push(int methodId) {
+            if (depth == ids.length) {
+                final int[] newIds = new int[depth << 1];
+                System.arraycopy(ids, 0, newIds, 0, depth);
+                ids = newIds;
+            }
+            ids[depth++] = methodId;
+        }
+        
+        // Usually the method is on top. If it is not (its entry was not counted,
+        // e.g. it was called before the agent started, or the exits of methods
+        // it called were not counted) the methods above it are popped too, and 
+        // if it is not on the stack at all nothing is.
+        private void pop(int methodId) {
+            for (int i = depth - 1; i >= 0; --i) {
+                if (ids[i] == methodId) {
+                    depth = i;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.util.Arrays;
+
+// Counts of caller to callee edges, keyed by the two method ids packed into a 
+// long. The edges are spread over stripes so that threads which count at the
+// same time rarely contend: each thread is assigned a stripe once and only 
+// locks that stripe. Each stripe is an open addressing hash table of primitive
+// keys and counts (linear probing, resized at half full), so counting an edge
+// does not allocate unless the stripe grows.
+final class CallEdgeTable {
+    
+    // A caller which is not traced, e.g. the thread's run method or a method
+    // which was called before the agent started.
+    static final int ROOT = -1;
+    
+    private static final int INITIAL_CAPACITY = 256;
+    // ROOT calling ROOT, which is never counted.
+    private static final long EMPTY = -1L;
+    
+    private final Stripe[] stripes;
+    private final int mask;
+    private int nextStripe;
+    
+    CallEdgeTable(int stripes) {
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; ++i) {
+            this.stripes[i] = new Stripe(INITIAL_CAPACITY);
+        }
+        this.mask = n - 1;
+    }
+    
+    // Returns the stripe a new thread counts its edges in.
+    synchronized int assignStripe() {
+        return nextStripe++ & mask;
+    }
+    
+    void increment(int stripe, int caller, int callee) {
+        final Stripe s = stripes[stripe & mask];
+        synchronized (s) {
+            s.add(key(caller, callee), 1);
+        }
+    }
+    
+    // Returns the totals of all stripes.
+    Snapshot snapshot() {
+        final Stripe merged = new Stripe(INITIAL_CAPACITY);
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                for (int i = 0; i < s.keys.length; ++i) {
+                    if (s.keys[i] != EMPTY) {
+                        merged.add(s.keys[i], s.counts[i]);
+                    }
+                }
+            }
+        }
+        return new Snapshot(merged);
+    }
+    
+    static long key(int caller, int callee) {
+        return ((long) caller << 32) | (callee & 0xFFFFFFFFL);
+    }
+    
+    // The edges and their counts at the time of a snapshot, in no particular order.
+    static final class Snapshot {
+        
+        private final int[] callers;
+        private final int[] callees;
+        private final long[] counts;
+        
+        private Snapshot(Stripe s) {
+            callers = new int[s.size];
+            callees = new int[s.size];
+            counts = new long[s.size];
+            int j = 0;
+            for (int i = 0; i < s.keys.length; ++i) {
+                final long key = s.keys[i];
+                if (key != EMPTY) {
+                    callers[j] = (int) (key >> 32);
+                    callees[j] = (int) key;
+                    counts[j] = s.counts[i];
+                    ++j;
+                }
+            }
+        }
+        
+        int size() {
+            return counts.length;
+        }
+        
+        int getCaller(int i) {
+            return callers[i];
+        }
+        
+        int getCallee(int i) {
+            return callees[i];
+        }
+        
+        long getCount(int i) {
+            return counts[i];
+        }
+        
+        // Returns the count of the given edge, or 0.
+        long getCount(int caller, int callee) {
+            for (int i = 0; i < counts.length; ++i) {
+                if (callers[i] == caller && callees[i] == callee) {
+                    return counts[i];
+                }
+            }
+            return 0;
+        }
+    }
+    
+    private static final class Stripe {
+        
+        private long[] keys;
+        private long[] counts;
+        private int size;
+        
+        private Stripe(int capacity) {
+            keys = new long[capacity];
+            counts = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+        
+        private void add(long key, long count) {
+            final int m = keys.length - 1;
+            int i = hash(key) & m;
+            long k;
+            while ((k = keys[i]) != EMPTY) {
+                if (k == key) {
+                    counts[i] += count;
+                    return;
+                }
+                i = (i + 1) & m;
+            }
+            keys[i] = key;
+            counts[i] = count;
+            if (++size << 1 > keys.length) {
+                resize();
+            }
+        }
+        
+        private void resize() {
+            final long[] oldKeys = keys;
+            final long[] oldCounts = counts;
+            keys = new long[oldKeys.length << 1];
+            counts = new long[oldKeys.length << 1];
+            Arrays.fill(keys, EMPTY);
+            final int m = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; ++j) {
+                final long key = oldKeys[j];
+                if (key != EMPTY) {
+                    int i = hash(key) & m;
+                    while (keys[i] != EMPTY) {
+                        i = (i + 1) & m;
+                    }
+                    keys[i] = key;
+                    counts[i] = oldCounts[j];
+                }
+            }
+        }
+        
+        // The finalizer of MurmurHash3, so that neighbouring ids spread over the table.
+        private static int hash(long key) {
+            key ^= key >>> 33;
+            key *= 0xFF51AFD7ED558CCDL;
+            key ^= key >>> 33;
+            key *= 0xC4CEB9FE1A85EC53L;
+            key ^= key >>> 33;
+            return (int) key;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.util.Arrays;
+
+// A calling context tree: each node is a method id reached through the path of
+// method ids from the root, with the number of calls of that path and the time
+// spent in them (inclusive of the methods they called). The nodes are kept in
+// flat arrays in the order they were added, so a node's parent always comes 
+// before it, and found through an open addressing hash table keyed by the 
+// parent node and method id packed into a long.
+//
+// The tree holds at most maxNodes nodes (and the overflow node). Once it is 
+// full, calls in new contexts are collapsed into the overflow node, as are the
+// calls they make. A tree is written by one thread; another thread may read 
+// it (to merge it) while it is written, and then sees the nodes added before
+// the size it read, with counts and times which may be slightly behind.
+final class ContextTree {
+    
+    static final int ROOT = -1;
+    // The method id of the overflow node.
+    static final int OVERFLOW = -2;
+    static final int ROOT_NODE = 0;
+    
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long EMPTY = -1L;
+    
+    private final int maxNodes;
+    private volatile Nodes nodes;
+    private volatile int size;
+    private int overflow = -1;
+    // Node index by parent node and method id.
+    private long[] keys;
+    private int[] values;
+    
+    ContextTree(int maxNodes) {
+        this.maxNodes = Math.max(1, maxNodes);
+        nodes = new Nodes(INITIAL_CAPACITY);
+        keys = new long[INITIAL_CAPACITY << 1];
+        values = new int[INITIAL_CAPACITY << 1];
+        Arrays.fill(keys, EMPTY);
+        final Nodes n = nodes;
+        n.methodIds[ROOT_NODE] = ROOT;
+        n.parents[ROOT_NODE] = -1;
+        size = 1;
+    }
+    
+    // Returns the node of the given method called from the parent node, adding
+    // it if it is new and the tree is not full.
+    int child(int parent, int methodId) {
+        if (parent == overflow || methodId == OVERFLOW) {
+            return overflow();
+        }
+        final long key = ((long) parent << 32) | (methodId & 0xFFFFFFFFL);
+        final int m = keys.length - 1;
+        int i = hash(key) & m;
+        long k;
+        while ((k = keys[i]) != EMPTY) {
+            if (k == key) {
+                return values[i];
+            }
+            i = (i + 1) & m;
+        }
+        if (size >= maxNodes) {
+            return overflow();
+        }
+        final int node = add(parent, methodId);
+        keys[i] = key;
+        values[i] = node;
+        if (node << 1 > keys.length) {
+            rehash();
+        }
+        return node;
+    }
+    
+    void addCall(int node) {
+        nodes.counts[node]++;
+    }
+    
+    void addTime(int node, long nanos) {
+        nodes.times[node] += nanos;
+    }
+    
+    // Adds the counts and times of the other tree to this one, adding the 
+    // nodes of contexts which are new (while this tree is not full).
+    void merge(ContextTree other) {
+        final int n = other.size;
+        final Nodes source = other.nodes;
+        final int[] map = new int[n];
+        map[ROOT_NODE] = ROOT_NODE;
+        for (int i = 1; i < n; ++i) {
+            final int node = child(map[source.parents[i]], source.methodIds[i]);
+            map[i] = node;
+            final Nodes target = nodes;
+            target.counts[node] += source.counts[i];
+            target.times[node] += source.times[i];
+        }
+    }
+    
+    boolean isOverflow(int node) {
+        return node == overflow;
+    }
+    
+    // The number of nodes, including the root.
+    int size() {
+        return size;
+    }
+    
+    int getMethodId(int node) {
+        return nodes.methodIds[node];
+    }
+    
+    int getParent(int node) {
+        return nodes.parents[node];
+    }
+    
+    long getCount(int node) {
+        return nodes.counts[node];
+    }
+    
+    long getTime(int node) {
+        return nodes.times[node];
+    }
+    
+    // Returns the node of the given path of method ids from the root, or -1.
+    int find(int... methodIds) {
+        int node = ROOT_NODE;
+        for (int methodId : methodIds) {
+            final int parent = node;
+            node = -1;
+            for (int i = parent + 1; i < size; ++i) {
+                if (getParent(i) == parent && getMethodId(i) == methodId) {
+                    node = i;
+                    break;
+                }
+            }
+            if (node < 0) {
+                break;
+            }
+        }
+        return node;
+    }
+    
+    private int overflow() {
+        if (overflow < 0) {
+            overflow = add(ROOT_NODE, OVERFLOW);
+        }
+        return overflow;
+    }
+    
+    private int add(int parent, int methodId) {
+        final int node = size;
+        Nodes n = nodes;
+        if (node == n.methodIds.length) {
+            // Readers see either the old or the new arrays, each complete up to the size they read.
+            n = new Nodes(n, node << 1);
+            nodes = n;
+        }
+        n.methodIds[node] = methodId;
+        n.parents[node] = parent;
+        size = node + 1;
+        return node;
+    }
+    
+    private void rehash() {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        keys = new long[oldKeys.length << 1];
+        values = new int[oldKeys.length << 1];
+        Arrays.fill(keys, EMPTY);
+        final int m = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; ++j) {
+            final long key = oldKeys[j];
+            if (key != EMPTY) {
+                int i = hash(key) & m;
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & m;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+    
+    // The finalizer of MurmurHash3.
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+    
+    private static final class Nodes {
+        
+        private final int[] methodIds;
+        private final int[] parents;
+        private final long[] counts;
+        private final long[] times;
+        
+        private Nodes(int capacity) {
+            methodIds = new int[capacity];
+            parents = new int[capacity];
+            counts = new long[capacity];
+            times = new long[capacity];
+        }
+        
+        private Nodes(Nodes n, int capacity) {
+            methodIds = Arrays.copyOf(n.methodIds, capacity);
+            parents = Arrays.copyOf(n.parents, capacity);
+            counts = Arrays.copyOf(n.counts, capacity);
+            times = Arrays.copyOf(n.times, capacity);
+        }
+    }
+}
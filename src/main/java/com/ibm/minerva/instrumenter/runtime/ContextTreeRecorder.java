@@ -0,0 +1,224 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Aggregates the calls of each thread into a calling context tree, so that a
+// path which is called repeatedly (e.g. each request's) costs memory once 
+// rather than once per call. The instrumented code calls enter(int) and 
+// exit(int): the entry counts a call of the child of the current node for
+// that method id and the exit adds the time since the entry to it. The trees
+// are owned by their threads and updated without locking. A daemon thread 
+// merges them into a global tree every flush interval, and once more when the
+// JVM shuts down, and replaces the tree file with it. The trees of threads
+// which have ended are merged into the global tree for good.
+//
+// Tree file format (big endian):
+//   header: int magic ("MNCT"), int version, int record size, 
+//           long start time (epoch milliseconds), long flush time (epoch milliseconds),
+//           int number of records
+//   record: int parent record (-1 for the root), int method id, 
+//           long calls, long inclusive time (nanoseconds)
+// A record's parent comes before it. The method id is OVERFLOW (-2) for the 
+// node into which the calls in new contexts are collapsed once a tree is full.
+public final class ContextTreeRecorder {
+    
+    public static final int MAGIC = 0x4D4E4354;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = AggregateFileWriter.HEADER_SIZE;
+    public static final int RECORD_SIZE = 24;
+    public static final int OVERFLOW = ContextTree.OVERFLOW;
+    
+    public static final int DEFAULT_MAX_NODES = 16384;
+    public static final long DEFAULT_FLUSH_INTERVAL = 10000;
+    
+    private static final int INITIAL_STACK_SIZE = 64;
+    
+    private static volatile ContextTreeRecorder recorder;
+    
+    private final int maxNodes;
+    private final List<ThreadTree> trees = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<ThreadTree> threadTree = ThreadLocal.withInitial(this::register);
+    // The calls of threads which have ended, guarded by this.
+    private final ContextTree ended;
+    private final AggregateFileWriter writer;
+    
+    private ContextTreeRecorder(File file, int maxNodes, long flushInterval, Consumer<IOException> errorHandler) {
+        this.maxNodes = maxNodes;
+        this.ended = new ContextTree(maxNodes);
+        this.writer = new AggregateFileWriter(file, flushInterval, "Minerva Agent Context Tree Writer", errorHandler, this::contents);
+    }
+    
+    // Starts recording, replacing the contents of the given file with an empty 
+    // tree. Each thread's tree and the global tree hold at most maxNodes nodes.
+    // A recording which was already started is stopped first. Errors writing 
+    // the file later are passed to the error handler (if not null), after 
+    // which the tree is no longer written.
+    public static synchronized void start(File file, int maxNodes, long flushInterval, 
+            Consumer<IOException> errorHandler) throws IOException {
+        stop();
+        final ContextTreeRecorder r = new ContextTreeRecorder(file, Math.max(1, maxNodes), flushInterval, errorHandler);
+        r.writer.start();
+        recorder = r;
+    }
+    
+    // Stops recording, writing the tree one last time.
+    public static synchronized void stop() {
+        final ContextTreeRecorder r = recorder;
+        if (r != null) {
+            recorder = null;
+            r.writer.stop();
+        }
+    }
+    
+    // Writes the tree recorded so far to the tree file.
+    public static void flush() {
+        final ContextTreeRecorder r = recorder;
+        if (r != null) {
+            r.writer.flush();
+        }
+    }
+    
+    public static boolean isRecording() {
+        return recorder != null;
+    }
+    
+    // Returns the tree file, or null if not recording.
+    public static File getFile() {
+        final ContextTreeRecorder r = recorder;
+        return r != null ? r.writer.getFile() : null;
+    }
+    
+    public static void enter(int methodId) {
+        final ContextTreeRecorder r = recorder;
+        if (r != null) {
+            r.threadTree.get().enter(methodId);
+        }
+    }
+    
+    public static void exit(int methodId) {
+        final ContextTreeRecorder r = recorder;
+        if (r != null) {
+            r.threadTree.get().exit(methodId);
+        }
+    }
+    
+    // Returns the global tree as it would be written now, for tests.
+    static ContextTree snapshot() {
+        final ContextTreeRecorder r = recorder;
+        return r != null ? r.merge() : null;
+    }
+    
+    private ThreadTree register() {
+        final ThreadTree t = new ThreadTree(Thread.currentThread(), maxNodes);
+        trees.add(t);
+        return t;
+    }
+    
+    private synchronized ContextTree merge() {
+        final ContextTree global = new ContextTree(maxNodes);
+        for (ThreadTree t : trees) {
+            // A thread which has ended no longer changes its tree.
+            if (!t.thread.isAlive()) {
+                ended.merge(t.tree);
+                trees.remove(t);
+            }
+            else {
+                global.merge(t.tree);
+            }
+        }
+        global.merge(ended);
+        return global;
+    }
+    
+    private ByteBuffer contents() {
+        final ContextTree global = merge();
+        final int records = global.size() - 1;
+        final ByteBuffer out = writer.allocate(MAGIC, VERSION, RECORD_SIZE, records);
+        // The root is not written, record i is node i + 1.
+        for (int node = 1; node <= records; ++node) {
+            out.putInt(global.getParent(node) - 1);
+            out.putInt(global.getMethodId(node));
+            out.putLong(global.getCount(node));
+            out.putLong(global.getTime(node));
+        }
+        return out;
+    }
+    
+    // A thread's tree and the stack of the calls it is in, innermost last.
+    private static final class ThreadTree {
+        
+        private final Thread thread;
+        private final ContextTree tree;
+        private int[] nodes = new int[INITIAL_STACK_SIZE];
+        private int[] methodIds = new int[INITIAL_STACK_SIZE];
+        private long[] startTimes = new long[INITIAL_STACK_SIZE];
+        private int depth;
+        
+        private ThreadTree(Thread thread, int maxNodes) {
+            this.thread = thread;
+            this.tree = new ContextTree(maxNodes);
+        }
+        
+        private void enter(int methodId) {
+            final int parent = depth > 0 ? nodes[depth - 1] : ContextTree.ROOT_NODE;
+            final int node = tree.child(parent, methodId);
+            tree.addCall(node);
+            if (depth == nodes.length) {
+                grow();
+            }
+            nodes[depth] = node;
+            methodIds[depth] = methodId;
+            startTimes[depth] = System.nanoTime();
+            ++depth;
+        }
+        
+        // Usually the method is on top. If it is not (its entry was not recorded,
+        // e.g. it was called before recording started, or the exits of methods
+        // it called were not recorded) the calls above it are dropped too, and 
+        // if it is not on the stack at all nothing is.
+        private void exit(int methodId) {
+            for (int i = depth - 1; i >= 0; --i) {
+                if (methodIds[i] == methodId) {
+                    // The calls collapsed into the overflow node below another
+                    // such call are already included in its time.
+                    final int node = nodes[i];
+                    if (i == 0 || nodes[i - 1] != node) {
+                        tree.addTime(node, System.nanoTime() - startTimes[i]);
+                    }
+                    depth = i;
+                    return;
+                }
+            }
+        }
+        
+        private void grow() {
+            final int capacity = depth << 1;
+            nodes = Arrays.copyOf(nodes, capacity);
+            methodIds = Arrays.copyOf(methodIds, capacity);
+            startTimes = Arrays.copyOf(startTimes, capacity);
+        }
+    }
+}
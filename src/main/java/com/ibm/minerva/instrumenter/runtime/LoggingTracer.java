@@ -0,0 +1,103 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Called by the probes of the java-util-logging generator. The probes pass the
+// traced class, whose Logger is looked up once and kept in a ClassValue, so that
+// a probe does not take the LogManager's lock and the Logger is only held for as
+// long as the class is loaded. The thread id argument is only built if FINER is
+// enabled. The log records are the same as those of Logger.entering/exiting called
+// directly. Exits by exception are logged at FINER as "THROW {0}" with the thread id.
+public final class LoggingTracer {
+    
+    private static final ClassValue<LoggerHolder> loggers = new ClassValue<LoggerHolder>() {
+        @Override
+        protected LoggerHolder computeValue(Class<?> type) {
+            return new LoggerHolder();
+        }
+    };
+    
+    private LoggingTracer() {}
+    
+    public static void entering(Class<?> type, String className, String methodName) {
+        entering(getLogger(type, className), className, methodName);
+    }
+    
+    public static void exiting(Class<?> type, String className, String methodName) {
+        exiting(getLogger(type, className), className, methodName);
+    }
+    
+    public static void throwing(Class<?> type, String className, String methodName) {
+        throwing(getLogger(type, className), className, methodName);
+    }
+    
+    // For callers which do not have the traced class, e.g. the probe handlers 
+    // of the minimal probes and probes in class files older than Java 5. These
+    // look up the Logger on each call.
+    public static void entering(String className, String methodName) {
+        entering(Logger.getLogger(className), className, methodName);
+    }
+    
+    public static void exiting(String className, String methodName) {
+        exiting(Logger.getLogger(className), className, methodName);
+    }
+    
+    public static void throwing(String className, String methodName) {
+        throwing(Logger.getLogger(className), className, methodName);
+    }
+    
+    static Logger getLogger(Class<?> type, String className) {
+        final LoggerHolder holder = loggers.get(type);
+        final Logger logger = holder.logger;
+        if (logger != null && logger.getName().equals(className)) {
+            return logger;
+        }
+        final Logger newLogger = Logger.getLogger(className);
+        holder.logger = newLogger;
+        return newLogger;
+    }
+    
+    private static void entering(Logger logger, String className, String methodName) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.entering(className, methodName, String.valueOf(Thread.currentThread().getId()));
+        }
+    }
+    
+    private static void exiting(Logger logger, String className, String methodName) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.exiting(className, methodName, String.valueOf(Thread.currentThread().getId()));
+        }
+    }
+    
+    // Logger.throwing needs the Throwable, which the exception probe does not have.
+    private static void throwing(Logger logger, String className, String methodName) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.logp(Level.FINER, className, methodName, "THROW {0}", String.valueOf(Thread.currentThread().getId()));
+        }
+    }
+    
+    // The class name passed by the probes of a class is always the same, it is
+    // checked in case a class is traced under more than one name.
+    private static final class LoggerHolder {
+        volatile Logger logger;
+    }
+}
@@ -0,0 +1,200 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Called by the probes of the println generator. Each probe passes one string
+// literal holding all the constant text of its trace line, e.g.
+//   "|[version]|],Entering [source path]::[class name]::[signature]|"
+// and the index at which the time and thread id are inserted. The line is
+// formatted into a buffer owned by the calling thread, which is printed to
+// System.out or System.err when it is full and by a daemon thread every flush
+// interval, so that threads do not contend on the stream's lock for every line.
+//
+// The lines are the same as those printed by the legacy probes:
+//   |[version]|[currentTimeMillis],[[thread id]],Entering [location]|
+// The buffers are printed with PrintStream.print so that the stream encodes
+// them with its own charset, and each line ends with the line separator which
+// println writes. Lines of one thread are printed in order, but the lines of
+// different threads are printed a batch at a time rather than interleaved.
+public final class PrintTracer {
+    
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    public static final long DEFAULT_FLUSH_INTERVAL = 100;
+    
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    // Room for the separator between the time and thread id, the digits of both
+    // longs and the line separator.
+    private static final int LINE_RESERVE = 2 + 2 * 20 + LINE_SEPARATOR.length();
+    
+    private static final List<LineBuffer> buffers = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<LineBuffer> outBuffer = ThreadLocal.withInitial(() -> register(false));
+    private static final ThreadLocal<LineBuffer> errBuffer = ThreadLocal.withInitial(() -> register(true));
+    
+    private static volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+    private static volatile long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_FLUSH_INTERVAL);
+    private static Thread flusher;
+    
+    private PrintTracer() {}
+    
+    // Sets the size (in chars) of the buffers of threads which have not traced
+    // yet, and how often the buffers are printed (in milliseconds).
+    public static void configure(int size, long flushInterval) {
+        bufferSize = Math.max(1, size);
+        flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushInterval));
+    }
+    
+    public static void out(String text, int split) {
+        trace(outBuffer.get(), text, split);
+    }
+    
+    public static void err(String text, int split) {
+        trace(errBuffer.get(), text, split);
+    }
+    
+    // Prints the lines buffered so far by all threads.
+    public static void flush() {
+        for (LineBuffer b : buffers) {
+            b.flush();
+            // Buffers of threads which have ended are removed once they are printed.
+            if (!b.thread.isAlive()) {
+                buffers.remove(b);
+            }
+        }
+    }
+    
+    private static void trace(LineBuffer b, String text, int split) {
+        final long millis = System.currentTimeMillis();
+        final long threadId = Thread.currentThread().getId();
+        if (!b.append(text, split, millis, threadId)) {
+            b.flush();
+            if (!b.append(text, split, millis, threadId)) {
+                // Longer than the buffer.
+                b.print(text.substring(0, split) + millis + ",[" + threadId + text.substring(split) + LINE_SEPARATOR);
+            }
+        }
+    }
+    
+    private static LineBuffer register(boolean err) {
+        final LineBuffer b = new LineBuffer(Thread.currentThread(), err, bufferSize);
+        buffers.add(b);
+        startFlusher();
+        return b;
+    }
+    
+    private static synchronized void startFlusher() {
+        if (flusher == null) {
+            flusher = new Thread(PrintTracer::run, "Minerva Agent Print Trace Flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(PrintTracer::flush, "Minerva Agent Print Trace Flusher Shutdown"));
+        }
+    }
+    
+    private static void run() {
+        while (true) {
+            LockSupport.parkNanos(PrintTracer.class, flushIntervalNanos);
+            flush();
+        }
+    }
+    
+    private static final class LineBuffer {
+        
+        private final Thread thread;
+        private final boolean err;
+        // Held while printing so that the batches of a buffer are printed in order.
+        private final Object printLock = new Object();
+        private final char[] chars;
+        private int length;
+        
+        private LineBuffer(Thread thread, boolean err, int size) {
+            this.thread = thread;
+            this.err = err;
+            this.chars = new char[size];
+        }
+        
+        // Only contended while the buffer is being copied for printing.
+        private synchronized boolean append(String text, int split, long millis, long threadId) {
+            if (length + text.length() + LINE_RESERVE > chars.length) {
+                return false;
+            }
+            text.getChars(0, split, chars, length);
+            length += split;
+            putLong(millis);
+            chars[length++] = ',';
+            chars[length++] = '[';
+            putLong(threadId);
+            text.getChars(split, text.length(), chars, length);
+            length += text.length() - split;
+            LINE_SEPARATOR.getChars(0, LINE_SEPARATOR.length(), chars, length);
+            length += LINE_SEPARATOR.length();
+            return true;
+        }
+        
+        private void putLong(long value) {
+            if (value < 0) {
+                final String s = String.valueOf(value);
+                s.getChars(0, s.length(), chars, length);
+                length += s.length();
+                return;
+            }
+            int digits = 1;
+            for (long v = value / 10; v != 0; v /= 10) {
+                ++digits;
+            }
+            length += digits;
+            long v = value;
+            for (int i = length - 1; digits > 0; --i, --digits) {
+                chars[i] = (char) ('0' + (v % 10));
+                v /= 10;
+            }
+        }
+        
+        private void flush() {
+            synchronized (printLock) {
+                final String s;
+                synchronized (this) {
+                    if (length == 0) {
+                        return;
+                    }
+                    s = new String(chars, 0, length);
+                    length = 0;
+                }
+                // Printed without holding the buffer so that its thread can keep tracing.
+                stream().print(s);
+            }
+        }
+        
+        private void print(String s) {
+            synchronized (printLock) {
+                stream().print(s);
+            }
+        }
+        
+        // Looked up when printing, like the legacy probes, so that System.setOut/setErr are followed.
+        private PrintStream stream() {
+            return err ? System.err : System.out;
+        }
+    }
+}
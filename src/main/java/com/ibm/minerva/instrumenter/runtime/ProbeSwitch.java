@@ -0,0 +1,100 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+
+// Turns the probes of all instrumented methods on and off. The probe guard at
+// the entry of each method is an invokedynamic call site bound by bootstrap(),
+// whose target returns the state of the switch as a constant, guarded by a 
+// SwitchPoint. The JIT compiles the guard to the constant, so that the probes
+// skipped while the switch is off cost nothing. Turning the switch invalidates
+// the SwitchPoint, which deoptimizes the compiled methods, and each call site
+// is linked to the new state on its next call. Classes older than Java 7 call
+// isOn() instead, which reads a volatile field.
+public final class ProbeSwitch {
+    
+    private static final MethodHandle RELINK;
+    
+    static {
+        try {
+            RELINK = MethodHandles.lookup().findStatic(ProbeSwitch.class, "relink", 
+                    MethodType.methodType(boolean.class, MutableCallSite.class));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    private static volatile boolean on;
+    // Guarded by ProbeSwitch.class. Invalidated when the switch is turned.
+    private static SwitchPoint switchPoint = new SwitchPoint();
+    private static long turns;
+    
+    private ProbeSwitch() {}
+    
+    // The bootstrap method of the probe guards: ()Z call sites of any name.
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type) {
+        if (type.returnType() != boolean.class || type.parameterCount() != 0) {
+            throw new IllegalArgumentException(type.toString());
+        }
+        final MutableCallSite site = new MutableCallSite(type);
+        link(site);
+        return site;
+    }
+    
+    public static boolean isOn() {
+        return on;
+    }
+    
+    // Returns the previous state.
+    public static synchronized boolean set(boolean value) {
+        final boolean previous = on;
+        if (previous != value) {
+            on = value;
+            ++turns;
+            final SwitchPoint old = switchPoint;
+            switchPoint = new SwitchPoint();
+            SwitchPoint.invalidateAll(new SwitchPoint[] {old});
+        }
+        return previous;
+    }
+    
+    // The number of times the switch has been turned.
+    public static synchronized long getTurns() {
+        return turns;
+    }
+    
+    // Links the call site to the current state, until the switch is turned.
+    private static synchronized MethodHandle link(MutableCallSite site) {
+        final MethodHandle target = switchPoint.guardWithTest(
+                MethodHandles.constant(boolean.class, on), RELINK.bindTo(site));
+        site.setTarget(target);
+        return target;
+    }
+    
+    private static boolean relink(MutableCallSite site) throws Throwable {
+        return (boolean) link(site).invokeExact();
+    }
+}
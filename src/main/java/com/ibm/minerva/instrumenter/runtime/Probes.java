@@ -0,0 +1,62 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.util.function.IntConsumer;
+
+// Called by the minimal probes, each of which is a single invokestatic with the
+// method id as its only argument, e.g. Probes.enter(42), so that instrumented
+// methods grow as little as possible. The calls are passed on to the handlers
+// of the generator in use, which look up what they trace by the method id.
+// Calls made before the handlers are set are ignored.
+public final class Probes {
+    
+    private static volatile IntConsumer entryHandler;
+    private static volatile IntConsumer exitHandler;
+    private static volatile IntConsumer exceptionHandler;
+    
+    private Probes() {}
+    
+    // Any handler may be null, in which case those calls are ignored.
+    public static void setHandlers(IntConsumer entry, IntConsumer exit, IntConsumer exception) {
+        entryHandler = entry;
+        exitHandler = exit;
+        exceptionHandler = exception;
+    }
+    
+    public static void enter(int methodId) {
+        final IntConsumer h = entryHandler;
+        if (h != null) {
+            h.accept(methodId);
+        }
+    }
+    
+    public static void exit(int methodId) {
+        final IntConsumer h = exitHandler;
+        if (h != null) {
+            h.accept(methodId);
+        }
+    }
+    
+    public static void exception(int methodId) {
+        final IntConsumer h = exceptionHandler;
+        if (h != null) {
+            h.accept(methodId);
+        }
+    }
+}
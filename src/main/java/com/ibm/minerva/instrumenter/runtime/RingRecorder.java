@@ -0,0 +1,253 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Records method entry and exit events as fixed size binary records. The 
+// instrumented code calls enter(int) and exit(int) which append a record to
+// a ring buffer owned by the calling thread, without locking or allocating.
+// A daemon thread drains the buffers to the trace file every flush interval.
+//
+// Trace file format (big endian):
+//   header: int magic ("MNRB"), int version, int record size, 
+//           long start time (epoch milliseconds), long start time (nanoTime)
+//   record: long nanoTime, long thread id, int method id, int event
+// The event is ENTRY, EXIT, DROPPED, THROTTLED or EXCEPTION. The method id of a 
+// DROPPED record is the number of records of that thread which were dropped because
+// its buffer was full, its time is when the writer noticed. A THROTTLED record means
+// that the method's calls are no longer recorded. An EXCEPTION record is an exit by
+// exception, only recorded separately with the "single" exit strategy.
+public final class RingRecorder {
+    
+    public static final int MAGIC = 0x4D4E5242;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 28;
+    public static final int RECORD_SIZE = 24;
+    
+    public static final int ENTRY = 0;
+    public static final int EXIT = 1;
+    public static final int DROPPED = 2;
+    public static final int THROTTLED = 3;
+    public static final int EXCEPTION = 4;
+    
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+    public static final long DEFAULT_FLUSH_INTERVAL = 100;
+    
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    
+    private static volatile RingRecorder recorder;
+    
+    private final File file;
+    private final FileChannel channel;
+    private final int bufferSize;
+    private final long flushIntervalNanos;
+    private final Consumer<IOException> errorHandler;
+    private final List<ThreadBuffer> buffers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<ThreadBuffer> threadBuffer = ThreadLocal.withInitial(this::register);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private volatile boolean running = true;
+    
+    private RingRecorder(File file, int bufferSize, long flushInterval, 
+            Consumer<IOException> errorHandler) throws IOException {
+        this.file = file;
+        this.bufferSize = bufferSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.errorHandler = errorHandler;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, 
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(RECORD_SIZE);
+        out.putLong(System.currentTimeMillis());
+        out.putLong(System.nanoTime());
+        writer = new Thread(this::run, "Minerva Agent Trace Writer");
+        writer.setDaemon(true);
+        shutdownHook = new Thread(this::close, "Minerva Agent Trace Writer Shutdown");
+    }
+    
+    // Starts recording to the given file, replacing its contents. A recording
+    // which was already started is stopped first. Errors writing the file are
+    // passed to the error handler (if not null), after which recording stops.
+    public static synchronized void start(File file, int bufferSize, long flushInterval, 
+            Consumer<IOException> errorHandler) throws IOException {
+        stop();
+        final RingRecorder r = new RingRecorder(file, Math.max(1, bufferSize), 
+                Math.max(1, flushInterval), errorHandler);
+        r.writer.start();
+        Runtime.getRuntime().addShutdownHook(r.shutdownHook);
+        recorder = r;
+    }
+    
+    // Stops recording, writing the events recorded so far and closing the file.
+    public static synchronized void stop() {
+        final RingRecorder r = recorder;
+        if (r != null) {
+            recorder = null;
+            try {
+                Runtime.getRuntime().removeShutdownHook(r.shutdownHook);
+            }
+            catch (IllegalStateException e) {
+                // Already shutting down, the hook closes the file.
+            }
+            r.close();
+        }
+    }
+    
+    // Writes the events recorded so far by all threads to the trace file.
+    public static void flush() {
+        final RingRecorder r = recorder;
+        if (r != null && r.running) {
+            try {
+                r.drain();
+            }
+            catch (IOException e) {
+                r.fail(e);
+            }
+        }
+    }
+    
+    public static boolean isRecording() {
+        return recorder != null;
+    }
+    
+    // Returns the trace file, or null if not recording.
+    public static File getFile() {
+        final RingRecorder r = recorder;
+        return r != null ? r.file : null;
+    }
+    
+    public static void enter(int methodId) {
+        final RingRecorder r = recorder;
+        if (r != null) {
+            r.threadBuffer.get().add(System.nanoTime(), methodId, ENTRY);
+        }
+    }
+    
+    public static void exit(int methodId) {
+        final RingRecorder r = recorder;
+        if (r != null) {
+            r.threadBuffer.get().add(System.nanoTime(), methodId, EXIT);
+        }
+    }
+    
+    public static void exception(int methodId) {
+        final RingRecorder r = recorder;
+        if (r != null) {
+            r.threadBuffer.get().add(System.nanoTime(), methodId, EXCEPTION);
+        }
+    }
+    
+    public static void throttled(int methodId) {
+        final RingRecorder r = recorder;
+        if (r != null) {
+            r.threadBuffer.get().add(System.nanoTime(), methodId, THROTTLED);
+        }
+    }
+    
+    private ThreadBuffer register() {
+        final ThreadBuffer b = new ThreadBuffer(Thread.currentThread(), bufferSize);
+        buffers.add(b);
+        return b;
+    }
+    
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            try {
+                drain();
+            }
+            catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+    
+    private void fail(IOException e) {
+        running = false;
+        closeChannel();
+        if (errorHandler != null) {
+            errorHandler.accept(e);
+        }
+    }
+    
+    // The buffers are drained by one thread at a time.
+    private void drain() throws IOException {
+        synchronized (out) {
+            for (ThreadBuffer b : buffers) {
+                b.drain(out, channel);
+                // Buffers of threads which have ended are removed once they are empty.
+                if (!b.isThreadAlive() && b.isEmpty()) {
+                    buffers.remove(b);
+                }
+            }
+            write(out, channel);
+        }
+    }
+    
+    private void close() {
+        if (running) {
+            running = false;
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+                drain();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (IOException e) {
+                if (errorHandler != null) {
+                    errorHandler.accept(e);
+                }
+            }
+            finally {
+                closeChannel();
+            }
+        }
+    }
+    
+    private void closeChannel() {
+        try {
+            channel.close();
+        }
+        catch (IOException e) {}
+    }
+    
+    static void write(ByteBuffer out, WritableByteChannel channel) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+}
@@ -0,0 +1,63 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Called at the entry of each instrumented method when sampling is configured,
+// to decide whether the call is traced. The instrumented method keeps the 
+// decision in a local variable so that its exit is only traced if its entry was.
+public final class Sampler {
+    
+    private static final int INITIAL_METHODS = 1024;
+    
+    // Calls per method id since it was last sampled. The counters are updated
+    // without synchronization: a lost update only shifts which call is sampled.
+    private static volatile int[] counters = new int[INITIAL_METHODS];
+    
+    private Sampler() {}
+    
+    // Samples every Nth call of each method, starting with the first so that 
+    // every method which is called is traced at least once.
+    public static boolean every(int methodId, int n) {
+        int[] c = counters;
+        if (methodId >= c.length) {
+            c = grow(methodId);
+        }
+        final int count = c[methodId];
+        c[methodId] = count + 1 < n ? count + 1 : 0;
+        return count == 0;
+    }
+    
+    // Samples a call with a probability of threshold / 2^31.
+    public static boolean rate(int threshold) {
+        return (ThreadLocalRandom.current().nextInt() & Integer.MAX_VALUE) < threshold;
+    }
+    
+    private static synchronized int[] grow(int methodId) {
+        final int[] c = counters;
+        if (methodId < c.length) {
+            return c;
+        }
+        final int[] newCounters = new int[Math.max(methodId + 1, c.length * 2)];
+        System.arraycopy(c, 0, newCounters, 0, c.length);
+        counters = newCounters;
+        return newCounters;
+    }
+}
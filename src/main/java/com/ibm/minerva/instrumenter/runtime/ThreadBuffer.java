@@ -0,0 +1,142 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+// A single producer, single consumer ring of trace records owned by one thread.
+// The owning thread adds records without locking or allocating; the recorder's
+// writer thread drains them. Records which do not fit are dropped and counted.
+final class ThreadBuffer {
+    
+    private static final AtomicLongFieldUpdater<ThreadBuffer> HEAD = 
+            AtomicLongFieldUpdater.newUpdater(ThreadBuffer.class, "head");
+    private static final AtomicLongFieldUpdater<ThreadBuffer> TAIL = 
+            AtomicLongFieldUpdater.newUpdater(ThreadBuffer.class, "tail");
+    private static final AtomicLongFieldUpdater<ThreadBuffer> DROPPED = 
+            AtomicLongFieldUpdater.newUpdater(ThreadBuffer.class, "dropped");
+    
+    private final Thread thread;
+    private final long threadId;
+    // Two longs per record: the nanoTime and the method id and event.
+    private final long[] records;
+    private final int capacity;
+    private final int mask;
+    
+    // Written by the owning thread.
+    private volatile long head;
+    private volatile long dropped;
+    private long cachedTail;
+    
+    // Written by the writer thread.
+    private volatile long tail;
+    private volatile long reportedDropped;
+    
+    ThreadBuffer(Thread thread, int capacity) {
+        this.thread = thread;
+        this.threadId = thread.getId();
+        this.capacity = ceilingPowerOfTwo(capacity);
+        this.mask = this.capacity - 1;
+        this.records = new long[this.capacity << 1];
+    }
+    
+    int getCapacity() {
+        return capacity;
+    }
+    
+    long getThreadId() {
+        return threadId;
+    }
+    
+    long getDropped() {
+        return dropped;
+    }
+    
+    boolean isThreadAlive() {
+        return thread.isAlive();
+    }
+    
+    boolean isEmpty() {
+        return head == tail && dropped == reportedDropped;
+    }
+    
+    // Called only by the owning thread.
+    boolean add(long time, int methodId, int event) {
+        final long h = head;
+        if (h - cachedTail >= capacity) {
+            cachedTail = tail;
+            if (h - cachedTail >= capacity) {
+                DROPPED.lazySet(this, dropped + 1);
+                return false;
+            }
+        }
+        final int i = ((int) h & mask) << 1;
+        records[i] = time;
+        records[i + 1] = ((long) methodId << 32) | (event & 0xFFFFFFFFL);
+        // Publishes the record to the writer thread.
+        HEAD.lazySet(this, h + 1);
+        return true;
+    }
+    
+    // Called only by the writer thread. Copies the published records into out,
+    // writing out to the channel whenever it is full, and returns their number.
+    int drain(ByteBuffer out, WritableByteChannel channel) throws IOException {
+        final long h = head;
+        long t = tail;
+        final int count = (int) (h - t);
+        while (t < h) {
+            if (out.remaining() < RingRecorder.RECORD_SIZE) {
+                RingRecorder.write(out, channel);
+            }
+            final int i = ((int) t & mask) << 1;
+            final long value = records[i + 1];
+            out.putLong(records[i]);
+            out.putLong(threadId);
+            out.putInt((int) (value >>> 32));
+            out.putInt((int) value);
+            ++t;
+        }
+        // Frees the slots once they are copied.
+        TAIL.lazySet(this, t);
+        final long d = dropped;
+        if (d != reportedDropped) {
+            if (out.remaining() < RingRecorder.RECORD_SIZE) {
+                RingRecorder.write(out, channel);
+            }
+            // The method id of a DROPPED record is the number of records dropped since the last one.
+            out.putLong(System.nanoTime());
+            out.putLong(threadId);
+            final int n = (int) Math.min(Integer.MAX_VALUE, d - reportedDropped);
+            out.putInt(n);
+            out.putInt(RingRecorder.DROPPED);
+            reportedDropped += n;
+        }
+        return count;
+    }
+    
+    private static int ceilingPowerOfTwo(int value) {
+        if (value <= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(Math.min(value - 1, 1 << 29) << 1);
+    }
+}
@@ -0,0 +1,149 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+// Called at the entry of each instrumented method when throttling is configured.
+// Each method id has a slot in a shared array which counts its calls. A daemon 
+// thread checks the counts every interval: methods called more often than the 
+// limit are throttled, the others' counts are reset. The probes of a throttled
+// method only read its slot, which is negative, and are not traced any more.
+public final class Throttler {
+    
+    private static final int INITIAL_METHODS = 1024;
+    private static final int THROTTLED = -1;
+    
+    // Calls per method id in the current interval, or THROTTLED. The probes update
+    // the counts without synchronization: a lost update only delays throttling.
+    private static volatile int[] calls = new int[INITIAL_METHODS];
+    // Guarded by Throttler.class, like the other fields below.
+    private static final BitSet throttled = new BitSet();
+    private static int maxCalls = Integer.MAX_VALUE;
+    private static IntConsumer listener;
+    private static Thread monitor;
+    
+    private Throttler() {}
+    
+    // Returns false if the method is throttled.
+    public static boolean enter(int methodId) {
+        int[] c = calls;
+        if (methodId >= c.length) {
+            c = grow(methodId);
+        }
+        final int count = c[methodId];
+        if (count < 0) {
+            return false;
+        }
+        c[methodId] = count + 1;
+        return true;
+    }
+    
+    // Starts checking the calls of each method every interval (in milliseconds).
+    // Methods called more than maxCalls times in an interval are throttled and 
+    // passed to the listener (if not null), on the checking thread.
+    public static synchronized void start(int maxCalls, long interval, IntConsumer listener) {
+        stop();
+        Throttler.maxCalls = Math.max(1, maxCalls);
+        Throttler.listener = listener;
+        final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, interval));
+        final Thread t = new Thread(() -> run(intervalNanos), "Minerva Agent Throttle Monitor");
+        t.setDaemon(true);
+        monitor = t;
+        t.start();
+    }
+    
+    public static synchronized void stop() {
+        if (monitor != null) {
+            monitor.interrupt();
+            monitor = null;
+        }
+        listener = null;
+    }
+    
+    // Traces the methods which were throttled again.
+    public static synchronized void reset() {
+        throttled.clear();
+        final int[] c = calls;
+        for (int i = 0; i < c.length; ++i) {
+            c[i] = 0;
+        }
+    }
+    
+    public static synchronized boolean isThrottled(int methodId) {
+        return throttled.get(methodId);
+    }
+    
+    // Checks the counts of the interval which has ended.
+    static void check() {
+        final int[] newlyThrottled;
+        final IntConsumer l;
+        synchronized (Throttler.class) {
+            final int[] c = calls;
+            final BitSet found = new BitSet();
+            for (int i = 0; i < c.length; ++i) {
+                final int count = c[i];
+                if (throttled.get(i)) {
+                    // A probe may have written back its count after the method was throttled.
+                    if (count != THROTTLED) {
+                        c[i] = THROTTLED;
+                    }
+                }
+                else if (count > maxCalls) {
+                    c[i] = THROTTLED;
+                    throttled.set(i);
+                    found.set(i);
+                }
+                else if (count != 0) {
+                    c[i] = 0;
+                }
+            }
+            newlyThrottled = found.stream().toArray();
+            l = listener;
+        }
+        if (l != null) {
+            for (int methodId : newlyThrottled) {
+                l.accept(methodId);
+            }
+        }
+    }
+    
+    private static void run(long intervalNanos) {
+        while (!Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(Throttler.class, intervalNanos);
+            if (!Thread.currentThread().isInterrupted()) {
+                check();
+            }
+        }
+    }
+    
+    private static synchronized int[] grow(int methodId) {
+        final int[] c = calls;
+        if (methodId < c.length) {
+            return c;
+        }
+        final int[] newCalls = new int[Math.max(methodId + 1, c.length * 2)];
+        System.arraycopy(c, 0, newCalls, 0, c.length);
+        calls = newCalls;
+        return newCalls;
+    }
+}
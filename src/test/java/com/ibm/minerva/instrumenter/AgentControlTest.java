@@ -0,0 +1,112 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.instrument.IllegalClassFormatException;
+import java.lang.instrument.Instrumentation;
+import java.util.Collections;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.junit5.JUnit5Mockery;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
+import com.ibm.minerva.instrumenter.filter.pkg.ApplicationProcessorImpl;
+
+@DisplayName("AgentControl Test")
+public class AgentControlTest {
+    
+    private static final String EXAMPLE_CLASS = "example/Example";
+    private static final String OTHER_CLASS = "example/Other";
+    
+    private final Mockery context = new JUnit5Mockery();
+    
+    @Test
+    public void testDetach() throws Exception {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        final TraceInjector ti = createTraceInjector();
+        final byte[] exampleClass = ResourceHelper.resourceToByteArray(EXAMPLE_CLASS + ".class");
+        assertNotNull(transform(ti, EXAMPLE_CLASS, null));
+        assertNotNull(transform(ti, OTHER_CLASS, null));
+        final Class<?> example = Class.forName("example.Example");
+        context.checking(new Expectations() {
+            {
+                // Other was never loaded, so only Example is restored.
+                oneOf(inst).getAllLoadedClasses(); will(returnValue(new Class<?>[] {String.class, example}));
+                oneOf(inst).isModifiableClass(example); will(returnValue(true));
+                oneOf(inst).retransformClasses(example);
+                oneOf(inst).removeTransformer(ti); will(returnValue(true));
+                // Classes which are still instrumented are looked for again once the transformer has been removed.
+                oneOf(inst).getAllLoadedClasses(); will(returnValue(new Class<?>[] {String.class, example}));
+            }
+        });
+        final AgentControl control = new AgentControl(inst, ti, new BatchRetransformer(inst, 10, 0L));
+        assertFalse(control.isDetached());
+        assertEquals(2, control.getInstrumentedClassCount());
+        assertEquals(1, control.detach());
+        assertTrue(control.isDetached());
+        // The injector no longer transforms classes, so retransformation restores their original bytes.
+        assertNull(ti.transform(AgentControlTest.class.getClassLoader(), EXAMPLE_CLASS, example, null, exampleClass));
+        assertNull(transform(ti, OTHER_CLASS, null));
+        // Detaching again does nothing.
+        assertEquals(0, control.detach());
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testDetachNothingInstrumented() {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        final TraceInjector ti = createTraceInjector();
+        context.checking(new Expectations() {
+            {
+                oneOf(inst).removeTransformer(ti); will(returnValue(true));
+            }
+        });
+        final AgentControl control = new AgentControl(inst, ti, new BatchRetransformer(inst, 10, 0L));
+        assertEquals(0, control.detach());
+        assertTrue(control.isDetached());
+        context.assertIsSatisfied();
+    }
+    
+    private static TraceInjector createTraceInjector() {
+        final TraceGenerator tg = new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                return "java.lang.System.out.println(\"test\");";
+            }
+        };
+        return TraceInjector.builder(new ApplicationProcessorImpl(Collections.singleton("example/")), tg).canRetransform(true).build();
+    }
+    
+    private static byte[] transform(TraceInjector ti, String className, Class<?> classBeingRedefined) 
+            throws IllegalClassFormatException, IOException {
+        return ti.transform(AgentControlTest.class.getClassLoader(), className, classBeingRedefined, null, 
+                ResourceHelper.resourceToByteArray(className + ".class"));
+    }
+}
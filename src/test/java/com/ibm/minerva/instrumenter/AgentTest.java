@@ -25,10 +25,13 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.lang.instrument.Instrumentation;
+import java.util.jar.JarFile;
 
 import org.jmock.Expectations;
 import org.jmock.Mockery;
+import org.jmock.States;
 import org.jmock.junit5.JUnit5Mockery;
+import org.jmock.lib.concurrent.Synchroniser;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -48,22 +51,67 @@ public class AgentTest {
     private static final String UNKNOWN_FILTER_FILE = "unknown-filter-config.json";
     private static final String UNKNOWN_GENERATOR_FILE = "unknown-generator-config.json";
     private static final String MALFORMED_FILE = "package-config-malformed.json";
+    private static final String ASYNC_CONFIG_FILE = "async-package-config.json";
+    private static final String METRICS_CONFIG_FILE = "metrics-config.json";
     
     private final Mockery context = new JUnit5Mockery();
     
     @ParameterizedTest
-    @ValueSource(strings = {DEFAULTED_CONFIG_FILE, PACKAGE_CONFIG_FILE, TABLE_CONFIG_FILE, LOGGING_CONFIG_FILE})
+    @ValueSource(strings = {DEFAULTED_CONFIG_FILE, PACKAGE_CONFIG_FILE, TABLE_CONFIG_FILE, LOGGING_CONFIG_FILE, METRICS_CONFIG_FILE})
     public void testAgentmain(String fileName) {
+        // Loaded classes are retransformed on a background thread.
+        context.setThreadingPolicy(new Synchroniser());
         final Instrumentation inst = context.mock(Instrumentation.class);
         context.checking(new Expectations() {
             {
-                oneOf(inst).addTransformer(with(any((TraceInjector.class))));
+                allowing(inst).isRetransformClassesSupported(); will(returnValue(true));
+                oneOf(inst).addTransformer(with(any((TraceInjector.class))), with(true));
+                allowing(inst).getAllLoadedClasses(); will(returnValue(new Class<?>[0]));
+                // The logging generator's probes call the runtime on the bootstrap class path.
+                allowing(inst).appendToBootstrapClassLoaderSearch(with(any(JarFile.class)));
             }
         });
         Agent.agentmain(ResourceHelper.resolveResource(fileName), inst);
         context.assertIsSatisfied();
     }
     
+    @Test
+    public void testAgentmainAttach() throws Exception {
+        final Synchroniser synchroniser = new Synchroniser();
+        context.setThreadingPolicy(synchroniser);
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        final Class<?> example = Class.forName("example.Example");
+        final States retransformed = context.states("retransformed").startsAs("no");
+        context.checking(new Expectations() {
+            {
+                allowing(inst).isRetransformClassesSupported(); will(returnValue(true));
+                allowing(inst).appendToBootstrapClassLoaderSearch(with(any(JarFile.class)));
+                oneOf(inst).addTransformer(with(any((TraceInjector.class))), with(true));
+                // Only the loaded classes accepted by the filter are retransformed.
+                oneOf(inst).getAllLoadedClasses(); will(returnValue(new Class<?>[] {String.class, example}));
+                oneOf(inst).isModifiableClass(example); will(returnValue(true));
+                oneOf(inst).retransformClasses(example); then(retransformed.is("yes"));
+            }
+        });
+        Agent.agentmain(ResourceHelper.resolveResource(PACKAGE_CONFIG_FILE), inst);
+        synchroniser.waitUntil(retransformed.is("yes"), 10000L);
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testAgentmainAttachNotSupported() {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                allowing(inst).isRetransformClassesSupported(); will(returnValue(false));
+                allowing(inst).appendToBootstrapClassLoaderSearch(with(any(JarFile.class)));
+                oneOf(inst).addTransformer(with(any((TraceInjector.class))));
+            }
+        });
+        Agent.agentmain(ResourceHelper.resolveResource(PACKAGE_CONFIG_FILE), inst);
+        context.assertIsSatisfied();
+    }
+    
     @ParameterizedTest
     @ValueSource(strings = {NO_FILTER_FILE, NO_GENERATOR_FILE, UNKNOWN_FILTER_FILE,
             UNKNOWN_GENERATOR_FILE, MALFORMED_FILE})
@@ -79,10 +127,53 @@ public class AgentTest {
         final Instrumentation inst = context.mock(Instrumentation.class);
         context.checking(new Expectations() {
             {
-                oneOf(inst).addTransformer(with(any((TraceInjector.class))));
+                allowing(inst).isRetransformClassesSupported(); will(returnValue(true));
+                oneOf(inst).addTransformer(with(any((TraceInjector.class))), with(true));
+                allowing(inst).appendToBootstrapClassLoaderSearch(with(any(JarFile.class)));
             }
         });
         Agent.premain(ResourceHelper.resolveResource(fileName), inst);
+        assertNotNull(Agent.getAgentControl());
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testPremainRetransformNotSupported() {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                allowing(inst).isRetransformClassesSupported(); will(returnValue(false));
+                allowing(inst).appendToBootstrapClassLoaderSearch(with(any(JarFile.class)));
+                oneOf(inst).addTransformer(with(any((TraceInjector.class))));
+            }
+        });
+        Agent.premain(ResourceHelper.resolveResource(PACKAGE_CONFIG_FILE), inst);
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testAgentmainDetach() throws Exception {
+        final Synchroniser synchroniser = new Synchroniser();
+        context.setThreadingPolicy(synchroniser);
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        final States detached = context.states("detached").startsAs("no");
+        context.checking(new Expectations() {
+            {
+                allowing(inst).isRetransformClassesSupported(); will(returnValue(true));
+                oneOf(inst).addTransformer(with(any((TraceInjector.class))), with(true));
+                // Nothing was instrumented so there are no classes to restore.
+                oneOf(inst).removeTransformer(with(any((TraceInjector.class)))); will(returnValue(true)); then(detached.is("yes"));
+            }
+        });
+        Agent.premain(ResourceHelper.resolveResource(PACKAGE_CONFIG_FILE), inst);
+        final AgentControl control = Agent.getAgentControl();
+        assertNotNull(control);
+        Agent.agentmain(" detach ", inst);
+        synchroniser.waitUntil(detached.is("yes"), 10000L);
+        assertTrue(control.isDetached());
+        assertNull(Agent.getAgentControl());
+        // There is nothing left to detach.
+        Agent.agentmain("detach", inst);
         context.assertIsSatisfied();
     }
     
@@ -95,6 +186,38 @@ public class AgentTest {
         context.assertIsSatisfied();
     }
     
+    @Test
+    public void testAgentmainAsync() {
+        // The filter is loaded on a background thread.
+        context.setThreadingPolicy(new Synchroniser());
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                allowing(inst).isRetransformClassesSupported(); will(returnValue(true));
+                oneOf(inst).addTransformer(with(any((TraceInjector.class))), with(true));
+                allowing(inst).getAllLoadedClasses(); will(returnValue(new Class<?>[0]));
+                // The logging generator's probes call the runtime on the bootstrap class path.
+                allowing(inst).appendToBootstrapClassLoaderSearch(with(any(JarFile.class)));
+            }
+        });
+        Agent.agentmain(ResourceHelper.resolveResource(ASYNC_CONFIG_FILE), inst);
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testAgentmainAsyncNotSupported() {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                allowing(inst).isRetransformClassesSupported(); will(returnValue(false));
+                allowing(inst).appendToBootstrapClassLoaderSearch(with(any(JarFile.class)));
+                oneOf(inst).addTransformer(with(any((TraceInjector.class))));
+            }
+        });
+        Agent.agentmain(ResourceHelper.resolveResource(ASYNC_CONFIG_FILE), inst);
+        context.assertIsSatisfied();
+    }
+    
     @Test
     public void testResolvePath() {
         final File rf = Agent.resolvePath(PACKAGE_CONFIG_FILE);
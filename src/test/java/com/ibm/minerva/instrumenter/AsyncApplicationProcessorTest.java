@@ -0,0 +1,134 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.instrument.Instrumentation;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.junit5.JUnit5Mockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.ibm.minerva.instrumenter.filter.pkg.ApplicationProcessorImpl;
+
+import javassist.CtClass;
+
+@DisplayName("AsyncApplicationProcessor Test")
+public class AsyncApplicationProcessorTest {
+    
+    private final Mockery context = new JUnit5Mockery();
+    {
+        context.setThreadingPolicy(new Synchroniser());
+    }
+    
+    @Test
+    public void testAsyncApplicationProcessor() throws Exception {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                oneOf(inst).getAllLoadedClasses(); will(returnValue(new Class<?>[] {String.class, Integer.class, AsyncApplicationProcessorTest.class}));
+                oneOf(inst).isModifiableClass(String.class); will(returnValue(true));
+                oneOf(inst).retransformClasses(String.class);
+            }
+        });
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AsyncApplicationProcessor ap = new AsyncApplicationProcessor(() -> {
+            try {
+                latch.await();
+            }
+            catch (InterruptedException e) {}
+            return new ApplicationProcessorImpl(Collections.singleton("java/lang/String"));
+        }, new BatchRetransformer(inst, 10, 0L));
+        final Thread t = ap.start();
+        
+        // Nothing is accepted while the filter is loading.
+        assertFalse(ap.isReady());
+        assertFalse(ap.acceptClass("java/lang/String"));
+        assertFalse(ap.acceptClass("com/ibm/minerva/instrumenter/AsyncApplicationProcessorTest"));
+        assertNull(ap.acceptClass(ResourceHelper.resourceToCtClass("example/Example.class")));
+        assertEquals("v2.0.0r40", ap.getInstrumentationVersion());
+        
+        latch.countDown();
+        t.join();
+        
+        // Only the class accepted by the filter was retransformed.
+        assertTrue(ap.isReady());
+        assertTrue(ap.acceptClass("java/lang/String"));
+        assertFalse(ap.acceptClass("java/lang/Integer"));
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testAsyncApplicationProcessorFailed() throws Exception {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        final AsyncApplicationProcessor ap = new AsyncApplicationProcessor(() -> {
+            throw new IllegalStateException();
+        }, new BatchRetransformer(inst, 10, 0L));
+        ap.start().join();
+        assertFalse(ap.isReady());
+        assertFalse(ap.acceptClass("java/lang/String"));
+        
+        final AsyncApplicationProcessor ap2 = new AsyncApplicationProcessor(() -> null, 
+                new BatchRetransformer(inst, 10, 0L));
+        ap2.start().join();
+        assertFalse(ap2.isReady());
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testAsyncApplicationProcessorNothingPending() throws Exception {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        final AsyncApplicationProcessor ap = new AsyncApplicationProcessor(() -> 
+            new ApplicationProcessorImpl(Collections.singleton("example/")), new BatchRetransformer(inst, 10, 0L));
+        ap.start().join();
+        assertTrue(ap.isReady());
+        final CtClass ctClass = ResourceHelper.resourceToCtClass("example/Example.class");
+        assertTrue(ap.acceptClass(ctClass.getName().replace('.', '/')));
+        assertTrue(ap.acceptClass(ctClass) != null);
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testAsyncApplicationProcessorAttached() throws Exception {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        final Class<?> example = Class.forName("example.Example");
+        context.checking(new Expectations() {
+            {
+                // Classes loaded before the agent was attached were never seen by the filter.
+                oneOf(inst).getAllLoadedClasses(); will(returnValue(new Class<?>[] {String.class, example}));
+                oneOf(inst).isModifiableClass(example); will(returnValue(true));
+                oneOf(inst).retransformClasses(example);
+            }
+        });
+        final AsyncApplicationProcessor ap = new AsyncApplicationProcessor(() -> 
+            new ApplicationProcessorImpl(Collections.singleton("example/")), new BatchRetransformer(inst, 10, 0L), true);
+        ap.start().join();
+        assertTrue(ap.isReady());
+        context.assertIsSatisfied();
+    }
+}
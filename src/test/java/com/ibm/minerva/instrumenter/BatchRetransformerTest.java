@@ -0,0 +1,131 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.Sequence;
+import org.jmock.junit5.JUnit5Mockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("BatchRetransformer Test")
+public class BatchRetransformerTest {
+    
+    private final Mockery context = new JUnit5Mockery();
+    
+    private static final List<Class<?>> CLASSES = Arrays.asList(String.class, Integer.class, Long.class, Short.class, Byte.class);
+    
+    @Test
+    public void testRetransform() throws Exception {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        final Sequence batches = context.sequence("batches");
+        context.checking(new Expectations() {
+            {
+                oneOf(inst).retransformClasses(String.class, Integer.class); inSequence(batches);
+                oneOf(inst).retransformClasses(Long.class, Short.class); inSequence(batches);
+                oneOf(inst).retransformClasses(Byte.class); inSequence(batches);
+            }
+        });
+        final BatchRetransformer br = new BatchRetransformer(inst, 2, 0L);
+        assertEquals(5, br.retransform(CLASSES));
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testRetransformFailedBatch() throws Exception {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                oneOf(inst).retransformClasses(String.class, Integer.class, Long.class); 
+                will(throwException(new UnmodifiableClassException()));
+                oneOf(inst).retransformClasses(String.class);
+                oneOf(inst).retransformClasses(Integer.class);
+                will(throwException(new UnmodifiableClassException()));
+                oneOf(inst).retransformClasses(Long.class);
+                oneOf(inst).retransformClasses(Short.class, Byte.class);
+            }
+        });
+        final BatchRetransformer br = new BatchRetransformer(inst, 3, 1L);
+        assertEquals(4, br.retransform(CLASSES));
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testRetransformParallel() throws Exception {
+        context.setThreadingPolicy(new Synchroniser());
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                // Batches are shared among the threads in no particular order.
+                oneOf(inst).retransformClasses(String.class, Integer.class);
+                oneOf(inst).retransformClasses(Long.class, Short.class);
+                will(throwException(new UnmodifiableClassException()));
+                oneOf(inst).retransformClasses(Long.class);
+                oneOf(inst).retransformClasses(Short.class);
+                oneOf(inst).retransformClasses(Byte.class);
+            }
+        });
+        final BatchRetransformer br = new BatchRetransformer(inst, 2, 0L, 3);
+        assertEquals(3, br.getThreads());
+        assertEquals(5, br.retransform(CLASSES));
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testRetransformLoadedClasses() throws Exception {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                oneOf(inst).getAllLoadedClasses(); will(returnValue(new Class<?>[] {String.class, Integer.class, Long.class}));
+                oneOf(inst).isModifiableClass(String.class); will(returnValue(true));
+                oneOf(inst).isModifiableClass(Long.class); will(returnValue(true));
+                oneOf(inst).retransformClasses(String.class, Long.class);
+            }
+        });
+        final BatchRetransformer br = new BatchRetransformer(inst, 10, 0L);
+        assertEquals(Arrays.asList(String.class, Long.class), br.retransformLoadedClasses(x -> !x.equals("java/lang/Integer")));
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testGetModifiableClasses() {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                oneOf(inst).getAllLoadedClasses(); will(returnValue(new Class<?>[] {String.class, int.class, String[].class, Integer.class, Long.class}));
+                oneOf(inst).isModifiableClass(String.class); will(returnValue(true));
+                oneOf(inst).isModifiableClass(Integer.class); will(returnValue(false));
+            }
+        });
+        final BatchRetransformer br = new BatchRetransformer(inst, 0, -1L);
+        assertEquals(1, br.getBatchSize());
+        assertEquals(0L, br.getBatchDelay());
+        assertEquals(Arrays.asList(String.class), br.getModifiableClasses(x -> !x.equals("java/lang/Long")));
+        context.assertIsSatisfied();
+    }
+}
@@ -0,0 +1,92 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javassist.ClassPool;
+
+@DisplayName("ClassPoolRegistry Test")
+public class ClassPoolRegistryTest {
+    
+    @Test
+    public void testOnePoolPerLoader() {
+        final ClassPoolRegistry registry = new ClassPoolRegistry(1, 10);
+        final ClassLoader loader = ClassPoolRegistryTest.class.getClassLoader();
+        final ClassPool pool = registry.getClassPool(loader);
+        assertNotNull(pool);
+        assertSame(pool, registry.getClassPool(loader));
+        final ClassLoader other = new URLClassLoader(new URL[0], loader);
+        assertNotSame(pool, registry.getClassPool(other));
+        assertEquals(2, registry.size());
+        // The bootstrap loader has its own pool.
+        assertSame(registry.getClassPool(null), registry.getClassPool(null));
+        assertEquals(2, registry.size());
+    }
+    
+    @Test
+    public void testPoolReleasedWithLoader() throws Exception {
+        final ClassPoolRegistry registry = new ClassPoolRegistry(1, 10);
+        ClassLoader loader = new URLClassLoader(new URL[0], ClassPoolRegistryTest.class.getClassLoader());
+        registry.getClassPool(loader).get("example.Other");
+        assertEquals(1, registry.size());
+        loader = null;
+        for (int i = 0; i < 100 && registry.size() > 0; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, registry.size());
+    }
+    
+    @Test
+    public void testStripedPools() throws Exception {
+        final ClassPoolRegistry registry = new ClassPoolRegistry(3, 10);
+        assertEquals(4, registry.getStripes());
+        final ClassLoader loader = ClassPoolRegistryTest.class.getClassLoader();
+        final Set<ClassPool> pools = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        final Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(() -> {
+                // A thread always gets the same pool of a loader.
+                final ClassPool pool = registry.getClassPool(loader);
+                assertSame(pool, registry.getClassPool(loader));
+                pools.add(pool);
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Consecutive thread ids are spread over all stripes of the loader.
+        assertEquals(4, pools.size());
+        assertEquals(1, registry.size());
+    }
+}
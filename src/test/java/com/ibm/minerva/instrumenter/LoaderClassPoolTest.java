@@ -0,0 +1,85 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javassist.CtClass;
+
+@DisplayName("LoaderClassPool Test")
+public class LoaderClassPoolTest {
+    
+    @Test
+    public void testCachedClassesReused() throws Exception {
+        final LoaderClassPool pool = new LoaderClassPool(LoaderClassPoolTest.class.getClassLoader(), 10);
+        final CtClass ctClass = pool.get("example.Other");
+        assertSame(ctClass, pool.get("example.Other"));
+        assertEquals(1, pool.getCachedClassCount());
+        ctClass.detach();
+        assertEquals(0, pool.getCachedClassCount());
+        assertNotSame(ctClass, pool.get("example.Other"));
+    }
+    
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        final LoaderClassPool pool = new LoaderClassPool(LoaderClassPoolTest.class.getClassLoader(), 2);
+        final CtClass example = pool.get("example.Example");
+        final CtClass other = pool.get("example.Other");
+        // Touch Example so that Other is the least recently used.
+        assertSame(example, pool.get("example.Example"));
+        pool.get("example.Generic");
+        assertEquals(2, pool.getCachedClassCount());
+        assertSame(example, pool.get("example.Example"));
+        assertNotSame(other, pool.get("example.Other"));
+        assertEquals(2, pool.getCachedClassCount());
+    }
+    
+    @Test
+    public void testMakeClassReplacesResolvedClass() throws Exception {
+        final LoaderClassPool pool = new LoaderClassPool(LoaderClassPoolTest.class.getClassLoader(), 10);
+        // A class resolved as a referenced type can later be defined from its class file bytes.
+        final CtClass resolved = pool.get("example.Other");
+        final CtClass made = pool.makeClass(new ByteArrayInputStream(ResourceHelper.resourceToByteArray("example/Other.class")));
+        assertNotSame(resolved, made);
+        assertSame(made, pool.get("example.Other"));
+        made.toBytecode();
+        made.detach();
+        assertEquals(0, pool.getCachedClassCount());
+        // Primitive types are shared by all pools and never cached.
+        assertSame(CtClass.intType, pool.get("int"));
+        assertEquals(0, pool.getCachedClassCount());
+    }
+    
+    @Test
+    public void testJdkClassesWithoutParent() throws Exception {
+        final LoaderClassPool pool = new LoaderClassPool(LoaderClassPoolTest.class.getClassLoader(), 10);
+        assertEquals("java.lang.String", pool.get("java.lang.String").getName());
+        assertEquals(CtClass.intType, pool.get("int[]").getComponentType());
+        // The bootstrap pool reads JDK classes directly.
+        final LoaderClassPool bootstrapPool = new LoaderClassPool(null, 10);
+        assertEquals("java.lang.Object", bootstrapPool.get("java.lang.String").getSuperclass().getName());
+    }
+}
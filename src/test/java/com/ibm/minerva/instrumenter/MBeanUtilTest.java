@@ -0,0 +1,75 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("MBeanUtil Test")
+public class MBeanUtilTest {
+    
+    private static final String OBJECT_NAME = "com.ibm.minerva.instrumenter:type=MBeanUtilTest";
+    
+    public interface TestMXBean {
+        int getValue();
+    }
+    
+    public static final class TestBean implements TestMXBean {
+        private final int value;
+        TestBean(int value) {
+            this.value = value;
+        }
+        @Override
+        public int getValue() {
+            return value;
+        }
+    }
+    
+    @Test
+    public void testRegisterMBean() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(OBJECT_NAME);
+        assertTrue(MBeanUtil.registerMBean(new TestBean(1), OBJECT_NAME, "MetricsMBeanRegistered", "MetricsMBeanNotRegistered"));
+        try {
+            assertEquals(1, server.getAttribute(name, "Value"));
+            // Registering again replaces the earlier MBean.
+            assertTrue(MBeanUtil.registerMBean(new TestBean(2), OBJECT_NAME, "MetricsMBeanRegistered", "MetricsMBeanNotRegistered"));
+            assertEquals(2, server.getAttribute(name, "Value"));
+        }
+        finally {
+            server.unregisterMBean(name);
+        }
+    }
+    
+    @Test
+    public void testRegisterMBeanFailure() {
+        assertFalse(MBeanUtil.registerMBean(new TestBean(1), "not an object name", "MetricsMBeanRegistered", "MetricsMBeanNotRegistered"));
+        // Not an MBean.
+        assertFalse(MBeanUtil.registerMBean(new Object(), OBJECT_NAME, "MetricsMBeanRegistered", "MetricsMBeanNotRegistered"));
+    }
+}
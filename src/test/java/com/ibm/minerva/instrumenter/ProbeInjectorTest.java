@@ -0,0 +1,404 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.ibm.minerva.instrumenter.codegen.ProbeGuard;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
+import com.ibm.minerva.instrumenter.codegen.Sampling;
+import com.ibm.minerva.instrumenter.codegen.Throttling;
+
+import javassist.ClassPool;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.bytecode.Bytecode;
+
+@DisplayName("ProbeInjector Test")
+public class ProbeInjectorTest {
+    
+    private static final List<String> events = new ArrayList<>();
+    
+    public static synchronized void enter(String method) {
+        events.add("enter " + method);
+    }
+    
+    public static synchronized void exit(String method) {
+        events.add("exit " + method);
+    }
+    
+    public static synchronized void exception(String method) {
+        events.add("exception " + method);
+    }
+    
+    @Test
+    public void testInjectedProbesRun() throws Exception {
+        final List<String> events = run((ctBehavior, name) -> {
+            ProbeInjector.insertEntryProbe(ctBehavior, probe("enter", name));
+            ProbeInjector.insertExitProbe(ctBehavior, probe("exit", name));
+        });
+        assertTrue(events.size() > 0);
+        assertEquals("enter example.Example.main", events.get(0));
+        assertEquals("exit example.Example.main", events.get(events.size() - 1));
+        assertBalanced(events);
+    }
+    
+    @Test
+    public void testSampledProbesRun() throws Exception {
+        final List<String> all = run((ctBehavior, name) -> {
+            ProbeInjector.insertEntryProbe(ctBehavior, probe("enter", name));
+            ProbeInjector.insertExitProbe(ctBehavior, probe("exit", name));
+        });
+        // Every other call of each method, the exit probe compiled from source.
+        final Map<String,Integer> ids = new HashMap<>();
+        final List<String> sampled = run((ctBehavior, name) -> {
+            final Integer id = ids.computeIfAbsent(name, x -> 10000 + ids.size());
+            ProbeInjector.insertGuardedProbes(ctBehavior, Sampling.every(2), id, 
+                    ProbeInjector.toBytecode(ctBehavior, probe("enter", name)), 
+                    ProbeInjector.compile(ctBehavior, ProbeInjectorTest.class.getName() + ".exit(\"" + name + "\");"));
+        });
+        assertEquals("enter example.Example.main", sampled.get(0));
+        assertEquals("exit example.Example.main", sampled.get(sampled.size() - 1));
+        assertBalanced(sampled);
+        assertTrue(sampled.size() < all.size());
+        // The first call of each method is sampled.
+        for (String event : all) {
+            assertTrue(sampled.contains(event), event);
+        }
+        
+        final List<String> none = run((ctBehavior, name) -> {
+            ProbeInjector.insertGuardedProbes(ctBehavior, Sampling.rate(0), 0, 
+                    ProbeInjector.toBytecode(ctBehavior, probe("enter", name)), 
+                    ProbeInjector.toBytecode(ctBehavior, probe("exit", name)));
+        });
+        assertTrue(none.isEmpty());
+    }
+    
+    @Test
+    public void testCombinedGuardsRun() throws Exception {
+        // The Throttler is not started, so only the sampling decides.
+        final Map<String,Integer> ids = new HashMap<>();
+        final List<String> sampled = run((ctBehavior, name) -> {
+            final Integer id = ids.computeIfAbsent(name, x -> 20000 + ids.size());
+            ProbeInjector.insertGuardedProbes(ctBehavior, ProbeGuard.and(new Throttling(1000000, 1000), Sampling.every(2)), id, 
+                    ProbeInjector.toBytecode(ctBehavior, probe("enter", name)), 
+                    ProbeInjector.toBytecode(ctBehavior, probe("exit", name)));
+        });
+        assertEquals("enter example.Example.main", sampled.get(0));
+        assertBalanced(sampled);
+        
+        final List<String> none = run((ctBehavior, name) -> {
+            ProbeInjector.insertGuardedProbes(ctBehavior, ProbeGuard.and(Sampling.every(2), Sampling.rate(0)), 30000, 
+                    ProbeInjector.toBytecode(ctBehavior, probe("enter", name)), 
+                    ProbeInjector.toBytecode(ctBehavior, probe("exit", name)));
+        });
+        assertTrue(none.isEmpty());
+    }
+    
+    @Test
+    public void testSingleExitProbesRun() throws Exception {
+        final List<String> all = run((ctBehavior, name) -> {
+            ProbeInjector.insertEntryProbe(ctBehavior, probe("enter", name));
+            ProbeInjector.insertExitProbe(ctBehavior, probe("exit", name));
+        });
+        // Nothing is thrown out of the example's methods.
+        final List<String> single = run((ctBehavior, name) -> {
+            ProbeInjector.insertSingleExitProbes(ctBehavior, null, 0, 
+                    ProbeInjector.toBytecode(ctBehavior, probe("enter", name)), 
+                    ProbeInjector.toBytecode(ctBehavior, probe("exit", name)), 
+                    ProbeInjector.toBytecode(ctBehavior, probe("exception", name)));
+        });
+        assertEquals(all, single);
+    }
+    
+    @Test
+    public void testSingleExitExceptions() throws Exception {
+        final Class<?> c = instrument(Exits.class, (ctBehavior, name) -> {
+            ProbeInjector.insertSingleExitProbes(ctBehavior, null, 0, 
+                    ProbeInjector.toBytecode(ctBehavior, probe("enter", name)), 
+                    ProbeInjector.compile(ctBehavior, ProbeInjectorTest.class.getName() + ".exit(\"" + name + "\");"), 
+                    ProbeInjector.toBytecode(ctBehavior, probe("exception", name)));
+        });
+        final String name = Exits.class.getName();
+        final String constructor = name + "." + name.substring(name.lastIndexOf('.') + 1);
+        final Object exits = c.getConstructor(int.class).newInstance(0);
+        assertEquals(Arrays.asList("enter " + constructor, "enter " + constructor, 
+                "exit " + constructor, "exit " + constructor), events());
+        
+        // The return values of each type are returned.
+        assertEquals(7, c.getMethod("max", int.class, int.class).invoke(exits, 7, 3));
+        assertEquals(Arrays.asList("enter " + name + ".max", "exit " + name + ".max"), events());
+        assertEquals(4, c.getMethod("max", int.class, int.class).invoke(exits, 2, 4));
+        assertEquals(6L, c.getMethod("sum", long[].class).invoke(exits, new long[] {1, 2, 3}));
+        assertEquals(-1L, c.getMethod("sum", long[].class).invoke(exits, (Object) null));
+        assertEquals(0.5, c.getMethod("ratio", double.class, double.class).invoke(null, 1.0, 2.0));
+        assertEquals("two", c.getMethod("name", int.class).invoke(null, 2));
+        assertEquals("many", c.getMethod("name", int.class).invoke(null, 5));
+        assertEquals(Arrays.asList("enter " + name + ".max", "exit " + name + ".max", 
+                "enter " + name + ".sum", "exit " + name + ".sum", "enter " + name + ".sum", "exit " + name + ".sum", 
+                "enter " + name + ".ratio", "exit " + name + ".ratio", 
+                "enter " + name + ".name", "exit " + name + ".name", "enter " + name + ".name", "exit " + name + ".name"), events());
+        
+        // Exits by exception are traced as such, also when caught and rethrown in the method.
+        assertThrows(ArithmeticException.class, () -> invoke(c.getMethod("ratio", double.class, double.class), null, 1.0, 0.0));
+        assertEquals(Arrays.asList("enter " + name + ".ratio", "exception " + name + ".ratio"), events());
+        assertThrows(IllegalStateException.class, () -> invoke(c.getMethod("rethrow", boolean.class), exits, true));
+        assertEquals(Arrays.asList("enter " + name + ".rethrow", "enter " + name + ".ratio", "exception " + name + ".ratio", 
+                "exception " + name + ".rethrow"), events());
+        assertEquals(1, c.getMethod("rethrow", boolean.class).invoke(exits, false));
+        assertEquals(Arrays.asList("enter " + name + ".rethrow", "enter " + name + ".ratio", "exception " + name + ".ratio", 
+                "exit " + name + ".rethrow"), events());
+        assertThrows(IllegalArgumentException.class, () -> invoke(c.getConstructor(int.class), null, -1));
+        assertEquals(Arrays.asList("enter " + constructor, "enter " + constructor, 
+                "exit " + constructor, "exception " + constructor), events());
+    }
+    
+    @Test
+    public void testSingleExitGuarded() throws Exception {
+        final Map<String,Integer> ids = new HashMap<>();
+        final Class<?> c = instrument(Exits.class, (ctBehavior, name) -> {
+            final Integer id = ids.computeIfAbsent(name, x -> 40000 + ids.size());
+            ProbeInjector.insertSingleExitProbes(ctBehavior, Sampling.every(2), id, 
+                    ProbeInjector.toBytecode(ctBehavior, probe("enter", name)), 
+                    ProbeInjector.toBytecode(ctBehavior, probe("exit", name)), 
+                    ProbeInjector.toBytecode(ctBehavior, probe("exception", name)));
+        });
+        final String name = Exits.class.getName();
+        final Method ratio = c.getMethod("ratio", double.class, double.class);
+        events();
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(2.0, ratio.invoke(null, 2.0, 1.0));
+            assertThrows(ArithmeticException.class, () -> invoke(ratio, null, 1.0, 0.0));
+        }
+        // The first call of every two.
+        assertEquals(Arrays.asList("enter " + name + ".ratio", "exit " + name + ".ratio", 
+                "enter " + name + ".ratio", "exit " + name + ".ratio", 
+                "enter " + name + ".ratio", "exit " + name + ".ratio", 
+                "enter " + name + ".ratio", "exit " + name + ".ratio"), events());
+        assertThrows(ArithmeticException.class, () -> invoke(ratio, null, 1.0, 0.0));
+        assertEquals(Arrays.asList("enter " + name + ".ratio", "exception " + name + ".ratio"), events());
+    }
+    
+    @Test
+    public void testSingleExitCodeSize() throws Exception {
+        // The probe is copied once rather than before each return.
+        final CtClass finallyClass = ClassPool.getDefault().get(Exits.class.getName());
+        final CtBehavior finallyMethod = finallyClass.getDeclaredMethod("name");
+        final int length = finallyMethod.getMethodInfo().getCodeAttribute().getCodeLength();
+        ProbeInjector.insertExitProbe(finallyMethod, probe("exit", "name"));
+        final int finallyLength = finallyMethod.getMethodInfo().getCodeAttribute().getCodeLength();
+        finallyClass.detach();
+        final CtClass singleClass = ClassPool.getDefault().get(Exits.class.getName());
+        final CtBehavior singleMethod = singleClass.getDeclaredMethod("name");
+        ProbeInjector.insertSingleExitProbes(singleMethod, null, 0, new Bytecode(singleMethod.getMethodInfo().getConstPool()), 
+                ProbeInjector.toBytecode(singleMethod, probe("exit", "name")), 
+                ProbeInjector.toBytecode(singleMethod, probe("exit", "name")));
+        final int singleLength = singleMethod.getMethodInfo().getCodeAttribute().getCodeLength();
+        singleClass.detach();
+        assertTrue(singleLength < finallyLength, singleLength + " < " + finallyLength);
+        assertTrue(singleLength > length);
+    }
+    
+    // Instruments the example classes, runs example.Example.main and returns the events of the probes.
+    private static List<String> run(Injection injection) throws Exception {
+        final Map<String,byte[]> classes = new HashMap<>();
+        final File[] files = ResourceHelper.resolveResourceToFile("example").listFiles();
+        for (File f : files) {
+            final CtClass ctClass = ResourceHelper.resourceToCtClass("example/" + f.getName());
+            for (CtBehavior ctBehavior : ctClass.getDeclaredBehaviors()) {
+                if (ctBehavior.getMethodInfo().getCodeAttribute() != null) {
+                    injection.inject(ctBehavior, ctClass.getName() + "." + ctBehavior.getName());
+                    ProbeInjector.rebuildStackMap(ctBehavior);
+                }
+            }
+            classes.put(ctClass.getName(), ctClass.toBytecode());
+            ctClass.detach();
+        }
+        events();
+        Class.forName("example.Example", true, load(classes)).getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+        return events();
+    }
+    
+    // Instruments a class of the test class path and loads the instrumented class.
+    private static Class<?> instrument(Class<?> type, Injection injection) throws Exception {
+        final CtClass ctClass = ClassPool.getDefault().get(type.getName());
+        try {
+            for (CtBehavior ctBehavior : ctClass.getDeclaredBehaviors()) {
+                if (ctBehavior.getMethodInfo().getCodeAttribute() != null) {
+                    injection.inject(ctBehavior, ctClass.getName() + "." + ctBehavior.getName());
+                    ProbeInjector.rebuildStackMap(ctBehavior);
+                }
+            }
+            final Class<?> c = load(Collections.singletonMap(type.getName(), ctClass.toBytecode())).loadClass(type.getName());
+            events();
+            return c;
+        }
+        finally {
+            ctClass.detach();
+        }
+    }
+    
+    // The classes are also on the test class path, so they are loaded child first.
+    private static ClassLoader load(Map<String,byte[]> classes) {
+        return new ClassLoader(ProbeInjectorTest.class.getClassLoader()) {
+            @Override
+            protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                final byte[] b = classes.get(name);
+                if (b == null) {
+                    return super.loadClass(name, resolve);
+                }
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    c = defineClass(name, b, 0, b.length);
+                }
+                return c;
+            }
+        };
+    }
+    
+    // Returns the events of the probes since the last call.
+    private static synchronized List<String> events() {
+        final List<String> result = new ArrayList<>(events);
+        events.clear();
+        return result;
+    }
+    
+    // Invokes the method or constructor, unwrapping the exception it throws.
+    private static Object invoke(Executable executable, Object target, Object... args) throws Throwable {
+        try {
+            return executable instanceof Method ? ((Method) executable).invoke(target, args) 
+                    : ((Constructor<?>) executable).newInstance(args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+        
+    // Every entry has a matching exit.
+    private static void assertBalanced(List<String> events) {
+        final List<String> stack = new ArrayList<>();
+        for (String event : events) {
+            if (event.startsWith("enter ")) {
+                stack.add(event.substring(6));
+            }
+            else {
+                assertEquals(stack.remove(stack.size() - 1), event.substring(5));
+            }
+        }
+        assertTrue(stack.isEmpty());
+    }
+    
+    private static ProbeTemplate probe(String method, String name) {
+        return ProbeTemplate.builder()
+                .pushString(name)
+                .invokeStatic(ProbeInjectorTest.class.getName(), method, "(Ljava/lang/String;)V")
+                .build();
+    }
+    
+    private interface Injection {
+        void inject(CtBehavior ctBehavior, String name) throws Exception;
+    }
+    
+    // Methods with several returns and exits by exception.
+    public static final class Exits {
+        
+        private final int value;
+        
+        public Exits() {
+            this.value = 0;
+        }
+        
+        public Exits(int value) {
+            this();
+            if (value < 0) {
+                throw new IllegalArgumentException();
+            }
+        }
+        
+        public int max(int a, int b) {
+            if (a > b) {
+                return a;
+            }
+            return b;
+        }
+        
+        public long sum(long[] values) {
+            if (values == null) {
+                return -1;
+            }
+            long sum = 0;
+            for (long v : values) {
+                sum += v;
+            }
+            return sum;
+        }
+        
+        public static double ratio(double a, double b) {
+            if (b == 0) {
+                throw new ArithmeticException();
+            }
+            return a / b;
+        }
+        
+        public static String name(int n) {
+            switch (n) {
+                case 0:
+                    return "zero";
+                case 1:
+                    return "one";
+                case 2:
+                    return "two";
+                case 3:
+                    return "three";
+                default:
+                    return "many";
+            }
+        }
+        
+        public int rethrow(boolean rethrow) {
+            try {
+                ratio(1, value);
+                return 0;
+            }
+            catch (ArithmeticException e) {
+                if (rethrow) {
+                    throw new IllegalStateException(e);
+                }
+                return 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
+import com.ibm.minerva.instrumenter.filter.pkg.ApplicationProcessorImpl;
+import com.ibm.minerva.instrumenter.metrics.TransformMetrics;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+
+@DisplayName("TraceInjector Stress Test")
+public class TraceInjectorStressTest {
+    
+    private static final int THREADS = 32;
+    private static final int LOADERS = 4;
+    private static final int CLASSES_PER_LOADER = 1000;
+    
+    private static final AtomicLong probes = new AtomicLong();
+    
+    // Called by the injected probes.
+    public static void probe() {
+        probes.incrementAndGet();
+    }
+    
+    @Test
+    public void testConcurrentTransform() throws Exception {
+        final byte[][] classes = generateClasses();
+        final StressClassLoader[] loaders = new StressClassLoader[LOADERS];
+        for (int i = 0; i < LOADERS; ++i) {
+            loaders[i] = new StressClassLoader(classes);
+        }
+        final TraceGenerator tg = new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                return TraceInjectorStressTest.class.getName() + ".probe();";
+            }
+            @Override
+            public ProbeTemplate generateProbeTemplate(TraceInjectionContext context) {
+                return ProbeTemplate.builder()
+                        .invokeStatic(TraceInjectorStressTest.class.getName().replace('.', '/'), "probe", "()V")
+                        .build();
+            }
+        };
+        final TraceInjector ti = new TraceInjector(new ApplicationProcessorImpl(Collections.singleton("stress/")), tg);
+        
+        // All threads transform classes of all loaders at the same time.
+        final int total = LOADERS * CLASSES_PER_LOADER;
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; ++t) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    int task;
+                    while ((task = next.getAndIncrement()) < total) {
+                        final StressClassLoader loader = loaders[task % LOADERS];
+                        final int index = task / LOADERS;
+                        final byte[] b = ti.transform(loader, className(index), null, null, classes[index]);
+                        assertNotNull(b, className(index));
+                        loader.transformed.put(className(index).replace('/', '.'), b);
+                    }
+                }
+                catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        final TransformMetrics metrics = ti.getMetrics();
+        assertEquals(total, metrics.getClassesTransformed());
+        assertEquals(0, metrics.getClassFailures());
+        assertEquals(0, metrics.getMethodFailures());
+        // The default constructor, depth and name.
+        assertEquals(3L * total, metrics.getMethodsInjected());
+        
+        // The instrumented classes load and each traced call runs both probes.
+        for (StressClassLoader loader : loaders) {
+            probes.set(0);
+            final Class<?> last = loader.loadClass(className(CLASSES_PER_LOADER - 1).replace('/', '.'));
+            assertEquals(CLASSES_PER_LOADER - 1, last.getMethod("depth", int.class).invoke(null, 0));
+            assertEquals(2L * CLASSES_PER_LOADER, probes.get());
+        }
+    }
+    
+    private static String className(int i) {
+        return "stress/C" + i;
+    }
+    
+    // Each class extends an earlier class and calls the previous one, so that 
+    // transforming it resolves other classes of the same loader.
+    private static byte[][] generateClasses() throws Exception {
+        final ClassPool pool = new ClassPool(true);
+        final CtClass[] ctClasses = new CtClass[CLASSES_PER_LOADER];
+        final byte[][] classes = new byte[CLASSES_PER_LOADER][];
+        for (int i = 0; i < CLASSES_PER_LOADER; ++i) {
+            final CtClass ctClass = pool.makeClass(className(i).replace('/', '.'));
+            if (i > 0) {
+                ctClass.setSuperclass(ctClasses[(i - 1) / 2]);
+                ctClass.addMethod(CtNewMethod.make("public static int depth(int x) { return " 
+                        + ctClasses[i - 1].getName() + ".depth(x) + 1; }", ctClass));
+            }
+            else {
+                ctClass.addMethod(CtNewMethod.make("public static int depth(int x) { return x; }", ctClass));
+            }
+            ctClass.addMethod(CtNewMethod.make("public String name(Object o) { return o instanceof String ? (String) o : \"C" + i + "\"; }", ctClass));
+            ctClasses[i] = ctClass;
+            classes[i] = ctClass.toBytecode();
+        }
+        return classes;
+    }
+    
+    // Serves the original class files as resources (read by the class pools)
+    // and defines the transformed classes.
+    private static final class StressClassLoader extends ClassLoader {
+        
+        private final Map<String,byte[]> original = new ConcurrentHashMap<>();
+        private final Map<String,byte[]> transformed = new ConcurrentHashMap<>();
+        
+        StressClassLoader(byte[][] classes) {
+            super(TraceInjectorStressTest.class.getClassLoader());
+            for (int i = 0; i < classes.length; ++i) {
+                original.put(className(i) + ".class", classes[i]);
+            }
+        }
+        
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            final byte[] b = original.get(name);
+            return b != null ? new ByteArrayInputStream(b) : super.getResourceAsStream(name);
+        }
+        
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            final byte[] b = transformed.get(name);
+            if (b == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+}
@@ -18,25 +18,55 @@
 
 package com.ibm.minerva.instrumenter;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.instrument.IllegalClassFormatException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
 
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.jmock.junit5.JUnit5Mockery;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.ibm.minerva.instrumenter.cache.TransformCache;
+import com.ibm.minerva.instrumenter.codegen.ExitStrategy;
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.MinimalTraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
+import com.ibm.minerva.instrumenter.codegen.Sampling;
 import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
 import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionLocation;
+import com.ibm.minerva.instrumenter.codegen.TraceSwitch;
 import com.ibm.minerva.instrumenter.filter.ApplicationProcessor;
 import com.ibm.minerva.instrumenter.filter.ClassProcessor;
 import com.ibm.minerva.instrumenter.filter.MethodProcessor;
+import com.ibm.minerva.instrumenter.filter.pkg.ApplicationProcessorImpl;
+import com.ibm.minerva.instrumenter.metrics.TransformMetrics;
+import com.ibm.minerva.instrumenter.runtime.ProbeSwitch;
+import com.ibm.minerva.instrumenter.runtime.Probes;
 
 import javassist.CtBehavior;
 import javassist.CtClass;
@@ -68,6 +98,9 @@ public class TraceInjectorTest {
         final byte[] b = ti.transform(TraceInjectorTest.class.getClassLoader(), EXAMPLE_CLASS, null, null, new byte[] {});
         context.assertIsSatisfied();
         assertNull(b);    
+        assertEquals(1, ti.getMetrics().getClassesSeen());
+        assertEquals(0, ti.getMetrics().getClassesAccepted());
+        assertEquals(1, ti.getMetrics().getAcceptClassTime().getCount());
     }
     
     @ParameterizedTest
@@ -130,6 +163,7 @@ public class TraceInjectorTest {
                 oneOf(ap).acceptClass(className); will(returnValue(true));
                 oneOf(ap).acceptClass(with(any(CtClass.class))); will(returnValue(cp));
                 allowing(cp).acceptMethod(with(any(CtBehavior.class))); will(returnValue(mp));
+                allowing(tg).generateProbeTemplate(with(any(TraceInjectionContext.class))); will(returnValue(null));
                 allowing(tg).generateSourceSnippet(with(any(TraceInjectionContext.class))); will(returnValue("java.lang.System.out.println(\"test\");"));
             }
         });
@@ -138,4 +172,340 @@ public class TraceInjectorTest {
         context.assertIsSatisfied();
         assertNotNull(b);
     }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {EXAMPLE_CLASS, EXAMPLE$1_CLASS, EXAMPLE$2_CLASS, 
+            EXAMPLE$ANOTHER_CLASS, GENERIC_CLASS, GENERIC$1POINT_CLASS, 
+            GENERIC$2POINT_CLASS, OTHER_CLASS})
+    public void testTransformProbeTemplate(String className) throws IllegalClassFormatException, IOException {
+        final byte[] exampleClass = ResourceHelper.resourceToByteArray(className + ".class");
+        assertNotNull(exampleClass);
+        final ApplicationProcessor ap = context.mock(ApplicationProcessor.class);
+        final ClassProcessor cp = context.mock(ClassProcessor.class);
+        final MethodProcessor mp = context.mock(MethodProcessor.class);
+        final TraceGenerator tg = context.mock(TraceGenerator.class);
+        final ProbeTemplate probe = ProbeTemplate.builder()
+                .getStatic("java/lang/System", "out", "Ljava/io/PrintStream;")
+                .pushString("test")
+                .invokeVirtual("java/io/PrintStream", "println", "(Ljava/lang/String;)V")
+                .build();
+        context.checking(new Expectations() {
+            {
+                oneOf(ap).acceptClass(className); will(returnValue(true));
+                oneOf(ap).acceptClass(with(any(CtClass.class))); will(returnValue(cp));
+                allowing(cp).acceptMethod(with(any(CtBehavior.class))); will(returnValue(mp));
+                // The source snippet is not used when there is a probe template.
+                allowing(tg).generateProbeTemplate(with(any(TraceInjectionContext.class))); will(returnValue(probe));
+                never(tg).generateSourceSnippet(with(any(TraceInjectionContext.class)));
+            }
+        });
+        final TraceInjector ti = new TraceInjector(ap, tg);
+        final byte[] b = ti.transform(TraceInjectorTest.class.getClassLoader(), className, null, null, exampleClass);
+        context.assertIsSatisfied();
+        assertNotNull(b);
+        final TransformMetrics metrics = ti.getMetrics();
+        assertEquals(1, metrics.getClassesSeen());
+        assertEquals(1, metrics.getClassesAccepted());
+        assertEquals(1, metrics.getClassesTransformed());
+        assertEquals(exampleClass.length, metrics.getBytesIn());
+        assertEquals(b.length, metrics.getBytesOut());
+        assertTrue(metrics.getMethodsInjected() > 0);
+        assertEquals(metrics.getMethodsInjected(), metrics.getInsertBeforeTime().getCount());
+        assertEquals(metrics.getMethodsInjected(), metrics.getInsertAfterTime().getCount());
+        assertEquals(1, metrics.getMakeClassTime().getCount());
+        assertEquals(1, metrics.getToBytecodeTime().getCount());
+        assertEquals(0, metrics.getClassFailures());
+    }
+    
+    @Test
+    public void testTransformRedefinedClass() throws IllegalClassFormatException, IOException {
+        final byte[] exampleClass = ResourceHelper.resourceToByteArray(EXAMPLE_CLASS + ".class");
+        final ApplicationProcessor ap = context.mock(ApplicationProcessor.class);
+        final TraceGenerator tg = context.mock(TraceGenerator.class);
+        context.checking(new Expectations() {
+            {
+                oneOf(ap).acceptClass(EXAMPLE_CLASS); will(returnValue(true));
+                oneOf(ap).acceptClass(with(any(CtClass.class))); will(returnValue(null));
+            }
+        });
+        // Redefined classes are only transformed if the injector can retransform.
+        final TraceInjector ti = new TraceInjector(ap, tg);
+        assertNull(ti.transform(TraceInjectorTest.class.getClassLoader(), EXAMPLE_CLASS, Object.class, null, exampleClass));
+        final TraceInjector rti = TraceInjector.builder(ap, tg).canRetransform(true).build();
+        assertNotNull(rti.transform(TraceInjectorTest.class.getClassLoader(), EXAMPLE_CLASS, Object.class, null, exampleClass));
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testTransformCached() throws IllegalClassFormatException, IOException {
+        final byte[] exampleClass = ResourceHelper.resourceToByteArray(EXAMPLE_CLASS + ".class");
+        final ApplicationProcessor ap = context.mock(ApplicationProcessor.class);
+        final ClassProcessor cp = context.mock(ClassProcessor.class);
+        final MethodProcessor mp = context.mock(MethodProcessor.class);
+        final TraceGenerator tg = context.mock(TraceGenerator.class);
+        context.checking(new Expectations() {
+            {
+                exactly(2).of(ap).acceptClass(EXAMPLE_CLASS); will(returnValue(true));
+                // The class is only instrumented once.
+                oneOf(ap).acceptClass(with(any(CtClass.class))); will(returnValue(cp));
+                allowing(cp).acceptMethod(with(any(CtBehavior.class))); will(returnValue(mp));
+                allowing(tg).generateProbeTemplate(with(any(TraceInjectionContext.class))); will(returnValue(null));
+                allowing(tg).generateSourceSnippet(with(any(TraceInjectionContext.class))); will(returnValue("java.lang.System.out.println(\"test\");"));
+            }
+        });
+        final TransformCache cache = TransformCache.create(JsonParser.parseString("{}"), JsonParser.parseString("{}").getAsJsonObject(), null);
+        final TraceInjector ti = TraceInjector.builder(ap, tg).transformCache(cache).build();
+        final byte[] b = ti.transform(TraceInjectorTest.class.getClassLoader(), EXAMPLE_CLASS, null, null, exampleClass);
+        assertNotNull(b);
+        final byte[] b2 = ti.transform(new ClassLoader() {}, EXAMPLE_CLASS, null, null, exampleClass);
+        assertArrayEquals(b, b2);
+        context.assertIsSatisfied();
+    }
+    
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testTransformCachedOnDisk(boolean methodDictionary, @TempDir File directory) throws IllegalClassFormatException, IOException {
+        final byte[] exampleClass = ResourceHelper.resourceToByteArray(EXAMPLE_CLASS + ".class");
+        final ApplicationProcessor ap = new ApplicationProcessorImpl(Collections.singleton("example"));
+        // Records the id passed with each probe.
+        final Map<String,Integer> ids = new HashMap<>();
+        final TraceGenerator tg = new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                ids.put(context.getMethodProcessor().getMethodSignature(), context.getMethodId());
+                return "java.lang.Integer.valueOf(" + context.getMethodId() + ");";
+            }
+        };
+        final File methods = methodDictionary ? new File(directory, "methods.txt") : null;
+        final JsonElement cacheConfig = JsonParser.parseString("{\"directory\": \"" 
+                + new File(directory, "cache").getAbsolutePath().replace("\\", "\\\\") + "\"}");
+        final JsonObject agentConfig = JsonParser.parseString("{}").getAsJsonObject();
+        // An unrelated method registered first gets different ids from the first start.
+        final MethodIdRegistry firstIds = new MethodIdRegistry(methods);
+        firstIds.register("1.0", "Unrelated.java", "Unrelated", "run()");
+        final TraceInjector ti = TraceInjector.builder(ap, tg)
+                .transformCache(TransformCache.create(cacheConfig, agentConfig, methods)).methodIds(firstIds).build();
+        final byte[] b = ti.transform(TraceInjectorTest.class.getClassLoader(), EXAMPLE_CLASS, null, null, exampleClass);
+        assertNotNull(b);
+        assertTrue(ids.size() > 1);
+        final Map<String,Integer> cachedIds = new HashMap<>(ids);
+        ids.clear();
+        
+        // A later start with a fresh registry and the same configuration.
+        final MethodIdRegistry methodIds = new MethodIdRegistry(methods);
+        final TraceInjector ti2 = TraceInjector.builder(ap, tg)
+                .transformCache(TransformCache.create(cacheConfig, agentConfig, methods)).methodIds(methodIds).build();
+        final byte[] b2 = ti2.transform(TraceInjectorTest.class.getClassLoader(), EXAMPLE_CLASS, null, null, exampleClass);
+        if (methodDictionary) {
+            // The class is restored from disk and its ids are those of the reloaded dictionary.
+            assertArrayEquals(b, b2);
+            assertEquals(1, ti2.getMetrics().getClassesFromCache());
+            assertTrue(ids.isEmpty());
+            cachedIds.forEach((signature, id) -> assertEquals(signature, methodIds.getMethod(id).getMethodSignature()));
+        }
+        else {
+            // The ids in the instrumented class are assigned by the new registry.
+            assertEquals(0, ti2.getMetrics().getClassesFromCache());
+            assertEquals(cachedIds.keySet(), ids.keySet());
+            ids.forEach((signature, id) -> assertEquals(signature, methodIds.getMethod(id).getMethodSignature()));
+        }
+    }
+    
+    @Test
+    public void testTransformMethodIds() throws IllegalClassFormatException, IOException {
+        final byte[] exampleClass = ResourceHelper.resourceToByteArray(EXAMPLE_CLASS + ".class");
+        final ApplicationProcessor ap = new ApplicationProcessorImpl(Collections.singleton("example"));
+        // Records the id passed with each probe.
+        final Map<String,Integer> entryIds = new HashMap<>();
+        final Map<String,Integer> exitIds = new HashMap<>();
+        final TraceGenerator tg = new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                final String signature = context.getMethodProcessor().getMethodSignature();
+                (context.getTraceInjectionLocation() == TraceInjectionLocation.ENTRY ? entryIds : exitIds).put(signature, context.getMethodId());
+                return ";";
+            }
+        };
+        final MethodIdRegistry methodIds = new MethodIdRegistry();
+        final TraceInjector ti = TraceInjector.builder(ap, tg).methodIds(methodIds).build();
+        assertSame(methodIds, ti.getMethodIds());
+        assertNotNull(ti.transform(TraceInjectorTest.class.getClassLoader(), EXAMPLE_CLASS, null, null, exampleClass));
+        // Each method has its own id which is the same for entry and exit.
+        assertTrue(entryIds.size() > 1);
+        assertEquals(entryIds, exitIds);
+        assertEquals(entryIds.size(), new HashSet<>(entryIds.values()).size());
+        assertEquals(entryIds.size(), methodIds.size());
+        // Transforming the class again assigns the same ids.
+        final Map<String,Integer> firstIds = new HashMap<>(entryIds);
+        assertNotNull(ti.transform(new ClassLoader() {}, EXAMPLE_CLASS, null, null, exampleClass));
+        assertEquals(firstIds, entryIds);
+        assertEquals(firstIds.size(), methodIds.size());
+    }
+    
+    @Test
+    public void testTransformSampled() throws Exception {
+        final byte[] exampleClass = ResourceHelper.resourceToByteArray(OTHER_CLASS + ".class");
+        final ApplicationProcessor ap = new ApplicationProcessorImpl(Collections.singleton("example"));
+        final TraceGenerator tg = new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                return "java.lang.Integer.valueOf(" + context.getTraceInjectionLocation().ordinal() + ");";
+            }
+        };
+        final MethodIdRegistry methodIds = new MethodIdRegistry();
+        final Sampling sampling = Sampling.every(3);
+        final TraceInjector ti = TraceInjector.builder(ap, tg).methodIds(methodIds).probeGuard(sampling).build();
+        assertSame(sampling, ti.getProbeGuard());
+        final byte[] b = ti.transform(TraceInjectorTest.class.getClassLoader(), OTHER_CLASS, null, null, exampleClass);
+        assertNotNull(b);
+        final TransformMetrics metrics = ti.getMetrics();
+        assertTrue(metrics.getMethodsInjected() > 0);
+        assertEquals(0, metrics.getMethodFailures());
+        // The guard counts the calls of each method by its id.
+        assertEquals(metrics.getMethodsInjected(), methodIds.size());
+        assertTrue(new String(b, StandardCharsets.ISO_8859_1).contains("com/ibm/minerva/instrumenter/runtime/Sampler"));
+        // The instrumented class passes verification.
+        final Class<?> c = new ClassLoader(TraceInjectorTest.class.getClassLoader()) {
+            {
+                defineClass(OTHER_CLASS.replace('/', '.'), b, 0, b.length);
+            }
+        }.loadClass(OTHER_CLASS.replace('/', '.'));
+        assertNotNull(c.getDeclaredConstructor().newInstance());
+    }
+    
+    @Test
+    public void testTransformSingleExit() throws Exception {
+        final byte[] exampleClass = ResourceHelper.resourceToByteArray(OTHER_CLASS + ".class");
+        final ApplicationProcessor ap = new ApplicationProcessorImpl(Collections.singleton("example"));
+        final List<TraceInjectionLocation> locations = new ArrayList<>();
+        final TraceGenerator tg = new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                locations.add(context.getTraceInjectionLocation());
+                return "java.lang.Integer.valueOf(" + context.getTraceInjectionLocation().ordinal() + ");";
+            }
+        };
+        final TraceInjector ti = TraceInjector.builder(ap, tg).exitStrategy(ExitStrategy.SINGLE).build();
+        assertEquals(ExitStrategy.SINGLE, ti.getExitStrategy());
+        assertEquals(ExitStrategy.FINALLY, new TraceInjector(ap, tg).getExitStrategy());
+        final byte[] b = ti.transform(TraceInjectorTest.class.getClassLoader(), OTHER_CLASS, null, null, exampleClass);
+        assertNotNull(b);
+        final TransformMetrics metrics = ti.getMetrics();
+        assertTrue(metrics.getMethodsInjected() > 0);
+        assertEquals(0, metrics.getMethodFailures());
+        // Each method also gets an EXCEPTION probe.
+        assertEquals(3 * metrics.getMethodsInjected(), locations.size());
+        assertEquals(metrics.getMethodsInjected(), Collections.frequency(locations, TraceInjectionLocation.EXCEPTION));
+        // The instrumented class passes verification.
+        final Class<?> c = new ClassLoader(TraceInjectorTest.class.getClassLoader()) {
+            {
+                defineClass(OTHER_CLASS.replace('/', '.'), b, 0, b.length);
+            }
+        }.loadClass(OTHER_CLASS.replace('/', '.'));
+        assertNotNull(c.getDeclaredConstructor().newInstance());
+    }
+    
+    @Test
+    public void testTransformInliningReport() throws Exception {
+        final byte[] exampleClass = ResourceHelper.resourceToByteArray(OTHER_CLASS + ".class");
+        final ApplicationProcessor ap = new ApplicationProcessorImpl(Collections.singleton("example"));
+        // Builds the trace line on every call, like the legacy println probes.
+        final TraceGenerator tg = new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                return "java.lang.System.out.println(\"|v1|\"+java.lang.String.valueOf(java.lang.System.currentTimeMillis())+\",[\"" 
+                        + "+java.lang.String.valueOf(java.lang.Thread.currentThread().getId())+\"],Entering x\");";
+            }
+        };
+        final TraceInjector ti = new TraceInjector(ap, tg);
+        assertNotNull(ti.transform(TraceInjectorTest.class.getClassLoader(), OTHER_CLASS, null, null, exampleClass));
+        final TransformMetrics metrics = ti.getMetrics();
+        assertTrue(metrics.getMethodsPastMaxInlineSize() > 0);
+        assertTrue(metrics.getInliningReport().contains("example.Other."), metrics.getInliningReport());
+        
+        // The minimal probes keep the small methods small.
+        final TraceGenerator handlers = new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                throw new UnsupportedOperationException();
+            }
+            @Override
+            public IntConsumer createProbeHandler(MethodIdRegistry methodIds, TraceInjectionLocation location) {
+                return id -> {};
+            }
+        };
+        final MethodIdRegistry methodIds = new MethodIdRegistry();
+        final MinimalTraceGenerator minimal = new MinimalTraceGenerator(handlers, methodIds);
+        minimal.initialize(null);
+        try {
+            final TraceInjector mti = TraceInjector.builder(ap, minimal).methodIds(methodIds).build();
+            assertNotNull(mti.transform(TraceInjectorTest.class.getClassLoader(), OTHER_CLASS, null, null, exampleClass));
+            assertEquals(metrics.getMethodsInjected(), mti.getMetrics().getMethodsInjected());
+            assertEquals(0, mti.getMetrics().getMethodsPastMaxInlineSize(), mti.getMetrics().getInliningReport());
+            assertTrue(mti.getMetrics().getBytesOut() < metrics.getBytesOut());
+        }
+        finally {
+            Probes.setHandlers(null, null, null);
+        }
+    }
+    
+    @Test
+    public void testTransformSwitched() throws Exception {
+        final byte[] exampleClass = ResourceHelper.resourceToByteArray(OTHER_CLASS + ".class");
+        // The same class as a Java 6 class file, which cannot contain invokedynamic.
+        final byte[] java6Class = exampleClass.clone();
+        java6Class[6] = 0;
+        java6Class[7] = 50;
+        final ApplicationProcessor ap = new ApplicationProcessorImpl(Collections.singleton("example"));
+        final List<Integer> entries = Collections.synchronizedList(new ArrayList<>());
+        final TraceGenerator handlers = new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                throw new UnsupportedOperationException();
+            }
+            @Override
+            public IntConsumer createProbeHandler(MethodIdRegistry methodIds, TraceInjectionLocation location) {
+                return location == TraceInjectionLocation.ENTRY ? entries::add : id -> {};
+            }
+        };
+        final MethodIdRegistry methodIds = new MethodIdRegistry();
+        final MinimalTraceGenerator minimal = new MinimalTraceGenerator(handlers, methodIds);
+        minimal.initialize(null);
+        final TraceSwitch traceSwitch = new TraceSwitch(false, null, TraceSwitch.DEFAULT_INTERVAL);
+        traceSwitch.start();
+        try {
+            final TraceInjector ti = TraceInjector.builder(ap, minimal).methodIds(methodIds).probeGuard(traceSwitch).build();
+            final byte[] b = ti.transform(TraceInjectorTest.class.getClassLoader(), OTHER_CLASS, null, null, exampleClass);
+            assertNotNull(b);
+            assertEquals(0, ti.getMetrics().getMethodFailures());
+            assertTrue(new String(b, StandardCharsets.ISO_8859_1).contains("BootstrapMethods"));
+            final byte[] b6 = ti.transform(TraceInjectorTest.class.getClassLoader(), OTHER_CLASS, null, null, java6Class);
+            assertNotNull(b6);
+            assertEquals(0, ti.getMetrics().getMethodFailures());
+            assertFalse(new String(b6, StandardCharsets.ISO_8859_1).contains("BootstrapMethods"));
+            for (byte[] c : new byte[][] {b, b6}) {
+                final Class<?> other = new ClassLoader(TraceInjectorTest.class.getClassLoader()) {
+                    {
+                        defineClass(OTHER_CLASS.replace('/', '.'), c, 0, c.length);
+                    }
+                }.loadClass(OTHER_CLASS.replace('/', '.'));
+                // Nothing is traced while the switch is off.
+                entries.clear();
+                assertNotNull(other.getDeclaredConstructor().newInstance());
+                assertEquals(0, entries.size());
+                traceSwitch.setOn(true);
+                assertNotNull(other.getDeclaredConstructor().newInstance());
+                final int traced = entries.size();
+                assertTrue(traced > 0);
+                traceSwitch.setOn(false);
+                assertNotNull(other.getDeclaredConstructor().newInstance());
+                assertEquals(traced, entries.size());
+            }
+        }
+        finally {
+            traceSwitch.stop();
+            ProbeSwitch.set(false);
+            Probes.setHandlers(null, null, null);
+        }
+    }
 }
@@ -0,0 +1,113 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("DiskCache Test")
+public class DiskCacheTest {
+    
+    @TempDir
+    File directory;
+    
+    @Test
+    public void testGetPut() throws IOException {
+        final DiskCache cache = new DiskCache(directory, 1024 * 1024);
+        final CacheKey key = MemoryCacheTest.key(1);
+        assertNull(cache.get(key));
+        cache.put(key, new byte[] {1, 2, 3});
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.get(key));
+        assertEquals(DiskCache.HEADER_SIZE + 3, cache.size());
+        
+        // Entries survive a restart.
+        final DiskCache cache2 = new DiskCache(directory, 1024 * 1024);
+        assertEquals(DiskCache.HEADER_SIZE + 3, cache2.size());
+        assertArrayEquals(new byte[] {1, 2, 3}, cache2.get(key));
+        
+        // No temporary files are left behind.
+        final File entry = entryFile(key);
+        assertTrue(entry.isFile());
+        assertEquals(1, entry.getParentFile().list().length);
+    }
+    
+    @Test
+    public void testCorruptEntry() throws IOException {
+        final DiskCache cache = new DiskCache(directory, 1024 * 1024);
+        final CacheKey key = MemoryCacheTest.key(2);
+        cache.put(key, new byte[] {1, 2, 3, 4});
+        final File entry = entryFile(key);
+        final byte[] bytes = Files.readAllBytes(entry.toPath());
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(entry.toPath(), bytes);
+        assertNull(cache.get(key));
+        assertFalse(entry.exists());
+        
+        // A truncated entry is also rejected.
+        cache.put(key, new byte[] {1, 2, 3, 4});
+        Files.write(entry.toPath(), Arrays.copyOf(bytes, 10));
+        assertNull(cache.get(key));
+        assertFalse(entry.exists());
+    }
+    
+    @Test
+    public void testEncodeDecode() throws IOException {
+        final byte[] encoded = DiskCache.encode(new byte[] {5, 6, 7});
+        assertEquals(DiskCache.HEADER_SIZE + 3, encoded.length);
+        assertArrayEquals(new byte[] {5, 6, 7}, DiskCache.decode(encoded));
+        assertNull(DiskCache.decode(new byte[0]));
+        encoded[0] = 0;
+        assertNull(DiskCache.decode(encoded));
+    }
+    
+    @Test
+    public void testEviction() throws IOException {
+        final int entrySize = DiskCache.HEADER_SIZE + 100;
+        final DiskCache cache = new DiskCache(directory, entrySize * 3);
+        for (int i = 0; i < 3; ++i) {
+            cache.put(MemoryCacheTest.key(i), new byte[100]);
+            entryFile(MemoryCacheTest.key(i)).setLastModified(1000000000000L + i * 1000L);
+        }
+        assertEquals(entrySize * 3, cache.size());
+        // The oldest entries are evicted until the cache is below 90% of its limit.
+        cache.put(MemoryCacheTest.key(3), new byte[100]);
+        assertTrue(cache.size() <= entrySize * 3 * 0.9);
+        assertFalse(entryFile(MemoryCacheTest.key(0)).exists());
+        assertFalse(entryFile(MemoryCacheTest.key(1)).exists());
+        assertTrue(entryFile(MemoryCacheTest.key(2)).exists());
+        assertTrue(entryFile(MemoryCacheTest.key(3)).exists());
+    }
+    
+    private File entryFile(CacheKey key) {
+        final String name = key.toHexString();
+        return new File(new File(directory, name.substring(0, 2)), name + DiskCache.ENTRY_SUFFIX);
+    }
+}
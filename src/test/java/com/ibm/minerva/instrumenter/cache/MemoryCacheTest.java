@@ -0,0 +1,64 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("MemoryCache Test")
+public class MemoryCacheTest {
+    
+    @Test
+    public void testGetPut() {
+        final MemoryCache cache = new MemoryCache(100);
+        final CacheKey key = key(1);
+        assertNull(cache.get(key));
+        cache.put(key, new byte[] {1, 2, 3});
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.get(key(1)));
+        cache.put(key, new byte[] {4, 5});
+        assertArrayEquals(new byte[] {4, 5}, cache.get(key));
+        assertEquals(1, cache.count());
+        assertEquals(2, cache.size());
+    }
+    
+    @Test
+    public void testEviction() {
+        final MemoryCache cache = new MemoryCache(100);
+        cache.put(key(1), new byte[40]);
+        cache.put(key(2), new byte[40]);
+        // Touch the first entry so that the second is the least recently used.
+        cache.get(key(1));
+        cache.put(key(3), new byte[40]);
+        assertEquals(2, cache.count());
+        assertEquals(80, cache.size());
+        assertNull(cache.get(key(2)));
+        // Entries larger than the cache are never stored.
+        cache.put(key(4), new byte[101]);
+        assertNull(cache.get(key(4)));
+        assertEquals(2, cache.count());
+    }
+    
+    static CacheKey key(int i) {
+        return new CacheKey(new byte[] {(byte) i, (byte) (i >> 8)});
+    }
+}
@@ -0,0 +1,127 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+@DisplayName("TransformCache Test")
+public class TransformCacheTest {
+    
+    private static final String AGENT_CONFIG = "{\"filter\": {\"type\": \"package\", \"version\": \"1.0\", \"config\": [\"example\"]}, "
+            + "\"generator\": {\"type\": \"println\", \"version\": \"1.0\"}}";
+    
+    @TempDir
+    File directory;
+    
+    @Test
+    public void testCreate() {
+        final JsonObject config = parse(AGENT_CONFIG);
+        final File methods = new File(directory, "methods.txt");
+        assertNull(TransformCache.create(null, config, methods));
+        assertNull(TransformCache.create(parse("{\"memorySize\": 0}"), config, methods));
+        assertNotNull(TransformCache.create(parse("{}"), config, null));
+        assertNotNull(TransformCache.create(parse("{\"memorySize\": 0, \"directory\": \"" 
+                + directory.getAbsolutePath().replace("\\", "\\\\") + "\"}"), config, methods));
+        // Without a method id dictionary the classes cached on disk would refer to other methods after a restart.
+        assertNull(TransformCache.create(parse("{\"memorySize\": 0, \"directory\": \"" 
+                + directory.getAbsolutePath().replace("\\", "\\\\") + "\"}"), config, null));
+    }
+    
+    @Test
+    public void testGetKey() {
+        final TransformCache cache = TransformCache.create(parse("{}"), parse(AGENT_CONFIG), null);
+        final CacheKey key = cache.getKey("example/Example", new byte[] {1, 2, 3});
+        assertEquals(key, cache.getKey("example/Example", new byte[] {1, 2, 3}));
+        assertEquals(64, key.toHexString().length());
+        assertNotEquals(key, cache.getKey("example/Other", new byte[] {1, 2, 3}));
+        assertNotEquals(key, cache.getKey("example/Example", new byte[] {1, 2, 4}));
+        
+        // Changing the configuration changes the keys.
+        final TransformCache cache2 = TransformCache.create(parse("{}"), parse(AGENT_CONFIG.replace("println", "jul")), null);
+        assertNotEquals(key, cache2.getKey("example/Example", new byte[] {1, 2, 3}));
+    }
+    
+    @Test
+    public void testConfigHash() {
+        final byte[] hash = TransformCache.computeConfigHash(parse(AGENT_CONFIG));
+        assertArrayEquals(hash, TransformCache.computeConfigHash(parse(AGENT_CONFIG)));
+        // The cache's own settings are not part of the hash.
+        final JsonObject config = parse(AGENT_CONFIG);
+        config.add("cache", parse("{\"memorySize\": 1}"));
+        assertArrayEquals(hash, TransformCache.computeConfigHash(config));
+        config.addProperty("logging", "FINE");
+        assertFalse(Arrays.equals(hash, TransformCache.computeConfigHash(config)));
+    }
+    
+    @Test
+    public void testConfigHashFiles() throws IOException {
+        final File tables = new File(directory, "tables");
+        final File trace = new File(directory, "trace.bin");
+        Files.write(tables.toPath(), new byte[] {1});
+        Files.write(trace.toPath(), new byte[] {1});
+        final String json = "{\"filter\": {\"type\": \"sym-ref-tables\", \"version\": \"1.0\", \"config\": \"" + path(tables) + "\"}, "
+                + "\"generator\": {\"type\": \"ring-buffer\", \"version\": \"1.0\", \"config\": \"" + path(trace) + "\"}}";
+        final byte[] hash = TransformCache.computeConfigHash(parse(json));
+        // Files written by the agent do not change the hash.
+        Files.write(trace.toPath(), new byte[] {1, 2});
+        assertArrayEquals(hash, TransformCache.computeConfigHash(parse(json)));
+        // Files read by the filter do.
+        Files.write(tables.toPath(), new byte[] {1, 2});
+        assertFalse(Arrays.equals(hash, TransformCache.computeConfigHash(parse(json))));
+    }
+    
+    @Test
+    public void testGetPut() {
+        final JsonObject cacheConfig = parse("{\"directory\": \"" + directory.getAbsolutePath().replace("\\", "\\\\") + "\"}");
+        final TransformCache cache = TransformCache.create(cacheConfig, parse(AGENT_CONFIG), new File(directory, "methods.txt"));
+        final CacheKey key = cache.getKey("example/Example", new byte[] {1, 2, 3});
+        assertNull(cache.get(key));
+        cache.put(key, new byte[] {4, 5, 6});
+        assertArrayEquals(new byte[] {4, 5, 6}, cache.get(key));
+        
+        // A new cache (e.g. after a restart) finds the entry on disk.
+        final TransformCache cache2 = TransformCache.create(cacheConfig, parse(AGENT_CONFIG), new File(directory, "methods.txt"));
+        assertArrayEquals(new byte[] {4, 5, 6}, cache2.get(cache2.getKey("example/Example", new byte[] {1, 2, 3})));
+    }
+    
+    private static String path(File f) {
+        return f.getAbsolutePath().replace("\\", "\\\\");
+    }
+    
+    private static JsonObject parse(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+}
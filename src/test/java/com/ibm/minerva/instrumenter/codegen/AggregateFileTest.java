@@ -0,0 +1,87 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+@DisplayName("AggregateFile Test")
+public class AggregateFileTest {
+    
+    @TempDir
+    File tempDir;
+    
+    @Test
+    public void testParseDefault() {
+        final AggregateFile f = AggregateFile.parse(null, "aggregate.bin", "interval", 100);
+        assertEquals("aggregate.bin", f.getFile().getName());
+        assertEquals(100, f.getInterval());
+        assertEquals(7, f.getInt("size", 7));
+    }
+    
+    @Test
+    public void testParseFile() {
+        final File file = new File(tempDir, "aggregate.bin");
+        final AggregateFile f = AggregateFile.parse(new JsonPrimitive(file.getAbsolutePath()), "default.bin", "interval", 100);
+        assertEquals(file, f.getFile());
+        assertEquals(100, f.getInterval());
+        assertEquals(7, f.getInt("size", 7));
+        assertEquals(new File(tempDir, "aggregate.bin.methods"), AggregateFile.getMethodDictionaryFile(file));
+    }
+    
+    @Test
+    public void testParseObject() {
+        final File file = new File(tempDir, "aggregate.bin");
+        final JsonObject config = new JsonObject();
+        config.addProperty("file", file.getAbsolutePath());
+        config.addProperty("interval", 60000);
+        config.addProperty("size", 1000);
+        final AggregateFile f = AggregateFile.parse(config, "default.bin", "interval", 100);
+        assertEquals(file, f.getFile());
+        assertEquals(60000, f.getInterval());
+        assertEquals(1000, f.getInt("size", 7));
+        assertEquals(7, f.getInt("other", 7));
+    }
+    
+    @Test
+    public void testStart() {
+        final File file = new File(tempDir, "aggregate.bin");
+        final List<Consumer<IOException>> errorHandlers = new ArrayList<>();
+        AggregateFile.start(null, file, "CallEdgeFile", "CallEdgeFileUnwritable", errorHandlers::add);
+        assertEquals(1, errorHandlers.size());
+        // Errors writing the file later are logged.
+        errorHandlers.get(0).accept(new IOException("later"));
+        // An error starting the runtime is logged rather than thrown.
+        AggregateFile.start(null, file, "CallEdgeFile", "CallEdgeFileUnwritable", errorHandler -> {
+            throw new IOException("start");
+        });
+    }
+}
@@ -0,0 +1,107 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("MethodIdRegistry Test")
+public class MethodIdRegistryTest {
+    
+    @TempDir
+    File tempDir;
+    
+    @Test
+    public void testMemoryOnly() {
+        final MethodIdRegistry registry = new MethodIdRegistry();
+        assertNull(registry.getFile());
+        assertEquals(0, registry.register("1.0", "A.java", "A", "a()"));
+        assertEquals(1, registry.register("1.0", "A.java", "A", "b()"));
+        assertEquals(0, registry.register("1.0", "A.java", "A", "a()"));
+        assertEquals(2, registry.size());
+    }
+    
+    @Test
+    public void testAssignIds() throws IOException {
+        final File file = new File(tempDir, "methods");
+        final MethodIdRegistry registry = new MethodIdRegistry(file);
+        assertFalse(file.exists());
+        assertEquals(0, registry.register("1.0", "A.java", "A", "a()"));
+        assertEquals(1, registry.register("1.0", "A.java", "A", "b()"));
+        assertEquals(0, registry.register("1.0", "A.java", "A", "a()"));
+        // The same method of another instrumentation version has its own id.
+        assertEquals(2, registry.register("2.0", "A.java", "A", "a()"));
+        assertEquals(3, registry.size());
+        assertEquals(Arrays.asList("0|1.0|A.java::A::a()", "1|1.0|A.java::A::b()", "2|2.0|A.java::A::a()"), 
+                Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void testLoadIds() throws IOException {
+        final File file = new File(tempDir, "methods");
+        Files.write(file.toPath(), Arrays.asList("0|1.0|A.java::A::a()", "not an entry", "5|1.0|A.java::A::b()"), StandardCharsets.UTF_8);
+        final MethodIdRegistry registry = new MethodIdRegistry(file);
+        assertEquals(2, registry.size());
+        assertEquals(5, registry.register("1.0", "A.java", "A", "b()"));
+        assertEquals(0, registry.register("1.0", "A.java", "A", "a()"));
+        assertEquals(6, registry.register("1.0", "A.java", "A", "c()"));
+        assertEquals("6|1.0|A.java::A::c()", Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).get(3));
+    }
+    
+    @Test
+    public void testGetMethod() throws IOException {
+        final File file = new File(tempDir, "methods");
+        Files.write(file.toPath(), Arrays.asList("5|1.0|src/A.java::x.A::b(int, java.lang.String)"), StandardCharsets.UTF_8);
+        final MethodIdRegistry registry = new MethodIdRegistry(file);
+        registry.register("2.0", "src/A.java", "x.A", "<init>()");
+        final MethodIdRegistry.Method loaded = registry.getMethod(5);
+        assertEquals(5, loaded.getId());
+        assertEquals("1.0", loaded.getVersion());
+        assertEquals("src/A.java", loaded.getSourcePath());
+        assertEquals("x.A", loaded.getClassName());
+        assertEquals("b(int, java.lang.String)", loaded.getMethodSignature());
+        assertEquals("b", loaded.getMethodName());
+        assertEquals("5|1.0|src/A.java::x.A::b(int, java.lang.String)", loaded.toString());
+        assertEquals("<init>", registry.getMethod(6).getMethodName());
+        assertEquals("2.0", registry.getMethod(6).getVersion());
+        assertNull(registry.getMethod(7));
+    }
+    
+    @Test
+    public void testUnwritable() {
+        // The dictionary cannot be created in a directory which does not exist but ids are still assigned.
+        final MethodIdRegistry registry = new MethodIdRegistry(new File(tempDir, "missing/methods"));
+        final int a = registry.register("1.0", "A.java", "A", "a()");
+        final int b = registry.register("1.0", "A.java", "A", "b()");
+        assertNotEquals(a, b);
+        assertEquals(a, registry.register("1.0", "A.java", "A", "a()"));
+    }
+}
@@ -0,0 +1,68 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("MethodIdTable Test")
+public class MethodIdTableTest {
+    
+    @Test
+    public void testGet() {
+        final MethodIdRegistry registry = new MethodIdRegistry();
+        final AtomicInteger created = new AtomicInteger();
+        final MethodIdTable<String> table = new MethodIdTable<>(registry, m -> {
+            created.incrementAndGet();
+            return m.getClassName() + "." + m.getMethodName();
+        });
+        final int a = registry.register("1.0", "A.java", "x.A", "run(int)");
+        final int b = registry.register("1.0", "B.java", "x.B", "stop()");
+        assertEquals("x.A.run", table.get(a));
+        assertEquals("x.B.stop", table.get(b));
+        // Values are computed once.
+        assertSame(table.get(a), table.get(a));
+        assertEquals(2, created.get());
+        // Ids which are not registered have no value.
+        assertNull(table.get(b + 1));
+        assertNull(table.get(-1));
+        assertEquals(2, created.get());
+    }
+    
+    @Test
+    public void testGrow() {
+        final MethodIdRegistry registry = new MethodIdRegistry();
+        final MethodIdTable<MethodIdRegistry.Method> table = new MethodIdTable<>(registry, m -> m);
+        for (int i = 0; i < 1000; ++i) {
+            registry.register("1.0", "A.java", "x.A", "m" + i + "()");
+        }
+        // Looked up from the last so that the table grows at once.
+        for (int i = 999; i >= 0; --i) {
+            assertEquals("m" + i, table.get(i).getMethodName());
+        }
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(i, table.get(i).getId());
+        }
+    }
+}
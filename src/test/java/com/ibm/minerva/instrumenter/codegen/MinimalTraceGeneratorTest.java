@@ -0,0 +1,165 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.junit5.JUnit5Mockery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.ibm.minerva.instrumenter.runtime.Probes;
+
+@DisplayName("MinimalTraceGenerator Test")
+public class MinimalTraceGeneratorTest {
+    
+    private final Mockery context = new JUnit5Mockery();
+    private final List<String> events = new ArrayList<>();
+    
+    @AfterEach
+    public void clear() {
+        Probes.setHandlers(null, null, null);
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void generateProbeTemplate(TraceInjectionLocation location) {
+        final MinimalTraceGenerator tg = new MinimalTraceGenerator(new HandlerTraceGenerator(), new MethodIdRegistry());
+        tg.initialize(null);
+        assertTrue(tg.isMinimal());
+        final ProbeTemplate probe = tg.generateProbeTemplate(mockContext(location, 42));
+        context.assertIsSatisfied();
+        assertEquals("push 42; invokestatic com/ibm/minerva/instrumenter/runtime/Probes." + getProbesMethod(location) + "(I)V", probe.toString());
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void generateSourceSnippet(TraceInjectionLocation location) {
+        final MinimalTraceGenerator tg = new MinimalTraceGenerator(new HandlerTraceGenerator(), new MethodIdRegistry());
+        tg.initialize(null);
+        final String snippet = tg.generateSourceSnippet(mockContext(location, 42));
+        context.assertIsSatisfied();
+        assertEquals("com.ibm.minerva.instrumenter.runtime.Probes." + getProbesMethod(location) + "(42);", snippet);
+    }
+    
+    @Test
+    public void testHandlers() {
+        final MinimalTraceGenerator tg = new MinimalTraceGenerator(new HandlerTraceGenerator(), new MethodIdRegistry());
+        tg.initialize(null);
+        Probes.enter(1);
+        Probes.exception(1);
+        Probes.exit(2);
+        assertEquals(4, events.size());
+        assertEquals("initialize", events.get(0));
+        assertEquals("ENTRY 1", events.get(1));
+        assertEquals("EXCEPTION 1", events.get(2));
+        assertEquals("EXIT 2", events.get(3));
+    }
+    
+    @Test
+    public void testNotSupported() {
+        // Without probe handlers the generator's own probes are used.
+        final ProbeTemplate probe = ProbeTemplate.builder().pushInt(7).invokeStatic("x/Y", "z", "(I)V").build();
+        final TraceGenerator generator = new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                return "x.Y.z(7);";
+            }
+            @Override
+            public ProbeTemplate generateProbeTemplate(TraceInjectionContext context) {
+                return probe;
+            }
+        };
+        final MinimalTraceGenerator tg = new MinimalTraceGenerator(generator, new MethodIdRegistry());
+        tg.initialize(null);
+        assertFalse(tg.isMinimal());
+        assertSame(generator, tg.getTraceGenerator());
+        assertSame(probe, tg.generateProbeTemplate(null));
+        assertEquals("x.Y.z(7);", tg.generateSourceSnippet(null));
+    }
+    
+    @Test
+    public void testDelegates() {
+        final MethodIdRegistry registry = new MethodIdRegistry();
+        final MethodIdRegistry.Method method = registry.getMethod(registry.register("1.0", "A.java", "A", "a()"));
+        final MinimalTraceGenerator tg = new MinimalTraceGenerator(new HandlerTraceGenerator(), registry);
+        assertEquals(new File("handler.methods"), tg.getMethodDictionaryFile());
+        tg.traceMethodThrottled(method);
+        assertEquals(1, events.size());
+        assertEquals("throttled 0", events.get(0));
+    }
+    
+    private TraceInjectionContext mockContext(TraceInjectionLocation location, int methodId) {
+        final TraceInjectionContext tic = context.mock(TraceInjectionContext.class);
+        context.checking(new Expectations() {
+            {
+                atLeast(1).of(tic).getTraceInjectionLocation(); will(returnValue(location));
+                atLeast(1).of(tic).getMethodId(); will(returnValue(methodId));
+            }
+        });
+        return tic;
+    }
+    
+    private static String getProbesMethod(TraceInjectionLocation location) {
+        return location == TraceInjectionLocation.ENTRY ? "enter" 
+                : location == TraceInjectionLocation.EXCEPTION ? "exception" : "exit";
+    }
+    
+    // Records the calls of its handlers.
+    private final class HandlerTraceGenerator implements TraceGenerator {
+        
+        @Override
+        public void initialize(Instrumentation inst) {
+            events.add("initialize");
+        }
+        
+        @Override
+        public String generateSourceSnippet(TraceInjectionContext context) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public File getMethodDictionaryFile() {
+            return new File("handler.methods");
+        }
+        
+        @Override
+        public void traceMethodThrottled(MethodIdRegistry.Method method) {
+            events.add("throttled " + method.getId());
+        }
+        
+        @Override
+        public IntConsumer createProbeHandler(MethodIdRegistry methodIds, TraceInjectionLocation location) {
+            return id -> events.add(location + " " + id);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Opcode;
+
+@DisplayName("ProbeTemplate Test")
+public class ProbeTemplateTest {
+    
+    @Test
+    public void testStaticCall() {
+        final ProbeTemplate probe = ProbeTemplate.builder()
+                .pushInt(42)
+                .invokeStatic("x.y.Recorder", "enter", "(I)V")
+                .build();
+        assertEquals(2, probe.size());
+        assertEquals(1, probe.getMaxStack());
+        assertEquals("push 42; invokestatic x/y/Recorder.enter(I)V", probe.toString());
+        final Bytecode b = new Bytecode(new ConstPool("Test"));
+        probe.emit(b);
+        final byte[] code = b.get();
+        assertEquals(Opcode.BIPUSH, code[0] & 0xFF);
+        assertEquals(42, code[1]);
+        assertEquals(Opcode.INVOKESTATIC, code[2] & 0xFF);
+        assertEquals(5, code.length);
+    }
+    
+    @Test
+    public void testClassLiteral() {
+        final ProbeTemplate probe = ProbeTemplate.builder()
+                .pushClass("x.y.Z")
+                .invokeStatic("x.y.Recorder", "enter", "(Ljava/lang/Class;)V")
+                .build();
+        assertEquals(1, probe.getMaxStack());
+        assertEquals("push x/y/Z.class; invokestatic x/y/Recorder.enter(Ljava/lang/Class;)V", probe.toString());
+        final ConstPool constPool = new ConstPool("Test");
+        final Bytecode b = new Bytecode(constPool);
+        probe.emit(b);
+        final byte[] code = b.get();
+        assertEquals(Opcode.LDC, code[0] & 0xFF);
+        assertEquals("x.y.Z", constPool.getClassInfo(code[1] & 0xFF));
+    }
+    
+    @Test
+    public void testReturnValuesPopped() {
+        // The long returned by the last call is discarded.
+        final ProbeTemplate probe = ProbeTemplate.builder()
+                .pushString("a")
+                .pushLong(7L)
+                .invokeStatic("x/y/Recorder", "record", "(Ljava/lang/String;J)J")
+                .build();
+        assertEquals(3, probe.getMaxStack());
+        assertEquals("push \"a\"; push 7; invokestatic x/y/Recorder.record(Ljava/lang/String;J)J; pop2", probe.toString());
+        
+        final ProbeTemplate probe2 = ProbeTemplate.builder()
+                .getStatic("java/lang/System", "out", "Ljava/io/PrintStream;")
+                .invokeStatic("java/lang/System", "nanoTime", "()J")
+                .build();
+        assertEquals(3, probe2.getMaxStack());
+        assertEquals("getstatic java/lang/System.out:Ljava/io/PrintStream;; invokestatic java/lang/System.nanoTime()J; pop2; pop", probe2.toString());
+    }
+    
+    @Test
+    public void testInvokeVirtual() {
+        final ProbeTemplate probe = ProbeTemplate.builder()
+                .getStatic("java/lang/System", "out", "Ljava/io/PrintStream;")
+                .pushString("a")
+                .pushString("b")
+                .invokeVirtual("java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;")
+                .invokeVirtual("java/io/PrintStream", "println", "(Ljava/lang/String;)V")
+                .build();
+        assertEquals(3, probe.getMaxStack());
+        assertEquals(5, probe.size());
+    }
+    
+    @Test
+    public void testStackUnderflow() {
+        assertThrows(IllegalStateException.class, () -> ProbeTemplate.builder()
+                .invokeStatic("x/y/Recorder", "enter", "(I)V"));
+        assertThrows(IllegalStateException.class, () -> ProbeTemplate.builder()
+                .pushInt(1).invokeStatic("x/y/Recorder", "enter", "(J)V"));
+        assertThrows(IllegalArgumentException.class, () -> ProbeTemplate.builder().pushString(null));
+        assertThrows(IllegalArgumentException.class, () -> ProbeTemplate.builder().pushClass(null));
+    }
+}
@@ -0,0 +1,68 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("RuntimeSupport Test")
+public class RuntimeSupportTest {
+    
+    @TempDir
+    File tempDir;
+    
+    @Test
+    public void testCreateRuntimeJar() throws IOException {
+        final File agentLocation = RuntimeSupport.getAgentLocation();
+        assertTrue(agentLocation.exists());
+        final File runtimeJar = new File(tempDir, "runtime.jar");
+        final int count = RuntimeSupport.createRuntimeJar(agentLocation, runtimeJar);
+        try (JarFile jar = new JarFile(runtimeJar)) {
+            final List<String> names = Collections.list(jar.entries()).stream()
+                    .map(JarEntry::getName).collect(Collectors.toList());
+            assertEquals(count, names.size());
+            assertTrue(names.stream().allMatch(n -> n.startsWith(RuntimeSupport.RUNTIME_PATH)));
+            assertNotNull(jar.getEntry(RuntimeSupport.RUNTIME_PATH + "RingRecorder.class"));
+            assertNotNull(jar.getEntry(RuntimeSupport.RUNTIME_PATH + "ThreadBuffer.class"));
+            
+            // The runtime classes are copied from a jar in the same way.
+            final File copy = new File(tempDir, "copy.jar");
+            assertEquals(count, RuntimeSupport.createRuntimeJar(runtimeJar, copy));
+        }
+    }
+    
+    @Test
+    public void testCreateRuntimeJarNoRuntime() {
+        assertThrows(IOException.class, () -> RuntimeSupport.createRuntimeJar(tempDir, new File(tempDir, "runtime.jar")));
+    }
+}
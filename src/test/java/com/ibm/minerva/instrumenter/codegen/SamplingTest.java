@@ -0,0 +1,69 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ConstPool;
+
+@DisplayName("Sampling Test")
+public class SamplingTest {
+    
+    @Test
+    public void testEvery() {
+        assertNull(Sampling.every(1));
+        assertNull(Sampling.every(0));
+        final Sampling sampling = Sampling.every(100);
+        assertNotNull(sampling);
+        assertTrue(sampling.usesMethodId());
+        assertEquals("every 100", sampling.toString());
+    }
+    
+    @Test
+    public void testRate() {
+        assertNull(Sampling.rate(1));
+        final Sampling sampling = Sampling.rate(0.25);
+        assertNotNull(sampling);
+        assertFalse(sampling.usesMethodId());
+        assertEquals(1 << 29, sampling.getThreshold());
+        assertEquals(0, Sampling.rate(-1).getThreshold());
+        assertEquals("rate 0.25", sampling.toString());
+    }
+    
+    @Test
+    public void testEmitGuard() {
+        final Bytecode every = new Bytecode(new ConstPool("Test"));
+        Sampling.every(100).emitGuard(every, 7);
+        // Leaves the decision on the stack.
+        assertEquals(1, every.getStackDepth());
+        assertEquals(2, every.getMaxStack());
+        
+        final Bytecode rate = new Bytecode(new ConstPool("Test"));
+        Sampling.rate(0.5).emitGuard(rate, 7);
+        assertEquals(1, rate.getStackDepth());
+    }
+}
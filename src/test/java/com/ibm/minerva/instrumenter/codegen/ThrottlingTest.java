@@ -0,0 +1,118 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.ibm.minerva.instrumenter.runtime.Throttler;
+
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ConstPool;
+
+@DisplayName("Throttling Test")
+public class ThrottlingTest {
+    
+    private Throttling throttling;
+    
+    @AfterEach
+    public void tearDown() {
+        if (throttling != null) {
+            throttling.stop();
+            throttling.reset();
+        }
+    }
+    
+    @Test
+    public void testMaxCalls() {
+        assertEquals(1000, new Throttling(1000, 1000).getMaxCalls());
+        assertEquals(100, new Throttling(1000, 100).getMaxCalls());
+        // At least one call per interval.
+        assertEquals(1, new Throttling(1, 10).getMaxCalls());
+        assertEquals(Integer.MAX_VALUE, new Throttling(Long.MAX_VALUE / 1000, 1000).getMaxCalls());
+        final Throttling t = new Throttling(0, 0);
+        assertEquals(1, t.getMaxRate());
+        assertEquals(1, t.getInterval());
+        assertEquals("maxRate 5000, interval 250", new Throttling(5000, 250).toString());
+    }
+    
+    @Test
+    public void testEmitGuard() {
+        final Throttling t = new Throttling(1000, 1000);
+        assertTrue(t.usesMethodId());
+        final Bytecode bytecode = new Bytecode(new ConstPool("Test"));
+        t.emitGuard(bytecode, 7);
+        // Leaves the decision on the stack.
+        assertEquals(1, bytecode.getStackDepth());
+        
+        final Bytecode both = new Bytecode(new ConstPool("Test"));
+        ProbeGuard.and(t, Sampling.every(10)).emitGuard(both, 7);
+        assertEquals(1, both.getStackDepth());
+        assertEquals(2, both.getMaxStack());
+        assertEquals("maxRate 1000, interval 1000 and every 10", ProbeGuard.and(t, Sampling.every(10)).toString());
+    }
+    
+    @Test
+    public void testThrottled() throws InterruptedException {
+        final MethodIdRegistry registry = new MethodIdRegistry();
+        final int quiet = registry.register("1.0", "A.java", "A", "a()");
+        final int busy = registry.register("1.0", "A.java", "A", "getB()");
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<MethodIdRegistry.Method> traced = new AtomicReference<>();
+        final TraceGenerator tg = new TraceGenerator() {
+            @Override
+            public String generateSourceSnippet(TraceInjectionContext context) {
+                return null;
+            }
+            @Override
+            public void traceMethodThrottled(MethodIdRegistry.Method method) {
+                traced.set(method);
+                latch.countDown();
+            }
+        };
+        throttling = new Throttling(100, 10);
+        throttling.start(registry, tg);
+        Throttler.enter(quiet);
+        // Called until the throttler ends an interval with more than one call.
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (latch.getCount() > 0 && System.currentTimeMillis() < deadline) {
+            for (int i = 0; i < 10; ++i) {
+                Throttler.enter(busy);
+            }
+            latch.await(1, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(busy, traced.get().getId());
+        assertEquals("getB", traced.get().getMethodName());
+        assertEquals(1, throttling.getThrottledMethodCount());
+        assertArrayEquals(new String[] {busy + "|1.0|A.java::A::getB()"}, throttling.getThrottledMethods());
+        assertTrue(Throttler.isThrottled(busy));
+        
+        throttling.reset();
+        assertEquals(0, throttling.getThrottledMethodCount());
+        assertTrue(Throttler.enter(busy));
+    }
+}
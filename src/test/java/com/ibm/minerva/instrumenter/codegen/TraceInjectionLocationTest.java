@@ -46,6 +46,11 @@ public class TraceInjectionLocationTest {
         valueTestCommon(TraceInjectionLocation.EXIT, "Exiting", "exiting");
     }
     
+    @Test
+    public void exceptionValueTest() {
+        valueTestCommon(TraceInjectionLocation.EXCEPTION, "Throwing", "throwing");
+    }
+    
     private void valueTestCommon(TraceInjectionLocation location, String printName, String loggingName) {
         assertEquals(printName, location.getPrintName());
         assertEquals(loggingName, location.getLoggingName());
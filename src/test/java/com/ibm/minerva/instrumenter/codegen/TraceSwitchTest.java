@@ -0,0 +1,179 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ibm.minerva.instrumenter.runtime.ProbeSwitch;
+
+import javassist.bytecode.BootstrapMethodsAttribute;
+import javassist.bytecode.BootstrapMethodsAttribute.BootstrapMethod;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Opcode;
+
+@DisplayName("TraceSwitch Test")
+public class TraceSwitchTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private TraceSwitch traceSwitch;
+    
+    @AfterEach
+    public void tearDown() {
+        if (traceSwitch != null) {
+            traceSwitch.stop();
+        }
+        ProbeSwitch.set(false);
+    }
+    
+    @Test
+    public void testEmitGuard() {
+        final TraceSwitch t = new TraceSwitch(false, null, 1000);
+        assertFalse(t.usesMethodId());
+        final ClassFile classFile = createClassFile(ClassFile.JAVA_8);
+        final Bytecode bytecode = new Bytecode(classFile.getConstPool());
+        t.emitGuard(bytecode, 7, classFile);
+        t.emitGuard(bytecode, 7, classFile);
+        // Each guard leaves the state on the stack.
+        assertEquals(2, bytecode.getStackDepth());
+        assertEquals(Opcode.INVOKEDYNAMIC, bytecode.get()[0] & 0xff);
+        // The bootstrap method is added once.
+        final BootstrapMethodsAttribute attribute = (BootstrapMethodsAttribute) classFile.getAttribute(BootstrapMethodsAttribute.tag);
+        assertEquals(1, attribute.getMethods().length);
+        final ConstPool constPool = classFile.getConstPool();
+        final int methodRef = constPool.getMethodHandleIndex(attribute.getMethods()[0].methodRef);
+        assertEquals("com.ibm.minerva.instrumenter.runtime.ProbeSwitch", constPool.getMethodrefClassName(methodRef));
+        assertEquals("bootstrap", constPool.getMethodrefName(methodRef));
+        
+        // Both guards are emitted into the class file.
+        final Bytecode both = new Bytecode(classFile.getConstPool());
+        ProbeGuard.and(t, Sampling.every(10)).emitGuard(both, 7, classFile);
+        assertEquals(1, both.getStackDepth());
+        assertEquals(Opcode.INVOKEDYNAMIC, both.get()[0] & 0xff);
+        assertEquals(1, attribute.getMethods().length);
+    }
+    
+    @Test
+    public void testEmitGuardOldClassFile() {
+        final TraceSwitch t = new TraceSwitch(false, null, 1000);
+        final ClassFile classFile = createClassFile(ClassFile.JAVA_6);
+        final Bytecode bytecode = new Bytecode(classFile.getConstPool());
+        t.emitGuard(bytecode, 7, classFile);
+        assertEquals(1, bytecode.getStackDepth());
+        assertEquals(Opcode.INVOKESTATIC, bytecode.get()[0] & 0xff);
+        assertNull(classFile.getAttribute(BootstrapMethodsAttribute.tag));
+        
+        // Without a class file.
+        final Bytecode other = new Bytecode(new ConstPool("Test"));
+        t.emitGuard(other, 7);
+        assertEquals(1, other.getStackDepth());
+        assertEquals(Opcode.INVOKESTATIC, other.get()[0] & 0xff);
+    }
+    
+    @Test
+    public void testExistingBootstrapMethods() {
+        final ClassFile classFile = createClassFile(ClassFile.JAVA_8);
+        final ConstPool constPool = classFile.getConstPool();
+        final int lambda = constPool.addMethodHandleInfo(ConstPool.REF_invokeStatic, 
+                constPool.addMethodrefInfo(constPool.addClassInfo("java/lang/invoke/LambdaMetafactory"), "metafactory", "()V"));
+        classFile.addAttribute(new BootstrapMethodsAttribute(constPool, 
+                new BootstrapMethod[] {new BootstrapMethod(lambda, new int[] {1, 2})}));
+        assertEquals(1, TraceSwitch.getBootstrapMethod(classFile));
+        assertEquals(1, TraceSwitch.getBootstrapMethod(classFile));
+        final BootstrapMethod[] methods = ((BootstrapMethodsAttribute) classFile.getAttribute(BootstrapMethodsAttribute.tag)).getMethods();
+        assertEquals(2, methods.length);
+        assertEquals(lambda, methods[0].methodRef);
+        assertEquals(2, methods[0].arguments.length);
+    }
+    
+    @Test
+    public void testStart() {
+        traceSwitch = new TraceSwitch(true, null, 0);
+        assertEquals(1, traceSwitch.getInterval());
+        assertNull(traceSwitch.getTriggerFile());
+        assertEquals("on", traceSwitch.toString());
+        traceSwitch.start();
+        assertTrue(traceSwitch.isOn());
+        final long turns = traceSwitch.getTurns();
+        traceSwitch.setOn(false);
+        assertFalse(traceSwitch.isOn());
+        assertFalse(ProbeSwitch.isOn());
+        assertEquals(turns + 1, traceSwitch.getTurns());
+    }
+    
+    @Test
+    public void testTriggerFile() throws IOException {
+        final File trigger = tempDir.resolve("trace").toFile();
+        // The monitor does not poll during the test; the test polls itself.
+        traceSwitch = new TraceSwitch(false, trigger, 60000);
+        assertEquals(trigger.getAbsolutePath(), traceSwitch.getTriggerFile());
+        assertEquals("off, triggerFile " + trigger.getAbsolutePath() + ", interval 60000", traceSwitch.toString());
+        traceSwitch.start();
+        assertFalse(traceSwitch.isOn());
+        traceSwitch.poll();
+        assertFalse(traceSwitch.isOn());
+        Files.createFile(trigger.toPath());
+        traceSwitch.poll();
+        assertTrue(traceSwitch.isOn());
+        Files.delete(trigger.toPath());
+        traceSwitch.poll();
+        assertFalse(traceSwitch.isOn());
+        // The MBean turns the switch until the file appears or disappears again.
+        traceSwitch.setOn(true);
+        traceSwitch.poll();
+        assertTrue(traceSwitch.isOn());
+        Files.createFile(trigger.toPath());
+        traceSwitch.poll();
+        assertTrue(traceSwitch.isOn());
+        Files.delete(trigger.toPath());
+        traceSwitch.poll();
+        assertFalse(traceSwitch.isOn());
+    }
+    
+    @Test
+    public void testTriggerFileExists() throws IOException {
+        final File trigger = tempDir.resolve("trace").toFile();
+        Files.createFile(trigger.toPath());
+        traceSwitch = new TraceSwitch(false, trigger, 10);
+        traceSwitch.start();
+        assertTrue(traceSwitch.isOn());
+    }
+    
+    private static ClassFile createClassFile(int majorVersion) {
+        final ClassFile classFile = new ClassFile(false, "Test", null);
+        classFile.setMajorVersion(majorVersion);
+        return classFile;
+    }
+}
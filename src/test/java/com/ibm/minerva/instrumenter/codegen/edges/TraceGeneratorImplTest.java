@@ -0,0 +1,141 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.codegen.edges;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.util.jar.JarFile;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.junit5.JUnit5Mockery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionLocation;
+import com.ibm.minerva.instrumenter.runtime.CallEdgeCounter;
+
+@DisplayName("TraceGeneratorImpl(call-edges) Test")
+public class TraceGeneratorImplTest {
+    
+    private final Mockery context = new JUnit5Mockery();
+    
+    @TempDir
+    File tempDir;
+    
+    @AfterEach
+    public void stop() {
+        CallEdgeCounter.stop();
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void generateSourceSnippet(TraceInjectionLocation location) {
+        final TraceGenerator tg = new TraceGeneratorImpl(new File(tempDir, "edges.bin"), 100);
+        final String snippet = tg.generateSourceSnippet(mockContext(location, 42));
+        final String method = location == TraceInjectionLocation.ENTRY ? "enter" : "exit";
+        assertEquals("com.ibm.minerva.instrumenter.runtime.CallEdgeCounter." + method + "(42);", snippet);
+        context.assertIsSatisfied();
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void generateProbeTemplate(TraceInjectionLocation location) {
+        final TraceGenerator tg = new TraceGeneratorImpl(new File(tempDir, "edges.bin"), 100);
+        final ProbeTemplate probe = tg.generateProbeTemplate(mockContext(location, 42));
+        final String method = location == TraceInjectionLocation.ENTRY ? "enter" : "exit";
+        assertEquals("push 42; invokestatic com/ibm/minerva/instrumenter/runtime/CallEdgeCounter." + method + "(I)V", probe.toString());
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testMethodDictionaryFile() {
+        final TraceGenerator tg = new TraceGeneratorImpl(new File(tempDir, "edges.bin"), 100);
+        assertEquals(new File(tempDir, "edges.bin.methods"), tg.getMethodDictionaryFile());
+    }
+    
+    @Test
+    public void testCreateProbeHandler() throws IOException {
+        final File file = new File(tempDir, "edges.bin");
+        final TraceGenerator tg = new TraceGeneratorImpl(file, 3600000);
+        final MethodIdRegistry registry = new MethodIdRegistry();
+        CallEdgeCounter.start(file, 3600000, null);
+        tg.createProbeHandler(registry, TraceInjectionLocation.ENTRY).accept(1);
+        // Exits by exception are counted as exits.
+        tg.createProbeHandler(registry, TraceInjectionLocation.EXCEPTION).accept(1);
+        tg.createProbeHandler(registry, TraceInjectionLocation.ENTRY).accept(1);
+        tg.createProbeHandler(registry, TraceInjectionLocation.EXIT).accept(1);
+        CallEdgeCounter.stop();
+        assertEquals(CallEdgeCounter.HEADER_SIZE + CallEdgeCounter.RECORD_SIZE, file.length());
+    }
+    
+    @Test
+    public void testInitialize() {
+        final File file = new File(tempDir, "edges.bin");
+        final TraceGenerator tg = new TraceGeneratorImpl(file, 3600000);
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                // The runtime is made visible to all class loaders before counting starts.
+                atMost(1).of(inst).appendToBootstrapClassLoaderSearch(with(any(JarFile.class)));
+            }
+        });
+        tg.initialize(inst);
+        context.assertIsSatisfied();
+        assertTrue(CallEdgeCounter.isCounting());
+        assertEquals(file, CallEdgeCounter.getFile());
+        // An empty dump is written when counting starts.
+        assertEquals(CallEdgeCounter.HEADER_SIZE, file.length());
+        CallEdgeCounter.enter(1);
+        CallEdgeCounter.exit(1);
+        CallEdgeCounter.stop();
+        assertEquals(CallEdgeCounter.HEADER_SIZE + CallEdgeCounter.RECORD_SIZE, file.length());
+    }
+    
+    @Test
+    public void testInitializeUnwritable() {
+        final TraceGenerator tg = new TraceGeneratorImpl(new File(tempDir, "missing/edges.bin"), 100);
+        tg.initialize(null);
+        assertFalse(CallEdgeCounter.isCounting());
+    }
+    
+    private TraceInjectionContext mockContext(TraceInjectionLocation location, int methodId) {
+        final TraceInjectionContext tic = context.mock(TraceInjectionContext.class);
+        context.checking(new Expectations() {
+            {
+                // The probes only carry the method id.
+                atLeast(1).of(tic).getMethodId(); will(returnValue(methodId));
+                atLeast(1).of(tic).getTraceInjectionLocation(); will(returnValue(location));
+            }
+        });
+        return tic;
+    }
+}
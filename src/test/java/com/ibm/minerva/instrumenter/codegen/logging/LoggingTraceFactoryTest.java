@@ -19,12 +19,16 @@
 package com.ibm.minerva.instrumenter.codegen.logging;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import com.google.gson.JsonObject;
 import com.ibm.minerva.instrumenter.TypedFactory;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
 import com.ibm.minerva.instrumenter.codegen.TraceGeneratorFactory;
 
 @DisplayName("LoggingTraceFactory Test")
@@ -45,6 +49,18 @@ public class LoggingTraceFactoryTest {
     @Test
     public void testCreateTraceGenerator() {
         final TraceGeneratorFactory tgf = new LoggingTraceFactory();
-        assertInstanceOf(TraceGeneratorImpl.class, tgf.createTraceGenerator(null));
+        final TraceGenerator tg = tgf.createTraceGenerator(null);
+        assertInstanceOf(TraceGeneratorImpl.class, tg);
+        assertFalse(((TraceGeneratorImpl) tg).isLegacy());
+    }
+    
+    @Test
+    public void testCreateLegacyTraceGenerator() {
+        final TraceGeneratorFactory tgf = new LoggingTraceFactory();
+        final JsonObject config = new JsonObject();
+        config.addProperty("legacy", true);
+        final TraceGenerator tg = tgf.createTraceGenerator(config);
+        assertInstanceOf(TraceGeneratorImpl.class, tg);
+        assertTrue(((TraceGeneratorImpl) tg).isLegacy());
     }
 }
@@ -18,21 +18,41 @@
 
 package com.ibm.minerva.instrumenter.codegen.logging;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.jar.JarFile;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.jmock.junit5.JUnit5Mockery;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
 import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
 import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
 import com.ibm.minerva.instrumenter.codegen.TraceInjectionLocation;
 import com.ibm.minerva.instrumenter.filter.ClassProcessor;
 import com.ibm.minerva.instrumenter.filter.MethodProcessor;
 
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+import javassist.bytecode.ClassFile;
+
 @DisplayName("TraceGeneratorImpl(logging) Test")
 public class TraceGeneratorImplTest {
     
@@ -42,9 +62,9 @@ public class TraceGeneratorImplTest {
     private final Mockery context = new JUnit5Mockery();
     
     @ParameterizedTest
-    @EnumSource(TraceInjectionLocation.class)
-    public void generateSourceSnippet(TraceInjectionLocation location) {
-        final TraceGenerator tg = new TraceGeneratorImpl();
+    @EnumSource(value = TraceInjectionLocation.class, names = {"ENTRY", "EXIT"})
+    public void generateLegacySourceSnippet(TraceInjectionLocation location) {
+        final TraceGenerator tg = new TraceGeneratorImpl(true);
         final TraceInjectionContext tic = context.mock(TraceInjectionContext.class);
         final ClassProcessor cp = context.mock(ClassProcessor.class);
         final MethodProcessor mp = context.mock(MethodProcessor.class);
@@ -64,4 +84,211 @@ public class TraceGeneratorImplTest {
         assertTrue(snippet.contains(METHOD_NAME));
         assertTrue(snippet.contains("." + location.getLoggingName() + "("));
     }
+    
+    @ParameterizedTest
+    @EnumSource(value = TraceInjectionLocation.class, names = {"ENTRY", "EXIT"})
+    public void generateLegacyProbeTemplate(TraceInjectionLocation location) {
+        final TraceGenerator tg = new TraceGeneratorImpl(true);
+        final TraceInjectionContext tic = context.mock(TraceInjectionContext.class);
+        final ClassProcessor cp = context.mock(ClassProcessor.class);
+        final MethodProcessor mp = context.mock(MethodProcessor.class);
+        context.checking(new Expectations() {
+            {
+                atLeast(1).of(tic).getClassProcessor(); will(returnValue(cp));
+                atLeast(1).of(tic).getMethodProcessor(); will(returnValue(mp));
+                atLeast(1).of(tic).getTraceInjectionLocation(); will(returnValue(location));
+                atLeast(1).of(cp).getClassName(); will(returnValue(CLASS_NAME));
+                atLeast(1).of(mp).getMethodName(); will(returnValue(METHOD_NAME));
+            }
+        });
+        final ProbeTemplate probe = tg.generateProbeTemplate(tic);
+        context.assertIsSatisfied();
+        final String s = probe.toString();
+        assertTrue(s.startsWith("push \"" + CLASS_NAME + "\"; invokestatic java/util/logging/Logger.getLogger("));
+        assertTrue(s.contains("push \"" + METHOD_NAME + "\""));
+        assertTrue(s.endsWith("invokevirtual java/util/logging/Logger." + location.getLoggingName() + "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/Object;)V"));
+    }
+    
+    @Test
+    public void generateLegacyExceptionSourceSnippet() {
+        final TraceGenerator tg = new TraceGeneratorImpl(true);
+        final String snippet = tg.generateSourceSnippet(mockContext(TraceInjectionLocation.EXCEPTION));
+        context.assertIsSatisfied();
+        assertEquals("java.util.logging.Logger.getLogger(\"" + CLASS_NAME + "\").logp(java.util.logging.Level.FINER,\"" 
+                + CLASS_NAME + "\",\"" + METHOD_NAME + "\",\"THROW {0}\",java.lang.String.valueOf(java.lang.Thread.currentThread().getId()));", snippet);
+    }
+    
+    @Test
+    public void generateLegacyExceptionProbeTemplate() {
+        final TraceGenerator tg = new TraceGeneratorImpl(true);
+        final ProbeTemplate probe = tg.generateProbeTemplate(mockContext(TraceInjectionLocation.EXCEPTION));
+        context.assertIsSatisfied();
+        final String s = probe.toString();
+        assertTrue(s.contains("getstatic java/util/logging/Level.FINER"), s);
+        assertTrue(s.contains("push \"THROW {0}\""), s);
+        assertTrue(s.endsWith("invokevirtual java/util/logging/Logger.logp(Ljava/util/logging/Level;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/Object;)V"), s);
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void generateSourceSnippet(TraceInjectionLocation location) {
+        final TraceGenerator tg = new TraceGeneratorImpl();
+        final String snippet = tg.generateSourceSnippet(mockContext(location));
+        context.assertIsSatisfied();
+        assertEquals("com.ibm.minerva.instrumenter.runtime.LoggingTracer." + location.getLoggingName() 
+                + "(" + CLASS_NAME + ".class,\"" + CLASS_NAME + "\",\"" + METHOD_NAME + "\");", snippet);
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void generateJava1_4SourceSnippet(TraceInjectionLocation location) {
+        final TraceGenerator tg = new TraceGeneratorImpl();
+        final String snippet = tg.generateSourceSnippet(mockContext(location, createJava1_4Class()));
+        context.assertIsSatisfied();
+        // The class literal cannot be loaded by the class.
+        assertEquals("com.ibm.minerva.instrumenter.runtime.LoggingTracer." + location.getLoggingName() 
+                + "(\"" + CLASS_NAME + "\",\"" + METHOD_NAME + "\");", snippet);
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void generateProbeTemplate(TraceInjectionLocation location) {
+        final TraceGenerator tg = new TraceGeneratorImpl();
+        final ProbeTemplate probe = tg.generateProbeTemplate(mockContext(location));
+        context.assertIsSatisfied();
+        // The Logger is looked up and the thread id built by the runtime, only if FINER is enabled.
+        assertEquals("push java/lang/Object.class; push \"" + CLASS_NAME + "\"; push \"" + METHOD_NAME + "\"; invokestatic com/ibm/minerva/instrumenter/runtime/LoggingTracer." 
+                + location.getLoggingName() + "(Ljava/lang/Class;Ljava/lang/String;Ljava/lang/String;)V", probe.toString());
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void generateJava1_4ProbeTemplate(TraceInjectionLocation location) {
+        final TraceGenerator tg = new TraceGeneratorImpl();
+        final ProbeTemplate probe = tg.generateProbeTemplate(mockContext(location, createJava1_4Class()));
+        context.assertIsSatisfied();
+        assertEquals("push \"" + CLASS_NAME + "\"; push \"" + METHOD_NAME + "\"; invokestatic com/ibm/minerva/instrumenter/runtime/LoggingTracer." 
+                + location.getLoggingName() + "(Ljava/lang/String;Ljava/lang/String;)V", probe.toString());
+    }
+    
+    @Test
+    public void testInitialize() {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                // The legacy probes do not need the runtime.
+                never(inst).appendToBootstrapClassLoaderSearch(with(any(JarFile.class)));
+            }
+        });
+        new TraceGeneratorImpl(true).initialize(inst);
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testTraceMethodThrottled() {
+        final MethodIdRegistry registry = new MethodIdRegistry();
+        final MethodIdRegistry.Method method = registry.getMethod(registry.register("1.0", "A.java", CLASS_NAME, METHOD_NAME + "(int)"));
+        final Logger logger = Logger.getLogger(CLASS_NAME);
+        final List<LogRecord> records = new ArrayList<>();
+        final Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+            @Override
+            public void flush() {}
+            @Override
+            public void close() {}
+        };
+        final Level level = logger.getLevel();
+        logger.setLevel(Level.FINER);
+        logger.addHandler(handler);
+        try {
+            new TraceGeneratorImpl().traceMethodThrottled(method);
+        }
+        finally {
+            logger.removeHandler(handler);
+            logger.setLevel(level);
+        }
+        assertEquals(1, records.size());
+        final LogRecord record = records.get(0);
+        assertEquals(Level.FINER, record.getLevel());
+        assertEquals(CLASS_NAME, record.getSourceClassName());
+        assertEquals(METHOD_NAME, record.getSourceMethodName());
+        assertEquals("THROTTLED", record.getMessage());
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void testCreateProbeHandler(TraceInjectionLocation location) {
+        final MethodIdRegistry registry = new MethodIdRegistry();
+        final int id = registry.register("1.0", "A.java", CLASS_NAME, METHOD_NAME + "(int)");
+        assertNull(new TraceGeneratorImpl(true).createProbeHandler(registry, location));
+        final IntConsumer probeHandler = new TraceGeneratorImpl().createProbeHandler(registry, location);
+        final Logger logger = Logger.getLogger(CLASS_NAME);
+        final List<LogRecord> records = new ArrayList<>();
+        final Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+            @Override
+            public void flush() {}
+            @Override
+            public void close() {}
+        };
+        final Level level = logger.getLevel();
+        logger.setLevel(Level.FINER);
+        logger.addHandler(handler);
+        try {
+            probeHandler.accept(id);
+            // Ids which are not registered are ignored.
+            probeHandler.accept(id + 1);
+        }
+        finally {
+            logger.removeHandler(handler);
+            logger.setLevel(level);
+        }
+        assertEquals(1, records.size());
+        final LogRecord record = records.get(0);
+        assertEquals(Level.FINER, record.getLevel());
+        assertEquals(CLASS_NAME, record.getSourceClassName());
+        assertEquals(METHOD_NAME, record.getSourceMethodName());
+        final String message = location == TraceInjectionLocation.ENTRY ? "ENTRY {0}" 
+                : location == TraceInjectionLocation.EXIT ? "RETURN {0}" : "THROW {0}";
+        assertEquals(message, record.getMessage());
+        assertEquals(String.valueOf(Thread.currentThread().getId()), record.getParameters()[0]);
+    }
+    
+    private TraceInjectionContext mockContext(TraceInjectionLocation location) {
+        try {
+            return mockContext(location, ClassPool.getDefault().get(CLASS_NAME));
+        }
+        catch (NotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private TraceInjectionContext mockContext(TraceInjectionLocation location, CtClass ctClass) {
+        final TraceInjectionContext tic = context.mock(TraceInjectionContext.class);
+        final ClassProcessor cp = context.mock(ClassProcessor.class);
+        final MethodProcessor mp = context.mock(MethodProcessor.class);
+        context.checking(new Expectations() {
+            {
+                atLeast(1).of(tic).getClassProcessor(); will(returnValue(cp));
+                atLeast(1).of(tic).getMethodProcessor(); will(returnValue(mp));
+                atLeast(1).of(tic).getTraceInjectionLocation(); will(returnValue(location));
+                atLeast(1).of(cp).getClassName(); will(returnValue(CLASS_NAME));
+                atLeast(1).of(mp).getMethodName(); will(returnValue(METHOD_NAME));
+                allowing(cp).getCtClass(); will(returnValue(ctClass));
+            }
+        });
+        return tic;
+    }
+    
+    private static CtClass createJava1_4Class() {
+        final CtClass ctClass = new ClassPool(true).makeClass("example.Java1_4Example");
+        ctClass.getClassFile2().setMajorVersion(ClassFile.JAVA_4);
+        return ctClass;
+    }
 }
@@ -19,7 +19,9 @@
 package com.ibm.minerva.instrumenter.codegen.println;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -27,9 +29,11 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import com.ibm.minerva.instrumenter.TypedFactory;
 import com.ibm.minerva.instrumenter.codegen.TraceGeneratorFactory;
+import com.ibm.minerva.instrumenter.runtime.PrintTracer;
 
 @DisplayName("PrintTraceFactory Test")
 public class PrintTraceFactoryTest {
@@ -46,6 +50,13 @@ public class PrintTraceFactoryTest {
         assertEquals("1.0", tf.getVersion());
     }
     
+    @Test
+    public void testDefaults() {
+        // The factory cannot use the runtime's defaults, the tests can.
+        assertEquals(PrintTracer.DEFAULT_BUFFER_SIZE, PrintTraceFactory.DEFAULT_BUFFER_SIZE);
+        assertEquals(PrintTracer.DEFAULT_FLUSH_INTERVAL, PrintTraceFactory.DEFAULT_FLUSH_INTERVAL);
+    }
+    
     @ParameterizedTest
     @ValueSource(strings = {"out", "err", "null"})
     public void testCreateTraceGenerator(String streamType) {
@@ -59,4 +70,16 @@ public class PrintTraceFactoryTest {
         }
         assertInstanceOf(TraceGeneratorImpl.class, tgf.createTraceGenerator(config));
     }
+    
+    @Test
+    public void testCreateTraceGeneratorObject() {
+        final TraceGeneratorFactory tgf = new PrintTraceFactory();
+        final JsonObject config = new JsonObject();
+        config.addProperty("stream", "err");
+        config.addProperty("bufferSize", 1024);
+        config.addProperty("flushInterval", 10);
+        assertFalse(((TraceGeneratorImpl) tgf.createTraceGenerator(config)).isLegacy());
+        config.addProperty("legacy", true);
+        assertTrue(((TraceGeneratorImpl) tgf.createTraceGenerator(config)).isLegacy());
+    }
 }
@@ -18,25 +18,38 @@
 
 package com.ibm.minerva.instrumenter.codegen.println;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.instrument.Instrumentation;
+import java.util.function.IntConsumer;
+import java.util.jar.JarFile;
 import java.util.stream.Stream;
 
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.jmock.junit5.JUnit5Mockery;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
 import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
 import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
 import com.ibm.minerva.instrumenter.codegen.TraceInjectionLocation;
 import com.ibm.minerva.instrumenter.filter.ApplicationProcessor;
 import com.ibm.minerva.instrumenter.filter.ClassProcessor;
 import com.ibm.minerva.instrumenter.filter.MethodProcessor;
+import com.ibm.minerva.instrumenter.runtime.PrintTracer;
 
 @DisplayName("TraceGeneratorImpl(println) Test")
 public class TraceGeneratorImplTest {
@@ -50,8 +63,8 @@ public class TraceGeneratorImplTest {
     
     @ParameterizedTest
     @MethodSource("locationAndStreamProvider")
-    public void generateSourceSnippet(TraceInjectionLocation location, SystemPrintStream sps) {
-        final TraceGenerator tg = new TraceGeneratorImpl(sps);
+    public void generateLegacySourceSnippet(TraceInjectionLocation location, SystemPrintStream sps) {
+        final TraceGenerator tg = new TraceGeneratorImpl(sps, true, PrintTraceFactory.DEFAULT_BUFFER_SIZE, PrintTraceFactory.DEFAULT_FLUSH_INTERVAL);
         final TraceInjectionContext tic = context.mock(TraceInjectionContext.class);
         final ApplicationProcessor ap = context.mock(ApplicationProcessor.class);
         final ClassProcessor cp = context.mock(ClassProcessor.class);
@@ -78,6 +91,141 @@ public class TraceGeneratorImplTest {
         context.assertIsSatisfied();
     }
     
+    @ParameterizedTest
+    @MethodSource("locationAndStreamProvider")
+    public void generateLegacyProbeTemplate(TraceInjectionLocation location, SystemPrintStream sps) {
+        final TraceGenerator tg = new TraceGeneratorImpl(sps, true, PrintTraceFactory.DEFAULT_BUFFER_SIZE, PrintTraceFactory.DEFAULT_FLUSH_INTERVAL);
+        final TraceInjectionContext tic = context.mock(TraceInjectionContext.class);
+        final ApplicationProcessor ap = context.mock(ApplicationProcessor.class);
+        final ClassProcessor cp = context.mock(ClassProcessor.class);
+        final MethodProcessor mp = context.mock(MethodProcessor.class);
+        context.checking(new Expectations() {
+            {
+                atLeast(1).of(tic).getApplicationProcessor(); will(returnValue(ap));
+                atLeast(1).of(tic).getClassProcessor(); will(returnValue(cp));
+                atLeast(1).of(tic).getMethodProcessor(); will(returnValue(mp));
+                atLeast(1).of(tic).getTraceInjectionLocation(); will(returnValue(location));
+                atLeast(1).of(ap).getInstrumentationVersion(); will(returnValue(VERSION));
+                atLeast(1).of(cp).getSourcePath(); will(returnValue(SOURCE_PATH));
+                atLeast(1).of(cp).getClassName(); will(returnValue(CLASS_NAME));
+                atLeast(1).of(mp).getMethodSignature(); will(returnValue(METHOD_SIGNATURE));
+            }
+        });
+        final ProbeTemplate probe = tg.generateProbeTemplate(tic);
+        final String s = probe.toString();
+        assertTrue(s.startsWith("getstatic java/lang/System." + sps.getName() + ":Ljava/io/PrintStream;")); // System.out/System.err
+        assertTrue(s.contains("push \"|" + VERSION + "|\""));
+        assertTrue(s.contains("push \"]," + location.getPrintName() + " " + SOURCE_PATH + "::" + CLASS_NAME + "::" + METHOD_SIGNATURE + "|\""));
+        assertTrue(s.endsWith("invokevirtual java/io/PrintStream.println(Ljava/lang/String;)V"));
+        context.assertIsSatisfied();
+    }
+    
+    @ParameterizedTest
+    @MethodSource("locationAndStreamProvider")
+    public void generateSourceSnippet(TraceInjectionLocation location, SystemPrintStream sps) {
+        final TraceGenerator tg = new TraceGeneratorImpl(sps);
+        final String snippet = tg.generateSourceSnippet(mockContext(location));
+        context.assertIsSatisfied();
+        assertEquals("com.ibm.minerva.instrumenter.runtime.PrintTracer." + sps.getName() + "(\"|" + VERSION + "|]," 
+                + location.getPrintName() + " " + SOURCE_PATH + "::" + CLASS_NAME + "::" + METHOD_SIGNATURE + "|\"," 
+                + ("|" + VERSION + "|").length() + ");", snippet);
+    }
+    
+    @ParameterizedTest
+    @MethodSource("locationAndStreamProvider")
+    public void generateProbeTemplate(TraceInjectionLocation location, SystemPrintStream sps) {
+        final TraceGenerator tg = new TraceGeneratorImpl(sps);
+        final ProbeTemplate probe = tg.generateProbeTemplate(mockContext(location));
+        context.assertIsSatisfied();
+        // All the constant text is one literal, the time and thread id are inserted by the runtime.
+        assertEquals("push \"|" + VERSION + "|]," + location.getPrintName() + " " + SOURCE_PATH + "::" + CLASS_NAME + "::" + METHOD_SIGNATURE + "|\"; push " 
+                + ("|" + VERSION + "|").length() + "; invokestatic com/ibm/minerva/instrumenter/runtime/PrintTracer." 
+                + sps.getName() + "(Ljava/lang/String;I)V", probe.toString());
+    }
+    
+    @Test
+    public void testInitialize() {
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                // The legacy probes do not need the runtime.
+                never(inst).appendToBootstrapClassLoaderSearch(with(any(JarFile.class)));
+            }
+        });
+        final TraceGeneratorImpl tg = new TraceGeneratorImpl(SystemPrintStream.OUT, true, PrintTraceFactory.DEFAULT_BUFFER_SIZE, PrintTraceFactory.DEFAULT_FLUSH_INTERVAL);
+        assertTrue(tg.isLegacy());
+        tg.initialize(inst);
+        context.assertIsSatisfied();
+        assertFalse(new TraceGeneratorImpl(SystemPrintStream.OUT).isLegacy());
+    }
+    
+    @Test
+    public void testTraceMethodThrottled() {
+        final MethodIdRegistry registry = new MethodIdRegistry();
+        final MethodIdRegistry.Method method = registry.getMethod(registry.register(VERSION, SOURCE_PATH, CLASS_NAME, METHOD_SIGNATURE));
+        final PrintStream err = System.err;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(bytes, true));
+        try {
+            new TraceGeneratorImpl(SystemPrintStream.ERR, true, PrintTraceFactory.DEFAULT_BUFFER_SIZE, PrintTraceFactory.DEFAULT_FLUSH_INTERVAL).traceMethodThrottled(method);
+        }
+        finally {
+            System.setErr(err);
+        }
+        final String line = bytes.toString().trim();
+        assertTrue(line.startsWith("|" + VERSION + "|"), line);
+        assertTrue(line.endsWith(",[" + Thread.currentThread().getId() + "],Throttled " + SOURCE_PATH + "::" + CLASS_NAME + "::" + METHOD_SIGNATURE + "|"), line);
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void testCreateProbeHandler(TraceInjectionLocation location) {
+        final MethodIdRegistry registry = new MethodIdRegistry();
+        final int id = registry.register(VERSION, SOURCE_PATH, CLASS_NAME, METHOD_SIGNATURE);
+        assertNull(new TraceGeneratorImpl(SystemPrintStream.ERR, true, PrintTraceFactory.DEFAULT_BUFFER_SIZE, 
+                PrintTraceFactory.DEFAULT_FLUSH_INTERVAL).createProbeHandler(registry, location));
+        final IntConsumer handler = new TraceGeneratorImpl(SystemPrintStream.ERR, false, PrintTraceFactory.DEFAULT_BUFFER_SIZE, 
+                PrintTraceFactory.DEFAULT_FLUSH_INTERVAL).createProbeHandler(registry, location);
+        final PrintStream err = System.err;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(bytes, true));
+        try {
+            handler.accept(id);
+            // Ids which are not registered are ignored.
+            handler.accept(id + 1);
+            PrintTracer.flush();
+        }
+        finally {
+            System.setErr(err);
+        }
+        // Same line as the probe's.
+        final String line = bytes.toString().trim();
+        assertTrue(line.startsWith("|" + VERSION + "|"), line);
+        assertTrue(line.endsWith(",[" + Thread.currentThread().getId() + "]," + location.getPrintName() + " " 
+                + SOURCE_PATH + "::" + CLASS_NAME + "::" + METHOD_SIGNATURE + "|"), line);
+        assertFalse(line.contains(System.lineSeparator()), line);
+    }
+    
+    private TraceInjectionContext mockContext(TraceInjectionLocation location) {
+        final TraceInjectionContext tic = context.mock(TraceInjectionContext.class);
+        final ApplicationProcessor ap = context.mock(ApplicationProcessor.class);
+        final ClassProcessor cp = context.mock(ClassProcessor.class);
+        final MethodProcessor mp = context.mock(MethodProcessor.class);
+        context.checking(new Expectations() {
+            {
+                atLeast(1).of(tic).getApplicationProcessor(); will(returnValue(ap));
+                atLeast(1).of(tic).getClassProcessor(); will(returnValue(cp));
+                atLeast(1).of(tic).getMethodProcessor(); will(returnValue(mp));
+                atLeast(1).of(tic).getTraceInjectionLocation(); will(returnValue(location));
+                atLeast(1).of(ap).getInstrumentationVersion(); will(returnValue(VERSION));
+                atLeast(1).of(cp).getSourcePath(); will(returnValue(SOURCE_PATH));
+                atLeast(1).of(cp).getClassName(); will(returnValue(CLASS_NAME));
+                atLeast(1).of(mp).getMethodSignature(); will(returnValue(METHOD_SIGNATURE));
+            }
+        });
+        return tic;
+    }
+    
     public static Stream<Arguments> locationAndStreamProvider() {
         return Stream.of(
             arguments(TraceInjectionLocation.ENTRY, SystemPrintStream.OUT),
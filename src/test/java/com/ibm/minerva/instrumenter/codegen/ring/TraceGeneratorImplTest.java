@@ -0,0 +1,160 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.codegen.ring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.function.IntConsumer;
+import java.util.jar.JarFile;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.junit5.JUnit5Mockery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.ibm.minerva.instrumenter.codegen.MethodIdRegistry;
+import com.ibm.minerva.instrumenter.codegen.ProbeTemplate;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionContext;
+import com.ibm.minerva.instrumenter.codegen.TraceInjectionLocation;
+import com.ibm.minerva.instrumenter.runtime.RingRecorder;
+
+@DisplayName("TraceGeneratorImpl(ring-buffer) Test")
+public class TraceGeneratorImplTest {
+    
+    private final Mockery context = new JUnit5Mockery();
+    
+    @TempDir
+    File tempDir;
+    
+    @AfterEach
+    public void stop() {
+        RingRecorder.stop();
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void generateSourceSnippet(TraceInjectionLocation location) {
+        final TraceGenerator tg = new TraceGeneratorImpl(new File(tempDir, "trace.bin"), 16, 100);
+        final String snippet = tg.generateSourceSnippet(mockContext(location, 42));
+        final String method = getRecorderMethod(location);
+        assertEquals("com.ibm.minerva.instrumenter.runtime.RingRecorder." + method + "(42);", snippet);
+        context.assertIsSatisfied();
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void generateProbeTemplate(TraceInjectionLocation location) {
+        final TraceGenerator tg = new TraceGeneratorImpl(new File(tempDir, "trace.bin"), 16, 100);
+        final ProbeTemplate probe = tg.generateProbeTemplate(mockContext(location, 42));
+        final String method = getRecorderMethod(location);
+        assertEquals("push 42; invokestatic com/ibm/minerva/instrumenter/runtime/RingRecorder." + method + "(I)V", probe.toString());
+        context.assertIsSatisfied();
+    }
+    
+    @Test
+    public void testMethodDictionaryFile() {
+        final TraceGenerator tg = new TraceGeneratorImpl(new File(tempDir, "trace.bin"), 16, 100);
+        assertEquals(new File(tempDir, "trace.bin.methods"), tg.getMethodDictionaryFile());
+    }
+    
+    @Test
+    public void testInitialize() {
+        final File file = new File(tempDir, "trace.bin");
+        final TraceGenerator tg = new TraceGeneratorImpl(file, 16, 100);
+        final Instrumentation inst = context.mock(Instrumentation.class);
+        context.checking(new Expectations() {
+            {
+                // The runtime is made visible to all class loaders before recording starts.
+                atMost(1).of(inst).appendToBootstrapClassLoaderSearch(with(any(JarFile.class)));
+            }
+        });
+        tg.initialize(inst);
+        context.assertIsSatisfied();
+        assertTrue(RingRecorder.isRecording());
+        assertEquals(file, RingRecorder.getFile());
+        RingRecorder.enter(1);
+        RingRecorder.stop();
+        assertEquals(RingRecorder.HEADER_SIZE + RingRecorder.RECORD_SIZE, file.length());
+    }
+    
+    @Test
+    public void testInitializeUnwritable() {
+        final TraceGenerator tg = new TraceGeneratorImpl(new File(tempDir, "missing/trace.bin"), 16, 100);
+        tg.initialize(null);
+        assertFalse(RingRecorder.isRecording());
+    }
+    
+    private TraceInjectionContext mockContext(TraceInjectionLocation location, int methodId) {
+        final TraceInjectionContext tic = context.mock(TraceInjectionContext.class);
+        context.checking(new Expectations() {
+            {
+                // The probes only carry the method id.
+                atLeast(1).of(tic).getMethodId(); will(returnValue(methodId));
+                atLeast(1).of(tic).getTraceInjectionLocation(); will(returnValue(location));
+            }
+        });
+        return tic;
+    }
+    
+    @Test
+    public void testTraceMethodThrottled() throws IOException {
+        final File file = new File(tempDir, "trace.bin");
+        final TraceGenerator tg = new TraceGeneratorImpl(file, 16, 100);
+        final MethodIdRegistry registry = new MethodIdRegistry();
+        final MethodIdRegistry.Method method = registry.getMethod(registry.register("1.0", "A.java", "A", "a()"));
+        RingRecorder.start(file, 16, 3600000, null);
+        tg.traceMethodThrottled(method);
+        RingRecorder.stop();
+        assertEquals(RingRecorder.HEADER_SIZE + RingRecorder.RECORD_SIZE, file.length());
+    }
+    
+    @ParameterizedTest
+    @EnumSource(TraceInjectionLocation.class)
+    public void testCreateProbeHandler(TraceInjectionLocation location) throws IOException {
+        final File file = new File(tempDir, "trace.bin");
+        final TraceGenerator tg = new TraceGeneratorImpl(file, 16, 100);
+        final IntConsumer handler = tg.createProbeHandler(new MethodIdRegistry(), location);
+        RingRecorder.start(file, 16, 3600000, null);
+        handler.accept(42);
+        RingRecorder.stop();
+        final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        in.position(RingRecorder.HEADER_SIZE + 16);
+        assertEquals(42, in.getInt());
+        assertEquals(location == TraceInjectionLocation.ENTRY ? RingRecorder.ENTRY 
+                : location == TraceInjectionLocation.EXCEPTION ? RingRecorder.EXCEPTION : RingRecorder.EXIT, in.getInt());
+    }
+    
+    private static String getRecorderMethod(TraceInjectionLocation location) {
+        return location == TraceInjectionLocation.ENTRY ? "enter" 
+                : location == TraceInjectionLocation.EXCEPTION ? "exception" : "exit";
+    }
+}
@@ -0,0 +1,84 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.codegen.tree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import java.io.File;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.JsonObject;
+import com.ibm.minerva.instrumenter.TypedFactory;
+import com.ibm.minerva.instrumenter.codegen.TraceGenerator;
+import com.ibm.minerva.instrumenter.codegen.TraceGeneratorFactory;
+import com.ibm.minerva.instrumenter.runtime.ContextTreeRecorder;
+
+@DisplayName("ContextTreeTraceFactory Test")
+public class ContextTreeTraceFactoryTest {
+    
+    @TempDir
+    File tempDir;
+    
+    @Test
+    public void testType() {
+        final TypedFactory tf = new ContextTreeTraceFactory();
+        assertEquals("context-tree", tf.getType());
+    }
+    
+    @Test
+    public void testVersion() {
+        final TypedFactory tf = new ContextTreeTraceFactory();
+        assertEquals("1.0", tf.getVersion());
+    }
+    
+    @Test
+    public void testDefaults() {
+        // The factory cannot use the runtime's defaults, the tests can.
+        assertEquals(ContextTreeRecorder.DEFAULT_MAX_NODES, ContextTreeTraceFactory.DEFAULT_MAX_NODES);
+        assertEquals(ContextTreeRecorder.DEFAULT_FLUSH_INTERVAL, ContextTreeTraceFactory.DEFAULT_FLUSH_INTERVAL);
+    }
+    
+    @Test
+    public void testCreateTraceGeneratorDefault() {
+        final TraceGeneratorFactory tgf = new ContextTreeTraceFactory();
+        final TraceGenerator tg = tgf.createTraceGenerator(null);
+        assertInstanceOf(TraceGeneratorImpl.class, tg);
+        assertEquals(ContextTreeTraceFactory.DEFAULT_FILE_NAME, ((TraceGeneratorImpl) tg).getFile().getName());
+        assertEquals(ContextTreeTraceFactory.DEFAULT_MAX_NODES, ((TraceGeneratorImpl) tg).getMaxNodes());
+        assertEquals(ContextTreeTraceFactory.DEFAULT_FLUSH_INTERVAL, ((TraceGeneratorImpl) tg).getFlushInterval());
+    }
+    
+    @Test
+    public void testCreateTraceGeneratorObject() {
+        final File file = new File(tempDir, "tree.bin");
+        final JsonObject config = new JsonObject();
+        config.addProperty("file", file.getAbsolutePath());
+        config.addProperty("maxNodes", 1000);
+        config.addProperty("flushInterval", 60000);
+        final TraceGeneratorFactory tgf = new ContextTreeTraceFactory();
+        final TraceGenerator tg = tgf.createTraceGenerator(config);
+        assertInstanceOf(TraceGeneratorImpl.class, tg);
+        assertEquals(file, ((TraceGeneratorImpl) tg).getFile());
+        assertEquals(1000, ((TraceGeneratorImpl) tg).getMaxNodes());
+        assertEquals(60000, ((TraceGeneratorImpl) tg).getFlushInterval());
+    }
+}
@@ -19,8 +19,10 @@
 package com.ibm.minerva.instrumenter.filter.pkg;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -29,6 +31,7 @@ import org.junit.jupiter.params.provider.ValueSource;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import com.ibm.minerva.instrumenter.TypedFactory;
 import com.ibm.minerva.instrumenter.filter.ApplicationProcessor;
@@ -49,6 +52,24 @@ public class PackageFilterFactoryTest {
         assertEquals("1.0", tf.getVersion());
     }
     
+    @Test
+    public void testCreateApplicationProcessorIncludeExclude() {
+        final ApplicationProcessorFactory apf = new PackageFilterFactory();
+        final JsonObject config = new JsonObject();
+        final JsonArray include = new JsonArray();
+        include.add("com.acme");
+        config.add("include", include);
+        config.addProperty("exclude", "com.acme.generated");
+        final ApplicationProcessor ap = apf.createApplicationProcessor(config);
+        assertInstanceOf(ApplicationProcessorImpl.class, ap);
+        assertTrue(ap.acceptClass("com/acme/Foo"));
+        assertFalse(ap.acceptClass("com/acme/generated/Foo"));
+        assertFalse(ap.acceptClass("java/lang/Object"));
+        // Only exclusions is not a usable filter.
+        config.remove("include");
+        assertNull(apf.createApplicationProcessor(config));
+    }
+    
     @ParameterizedTest
     @ValueSource(strings = {"com.ibm.minerva.instrumenter", "java.util:org.w3c", "null"})
     public void testCreateApplicationProcessor(String packages) {
@@ -0,0 +1,67 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.pkg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+@DisplayName("PackagePrefixMatcher Test")
+public class PackagePrefixMatcherTest {
+    
+    private static final PackagePrefixMatcher MATCHER = PackagePrefixMatcher.compile(
+            Arrays.asList("com/acme/", "com/acme/generated/keep/", "org/example/", "example"),
+            Arrays.asList("com/acme/generated/", "org/example/internal/"));
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"com/acme/Foo", "com/acme/sub/Bar$1", "com/acme/generated/keep/Baz",
+            "org/example/Api", "example/Example", "exampleTwo/Other"})
+    public void testAccept(String className) {
+        assertTrue(MATCHER.matches(className), "Expected " + className + " to be accepted.");
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"java/lang/Object", "com/acme", "com/acmeX/Foo", "com/acme/generated/Proxy$12",
+            "org/example/internal/Impl", "org/Example", "", "c"})
+    public void testReject(String className) {
+        assertFalse(MATCHER.matches(className), "Expected " + className + " to be rejected.");
+    }
+    
+    @Test
+    public void testExcludeWinsOnDuplicate() {
+        final PackagePrefixMatcher m = PackagePrefixMatcher.compile(Collections.singleton("a/"), Collections.singleton("a/"));
+        assertFalse(m.matches("a/B"));
+        assertEquals(1, m.size());
+    }
+    
+    @Test
+    public void testEmpty() {
+        final PackagePrefixMatcher m = PackagePrefixMatcher.compile(Collections.emptySet());
+        assertTrue(m.isEmpty());
+        assertFalse(m.matches("a/B"));
+    }
+}
@@ -18,8 +18,10 @@
 
 package com.ibm.minerva.instrumenter.filter.tables;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -75,6 +77,21 @@ public class ApplicationProcessorImplTest {
         testAcceptClass(className, TABLES_NOJPARSER);
     }
     
+    @ParameterizedTest
+    @ValueSource(strings = {TABLES_JPARSER, TABLES_NOJPARSER})
+    public void testAcceptClassName(String dir) {
+        final ApplicationProcessor ap = new ApplicationProcessorImpl(ResourceHelper.resolveResourceToFile(dir));
+        assertTrue(ap.acceptClass(EXAMPLE_CLASS));
+        assertTrue(ap.acceptClass(EXAMPLE$ANOTHER_CLASS));
+        assertTrue(ap.acceptClass(GENERIC$2POINT_CLASS.replace("$2", "$")));
+        assertFalse(ap.acceptClass(EXAMPLE$1_CLASS));
+        // Rejected by package without a table lookup.
+        assertFalse(ap.acceptClass("java/lang/Object"));
+        assertFalse(ap.acceptClass("examples/Example"));
+        assertFalse(ap.acceptClass("Example"));
+        assertFalse(ap.acceptClass((String) null));
+    }
+    
     private void testAcceptClass(String className, String dir) throws IOException {
         final ApplicationProcessor ap = new ApplicationProcessorImpl(ResourceHelper.resolveResourceToFile(dir));
         if (ap.acceptClass(className)) {
@@ -0,0 +1,150 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.tables;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.ibm.minerva.instrumenter.ResourceHelper;
+import com.ibm.minerva.instrumenter.filter.tables.TableIndexImpl.ClassRecord;
+
+@DisplayName("MappedTableIndex Test")
+public class MappedTableIndexTest {
+    
+    @TempDir
+    File tempDir;
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"tables/jparser", "tables/nojparser"})
+    public void testSnapshotMatchesIndex(String dir) throws IOException {
+        final TableIndexImpl expected = (TableIndexImpl) ApplicationProcessorImpl.loadTableIndex(ResourceHelper.resolveResourceToFile(dir));
+        final File snapshot = new File(tempDir, "tables.snapshot");
+        TableSnapshot.write(expected, snapshot);
+        final TableIndex actual = MappedTableIndex.open(snapshot);
+        assertNotNull(actual);
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertFalse(actual.containsClass("java.lang.Object"));
+        assertNull(actual.getClass("example.Zzz"));
+        assertNull(actual.getClass(""));
+        assertFalse(actual.containsInternalName("java/lang/Object"));
+        assertFalse(actual.containsInternalName(""));
+        assertEquals(expected.getPackagePrefixes(), actual.getPackagePrefixes());
+        for (Map.Entry<String,TableClass> entry : expected.getClasses().entrySet()) {
+            final ClassRecord e = (ClassRecord) entry.getValue();
+            assertTrue(actual.containsClass(entry.getKey()));
+            assertTrue(actual.containsInternalName(TableIndexImpl.toInternalName(entry.getKey())));
+            final TableClass a = actual.getClass(entry.getKey());
+            assertEquals(e.getSymTableKey(), a.getSymTableKey());
+            assertEquals(e.getFile(), a.getFile());
+            assertEquals(e.hasFunctionSignatures(), a.hasFunctionSignatures());
+            e.getFunctionSignatures().forEach(x -> assertTrue(a.containsFunctionSignature(x), x));
+            assertFalse(a.containsFunctionSignature("doesNotExist()"));
+            for (Map.Entry<String,List<TableMethod>> methods : e.getMethods().entrySet()) {
+                final List<TableMethod> em = methods.getValue();
+                final List<TableMethod> am = a.getMethods(methods.getKey());
+                assertEquals(em.size(), am.size());
+                for (int i = 0; i < em.size(); ++i) {
+                    assertEquals(em.get(i).getKey(), am.get(i).getKey());
+                    assertEquals(em.get(i).getSignature(), am.get(i).getSignature());
+                    assertArrayEquals(em.get(i).getArgTypes(), am.get(i).getArgTypes());
+                }
+            }
+            assertTrue(a.getMethods("doesNotExist").isEmpty());
+        }
+    }
+    
+    @Test
+    public void testInvalidSnapshot() throws IOException {
+        final File snapshot = new File(tempDir, "tables.snapshot");
+        Files.write(snapshot.toPath(), "{\"FQCN\": {}}".getBytes("UTF-8"));
+        assertNull(MappedTableIndex.open(snapshot));
+        assertNull(MappedTableIndex.open(new File(tempDir, "missing.snapshot")));
+        // Snapshots in the earlier formats (without the internal name index or its count) must be rebuilt.
+        for (int formatVersion = 1; formatVersion < TableSnapshot.FORMAT_VERSION; ++formatVersion) {
+            final ByteBuffer header = ByteBuffer.allocate(TableSnapshot.HEADER_SIZE);
+            header.putInt(TableSnapshot.MAGIC).putInt(formatVersion);
+            Files.write(snapshot.toPath(), header.array());
+            assertNull(MappedTableIndex.open(snapshot));
+        }
+    }
+    
+    @Test
+    public void testTruncatedSnapshot() throws IOException {
+        final TableIndexImpl index = (TableIndexImpl) ApplicationProcessorImpl.loadTableIndex(ResourceHelper.resolveResourceToFile("tables/jparser"));
+        final File snapshot = new File(tempDir, "tables.snapshot");
+        TableSnapshot.write(index, snapshot);
+        final byte[] b = Files.readAllBytes(snapshot.toPath());
+        assertTrue(MappedTableIndex.isValid(ByteBuffer.wrap(b)));
+        // Cut anywhere after the header, e.g. by a copy which did not complete.
+        for (int length : new int[] {TableSnapshot.HEADER_SIZE, b.length / 2, b.length - 1}) {
+            final byte[] truncated = new byte[length];
+            System.arraycopy(b, 0, truncated, 0, length);
+            Files.write(snapshot.toPath(), truncated);
+            assertNull(MappedTableIndex.open(snapshot), Integer.toString(length));
+        }
+        // A section position past the end of the snapshot.
+        final ByteBuffer stale = ByteBuffer.wrap(b.clone());
+        stale.putInt(6 * Integer.BYTES, b.length);
+        assertFalse(MappedTableIndex.isValid(stale));
+        final ByteBuffer count = ByteBuffer.wrap(b.clone());
+        count.putInt(5 * Integer.BYTES, Integer.MAX_VALUE);
+        assertFalse(MappedTableIndex.isValid(count));
+    }
+    
+    @Test
+    public void testCollidingInternalNames() throws IOException {
+        // x.C.$D and x.C$D both have the internal name x/C$D.
+        final TableIndexImpl.Builder builder = new TableIndexImpl.Builder();
+        builder.setVersion("v1");
+        builder.addClass("x.C.$D", builder.newClass("C.$D", "C.java", false).build());
+        builder.addClass("x.C$D", builder.newClass("C$D", "C.java", false).build());
+        builder.addClass("y.E", builder.newClass("E", "E.java", false).build());
+        final File snapshot = new File(tempDir, "tables.snapshot");
+        TableSnapshot.write(builder.build(), snapshot);
+        final ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(snapshot.toPath()));
+        assertEquals(3, header.getInt(5 * Integer.BYTES));
+        assertEquals(2, header.getInt(7 * Integer.BYTES));
+        final TableIndex index = MappedTableIndex.open(snapshot);
+        assertNotNull(index);
+        assertTrue(index.containsClass("x.C.$D"));
+        assertTrue(index.containsClass("x.C$D"));
+        assertTrue(index.containsInternalName("x/C$D"));
+        assertTrue(index.containsInternalName("y/E"));
+        // Names sorting after the last entry are not looked up in the package list.
+        assertFalse(index.containsInternalName("z/F"));
+        assertFalse(index.containsInternalName("y/E$1"));
+    }
+}
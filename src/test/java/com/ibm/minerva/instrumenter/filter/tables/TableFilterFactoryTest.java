@@ -19,11 +19,19 @@
 package com.ibm.minerva.instrumenter.filter.tables;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
@@ -68,4 +76,41 @@ public class TableFilterFactoryTest {
             assertNull(ap);
         }
     }
+    
+    @Test
+    public void testCreateApplicationProcessorFromSnapshot(@TempDir File tempDir) throws IOException {
+        final File snapshot = new File(tempDir, "tables.snapshot");
+        TableSnapshot.main(new String[] {ResourceHelper.resolveResource("tables/jparser"), snapshot.getAbsolutePath()});
+        final ApplicationProcessorFactory apf = new TableFilterFactory();
+        final ApplicationProcessor ap = apf.createApplicationProcessor(new JsonPrimitive(snapshot.getAbsolutePath()));
+        assertInstanceOf(ApplicationProcessorImpl.class, ap);
+        assertEquals("v2.0.0r42", ap.getInstrumentationVersion());
+        assertTrue(ap.acceptClass("example/Example$Another"));
+        assertFalse(ap.acceptClass("java/lang/Object"));
+    }
+    
+    @Test
+    public void testCreateApplicationProcessorFromTruncatedSnapshot(@TempDir File tempDir) throws IOException {
+        // A truncated snapshot kept with its tables falls back to the JSON files.
+        final File tableDir = ResourceHelper.resolveResourceToFile("tables/jparser");
+        for (String name : new String[] {"symTable.json", "refTable.json"}) {
+            Files.copy(new File(tableDir, name).toPath(), new File(tempDir, name).toPath());
+        }
+        final File snapshot = new File(tempDir, "tables.snapshot");
+        TableSnapshot.main(new String[] {tempDir.getAbsolutePath(), snapshot.getAbsolutePath()});
+        final byte[] b = Files.readAllBytes(snapshot.toPath());
+        Files.write(snapshot.toPath(), Arrays.copyOf(b, b.length / 2));
+        final ApplicationProcessorFactory apf = new TableFilterFactory();
+        final ApplicationProcessor ap = apf.createApplicationProcessor(new JsonPrimitive(snapshot.getAbsolutePath()));
+        assertInstanceOf(ApplicationProcessorImpl.class, ap);
+        assertEquals("v2.0.0r42", ap.getInstrumentationVersion());
+        assertTrue(ap.acceptClass("example/Example$Another"));
+        
+        // Without the tables there is no filter.
+        final File other = new File(tempDir, "other");
+        other.mkdir();
+        final File alone = new File(other, "tables.snapshot");
+        Files.write(alone.toPath(), Arrays.copyOf(b, b.length / 2));
+        assertNull(apf.createApplicationProcessor(new JsonPrimitive(alone.getAbsolutePath())));
+    }
 }
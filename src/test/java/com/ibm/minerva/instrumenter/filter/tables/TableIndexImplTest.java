@@ -0,0 +1,104 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.tables;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.ibm.minerva.instrumenter.ResourceHelper;
+
+@DisplayName("TableIndexImpl Test")
+public class TableIndexImplTest {
+    
+    private static final String TABLES_JPARSER = "tables/jparser";
+    private static final String TABLES_NOJPARSER = "tables/nojparser";
+    
+    @Test
+    public void testIndexWithJParser() {
+        final TableIndex index = ApplicationProcessorImpl.loadTableIndex(ResourceHelper.resolveResourceToFile(TABLES_JPARSER));
+        assertNotNull(index);
+        assertEquals("v2.0.0r42", index.getVersion());
+        assertTrue(index.containsClass("example.Example"));
+        assertTrue(index.containsClass("example.Example.$Another"));
+        assertFalse(index.containsClass("example.Example$Another"));
+        assertNull(index.getClass("java.lang.Object"));
+        final TableClass tc = index.getClass("example.Example");
+        assertEquals("Example", tc.getSymTableKey());
+        assertTrue(tc.hasFunctionSignatures());
+        assertTrue(tc.containsFunctionSignature("Example(int, int)"));
+        final List<TableMethod> constructors = tc.getMethods("Example");
+        assertEquals(2, constructors.size());
+        assertEquals("Example [overloaded_#001]", constructors.get(0).getKey());
+        assertEquals("Example(int, int)", constructors.get(0).getSignature());
+        assertArrayEquals(new String[] {"int", "int"}, constructors.get(0).getArgTypes());
+        final List<TableMethod> main = tc.getMethods("main");
+        assertEquals(1, main.size());
+        // Whitespace is removed from argument types.
+        assertArrayEquals(new String[] {"String[]"}, main.get(0).getArgTypes());
+        assertTrue(tc.getMethods("doesNotExist").isEmpty());
+        // Classes can also be looked up by JVM internal name.
+        assertTrue(index.containsInternalName("example/Example"));
+        assertTrue(index.containsInternalName("example/Example$Another"));
+        assertFalse(index.containsInternalName("example/Example$1"));
+        assertFalse(index.containsInternalName("example.Example"));
+        assertFalse(index.containsInternalName("java/lang/Object"));
+        assertEquals(Collections.singleton("example/"), index.getPackagePrefixes());
+    }
+    
+    @Test
+    public void testToInternalName() {
+        assertEquals("x/y/z/Outer$Inner", TableIndexImpl.toInternalName("x.y.z.Outer.$Inner"));
+        assertEquals("Default", TableIndexImpl.toInternalName("Default"));
+        assertEquals("x/y/z/", TableIndexImpl.toPackagePrefix("x/y/z/Outer$Inner"));
+        assertEquals("", TableIndexImpl.toPackagePrefix("Default"));
+    }
+    
+    @Test
+    public void testIndexWithNoJParser() {
+        final TableIndex index = ApplicationProcessorImpl.loadTableIndex(ResourceHelper.resolveResourceToFile(TABLES_NOJPARSER));
+        assertNotNull(index);
+        final TableClass tc = index.getClass("example.Example");
+        assertFalse(tc.hasFunctionSignatures());
+        assertFalse(tc.containsFunctionSignature("Example(int, int)"));
+        assertNull(tc.getMethods("Example").get(0).getSignature());
+    }
+    
+    @Test
+    public void testToRawType() {
+        assertEquals("int[]", TableIndexImpl.toRawType("int []"));
+        assertEquals("Map", TableIndexImpl.toRawType("Map<K, V>"));
+        assertEquals("List[]", TableIndexImpl.toRawType("List<String> []"));
+    }
+    
+    @Test
+    public void testToMethodName() {
+        assertEquals("get", TableIndexImpl.toMethodName("get [overloaded_#002]"));
+        assertEquals("get", TableIndexImpl.toMethodName("get"));
+    }
+}
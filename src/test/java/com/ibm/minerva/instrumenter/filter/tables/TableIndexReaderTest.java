@@ -0,0 +1,82 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.filter.tables;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("TableIndexReader Test")
+public class TableIndexReaderTest {
+    
+    @TempDir
+    File tempDir;
+    
+    @Test
+    public void testOnlyReferencedClassesAreRead() throws IOException {
+        final File refTable = write("refTable.json", "{\"Files\": {\"a\": [1, 2]}, \"Version\": \"v1\", "
+                + "\"FQCN\": {\"x.A\": [\"A\"], \"x.A2\": [\"A\", \"B\"], \"x.Missing\": [\"Missing\"], \"x.Bad\": {}}}");
+        final File symTable = write("symTable.json", "{\"Unreferenced\": {\"funcL\": {\"m\": [1, {\"deep\": [null]}]}}, "
+                + "\"A\": {\"classVar\": {\"v\": {}}, \"file\": \"src/x/A.java\", \"funcSig\": {\"m(int)\": {}}, "
+                + "\"funcL\": {\"m\": {\"Args\": {\"i\": {\"Type\": \"int\"}}, \"signature\": \"m(int)\"}, "
+                + "\"m [overloaded_#001]\": {\"Args\": {\"i\": {\"Type\": 5}, \"j\": {\"Type\": \"Map< K, V >\"}}}, "
+                + "\"n\": {\"Args\": {\"i\": [], \"j\": {\"Type\": \"int\"}}}, \"o\": 3}}}");
+        final TableIndex index = TableIndexReader.read(symTable, refTable);
+        assertNotNull(index);
+        assertEquals("v1", index.getVersion());
+        assertTrue(index.containsClass("x.A"));
+        assertTrue(index.containsClass("x.A2"));
+        assertFalse(index.containsClass("x.Missing"));
+        assertFalse(index.containsClass("x.Bad"));
+        final TableClass tc = index.getClass("x.A");
+        assertEquals("src/x/A.java", tc.getFile());
+        assertTrue(tc.hasFunctionSignatures());
+        assertTrue(tc.containsFunctionSignature("m(int)"));
+        assertEquals(2, tc.getMethods("m").size());
+        assertArrayEquals(new String[] {"5", "Map"}, tc.getMethods("m").get(1).getArgTypes());
+        assertNull(tc.getMethods("n").get(0).getArgTypes());
+        assertTrue(tc.getMethods("o").isEmpty());
+    }
+    
+    @Test
+    public void testMalformedTable() throws IOException {
+        final File refTable = write("refTable.json", "{\"FQCN\": {\"x.A\": [\"A\"]}}");
+        assertNull(TableIndexReader.read(write("symTable.json", "{\"A\": {\"funcL\": "), refTable));
+        assertNull(TableIndexReader.read(write("symTable.json", "[]"), refTable));
+        assertNull(TableIndexReader.read(new File(tempDir, "missing.json"), refTable));
+    }
+    
+    private File write(String name, String content) throws IOException {
+        final File f = new File(tempDir, name);
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+}
@@ -0,0 +1,72 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Histogram Test")
+public class HistogramTest {
+    
+    @Test
+    public void testEmpty() {
+        final HistogramSnapshot s = new Histogram().snapshot();
+        assertEquals(0, s.getCount());
+        assertEquals(0, s.getTotal());
+        assertEquals(0, s.getMean());
+        assertEquals(0, s.getMax());
+        assertEquals(0, s.getP99());
+    }
+    
+    @Test
+    public void testRecord() {
+        final Histogram h = new Histogram();
+        for (int i = 1; i <= 100; ++i) {
+            h.record(i);
+        }
+        h.record(-5);
+        final HistogramSnapshot s = h.snapshot();
+        assertEquals(101, s.getCount());
+        assertEquals(5050, s.getTotal());
+        assertEquals(50, s.getMean());
+        assertEquals(100, s.getMax());
+        // Percentiles are the upper bound of their power of two bucket.
+        assertEquals(63, s.getP50());
+        assertEquals(100, s.getP90());
+        assertEquals(100, s.getP99());
+        assertTrue(s.toString().contains("count=101"));
+        h.reset();
+        assertEquals(0, h.snapshot().getCount());
+        assertEquals(0, h.snapshot().getMax());
+    }
+    
+    @Test
+    public void testLargeValues() {
+        final Histogram h = new Histogram();
+        h.record(Long.MAX_VALUE);
+        h.record(0);
+        final HistogramSnapshot s = h.snapshot();
+        assertEquals(Long.MAX_VALUE, s.getMax());
+        assertEquals(0, s.getP50());
+        assertEquals(Long.MAX_VALUE, s.getP99());
+    }
+}
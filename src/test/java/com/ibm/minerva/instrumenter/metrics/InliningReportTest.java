@@ -0,0 +1,67 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("InliningReport Test")
+public class InliningReportTest {
+    
+    @Test
+    public void testRecord() {
+        final InliningReport report = new InliningReport(35, 325);
+        // Already past or still within the limits.
+        report.record("x.A.a()", 10, 30);
+        report.record("x.A.b()", 36, 60);
+        report.record("x.A.c()", 35, 35);
+        report.record("x.A.d()", 400, 420);
+        assertEquals(0, report.getMethodsPastMaxInlineSize());
+        assertEquals(0, report.getMethodsPastFreqInlineSize());
+        
+        report.record("x.A.e(int)", 20, 36);
+        report.record("x.A.f()", 300, 330);
+        report.record("x.A.g()", 30, 330);
+        assertEquals(2, report.getMethodsPastMaxInlineSize());
+        assertEquals(2, report.getMethodsPastFreqInlineSize());
+        assertEquals(Arrays.asList("x.A.e(int) 20 -> 36 bytes (MaxInlineSize)", 
+                "x.A.f() 300 -> 330 bytes (FreqInlineSize)", 
+                "x.A.g() 30 -> 330 bytes (FreqInlineSize)"), report.getMethods());
+        final String text = report.getReport();
+        assertTrue(text.startsWith("Minerva Agent Inlining Report (MaxInlineSize 35, FreqInlineSize 325)"), text);
+        assertTrue(text.contains("  x.A.e(int) 20 -> 36 bytes (MaxInlineSize)"), text);
+        
+        report.reset();
+        assertEquals(0, report.getMethodsPastMaxInlineSize());
+        assertEquals(0, report.getMethodsPastFreqInlineSize());
+        assertTrue(report.getMethods().isEmpty());
+    }
+    
+    @Test
+    public void testLimits() {
+        // HotSpot's options, or their defaults.
+        final InliningReport report = new InliningReport();
+        assertTrue(report.getMaxInlineSize() > 0);
+        assertTrue(report.getFreqInlineSize() >= report.getMaxInlineSize());
+    }
+}
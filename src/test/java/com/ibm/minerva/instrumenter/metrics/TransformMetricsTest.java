@@ -0,0 +1,130 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ibm.minerva.instrumenter.metrics.TransformMetrics.Phase;
+
+@DisplayName("TransformMetrics Test")
+public class TransformMetricsTest {
+    
+    @TempDir
+    File directory;
+    
+    @Test
+    public void testCounters() {
+        final TransformMetrics metrics = new TransformMetrics();
+        metrics.classSeen();
+        metrics.classSeen();
+        metrics.classAccepted();
+        metrics.classTransformed(100, 150);
+        metrics.classFromCache();
+        metrics.classFailed();
+        metrics.methodInjected();
+        metrics.methodInjected();
+        metrics.methodFailed();
+        metrics.recordTime(Phase.MAKE_CLASS, System.nanoTime() - 1000);
+        metrics.methodResized("x.A.a()", 10, 20);
+        metrics.methodResized("x.A.b()", 10, 1000);
+        assertEquals(2, metrics.getClassesSeen());
+        assertEquals(1, metrics.getClassesAccepted());
+        assertEquals(1, metrics.getClassesTransformed());
+        assertEquals(1, metrics.getClassesFromCache());
+        assertEquals(1, metrics.getClassFailures());
+        assertEquals(2, metrics.getMethodsInjected());
+        assertEquals(1, metrics.getMethodFailures());
+        assertEquals(100, metrics.getBytesIn());
+        assertEquals(150, metrics.getBytesOut());
+        assertEquals(1, metrics.getMakeClassTime().getCount());
+        assertTrue(metrics.getMakeClassTime().getTotal() >= 1000);
+        assertEquals(0, metrics.getToBytecodeTime().getCount());
+        assertEquals(1, metrics.getMethodsPastMaxInlineSize());
+        assertEquals(1, metrics.getMethodsPastFreqInlineSize());
+        assertTrue(metrics.getInliningReport().contains("x.A.b() 10 -> 1000 bytes (FreqInlineSize)"));
+        
+        final String summary = metrics.getSummary();
+        assertTrue(summary.contains("classesSeen: 2"));
+        assertTrue(summary.contains("makeClass (ns): count=1"));
+        
+        metrics.reset();
+        assertEquals(0, metrics.getClassesSeen());
+        assertEquals(0, metrics.getBytesOut());
+        assertEquals(0, metrics.getMakeClassTime().getCount());
+        assertEquals(0, metrics.getMethodsPastFreqInlineSize());
+    }
+    
+    @Test
+    public void testMBean() throws Exception {
+        final TransformMetrics metrics = new TransformMetrics();
+        metrics.classSeen();
+        metrics.recordTime(Phase.TRANSFORM, System.nanoTime());
+        assertTrue(metrics.registerMBean());
+        // Registering again replaces the earlier MBean.
+        assertTrue(metrics.registerMBean());
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(TransformMetrics.OBJECT_NAME);
+        try {
+            assertEquals(1L, server.getAttribute(name, "ClassesSeen"));
+            final CompositeData transformTime = (CompositeData) server.getAttribute(name, "TransformTime");
+            assertEquals(1L, transformTime.get("count"));
+            assertEquals(0L, server.getAttribute(name, "MethodsPastMaxInlineSize"));
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assertEquals(0L, server.getAttribute(name, "ClassesSeen"));
+        }
+        finally {
+            server.unregisterMBean(name);
+        }
+    }
+    
+    @Test
+    public void testWriteSummary() throws Exception {
+        final TransformMetrics metrics = new TransformMetrics();
+        metrics.classSeen();
+        final File f = new File(directory, "summary.txt");
+        metrics.writeSummary(f);
+        final String summary = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+        assertEquals(metrics.getSummary(), summary);
+    }
+    
+    @Test
+    public void testWriteInliningReport() throws Exception {
+        final TransformMetrics metrics = new TransformMetrics();
+        metrics.methodResized("x.A.a()", 10, 1000);
+        final File f = new File(directory, "inlining.txt");
+        metrics.writeInliningReport(f);
+        final String report = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+        assertEquals(metrics.getInliningReport(), report);
+        assertTrue(report.contains("x.A.a()"));
+    }
+}
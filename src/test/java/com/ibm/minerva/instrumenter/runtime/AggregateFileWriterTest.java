@@ -0,0 +1,143 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("AggregateFileWriter Test")
+public class AggregateFileWriterTest {
+    
+    private static final int MAGIC = 0x54455354;
+    private static final int RECORD_SIZE = 4;
+    
+    @TempDir
+    File tempDir;
+    
+    private final AtomicInteger writes = new AtomicInteger();
+    
+    @Test
+    public void testStartFlushStop() throws IOException {
+        final File file = new File(tempDir, "aggregate.bin");
+        final long start = System.currentTimeMillis();
+        final AggregateFileWriter[] writer = new AggregateFileWriter[1];
+        writer[0] = new AggregateFileWriter(file, 3600000, "Test Writer", null, () -> contents(writer[0]));
+        assertSame(file, writer[0].getFile());
+        // The file is written when started.
+        writer[0].start();
+        assertTrue(writer[0].isRunning());
+        assertEquals(1, writes.get());
+        assertContents(file, start, 1);
+        writer[0].flush();
+        assertContents(file, start, 2);
+        // And once more when stopped, after which it is no longer written.
+        writer[0].stop();
+        assertFalse(writer[0].isRunning());
+        assertContents(file, start, 3);
+        writer[0].flush();
+        writer[0].stop();
+        assertEquals(3, writes.get());
+        // The file is replaced as a whole.
+        assertFalse(new File(tempDir, "aggregate.bin.tmp").exists());
+    }
+    
+    @Test
+    public void testPeriodicWrite() throws IOException, InterruptedException {
+        final File file = new File(tempDir, "aggregate.bin");
+        final AggregateFileWriter[] writer = new AggregateFileWriter[1];
+        writer[0] = new AggregateFileWriter(file, 10, "Test Writer", null, () -> contents(writer[0]));
+        writer[0].start();
+        try {
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (writes.get() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(writes.get() >= 3);
+        }
+        finally {
+            writer[0].stop();
+        }
+        assertContents(file, writer[0].getStartTime(), writes.get());
+    }
+    
+    @Test
+    public void testUnwritable() throws IOException {
+        final File directory = new File(tempDir, "dir");
+        final AggregateFileWriter[] writer = new AggregateFileWriter[1];
+        final List<IOException> errors = new ArrayList<>();
+        // A file which cannot be written when starting fails the start.
+        writer[0] = new AggregateFileWriter(new File(directory, "aggregate.bin"), 3600000, "Test Writer", errors::add, () -> contents(writer[0]));
+        assertThrows(IOException.class, writer[0]::start);
+        assertTrue(errors.isEmpty());
+        
+        // Later errors are passed to the error handler and stop the writes.
+        assertTrue(directory.mkdir());
+        writer[0] = new AggregateFileWriter(new File(directory, "aggregate.bin"), 3600000, "Test Writer", errors::add, () -> contents(writer[0]));
+        writer[0].start();
+        try {
+            new File(directory, "aggregate.bin").delete();
+            assertTrue(directory.delete());
+            writer[0].flush();
+            assertEquals(1, errors.size());
+            assertFalse(writer[0].isRunning());
+            writer[0].flush();
+            assertEquals(1, errors.size());
+        }
+        finally {
+            writer[0].stop();
+        }
+        assertEquals(1, errors.size());
+    }
+    
+    // One record with the number of the write.
+    private ByteBuffer contents(AggregateFileWriter writer) {
+        final ByteBuffer out = writer.allocate(MAGIC, 1, RECORD_SIZE, 1);
+        out.putInt(writes.incrementAndGet());
+        return out;
+    }
+    
+    private static void assertContents(File file, long start, int write) throws IOException {
+        final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        assertEquals(MAGIC, in.getInt());
+        assertEquals(1, in.getInt());
+        assertEquals(RECORD_SIZE, in.getInt());
+        final long startTime = in.getLong();
+        assertTrue(startTime >= start);
+        assertTrue(in.getLong() >= startTime);
+        assertEquals(1, in.getInt());
+        assertEquals(AggregateFileWriter.HEADER_SIZE, in.position());
+        assertEquals(write, in.getInt());
+        assertFalse(in.hasRemaining());
+    }
+}
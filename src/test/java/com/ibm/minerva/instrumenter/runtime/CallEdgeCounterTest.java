@@ -0,0 +1,160 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("CallEdgeCounter Test")
+public class CallEdgeCounterTest {
+    
+    @TempDir
+    File tempDir;
+    
+    @AfterEach
+    public void stop() {
+        CallEdgeCounter.stop();
+    }
+    
+    @Test
+    public void testNotCounting() {
+        assertFalse(CallEdgeCounter.isCounting());
+        assertNull(CallEdgeCounter.getFile());
+        // Calls before counting starts are ignored.
+        CallEdgeCounter.enter(1);
+        CallEdgeCounter.exit(1);
+        CallEdgeCounter.dump();
+        assertNull(CallEdgeCounter.snapshot());
+    }
+    
+    @Test
+    public void testEdges() throws IOException {
+        final File file = new File(tempDir, "edges.bin");
+        final long start = System.currentTimeMillis();
+        CallEdgeCounter.start(file, 3600000, null);
+        assertTrue(CallEdgeCounter.isCounting());
+        assertEquals(file, CallEdgeCounter.getFile());
+        for (int i = 0; i < 3; ++i) {
+            CallEdgeCounter.enter(1);
+            CallEdgeCounter.enter(2);
+            CallEdgeCounter.enter(3);
+            CallEdgeCounter.exit(3);
+            CallEdgeCounter.exit(2);
+            CallEdgeCounter.enter(3);
+            CallEdgeCounter.exit(3);
+            CallEdgeCounter.exit(1);
+        }
+        CallEdgeCounter.dump();
+        
+        final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        assertEquals(CallEdgeCounter.MAGIC, in.getInt());
+        assertEquals(CallEdgeCounter.VERSION, in.getInt());
+        assertEquals(CallEdgeCounter.RECORD_SIZE, in.getInt());
+        final long startTime = in.getLong();
+        assertTrue(startTime >= start);
+        assertTrue(in.getLong() >= startTime);
+        final int records = in.getInt();
+        assertEquals(in.position(), CallEdgeCounter.HEADER_SIZE);
+        assertEquals(records * CallEdgeCounter.RECORD_SIZE, in.remaining());
+        final Map<String,Long> edges = new HashMap<>();
+        for (int i = 0; i < records; ++i) {
+            edges.put(in.getInt() + "->" + in.getInt(), in.getLong());
+        }
+        final Map<String,Long> expected = new HashMap<>();
+        expected.put(CallEdgeCounter.ROOT + "->1", 3L);
+        expected.put("1->2", 3L);
+        expected.put("2->3", 3L);
+        expected.put("1->3", 3L);
+        assertEquals(expected, edges);
+    }
+    
+    @Test
+    public void testUnbalanced() throws IOException {
+        CallEdgeCounter.start(new File(tempDir, "edges.bin"), 3600000, null);
+        // The exit of a method which was entered before counting started.
+        CallEdgeCounter.exit(5);
+        CallEdgeCounter.enter(1);
+        CallEdgeCounter.enter(2);
+        // The exit of 2 was not counted (e.g. its probes were removed while it ran).
+        CallEdgeCounter.exit(1);
+        CallEdgeCounter.enter(3);
+        CallEdgeCounter.exit(3);
+        // Recursion.
+        CallEdgeCounter.enter(4);
+        CallEdgeCounter.enter(4);
+        CallEdgeCounter.exit(4);
+        CallEdgeCounter.enter(5);
+        CallEdgeCounter.exit(5);
+        CallEdgeCounter.exit(4);
+        final CallEdgeTable.Snapshot snapshot = CallEdgeCounter.snapshot();
+        assertEquals(1, snapshot.getCount(1, 2));
+        assertEquals(1, snapshot.getCount(CallEdgeCounter.ROOT, 3));
+        assertEquals(1, snapshot.getCount(CallEdgeCounter.ROOT, 4));
+        assertEquals(1, snapshot.getCount(4, 4));
+        assertEquals(1, snapshot.getCount(4, 5));
+        assertEquals(6, snapshot.size());
+    }
+    
+    @Test
+    public void testThreads() throws IOException, InterruptedException {
+        CallEdgeCounter.start(new File(tempDir, "edges.bin"), 3600000, null);
+        final Thread t = new Thread(() -> {
+            CallEdgeCounter.enter(1);
+            CallEdgeCounter.enter(2);
+            CallEdgeCounter.exit(2);
+        });
+        t.start();
+        t.join();
+        // Each thread has its own stack.
+        CallEdgeCounter.enter(2);
+        CallEdgeCounter.exit(2);
+        final CallEdgeTable.Snapshot snapshot = CallEdgeCounter.snapshot();
+        assertEquals(1, snapshot.getCount(1, 2));
+        assertEquals(1, snapshot.getCount(CallEdgeCounter.ROOT, 2));
+    }
+    
+    @Test
+    public void testRestart() throws IOException {
+        final File first = new File(tempDir, "first.bin");
+        final File second = new File(tempDir, "second.bin");
+        CallEdgeCounter.start(first, 3600000, null);
+        CallEdgeCounter.enter(1);
+        // Starting again writes the first counts.
+        CallEdgeCounter.start(second, 3600000, null);
+        assertEquals(second, CallEdgeCounter.getFile());
+        CallEdgeCounter.enter(2);
+        CallEdgeCounter.enter(3);
+        CallEdgeCounter.stop();
+        assertEquals(CallEdgeCounter.HEADER_SIZE + CallEdgeCounter.RECORD_SIZE, first.length());
+        assertEquals(CallEdgeCounter.HEADER_SIZE + 2 * CallEdgeCounter.RECORD_SIZE, second.length());
+    }
+}
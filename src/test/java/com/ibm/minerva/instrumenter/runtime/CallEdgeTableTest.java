@@ -0,0 +1,103 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("CallEdgeTable Test")
+public class CallEdgeTableTest {
+    
+    @Test
+    public void testIncrement() {
+        final CallEdgeTable table = new CallEdgeTable(1);
+        table.increment(0, CallEdgeTable.ROOT, 0);
+        table.increment(0, 0, 1);
+        table.increment(0, 0, 1);
+        table.increment(0, 1, 0);
+        final CallEdgeTable.Snapshot snapshot = table.snapshot();
+        assertEquals(3, snapshot.size());
+        assertEquals(1, snapshot.getCount(CallEdgeTable.ROOT, 0));
+        assertEquals(2, snapshot.getCount(0, 1));
+        assertEquals(1, snapshot.getCount(1, 0));
+        assertEquals(0, snapshot.getCount(1, 1));
+    }
+    
+    @Test
+    public void testKeys() {
+        // The caller and callee are kept apart, also for ids using the sign bit.
+        final CallEdgeTable table = new CallEdgeTable(1);
+        table.increment(0, Integer.MAX_VALUE, 0);
+        table.increment(0, 0, Integer.MAX_VALUE);
+        table.increment(0, CallEdgeTable.ROOT, Integer.MAX_VALUE);
+        final CallEdgeTable.Snapshot snapshot = table.snapshot();
+        assertEquals(3, snapshot.size());
+        for (int i = 0; i < snapshot.size(); ++i) {
+            assertEquals(1, snapshot.getCount(i));
+        }
+        assertEquals(1, snapshot.getCount(CallEdgeTable.ROOT, Integer.MAX_VALUE));
+    }
+    
+    @Test
+    public void testGrow() {
+        final CallEdgeTable table = new CallEdgeTable(1);
+        for (int i = 0; i < 10000; ++i) {
+            table.increment(0, i % 100, i);
+            table.increment(0, i % 100, i);
+        }
+        final CallEdgeTable.Snapshot snapshot = table.snapshot();
+        assertEquals(10000, snapshot.size());
+        for (int i = 0; i < snapshot.size(); ++i) {
+            assertEquals(snapshot.getCaller(i), snapshot.getCallee(i) % 100);
+            assertEquals(2, snapshot.getCount(i));
+        }
+    }
+    
+    @Test
+    public void testStripes() throws InterruptedException {
+        final CallEdgeTable table = new CallEdgeTable(3);
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            threads.add(new Thread(() -> {
+                final int stripe = table.assignStripe();
+                for (int i = 0; i < 100000; ++i) {
+                    table.increment(stripe, i % 10, 10 + i % 7);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        // The counts of all stripes are added up.
+        final CallEdgeTable.Snapshot snapshot = table.snapshot();
+        assertEquals(70, snapshot.size());
+        long total = 0;
+        for (int i = 0; i < snapshot.size(); ++i) {
+            total += snapshot.getCount(i);
+        }
+        assertEquals(800000, total);
+    }
+}
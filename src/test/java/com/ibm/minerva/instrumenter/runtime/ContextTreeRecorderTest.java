@@ -0,0 +1,144 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("ContextTreeRecorder Test")
+public class ContextTreeRecorderTest {
+    
+    @TempDir
+    File tempDir;
+    
+    @AfterEach
+    public void stop() {
+        ContextTreeRecorder.stop();
+    }
+    
+    @Test
+    public void testTree() throws IOException {
+        final File file = new File(tempDir, "tree.bin");
+        final long start = System.currentTimeMillis();
+        ContextTreeRecorder.start(file, 100, 3600000, null);
+        assertTrue(ContextTreeRecorder.isRecording());
+        assertEquals(file, ContextTreeRecorder.getFile());
+        for (int i = 0; i < 3; ++i) {
+            ContextTreeRecorder.enter(1);
+            ContextTreeRecorder.enter(2);
+            LockSupport.parkNanos(1000000);
+            ContextTreeRecorder.exit(2);
+            ContextTreeRecorder.enter(3);
+            ContextTreeRecorder.enter(2);
+            ContextTreeRecorder.exit(2);
+            ContextTreeRecorder.exit(3);
+            ContextTreeRecorder.exit(1);
+        }
+        ContextTreeRecorder.flush();
+        
+        final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        assertEquals(ContextTreeRecorder.MAGIC, in.getInt());
+        assertEquals(ContextTreeRecorder.VERSION, in.getInt());
+        assertEquals(ContextTreeRecorder.RECORD_SIZE, in.getInt());
+        final long startTime = in.getLong();
+        assertTrue(startTime >= start);
+        assertTrue(in.getLong() >= startTime);
+        final int records = in.getInt();
+        assertEquals(in.position(), ContextTreeRecorder.HEADER_SIZE);
+        assertEquals(4, records);
+        assertEquals(records * ContextTreeRecorder.RECORD_SIZE, in.remaining());
+        // 1, 1 > 2, 1 > 3 and 1 > 3 > 2, each called 3 times.
+        final int[] parents = new int[records];
+        final int[] methodIds = new int[records];
+        final long[] times = new long[records];
+        for (int i = 0; i < records; ++i) {
+            parents[i] = in.getInt();
+            methodIds[i] = in.getInt();
+            assertEquals(3, in.getLong());
+            times[i] = in.getLong();
+            assertTrue(parents[i] < i);
+        }
+        assertEquals(-1, parents[0]);
+        assertEquals(1, methodIds[0]);
+        assertEquals(0, parents[1]);
+        assertEquals(2, methodIds[1]);
+        assertEquals(0, parents[2]);
+        assertEquals(3, methodIds[2]);
+        assertEquals(2, parents[3]);
+        assertEquals(2, methodIds[3]);
+        // The time is inclusive of the methods called.
+        assertTrue(times[1] >= 3000000);
+        assertTrue(times[0] >= times[1] + times[2]);
+        assertTrue(times[2] >= times[3]);
+    }
+    
+    @Test
+    public void testOverflow() throws IOException {
+        ContextTreeRecorder.start(new File(tempDir, "tree.bin"), 2, 3600000, null);
+        ContextTreeRecorder.enter(1);
+        ContextTreeRecorder.enter(2);
+        ContextTreeRecorder.enter(3);
+        LockSupport.parkNanos(1000000);
+        ContextTreeRecorder.exit(3);
+        ContextTreeRecorder.exit(2);
+        ContextTreeRecorder.enter(4);
+        ContextTreeRecorder.exit(4);
+        ContextTreeRecorder.exit(1);
+        final ContextTree tree = ContextTreeRecorder.snapshot();
+        assertEquals(3, tree.size());
+        final int overflow = tree.child(ContextTree.ROOT_NODE, ContextTree.OVERFLOW);
+        assertEquals(3, tree.getCount(overflow));
+        // The time of the call of 3 collapsed below 2 is only counted once.
+        assertTrue(tree.getTime(overflow) >= 1000000);
+        assertTrue(tree.getTime(overflow) <= tree.getTime(tree.find(1)));
+    }
+    
+    @Test
+    public void testThreads() throws IOException, InterruptedException {
+        ContextTreeRecorder.start(new File(tempDir, "tree.bin"), 100, 3600000, null);
+        final Thread t = new Thread(() -> {
+            ContextTreeRecorder.enter(1);
+            ContextTreeRecorder.enter(2);
+            ContextTreeRecorder.exit(2);
+            ContextTreeRecorder.exit(1);
+        });
+        t.start();
+        t.join();
+        ContextTreeRecorder.enter(1);
+        ContextTreeRecorder.enter(2);
+        ContextTreeRecorder.exit(2);
+        ContextTreeRecorder.exit(1);
+        // The trees of all threads are merged, also those which have ended.
+        ContextTree tree = ContextTreeRecorder.snapshot();
+        assertEquals(2, tree.getCount(tree.find(1, 2)));
+        tree = ContextTreeRecorder.snapshot();
+        assertEquals(2, tree.getCount(tree.find(1, 2)));
+        assertEquals(3, tree.size());
+    }
+}
@@ -0,0 +1,136 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("ContextTree Test")
+public class ContextTreeTest {
+    
+    @Test
+    public void testChild() {
+        final ContextTree tree = new ContextTree(100);
+        assertEquals(1, tree.size());
+        assertEquals(ContextTree.ROOT, tree.getMethodId(ContextTree.ROOT_NODE));
+        final int a = tree.child(ContextTree.ROOT_NODE, 1);
+        final int ab = tree.child(a, 2);
+        final int b = tree.child(ContextTree.ROOT_NODE, 2);
+        // The same method has a node per context.
+        assertNotEquals(ab, b);
+        assertEquals(a, tree.child(ContextTree.ROOT_NODE, 1));
+        assertEquals(ab, tree.child(a, 2));
+        assertEquals(4, tree.size());
+        assertEquals(a, tree.getParent(ab));
+        assertEquals(2, tree.getMethodId(ab));
+        assertEquals(ab, tree.find(1, 2));
+        assertEquals(-1, tree.find(2, 1));
+    }
+    
+    @Test
+    public void testGrow() {
+        final ContextTree tree = new ContextTree(100000);
+        int node = ContextTree.ROOT_NODE;
+        for (int i = 0; i < 10000; ++i) {
+            node = tree.child(node, i % 10);
+            tree.addCall(node);
+        }
+        assertEquals(10001, tree.size());
+        for (int i = 1; i < tree.size(); ++i) {
+            assertEquals(i - 1, tree.getParent(i));
+            assertEquals(1, tree.getCount(i));
+        }
+        assertEquals(10, tree.find(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+    }
+    
+    @Test
+    public void testOverflow() {
+        final ContextTree tree = new ContextTree(3);
+        final int a = tree.child(ContextTree.ROOT_NODE, 1);
+        final int ab = tree.child(a, 2);
+        assertEquals(3, tree.size());
+        // New contexts are collapsed into the overflow node, as are the calls they make.
+        final int overflow = tree.child(a, 3);
+        assertTrue(tree.isOverflow(overflow));
+        assertEquals(ContextTree.OVERFLOW, tree.getMethodId(overflow));
+        assertEquals(ContextTree.ROOT_NODE, tree.getParent(overflow));
+        assertEquals(overflow, tree.child(ab, 4));
+        assertEquals(overflow, tree.child(overflow, 1));
+        assertEquals(4, tree.size());
+        // Existing contexts are still found.
+        assertEquals(ab, tree.child(a, 2));
+        assertFalse(tree.isOverflow(ab));
+    }
+    
+    @Test
+    public void testMerge() {
+        final ContextTree first = new ContextTree(100);
+        final int a = first.child(ContextTree.ROOT_NODE, 1);
+        first.addCall(a);
+        first.addTime(a, 100);
+        final int ab = first.child(a, 2);
+        first.addCall(ab);
+        first.addCall(ab);
+        first.addTime(ab, 50);
+        
+        final ContextTree second = new ContextTree(100);
+        final int c = second.child(ContextTree.ROOT_NODE, 3);
+        second.addCall(c);
+        final int ca = second.child(c, 1);
+        second.addCall(ca);
+        final int a2 = second.child(ContextTree.ROOT_NODE, 1);
+        second.addCall(a2);
+        second.addTime(a2, 10);
+        
+        final ContextTree global = new ContextTree(100);
+        global.merge(first);
+        global.merge(second);
+        global.merge(first);
+        assertEquals(5, global.size());
+        assertEquals(3, global.getCount(global.find(1)));
+        assertEquals(210, global.getTime(global.find(1)));
+        assertEquals(4, global.getCount(global.find(1, 2)));
+        assertEquals(100, global.getTime(global.find(1, 2)));
+        assertEquals(1, global.getCount(global.find(3)));
+        assertEquals(1, global.getCount(global.find(3, 1)));
+    }
+    
+    @Test
+    public void testMergeOverflow() {
+        final ContextTree source = new ContextTree(100);
+        int node = ContextTree.ROOT_NODE;
+        for (int i = 0; i < 10; ++i) {
+            node = source.child(node, i);
+            source.addCall(node);
+        }
+        final ContextTree global = new ContextTree(5);
+        global.merge(source);
+        global.merge(source);
+        // The global tree is bounded too, the deepest calls are collapsed.
+        assertEquals(6, global.size());
+        final int overflow = global.child(ContextTree.ROOT_NODE, ContextTree.OVERFLOW);
+        assertTrue(global.isOverflow(overflow));
+        assertEquals(12, global.getCount(overflow));
+        assertEquals(2, global.getCount(global.find(0, 1, 2, 3)));
+    }
+}
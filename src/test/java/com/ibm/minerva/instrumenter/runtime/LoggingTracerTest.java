@@ -0,0 +1,166 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+@DisplayName("LoggingTracer Test")
+public class LoggingTracerTest {
+    
+    private static final String CLASS_NAME = "example.LoggingTracerExample";
+    
+    @Test
+    public void testGetLogger() {
+        final Logger logger = LoggingTracer.getLogger(LoggingTracerTest.class, CLASS_NAME);
+        assertEquals(CLASS_NAME, logger.getName());
+        assertSame(logger, LoggingTracer.getLogger(LoggingTracerTest.class, CLASS_NAME));
+        // A class traced under another name gets that name's Logger.
+        assertEquals(CLASS_NAME + ".Other", LoggingTracer.getLogger(LoggingTracerTest.class, CLASS_NAME + ".Other").getName());
+    }
+    
+    @Test
+    public void testSameClassNameInTwoLoaders() throws Exception {
+        final Class<?> first = defineClass(CLASS_NAME);
+        final Class<?> second = defineClass(CLASS_NAME);
+        assertNotSame(first, second);
+        final Logger logger = Logger.getLogger(CLASS_NAME);
+        final List<LogRecord> records = new ArrayList<>();
+        final Handler handler = createHandler(records);
+        logger.addHandler(handler);
+        logger.setLevel(Level.FINER);
+        try {
+            LoggingTracer.entering(first, CLASS_NAME, "run");
+            LoggingTracer.entering(second, CLASS_NAME, "run");
+            LoggingTracer.exiting(second, CLASS_NAME, "run");
+            LoggingTracer.exiting(first, CLASS_NAME, "run");
+        }
+        finally {
+            logger.removeHandler(handler);
+            logger.setLevel(null);
+        }
+        assertEquals(4, records.size());
+        assertSame(logger, LoggingTracer.getLogger(first, CLASS_NAME));
+        assertSame(logger, LoggingTracer.getLogger(second, CLASS_NAME));
+        
+        // The Logger kept for a class does not keep its class loader.
+        final WeakReference<ClassLoader> loader = new WeakReference<>(defineAndTraceClass(CLASS_NAME));
+        for (int i = 0; i < 50 && loader.get() != null; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(loader.get());
+    }
+    
+    @Test
+    public void testEnteringExitingThrowing() {
+        final Logger logger = LoggingTracer.getLogger(LoggingTracerTest.class, CLASS_NAME);
+        final List<LogRecord> records = new ArrayList<>();
+        final Handler handler = createHandler(records);
+        logger.addHandler(handler);
+        try {
+            // Nothing is logged unless FINER is enabled.
+            logger.setLevel(Level.INFO);
+            LoggingTracer.entering(LoggingTracerTest.class, CLASS_NAME, "run");
+            LoggingTracer.entering(CLASS_NAME, "run");
+            assertTrue(records.isEmpty());
+            
+            logger.setLevel(Level.FINER);
+            LoggingTracer.entering(LoggingTracerTest.class, CLASS_NAME, "run");
+            LoggingTracer.exiting(LoggingTracerTest.class, CLASS_NAME, "run");
+            LoggingTracer.throwing(LoggingTracerTest.class, CLASS_NAME, "run");
+            // Without the class, e.g. from the handlers of the minimal probes.
+            LoggingTracer.entering(CLASS_NAME, "run");
+            LoggingTracer.exiting(CLASS_NAME, "run");
+            LoggingTracer.throwing(CLASS_NAME, "run");
+            assertEquals(6, records.size());
+            final String threadId = String.valueOf(Thread.currentThread().getId());
+            // Same records as Logger.entering/exiting with the thread id as the parameter.
+            for (int i = 0; i < 6; i += 3) {
+                assertRecord(records.get(i), "ENTRY {0}", threadId);
+                assertRecord(records.get(i + 1), "RETURN {0}", threadId);
+                assertRecord(records.get(i + 2), "THROW {0}", threadId);
+            }
+        }
+        finally {
+            logger.removeHandler(handler);
+            logger.setLevel(null);
+        }
+    }
+    
+    private static void assertRecord(LogRecord record, String message, String threadId) {
+        assertEquals(Level.FINER, record.getLevel());
+        assertEquals(CLASS_NAME, record.getSourceClassName());
+        assertEquals("run", record.getSourceMethodName());
+        assertEquals(message, record.getMessage());
+        assertEquals(threadId, record.getParameters()[0]);
+    }
+    
+    private static Handler createHandler(List<LogRecord> records) {
+        final Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+            @Override
+            public void flush() {}
+            @Override
+            public void close() {}
+        };
+        handler.setLevel(Level.ALL);
+        return handler;
+    }
+    
+    private static ClassLoader defineAndTraceClass(String className) throws Exception {
+        final Class<?> c = defineClass(className);
+        LoggingTracer.entering(c, className, "run");
+        return c.getClassLoader();
+    }
+    
+    private static Class<?> defineClass(String className) throws Exception {
+        final CtClass ctClass = new ClassPool(true).makeClass(className);
+        final byte[] b = ctClass.toBytecode();
+        return new ClassLoader(LoggingTracerTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                if (name.equals(className)) {
+                    return defineClass(name, b, 0, b.length);
+                }
+                throw new ClassNotFoundException(name);
+            }
+        }.loadClass(className);
+    }
+}
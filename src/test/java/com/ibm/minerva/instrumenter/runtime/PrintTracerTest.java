@@ -0,0 +1,151 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+@DisplayName("PrintTracer Test")
+public class PrintTracerTest {
+    
+    private static final String PREFIX = "|v9.0.0r77|";
+    private static final String SUFFIX = "],Entering project/src/main/java/example/Caf\u00e9.java::example.Caf\u00e9::order(int)|";
+    private static final Pattern LINE = Pattern.compile("\\|v9\\.0\\.0r77\\|(\\d+),\\[(\\d+)\\],(Entering|Exiting) [^|]*::order\\((\\w+)\\)\\|");
+    
+    @AfterEach
+    public void tearDown() {
+        PrintTracer.configure(PrintTracer.DEFAULT_BUFFER_SIZE, PrintTracer.DEFAULT_FLUSH_INTERVAL);
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"UTF-8", "ISO-8859-1", "UTF-16"})
+    public void testSameAsPrintln(String charset) throws UnsupportedEncodingException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PrintStream saved = System.out;
+        System.setOut(new PrintStream(out, true, charset));
+        try {
+            PrintTracer.out(PREFIX + SUFFIX, PREFIX.length());
+            PrintTracer.out(PREFIX + SUFFIX.replace("Entering", "Exiting"), PREFIX.length());
+            PrintTracer.flush();
+        }
+        finally {
+            System.setOut(saved);
+        }
+        final String[] lines = new String(out.toByteArray(), charset).split(System.lineSeparator());
+        assertEquals(2, lines.length);
+        final Matcher m = LINE.matcher(lines[0]);
+        assertTrue(m.matches(), lines[0]);
+        final String millis = m.group(1);
+        final String threadId = m.group(2);
+        assertEquals(String.valueOf(Thread.currentThread().getId()), threadId);
+        final Matcher m2 = LINE.matcher(lines[1]);
+        assertTrue(m2.matches(), lines[1]);
+        
+        // The bytes println writes for the same lines.
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final PrintStream ps = new PrintStream(expected, true, charset);
+        ps.println(PREFIX + millis + ",[" + threadId + SUFFIX);
+        ps.println(PREFIX + m2.group(1) + ",[" + threadId + SUFFIX.replace("Entering", "Exiting"));
+        assertArrayEquals(expected.toByteArray(), out.toByteArray());
+    }
+    
+    @Test
+    public void testErr() throws UnsupportedEncodingException {
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final PrintStream saved = System.err;
+        System.setErr(new PrintStream(err, true, "UTF-8"));
+        try {
+            PrintTracer.err(PREFIX + SUFFIX, PREFIX.length());
+            PrintTracer.flush();
+        }
+        finally {
+            System.setErr(saved);
+        }
+        final String s = new String(err.toByteArray(), "UTF-8");
+        assertTrue(s.endsWith(SUFFIX + System.lineSeparator()), s);
+    }
+    
+    @Test
+    public void testBatches() throws InterruptedException {
+        // Small enough that the buffer is printed several times, and smaller than the last line.
+        PrintTracer.configure(256, PrintTracer.DEFAULT_FLUSH_INTERVAL);
+        final int count = 20;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PrintStream saved = System.out;
+        System.setOut(new PrintStream(out, true));
+        try {
+            final List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 4; ++i) {
+                // New threads, so that their buffers have the configured size.
+                final Thread t = new Thread(() -> {
+                    for (int j = 0; j < count; ++j) {
+                        PrintTracer.out(PREFIX + SUFFIX.replace("order(int)", "order(" + j + ")"), PREFIX.length());
+                    }
+                    final StringBuilder sb = new StringBuilder();
+                    while (sb.length() < 256) {
+                        sb.append("::example.Caf\u00e9");
+                    }
+                    PrintTracer.out(PREFIX + "],Exiting " + sb + "::order(" + count + ")|", PREFIX.length());
+                });
+                threads.add(t);
+                t.start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            PrintTracer.flush();
+        }
+        finally {
+            System.setOut(saved);
+        }
+        final String[] lines = new String(out.toByteArray()).split(System.lineSeparator());
+        assertEquals(4 * (count + 1), lines.length);
+        // Each thread's lines are printed in order.
+        final List<String> threadIds = new ArrayList<>();
+        final List<Integer> next = new ArrayList<>();
+        for (String line : lines) {
+            final Matcher m = LINE.matcher(line);
+            assertTrue(m.matches(), line);
+            int i = threadIds.indexOf(m.group(2));
+            if (i < 0) {
+                threadIds.add(m.group(2));
+                next.add(0);
+                i = threadIds.size() - 1;
+            }
+            assertEquals(next.get(i).intValue(), Integer.parseInt(m.group(4)));
+            next.set(i, next.get(i) + 1);
+        }
+        assertEquals(4, threadIds.size());
+    }
+}
@@ -0,0 +1,94 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("ProbeSwitch Test")
+public class ProbeSwitchTest {
+    
+    private static final MethodType GUARD_TYPE = MethodType.methodType(boolean.class);
+    
+    @AfterEach
+    public void tearDown() {
+        ProbeSwitch.set(false);
+    }
+    
+    @Test
+    public void testSet() {
+        ProbeSwitch.set(false);
+        final long turns = ProbeSwitch.getTurns();
+        assertFalse(ProbeSwitch.set(true));
+        assertTrue(ProbeSwitch.isOn());
+        // Setting the same state does not turn the switch.
+        assertTrue(ProbeSwitch.set(true));
+        assertEquals(turns + 1, ProbeSwitch.getTurns());
+        assertTrue(ProbeSwitch.set(false));
+        assertFalse(ProbeSwitch.isOn());
+        assertEquals(turns + 2, ProbeSwitch.getTurns());
+    }
+    
+    @Test
+    public void testCallSite() throws Throwable {
+        ProbeSwitch.set(false);
+        final CallSite site = ProbeSwitch.bootstrap(MethodHandles.lookup(), "isOn", GUARD_TYPE);
+        final MethodHandle guard = site.dynamicInvoker();
+        assertEquals(GUARD_TYPE, guard.type());
+        for (int i = 0; i < 10000; ++i) {
+            assertFalse((boolean) guard.invokeExact());
+        }
+        // The site is linked to the new state on its next call.
+        ProbeSwitch.set(true);
+        for (int i = 0; i < 10000; ++i) {
+            assertTrue((boolean) guard.invokeExact());
+        }
+        final MethodHandle target = site.getTarget();
+        assertTrue((boolean) guard.invokeExact());
+        assertEquals(target, site.getTarget());
+        ProbeSwitch.set(false);
+        assertFalse((boolean) guard.invokeExact());
+        ProbeSwitch.set(true);
+        ProbeSwitch.set(false);
+        assertFalse((boolean) guard.invokeExact());
+        
+        // Sites bound while the switch is on start on.
+        ProbeSwitch.set(true);
+        assertTrue((boolean) ProbeSwitch.bootstrap(MethodHandles.lookup(), "guard", GUARD_TYPE).dynamicInvoker().invokeExact());
+    }
+    
+    @Test
+    public void testBootstrapType() {
+        assertThrows(IllegalArgumentException.class, 
+                () -> ProbeSwitch.bootstrap(MethodHandles.lookup(), "isOn", MethodType.methodType(boolean.class, int.class)));
+        assertThrows(IllegalArgumentException.class, 
+                () -> ProbeSwitch.bootstrap(MethodHandles.lookup(), "isOn", MethodType.methodType(void.class)));
+    }
+}
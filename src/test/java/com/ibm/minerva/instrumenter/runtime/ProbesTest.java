@@ -0,0 +1,64 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Probes Test")
+public class ProbesTest {
+    
+    @AfterEach
+    public void clear() {
+        Probes.setHandlers(null, null, null);
+    }
+    
+    @Test
+    public void testHandlers() {
+        final List<String> events = new ArrayList<>();
+        Probes.setHandlers(id -> events.add("enter " + id), id -> events.add("exit " + id), id -> events.add("exception " + id));
+        Probes.enter(1);
+        Probes.enter(2);
+        Probes.exception(2);
+        Probes.exit(1);
+        assertEquals(4, events.size());
+        assertEquals("enter 1", events.get(0));
+        assertEquals("enter 2", events.get(1));
+        assertEquals("exception 2", events.get(2));
+        assertEquals("exit 1", events.get(3));
+    }
+    
+    @Test
+    public void testNoHandlers() {
+        final List<String> events = new ArrayList<>();
+        // Calls without a handler are ignored.
+        Probes.enter(1);
+        Probes.setHandlers(id -> events.add("enter " + id), null, null);
+        Probes.enter(2);
+        Probes.exit(2);
+        Probes.exception(2);
+        assertEquals(1, events.size());
+        assertEquals("enter 2", events.get(0));
+    }
+}
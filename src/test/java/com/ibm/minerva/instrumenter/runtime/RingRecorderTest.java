@@ -0,0 +1,205 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("RingRecorder Test")
+public class RingRecorderTest {
+    
+    @TempDir
+    File tempDir;
+    
+    @AfterEach
+    public void stop() {
+        RingRecorder.stop();
+    }
+    
+    @Test
+    public void testNotRecording() {
+        assertFalse(RingRecorder.isRecording());
+        assertNull(RingRecorder.getFile());
+        // Events are ignored until recording starts.
+        RingRecorder.enter(1);
+        RingRecorder.exit(1);
+        RingRecorder.flush();
+    }
+    
+    @Test
+    public void testRecordThreads() throws Exception {
+        final File file = new File(tempDir, "trace.bin");
+        final long start = System.currentTimeMillis();
+        RingRecorder.start(file, 64, 1, null);
+        assertTrue(RingRecorder.isRecording());
+        assertEquals(file, RingRecorder.getFile());
+        final int threads = 4;
+        final int calls = 1000;
+        final Thread[] t = new Thread[threads];
+        for (int i = 0; i < threads; ++i) {
+            final int methodId = i;
+            t[i] = new Thread(() -> {
+                for (int j = 0; j < calls; ++j) {
+                    RingRecorder.enter(methodId);
+                    RingRecorder.exit(methodId);
+                    if ((j & 15) == 15) {
+                        // Gives the writer a chance to keep up.
+                        Thread.yield();
+                    }
+                }
+            });
+            t[i].start();
+        }
+        for (Thread thread : t) {
+            thread.join();
+        }
+        RingRecorder.stop();
+        assertFalse(RingRecorder.isRecording());
+        
+        final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        assertEquals(RingRecorder.MAGIC, in.getInt());
+        assertEquals(RingRecorder.VERSION, in.getInt());
+        assertEquals(RingRecorder.RECORD_SIZE, in.getInt());
+        final long startMillis = in.getLong();
+        assertTrue(startMillis >= start && startMillis <= System.currentTimeMillis());
+        in.getLong();
+        assertEquals(0, in.remaining() % RingRecorder.RECORD_SIZE);
+        
+        // Per thread the events are in order and alternate between entry and exit,
+        // except where records were dropped.
+        final Map<Long,List<long[]>> byThread = new HashMap<>();
+        while (in.hasRemaining()) {
+            final long[] r = {in.getLong(), in.getLong(), in.getInt(), in.getInt()};
+            byThread.computeIfAbsent(r[1], k -> new ArrayList<>()).add(r);
+        }
+        assertEquals(threads, byThread.size());
+        for (List<long[]> records : byThread.values()) {
+            long recorded = 0;
+            long dropped = 0;
+            long lastTime = Long.MIN_VALUE;
+            final long methodId = records.get(0)[2];
+            for (long[] r : records) {
+                if (r[3] == RingRecorder.DROPPED) {
+                    dropped += r[2];
+                }
+                else {
+                    assertTrue(r[0] >= lastTime);
+                    lastTime = r[0];
+                    assertEquals(methodId, r[2]);
+                    ++recorded;
+                }
+            }
+            assertEquals(2 * calls, recorded + dropped);
+        }
+    }
+    
+    @Test
+    public void testDropped() throws IOException {
+        final File file = new File(tempDir, "trace.bin");
+        // The writer does not drain the buffer before it is flushed.
+        RingRecorder.start(file, 4, 3600000, null);
+        for (int i = 0; i < 10; ++i) {
+            RingRecorder.enter(i);
+        }
+        RingRecorder.flush();
+        RingRecorder.exit(10);
+        RingRecorder.stop();
+        
+        final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        in.position(RingRecorder.HEADER_SIZE);
+        assertEquals(6 * RingRecorder.RECORD_SIZE, in.remaining());
+        final long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 4; ++i) {
+            assertRecord(in, threadId, i, RingRecorder.ENTRY);
+        }
+        assertRecord(in, threadId, 6, RingRecorder.DROPPED);
+        assertRecord(in, threadId, 10, RingRecorder.EXIT);
+    }
+    
+    @Test
+    public void testThrottled() throws IOException {
+        final File file = new File(tempDir, "trace.bin");
+        RingRecorder.start(file, 16, 3600000, null);
+        RingRecorder.enter(1);
+        RingRecorder.throttled(1);
+        RingRecorder.stop();
+        
+        final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        in.position(RingRecorder.HEADER_SIZE);
+        final long threadId = Thread.currentThread().getId();
+        assertRecord(in, threadId, 1, RingRecorder.ENTRY);
+        assertRecord(in, threadId, 1, RingRecorder.THROTTLED);
+        assertEquals(0, in.remaining());
+    }
+    
+    @Test
+    public void testException() throws IOException {
+        final File file = new File(tempDir, "trace.bin");
+        RingRecorder.start(file, 16, 3600000, null);
+        RingRecorder.enter(1);
+        RingRecorder.exception(1);
+        RingRecorder.stop();
+        
+        final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        in.position(RingRecorder.HEADER_SIZE);
+        final long threadId = Thread.currentThread().getId();
+        assertRecord(in, threadId, 1, RingRecorder.ENTRY);
+        assertRecord(in, threadId, 1, RingRecorder.EXCEPTION);
+        assertEquals(0, in.remaining());
+    }
+    
+    @Test
+    public void testRestart() throws IOException {
+        final File first = new File(tempDir, "first.bin");
+        final File second = new File(tempDir, "second.bin");
+        RingRecorder.start(first, 16, 3600000, null);
+        RingRecorder.enter(1);
+        // Starting again completes the first recording.
+        RingRecorder.start(second, 16, 3600000, null);
+        assertEquals(second, RingRecorder.getFile());
+        RingRecorder.enter(2);
+        RingRecorder.exit(2);
+        RingRecorder.stop();
+        assertEquals(RingRecorder.HEADER_SIZE + RingRecorder.RECORD_SIZE, first.length());
+        assertEquals(RingRecorder.HEADER_SIZE + 2 * RingRecorder.RECORD_SIZE, second.length());
+    }
+    
+    private static void assertRecord(ByteBuffer in, long threadId, int methodId, int event) {
+        in.getLong();
+        assertEquals(threadId, in.getLong());
+        assertEquals(methodId, in.getInt());
+        assertEquals(event, in.getInt());
+    }
+}
@@ -0,0 +1,65 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Sampler Test")
+public class SamplerTest {
+    
+    @Test
+    public void testEvery() {
+        // Each method is counted separately, starting with its first call.
+        // The counters are shared with other tests, so these ids are not used elsewhere.
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(Sampler.every(50001, 3));
+            assertTrue(Sampler.every(50002, 3));
+            assertFalse(Sampler.every(50001, 3));
+            assertFalse(Sampler.every(50002, 3));
+            assertFalse(Sampler.every(50001, 3));
+            assertFalse(Sampler.every(50002, 3));
+        }
+    }
+    
+    @Test
+    public void testEveryGrows() {
+        final int methodId = 100000;
+        assertTrue(Sampler.every(methodId, 2));
+        assertFalse(Sampler.every(methodId, 2));
+        assertTrue(Sampler.every(methodId, 2));
+    }
+    
+    @Test
+    public void testRate() {
+        int sampled = 0;
+        for (int i = 0; i < 100000; ++i) {
+            if (Sampler.rate(1 << 29)) {
+                ++sampled;
+            }
+            assertFalse(Sampler.rate(0));
+            assertTrue(Sampler.rate(Integer.MAX_VALUE) || Sampler.rate(Integer.MAX_VALUE));
+        }
+        // About a quarter of the calls.
+        assertTrue(sampled > 23000 && sampled < 27000, String.valueOf(sampled));
+    }
+}
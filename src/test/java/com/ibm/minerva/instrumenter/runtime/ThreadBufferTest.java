@@ -0,0 +1,100 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+@DisplayName("ThreadBuffer Test")
+public class ThreadBufferTest {
+    
+    @ParameterizedTest
+    @CsvSource({"0,1", "1,1", "3,4", "4,4", "4097,8192"})
+    public void testCapacity(int requested, int capacity) {
+        assertEquals(capacity, new ThreadBuffer(Thread.currentThread(), requested).getCapacity());
+    }
+    
+    @Test
+    public void testAddAndDrain() throws IOException {
+        final ThreadBuffer b = new ThreadBuffer(Thread.currentThread(), 4);
+        assertTrue(b.isEmpty());
+        assertTrue(b.add(100, 7, RingRecorder.ENTRY));
+        assertTrue(b.add(200, 7, RingRecorder.EXIT));
+        assertFalse(b.isEmpty());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final WritableByteChannel channel = Channels.newChannel(bytes);
+        final ByteBuffer out = ByteBuffer.allocate(RingRecorder.RECORD_SIZE);
+        // The output buffer only has room for one record so it is written in between.
+        assertEquals(2, b.drain(out, channel));
+        RingRecorder.write(out, channel);
+        assertTrue(b.isEmpty());
+        final ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(2 * RingRecorder.RECORD_SIZE, in.remaining());
+        assertRecord(in, 100, b.getThreadId(), 7, RingRecorder.ENTRY);
+        assertRecord(in, 200, b.getThreadId(), 7, RingRecorder.EXIT);
+    }
+    
+    @Test
+    public void testDropWhenFull() throws IOException {
+        final ThreadBuffer b = new ThreadBuffer(Thread.currentThread(), 2);
+        assertTrue(b.add(1, 1, RingRecorder.ENTRY));
+        assertTrue(b.add(2, 2, RingRecorder.ENTRY));
+        assertFalse(b.add(3, 3, RingRecorder.ENTRY));
+        assertFalse(b.add(4, 4, RingRecorder.ENTRY));
+        assertEquals(2, b.getDropped());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final WritableByteChannel channel = Channels.newChannel(bytes);
+        final ByteBuffer out = ByteBuffer.allocate(1024);
+        assertEquals(2, b.drain(out, channel));
+        // Draining frees the buffer.
+        assertTrue(b.add(5, 5, RingRecorder.EXIT));
+        assertEquals(1, b.drain(out, channel));
+        assertEquals(0, b.drain(out, channel));
+        RingRecorder.write(out, channel);
+        final ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(4 * RingRecorder.RECORD_SIZE, in.remaining());
+        assertRecord(in, 1, b.getThreadId(), 1, RingRecorder.ENTRY);
+        assertRecord(in, 2, b.getThreadId(), 2, RingRecorder.ENTRY);
+        // The number of dropped records is reported once.
+        in.getLong();
+        assertEquals(b.getThreadId(), in.getLong());
+        assertEquals(2, in.getInt());
+        assertEquals(RingRecorder.DROPPED, in.getInt());
+        assertRecord(in, 5, b.getThreadId(), 5, RingRecorder.EXIT);
+    }
+    
+    private static void assertRecord(ByteBuffer in, long time, long threadId, int methodId, int event) {
+        assertEquals(time, in.getLong());
+        assertEquals(threadId, in.getLong());
+        assertEquals(methodId, in.getInt());
+        assertEquals(event, in.getInt());
+    }
+}
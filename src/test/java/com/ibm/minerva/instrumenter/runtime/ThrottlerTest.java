@@ -0,0 +1,114 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+package com.ibm.minerva.instrumenter.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Throttler Test")
+public class ThrottlerTest {
+    
+    @AfterEach
+    public void tearDown() {
+        Throttler.stop();
+        Throttler.reset();
+    }
+    
+    @Test
+    public void testThrottle() {
+        final List<Integer> throttled = new ArrayList<>();
+        // The monitor does not check during the test, the intervals are ended by calling check().
+        Throttler.start(3, 3600000, throttled::add);
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(Throttler.enter(60001));
+        }
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(Throttler.enter(60002));
+        }
+        Throttler.check();
+        assertEquals(Arrays.asList(60002), throttled);
+        assertFalse(Throttler.isThrottled(60001));
+        assertTrue(Throttler.isThrottled(60002));
+        assertFalse(Throttler.enter(60002));
+        
+        // The counts start again in each interval.
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(Throttler.enter(60001));
+        }
+        Throttler.check();
+        assertFalse(Throttler.isThrottled(60001));
+        // A throttled method is only reported once.
+        assertEquals(Arrays.asList(60002), throttled);
+        assertFalse(Throttler.enter(60002));
+    }
+    
+    @Test
+    public void testReset() {
+        Throttler.start(1, 3600000, null);
+        assertTrue(Throttler.enter(60003));
+        assertTrue(Throttler.enter(60003));
+        Throttler.check();
+        assertTrue(Throttler.isThrottled(60003));
+        assertFalse(Throttler.enter(60003));
+        Throttler.reset();
+        assertFalse(Throttler.isThrottled(60003));
+        assertTrue(Throttler.enter(60003));
+    }
+    
+    @Test
+    public void testGrows() {
+        final int methodId = 200000;
+        Throttler.start(1, 3600000, null);
+        assertTrue(Throttler.enter(methodId));
+        assertTrue(Throttler.enter(methodId));
+        Throttler.check();
+        assertFalse(Throttler.enter(methodId));
+    }
+    
+    @Test
+    public void testMonitor() throws InterruptedException {
+        final List<Integer> throttled = new ArrayList<>();
+        final Object lock = new Object();
+        Throttler.start(1, 10, methodId -> {
+            synchronized (lock) {
+                throttled.add(methodId);
+                lock.notifyAll();
+            }
+        });
+        // Keep calling until the monitor thread ends an interval with more than one call.
+        final long deadline = System.currentTimeMillis() + 10000;
+        synchronized (lock) {
+            while (throttled.isEmpty() && System.currentTimeMillis() < deadline) {
+                Throttler.enter(60004);
+                Throttler.enter(60004);
+                lock.wait(1);
+            }
+            assertEquals(Arrays.asList(60004), throttled);
+        }
+        assertTrue(Throttler.isThrottled(60004));
+    }
+}